@@ -0,0 +1,126 @@
+/*
+ * OfficeFloor - http://www.officefloor.net
+ * Copyright (C) 2005-2019 Daniel Sagenschneider
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package net.officefloor.app.subscription.benchmark;
+
+import java.time.ZonedDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Random;
+
+import net.officefloor.app.subscription.ResponseUtil;
+import net.officefloor.app.subscription.store.Domain;
+import net.officefloor.app.subscription.store.Invoice;
+import net.officefloor.app.subscription.store.Payment;
+import net.officefloor.app.subscription.store.Refund;
+import net.officefloor.app.subscription.store.User;
+
+/**
+ * Creates synthetic {@link Payment} histories for benchmarking.
+ * 
+ * @author Daniel Sagenschneider
+ */
+public class BenchmarkPayments {
+
+	/**
+	 * Domain name for the {@link Payment} instances.
+	 */
+	public static final String DOMAIN_NAME = "officefloor.org";
+
+	/**
+	 * Creates a {@link User}.
+	 * 
+	 * @param id      Identifier.
+	 * @param name    Name.
+	 * @param isAdmin Indicates if administrator.
+	 * @return {@link User}.
+	 */
+	public static User newUser(long id, String name, boolean isAdmin) {
+		User user = new User(name.toLowerCase() + "@officefloor.org");
+		user.setId(id);
+		user.setName(name);
+		user.setRoles(isAdmin ? new String[] { User.ROLE_ADMIN } : new String[0]);
+		return user;
+	}
+
+	/**
+	 * Creates a shuffled {@link Payment} history with a mix of refunds, lapsed
+	 * subscriptions and restarts, paid by two {@link User} instances.
+	 * 
+	 * @param paymentCount Number of {@link Payment} instances.
+	 * @param payer        {@link User} making most {@link Payment} instances.
+	 * @param other        Other {@link User} making some {@link Payment}
+	 *                     instances.
+	 * @return {@link Payment} instances.
+	 */
+	public static Payment[] newPayments(int paymentCount, User payer, User other) {
+
+		// Create the references
+		ResolvedRef<User> payerRef = new ResolvedRef<>("User", payer.getId(), payer);
+		ResolvedRef<User> otherRef = new ResolvedRef<>("User", other.getId(), other);
+		Refund refund = new Refund("Benchmark");
+		refund.setId(1L);
+		ResolvedRef<Refund> refundRef = new ResolvedRef<>("Refund", 1, refund);
+
+		// Create the payments
+		Random random = new Random(1);
+		ZonedDateTime timestamp = ZonedDateTime.of(2000, 1, 1, 0, 0, 0, 0, ResponseUtil.ZONE);
+		Payment[] payments = new Payment[paymentCount];
+		for (int i = 0; i < paymentCount; i++) {
+
+			// Determine the payer
+			boolean isOther = (i % 3 == 0);
+			ResolvedRef<User> userRef = isOther ? otherRef : payerRef;
+
+			// Determine timing (occasionally lapsing)
+			boolean isLapse = (i % 11 == 0);
+			timestamp = timestamp.plus(isLapse ? 500 + random.nextInt(300) : random.nextInt(300), ChronoUnit.DAYS);
+			boolean isRestart = isLapse && (i % 2 == 0);
+
+			// Create the invoice
+			long id = i + 1;
+			Invoice invoice = new Invoice(userRef, Domain.PRODUCT_TYPE, DOMAIN_NAME, isRestart);
+			invoice.setId(id);
+			invoice.setPaymentOrderId("ORDER-" + id);
+
+			// Create the payment
+			Payment payment = new Payment(userRef, new ResolvedRef<>("Invoice", id, invoice), Domain.PRODUCT_TYPE,
+					DOMAIN_NAME, isRestart, isRestart ? 25_00 : 5_00, "RECEIPT-" + id);
+			payment.setId(id);
+			payment.setTimestamp(Date.from(timestamp.toInstant()));
+			if (i % 17 == 16) {
+				payment.setRefund(refundRef);
+			}
+			payments[i] = payment;
+		}
+
+		// Shuffle the payments (as not loaded in order)
+		List<Payment> shuffled = Arrays.asList(payments);
+		Collections.shuffle(shuffled, random);
+		return shuffled.toArray(new Payment[paymentCount]);
+	}
+
+	/**
+	 * All access via static methods.
+	 */
+	private BenchmarkPayments() {
+	}
+
+}
@@ -0,0 +1,137 @@
+/*
+ * OfficeFloor - http://www.officefloor.net
+ * Copyright (C) 2005-2019 Daniel Sagenschneider
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package net.officefloor.app.subscription.benchmark;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.google.cloud.NoCredentials;
+import com.google.cloud.datastore.DatastoreOptions;
+import com.googlecode.objectify.Objectify;
+import com.googlecode.objectify.ObjectifyFactory;
+import com.googlecode.objectify.ObjectifyService;
+import com.googlecode.objectify.Ref;
+import com.googlecode.objectify.util.Closeable;
+
+import net.officefloor.app.subscription.store.Domain;
+import net.officefloor.app.subscription.store.Invoice;
+import net.officefloor.app.subscription.store.InvoiceIdPool;
+import net.officefloor.app.subscription.store.User;
+
+/**
+ * Benchmarks the Datastore writes of creating an {@link Invoice} on checkout.
+ * <p>
+ * Requires the Datastore emulator (<code>gcloud beta emulators datastore
+ * start</code>), with <code>DATASTORE_EMULATOR_HOST</code> specifying its
+ * location (defaults to <code>localhost:8081</code>).
+ * 
+ * @author Daniel Sagenschneider
+ */
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class CheckoutBenchmark {
+
+	private final AtomicLong orderIndex = new AtomicLong(0);
+
+	private Closeable session;
+
+	private Objectify objectify;
+
+	private Ref<User> userRef;
+
+	private InvoiceIdPool invoiceIdPool;
+
+	@Setup
+	public void setup() {
+
+		// Connect to the Datastore emulator
+		String host = System.getenv("DATASTORE_EMULATOR_HOST");
+		if (host == null) {
+			host = "localhost:8081";
+		}
+		ObjectifyService.init(new ObjectifyFactory(DatastoreOptions.newBuilder().setHost("http://" + host)
+				.setProjectId("benchmark").setCredentials(NoCredentials.getInstance()).build().getService()));
+		ObjectifyService.register(User.class);
+		ObjectifyService.register(Invoice.class);
+		this.session = ObjectifyService.begin();
+		this.objectify = ObjectifyService.ofy();
+
+		// Create the user
+		User user = BenchmarkPayments.newUser(1, "Payer", false);
+		this.objectify.save().entity(user).now();
+		this.userRef = Ref.create(user);
+
+		// Create the pool
+		this.invoiceIdPool = new InvoiceIdPool(InvoiceIdPool.DEFAULT_BLOCK_SIZE);
+	}
+
+	@TearDown
+	public void tearDown() {
+		this.session.close();
+	}
+
+	/**
+	 * Previous approach of saving to obtain the identifier and then saving again
+	 * with the PayPal order.
+	 */
+	@Benchmark
+	public Invoice saveForIdThenSaveOrder() {
+		Invoice invoice = this.newInvoice();
+		this.objectify.save().entity(invoice).now();
+		invoice.setPaymentOrderId(this.nextOrderId());
+		this.objectify.save().entity(invoice).now();
+		return invoice;
+	}
+
+	/**
+	 * Pre-allocated identifier with the one save after the PayPal order.
+	 */
+	@Benchmark
+	public Invoice preAllocatedId() {
+		Invoice invoice = this.newInvoice();
+		invoice.setId(this.invoiceIdPool.nextId(this.objectify));
+		invoice.setPaymentOrderId(this.nextOrderId());
+		this.objectify.save().entity(invoice).now();
+		return invoice;
+	}
+
+	private Invoice newInvoice() {
+		return new Invoice(this.userRef, Domain.PRODUCT_TYPE, BenchmarkPayments.DOMAIN_NAME, false);
+	}
+
+	private String nextOrderId() {
+		return "ORDER_" + this.orderIndex.incrementAndGet();
+	}
+
+}
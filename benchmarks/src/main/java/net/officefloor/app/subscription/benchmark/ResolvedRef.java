@@ -0,0 +1,66 @@
+/*
+ * OfficeFloor - http://www.officefloor.net
+ * Copyright (C) 2005-2019 Daniel Sagenschneider
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package net.officefloor.app.subscription.benchmark;
+
+import com.google.cloud.datastore.Key;
+import com.googlecode.objectify.Ref;
+
+/**
+ * {@link Ref} to an already resolved entity.
+ * <p>
+ * Allows benchmarking without a data store, modelling the references having
+ * been batch loaded into the session.
+ * 
+ * @author Daniel Sagenschneider
+ */
+public class ResolvedRef<T> extends Ref<T> {
+
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * Entity.
+	 */
+	private final T entity;
+
+	/**
+	 * Instantiate.
+	 * 
+	 * @param kind   Kind of entity.
+	 * @param id     Identifier of entity.
+	 * @param entity Entity.
+	 */
+	public ResolvedRef(String kind, long id, T entity) {
+		super(com.googlecode.objectify.Key.create(Key.newBuilder("benchmark", kind, id).build()));
+		this.entity = entity;
+	}
+
+	/*
+	 * ========================= Ref ============================
+	 */
+
+	@Override
+	public T get() {
+		return this.entity;
+	}
+
+	@Override
+	public boolean isLoaded() {
+		return true;
+	}
+
+}
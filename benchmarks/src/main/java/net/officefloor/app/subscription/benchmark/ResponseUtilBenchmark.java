@@ -0,0 +1,109 @@
+/*
+ * OfficeFloor - http://www.officefloor.net
+ * Copyright (C) 2005-2019 Daniel Sagenschneider
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package net.officefloor.app.subscription.benchmark;
+
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.Date;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import net.officefloor.app.subscription.ResponseUtil;
+
+/**
+ * Benchmarks formatting dates for responses (against the
+ * {@link DateTimeFormatter#RFC_1123_DATE_TIME} formatting).
+ * 
+ * @author Daniel Sagenschneider
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ResponseUtilBenchmark {
+
+	private static final int DATE_COUNT = 1024;
+
+	private static final int DATE_MASK = DATE_COUNT - 1;
+
+	private final Date[] dates = new Date[DATE_COUNT];
+
+	private final ZonedDateTime[] zonedDates = new ZonedDateTime[DATE_COUNT];
+
+	/**
+	 * Dates repeatedly formatted (as for each view of a domain).
+	 */
+	private final Date[] viewDates = new Date[16];
+
+	private int index = 0;
+
+	@Setup
+	public void setup() {
+		Random random = new Random(1);
+		long now = System.currentTimeMillis();
+		for (int i = 0; i < DATE_COUNT; i++) {
+			Date date = new Date(now + (random.nextInt(Integer.MAX_VALUE) * 1000L));
+			this.dates[i] = date;
+			this.zonedDates[i] = date.toInstant().atZone(ResponseUtil.ZONE);
+		}
+		for (int i = 0; i < this.viewDates.length; i++) {
+			this.viewDates[i] = this.dates[i];
+		}
+	}
+
+	@Benchmark
+	public String formatterDate() {
+		Date date = this.dates[this.index++ & DATE_MASK];
+		return DateTimeFormatter.RFC_1123_DATE_TIME.format(date.toInstant().atZone(ResponseUtil.ZONE));
+	}
+
+	@Benchmark
+	public String formatterViewDate() {
+		Date date = this.viewDates[this.index++ & (this.viewDates.length - 1)];
+		return DateTimeFormatter.RFC_1123_DATE_TIME.format(date.toInstant().atZone(ResponseUtil.ZONE));
+	}
+
+	@Benchmark
+	public String toTextViewDate() {
+		return ResponseUtil.toText(this.viewDates[this.index++ & (this.viewDates.length - 1)]);
+	}
+
+	@Benchmark
+	public String toTextDate() {
+		return ResponseUtil.toText(this.dates[this.index++ & DATE_MASK]);
+	}
+
+	@Benchmark
+	public String toTextZonedDateTime() {
+		return ResponseUtil.toText(this.zonedDates[this.index++ & DATE_MASK]);
+	}
+
+}
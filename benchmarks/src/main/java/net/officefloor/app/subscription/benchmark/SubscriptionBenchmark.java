@@ -0,0 +1,86 @@
+/*
+ * OfficeFloor - http://www.officefloor.net
+ * Copyright (C) 2005-2019 Daniel Sagenschneider
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package net.officefloor.app.subscription.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import net.officefloor.app.subscription.SubscriptionCalculator;
+import net.officefloor.app.subscription.SubscriptionCalculator.Subscription;
+import net.officefloor.app.subscription.SubscriptionService;
+import net.officefloor.app.subscription.SubscriptionService.DomainPayments;
+import net.officefloor.app.subscription.store.Payment;
+import net.officefloor.app.subscription.store.User;
+
+/**
+ * Benchmarks calculating the {@link Subscription} instances and translating
+ * them to the {@link DomainPayments} response.
+ * 
+ * @author Daniel Sagenschneider
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SubscriptionBenchmark {
+
+	@Param({ "10", "100", "1000", "10000", "100000" })
+	public int paymentCount;
+
+	@Param({ "false", "true" })
+	public boolean isAdmin;
+
+	private User viewer;
+
+	private Payment[] payments;
+
+	private Subscription[] subscriptions;
+
+	@Setup
+	public void setup() {
+		User payer = BenchmarkPayments.newUser(1, "Payer", false);
+		User other = BenchmarkPayments.newUser(2, "Other", false);
+		this.viewer = this.isAdmin ? BenchmarkPayments.newUser(3, "Admin", true) : payer;
+		this.payments = BenchmarkPayments.newPayments(this.paymentCount, payer, other);
+		this.subscriptions = SubscriptionCalculator.calculateSubscriptions(this.viewer, this.payments);
+	}
+
+	@Benchmark
+	public Subscription[] calculateSubscriptions() {
+		return SubscriptionCalculator.calculateSubscriptions(this.viewer, this.payments);
+	}
+
+	@Benchmark
+	public DomainPayments translateToDomainPayments() {
+		return SubscriptionService.translateToDomainPayments(this.subscriptions);
+	}
+
+}
@@ -68,8 +68,11 @@ export class CheckoutComponent implements OnInit {
                         component.domainName, component.isResetSubscription, paypalCurrency, this.serverApiService,
                         data, actions ),
                     onApprove: ( data, actions ) => environment.capturePayment(
-                        data.orderID, this.serverApiService, data, actions ).then(( domainPayments: DomainPayments ) => {
-                            this.latestDomainPaymentsService.notifyLatest( domainPayments )
+                        data.orderID, this.serverApiService, data, actions ).then(( captured: DomainPayments ) => {
+                            // Capture only provides the new payment, so load all payments for the domain
+                            this.serverApiService.getDomainSubscriptions( captured.domainName ).subscribe(
+                                ( domainPayments: DomainPayments ) => this.latestDomainPaymentsService.notifyLatest( domainPayments ),
+                                this.alertService.handleError() )
                         } ).catch(( error: any ) => {
                             this.alertService.error( error )
                         } )
@@ -33,7 +33,8 @@ describe( 'ConfigureComponent', () => {
         paypalClientId: 'PAYPAL_CLIENT_ID',
         paypalClientSecret: 'PAYPAL_CLIENT_SECRET',
         paypalCurrency: 'PAYPAL_CURRENCY',
-        paypalInvoiceIdTemplate: 'template'
+        paypalInvoiceIdTemplate: 'template',
+        paypalWebhookId: 'PAYPAL_WEBHOOK_ID'
     }
 
     beforeEach( waitForAsync(() => {
@@ -40,6 +40,7 @@ export class ConfigureComponent implements OnInit {
             paypalClientSecret: '',
             paypalInvoiceIdTemplate: '',
             paypalCurrency: '',
+            paypalWebhookId: '',
         } )
 
         // Load form
@@ -64,7 +65,8 @@ export class ConfigureComponent implements OnInit {
                 paypalClientId: configuration.paypalClientId,
                 paypalClientSecret: configuration.paypalClientSecret,
                 paypalInvoiceIdTemplate: configuration.paypalInvoiceIdTemplate,
-                paypalCurrency: configuration.paypalCurrency
+                paypalCurrency: configuration.paypalCurrency,
+                paypalWebhookId: configuration.paypalWebhookId
             } )
 
             // Load the administrators
@@ -107,6 +109,7 @@ export class ConfigureComponent implements OnInit {
             paypalClientSecret: form.paypalClientSecret,
             paypalInvoiceIdTemplate: form.paypalInvoiceIdTemplate,
             paypalCurrency: form.paypalCurrency,
+            paypalWebhookId: form.paypalWebhookId,
         } ).subscribe(
             () => this.alertService.success( 'Successfully updated configuration' ),
             this.alertService.handleError(),
@@ -54,6 +54,7 @@ export interface Configuration {
     paypalClientSecret: string
     paypalInvoiceIdTemplate: string
     paypalCurrency: string
+    paypalWebhookId: string
 }
 
 export interface Domain {
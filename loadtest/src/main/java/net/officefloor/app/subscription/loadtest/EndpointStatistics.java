@@ -0,0 +1,123 @@
+/*
+ * OfficeFloor - http://www.officefloor.net
+ * Copyright (C) 2005-2019 Daniel Sagenschneider
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package net.officefloor.app.subscription.loadtest;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Latencies of requests to an endpoint.
+ * <p>
+ * All latencies are kept, so the percentiles are exact.
+ * 
+ * @author Daniel Sagenschneider
+ */
+public class EndpointStatistics {
+
+	/**
+	 * Name of the endpoint.
+	 */
+	private final String name;
+
+	/**
+	 * Latencies in nanoseconds of the successful requests.
+	 */
+	private long[] latencies = new long[1024];
+
+	/**
+	 * Number of successful requests.
+	 */
+	private int count = 0;
+
+	/**
+	 * Number of failed requests.
+	 */
+	private int errorCount = 0;
+
+	/**
+	 * Instantiate.
+	 * 
+	 * @param name Name of the endpoint.
+	 */
+	public EndpointStatistics(String name) {
+		this.name = name;
+	}
+
+	/**
+	 * Obtains the name of the endpoint.
+	 * 
+	 * @return Name of the endpoint.
+	 */
+	public String getName() {
+		return this.name;
+	}
+
+	/**
+	 * Records a successful request.
+	 * 
+	 * @param latency Latency in nanoseconds.
+	 */
+	public synchronized void recordSuccess(long latency) {
+		if (this.count == this.latencies.length) {
+			this.latencies = Arrays.copyOf(this.latencies, this.latencies.length * 2);
+		}
+		this.latencies[this.count++] = latency;
+	}
+
+	/**
+	 * Records a failed request.
+	 */
+	public synchronized void recordError() {
+		this.errorCount++;
+	}
+
+	/**
+	 * Obtains the number of successful requests.
+	 * 
+	 * @return Number of successful requests.
+	 */
+	public synchronized int getCount() {
+		return this.count;
+	}
+
+	/**
+	 * Obtains the number of failed requests.
+	 * 
+	 * @return Number of failed requests.
+	 */
+	public synchronized int getErrorCount() {
+		return this.errorCount;
+	}
+
+	/**
+	 * Obtains the latency percentile.
+	 * 
+	 * @param percentile Percentile (e.g. <code>0.95</code>).
+	 * @return Latency in milliseconds (or <code>0</code> if no requests).
+	 */
+	public synchronized double getPercentile(double percentile) {
+		if (this.count == 0) {
+			return 0;
+		}
+		long[] sorted = Arrays.copyOf(this.latencies, this.count);
+		Arrays.sort(sorted);
+		int index = (int) Math.ceil(percentile * sorted.length) - 1;
+		return sorted[Math.max(0, index)] / (double) TimeUnit.MILLISECONDS.toNanos(1);
+	}
+
+}
@@ -0,0 +1,421 @@
+/*
+ * OfficeFloor - http://www.officefloor.net
+ * Copyright (C) 2005-2019 Daniel Sagenschneider
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package net.officefloor.app.subscription.loadtest;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.net.ssl.HttpsURLConnection;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.TrustManager;
+import javax.net.ssl.X509TrustManager;
+
+import org.junit.rules.RuleChain;
+import org.junit.runner.Description;
+import org.junit.runners.model.Statement;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.NullNode;
+
+import net.officefloor.OfficeFloorMain;
+import net.officefloor.app.subscription.google.GoogleIdTokenVerifierCacheManagedObjectSource;
+import net.officefloor.app.subscription.paypal.PayPalConfiguration;
+import net.officefloor.app.subscription.store.Administration;
+import net.officefloor.app.subscription.store.Administration.Administrator;
+import net.officefloor.frame.api.manage.OfficeFloor;
+import net.officefloor.identity.google.mock.GoogleIdTokenRule;
+import net.officefloor.nosql.objectify.mock.ObjectifyRule;
+
+/**
+ * Load tests the checkout flow of the subscription server.
+ * <p>
+ * The server is started in process over HTTPS with the Datastore emulator
+ * (via {@link ObjectifyRule}), Google sign-in stood in by
+ * {@link GoogleIdTokenRule} and sandbox PayPal directed to the
+ * {@link PayPalStub} (via
+ * {@link PayPalConfiguration#SYSTEM_PROPERTY_SANDBOX_URL}).
+ * Each virtual user then repeatedly drives authenticate, createInvoice,
+ * capturePayment, getDomains and getDomainPayments, with the requests per
+ * second and latency percentiles reported for each endpoint.
+ * <p>
+ * Settings are provided as <code>name=value</code> arguments:
+ * <ul>
+ * <li><code>concurrency</code>: number of virtual users (default 10)</li>
+ * <li><code>duration</code>: seconds to measure (default 60)</li>
+ * <li><code>warmup</code>: seconds before measuring (default 10)</li>
+ * <li><code>paypal.latency</code>: milliseconds for PayPal responses (default
+ * 200)</li>
+ * </ul>
+ * 
+ * @author Daniel Sagenschneider
+ */
+public class LoadTest {
+
+	/**
+	 * Default HTTPS port of OfficeFloor.
+	 */
+	public static final int HTTPS_PORT = 7979;
+
+	/**
+	 * Maximum number of failed requests to log.
+	 */
+	private static final int MAX_LOGGED_ERRORS = 10;
+
+	/**
+	 * {@link ObjectMapper}.
+	 */
+	private static final ObjectMapper mapper = new ObjectMapper();
+
+	/**
+	 * Runs the load test.
+	 * 
+	 * @param args <code>name=value</code> settings.
+	 * @throws Throwable If failure in running the load test.
+	 */
+	public static void main(String... args) throws Throwable {
+
+		// Obtain the settings
+		Map<String, String> settings = new HashMap<>();
+		for (String arg : args) {
+			int split = arg.indexOf('=');
+			if (split <= 0) {
+				throw new IllegalArgumentException("Setting must be name=value: " + arg);
+			}
+			settings.put(arg.substring(0, split), arg.substring(split + 1));
+		}
+		int concurrency = Integer.parseInt(settings.getOrDefault("concurrency", "10"));
+		long duration = Long.parseLong(settings.getOrDefault("duration", "60"));
+		long warmup = Long.parseLong(settings.getOrDefault("warmup", "10"));
+		long payPalLatency = Long.parseLong(settings.getOrDefault("paypal.latency", "200"));
+
+		// Run with stand-ins for Google and the Datastore
+		GoogleIdTokenRule google = new GoogleIdTokenRule();
+		ObjectifyRule objectify = new ObjectifyRule();
+		LoadTest loadTest = new LoadTest(concurrency, duration, warmup, payPalLatency);
+		RuleChain.outerRule(google).around(objectify).apply(new Statement() {
+			@Override
+			public void evaluate() throws Throwable {
+				loadTest.run(google, objectify);
+			}
+		}, Description.EMPTY).evaluate();
+	}
+
+	private final EndpointStatistics authenticate = new EndpointStatistics("authenticate");
+
+	private final EndpointStatistics createInvoice = new EndpointStatistics("createInvoice");
+
+	private final EndpointStatistics capturePayment = new EndpointStatistics("capturePayment");
+
+	private final EndpointStatistics getDomains = new EndpointStatistics("getDomains");
+
+	private final EndpointStatistics getDomainPayments = new EndpointStatistics("getDomainPayments");
+
+	/**
+	 * Number of completed checkout flows.
+	 */
+	private final AtomicLong flowCount = new AtomicLong(0);
+
+	/**
+	 * Number of failed requests logged.
+	 */
+	private final AtomicInteger loggedErrorCount = new AtomicInteger(0);
+
+	/**
+	 * Number of virtual users.
+	 */
+	private final int concurrency;
+
+	/**
+	 * Seconds to measure.
+	 */
+	private final long duration;
+
+	/**
+	 * Seconds before measuring.
+	 */
+	private final long warmup;
+
+	/**
+	 * Milliseconds for PayPal responses.
+	 */
+	private final long payPalLatency;
+
+	/**
+	 * {@link SSLContext} trusting the server's self-signed certificate.
+	 */
+	private final SSLContext sslContext;
+
+	/**
+	 * Instantiate.
+	 * 
+	 * @param concurrency   Number of virtual users.
+	 * @param duration      Seconds to measure.
+	 * @param warmup        Seconds before measuring.
+	 * @param payPalLatency Milliseconds for PayPal responses.
+	 * @throws Exception If fails to create the {@link SSLContext}.
+	 */
+	public LoadTest(int concurrency, long duration, long warmup, long payPalLatency) throws Exception {
+		this.concurrency = concurrency;
+		this.duration = duration;
+		this.warmup = warmup;
+		this.payPalLatency = payPalLatency;
+
+		// Trust the self-signed certificate (only ever local server)
+		this.sslContext = SSLContext.getInstance("TLS");
+		this.sslContext.init(null, new TrustManager[] { new X509TrustManager() {
+			@Override
+			public void checkClientTrusted(X509Certificate[] chain, String authType) {
+			}
+
+			@Override
+			public void checkServerTrusted(X509Certificate[] chain, String authType) {
+			}
+
+			@Override
+			public X509Certificate[] getAcceptedIssuers() {
+				return new X509Certificate[0];
+			}
+		} }, null);
+	}
+
+	/**
+	 * Runs the load test.
+	 * 
+	 * @param google    {@link GoogleIdTokenRule}.
+	 * @param objectify {@link ObjectifyRule}.
+	 * @throws Exception If failure in running the load test.
+	 */
+	public void run(GoogleIdTokenRule google, ObjectifyRule objectify) throws Exception {
+		try (PayPalStub payPal = new PayPalStub(this.payPalLatency)) {
+
+			// Configure the server (with PayPal requests directed to the stub)
+			objectify.store(new Administration("LOAD_TEST_GOOGLE_CLIENT_ID",
+					new Administrator[] { new Administrator("LOAD_TEST_ADMIN", "Load test") }, "sandbox",
+					"LOAD_TEST_CLIENT_ID", "LOAD_TEST_CLIENT_SECRET", "LOAD_TEST_{id}_{timestamp}", "AUD"));
+			System.setProperty(PayPalConfiguration.SYSTEM_PROPERTY_SANDBOX_URL, payPal.getUrl());
+			System.setProperty(GoogleIdTokenVerifierCacheManagedObjectSource.SYSTEM_PROPERTY_WARM_ON_START, "false");
+
+			// Create the Google sign-in for each virtual user
+			List<String> idTokens = new ArrayList<>(this.concurrency);
+			for (int i = 0; i < this.concurrency; i++) {
+				idTokens.add(google.getMockIdToken("LOAD_USER_" + i, "load.user." + i + "@officefloor.org",
+						"email_verified", "true", "name", "Load User " + i));
+			}
+
+			// Start the server
+			OfficeFloor officeFloor = OfficeFloorMain.open();
+			try {
+
+				// Run the virtual users
+				System.out.println("Running " + this.concurrency + " virtual users for " + this.warmup
+						+ " seconds warm up and " + this.duration + " seconds measured");
+				long warmupEnd = System.nanoTime() + TimeUnit.SECONDS.toNanos(this.warmup);
+				long end = warmupEnd + TimeUnit.SECONDS.toNanos(this.duration);
+				ExecutorService users = Executors.newFixedThreadPool(this.concurrency);
+				List<Future<?>> running = new ArrayList<>(this.concurrency);
+				for (int i = 0; i < this.concurrency; i++) {
+					int userIndex = i;
+					running.add(users.submit(() -> this.runUser(idTokens.get(userIndex),
+							"load" + userIndex + ".officefloor.org", warmupEnd, end)));
+				}
+				for (Future<?> user : running) {
+					user.get();
+				}
+				users.shutdown();
+
+				// Report the results
+				this.report(payPal);
+
+			} finally {
+				officeFloor.closeOfficeFloor();
+			}
+		}
+	}
+
+	/**
+	 * Runs a virtual user.
+	 * 
+	 * @param idToken    Google Id token for the user.
+	 * @param domainName Domain name paid by the user.
+	 * @param warmupEnd  {@link System#nanoTime()} to start measuring.
+	 * @param end        {@link System#nanoTime()} to stop.
+	 */
+	private void runUser(String idToken, String domainName, long warmupEnd, long end) {
+		Map<String, String> authenticateRequest = Collections.singletonMap("idToken", idToken);
+		while (System.nanoTime() < end) {
+			boolean isMeasure = (System.nanoTime() >= warmupEnd);
+
+			// Authenticate
+			JsonNode tokens = this.request(this.authenticate, "POST", "/authenticate", null, authenticateRequest,
+					isMeasure);
+			if (tokens == null) {
+				continue;
+			}
+			String accessToken = tokens.path("accessToken").asText();
+
+			// Create the invoice
+			JsonNode invoice = this.request(this.createInvoice, "POST", "/invoices/domain/" + domainName,
+					accessToken, null, isMeasure);
+			if (invoice == null) {
+				continue;
+			}
+
+			// Capture the payment
+			if (this.request(this.capturePayment, "POST", "/payments/domain/" + invoice.path("orderId").asText(),
+					accessToken, null, isMeasure) == null) {
+				continue;
+			}
+
+			// View the domains and payments
+			if (this.request(this.getDomains, "GET", "/domains", accessToken, null, isMeasure) == null) {
+				continue;
+			}
+			if (this.request(this.getDomainPayments, "GET", "/subscriptions/domain/" + domainName, accessToken,
+					null, isMeasure) == null) {
+				continue;
+			}
+
+			// Checkout flow complete
+			if (isMeasure) {
+				this.flowCount.incrementAndGet();
+			}
+		}
+	}
+
+	/**
+	 * Sends the request to the server.
+	 * 
+	 * @param statistics  {@link EndpointStatistics} for the request.
+	 * @param method      HTTP method.
+	 * @param path        Path.
+	 * @param accessToken Access token. May be <code>null</code>.
+	 * @param body        Body to send as JSON. May be <code>null</code>.
+	 * @param isMeasure   Indicates if measure the request.
+	 * @return JSON response or <code>null</code> if request failed.
+	 */
+	private JsonNode request(EndpointStatistics statistics, String method, String path, String accessToken,
+			Object body, boolean isMeasure) {
+		long start = System.nanoTime();
+		try {
+
+			// Send the request
+			HttpsURLConnection connection = (HttpsURLConnection) new URL("https://localhost:" + HTTPS_PORT + path)
+					.openConnection();
+			connection.setSSLSocketFactory(this.sslContext.getSocketFactory());
+			connection.setHostnameVerifier((host, session) -> true);
+			connection.setRequestMethod(method);
+			connection.setRequestProperty("Accept", "application/json");
+			if (accessToken != null) {
+				connection.setRequestProperty("Authorization", "Bearer " + accessToken);
+			}
+			if ("POST".equals(method)) {
+				byte[] entity = (body == null) ? new byte[0] : mapper.writeValueAsBytes(body);
+				connection.setDoOutput(true);
+				connection.setFixedLengthStreamingMode(entity.length);
+				if (body != null) {
+					connection.setRequestProperty("Content-Type", "application/json");
+				}
+				try (OutputStream output = connection.getOutputStream()) {
+					output.write(entity);
+				}
+			}
+
+			// Read the response (fully, so connection is re-used)
+			int status = connection.getResponseCode();
+			ByteArrayOutputStream response = new ByteArrayOutputStream();
+			try (InputStream input = (status < 400) ? connection.getInputStream() : connection.getErrorStream()) {
+				if (input != null) {
+					byte[] buffer = new byte[4096];
+					for (int size = input.read(buffer); size != -1; size = input.read(buffer)) {
+						response.write(buffer, 0, size);
+					}
+				}
+			}
+			long latency = System.nanoTime() - start;
+
+			// Determine if successful
+			if ((status < 200) || (status >= 300)) {
+				this.error(statistics, isMeasure,
+						status + " " + new String(response.toByteArray(), StandardCharsets.UTF_8));
+				return null;
+			}
+			if (isMeasure) {
+				statistics.recordSuccess(latency);
+			}
+			return (response.size() == 0) ? NullNode.getInstance() : mapper.readTree(response.toByteArray());
+
+		} catch (IOException ex) {
+			this.error(statistics, isMeasure, ex.getMessage());
+			return null;
+		}
+	}
+
+	/**
+	 * Records a failed request.
+	 * 
+	 * @param statistics {@link EndpointStatistics}.
+	 * @param isMeasure  Indicates if measuring the request.
+	 * @param message    Message describing the failure.
+	 */
+	private void error(EndpointStatistics statistics, boolean isMeasure, String message) {
+		if (isMeasure) {
+			statistics.recordError();
+		}
+		if (this.loggedErrorCount.incrementAndGet() <= MAX_LOGGED_ERRORS) {
+			System.err.println("Failed " + statistics.getName() + ": " + message);
+		}
+	}
+
+	/**
+	 * Reports the results.
+	 * 
+	 * @param payPal {@link PayPalStub}.
+	 */
+	private void report(PayPalStub payPal) {
+		String format = "%-18s %9s %7s %9s %9s %9s %9s%n";
+		System.out.printf(format, "Endpoint", "Requests", "Errors", "Req/s", "p50 ms", "p95 ms", "p99 ms");
+		for (EndpointStatistics statistics : new EndpointStatistics[] { this.authenticate, this.createInvoice,
+				this.capturePayment, this.getDomains, this.getDomainPayments }) {
+			System.out.printf(format, statistics.getName(), statistics.getCount(), statistics.getErrorCount(),
+					String.format("%.1f", statistics.getCount() / (double) this.duration),
+					String.format("%.1f", statistics.getPercentile(0.50)),
+					String.format("%.1f", statistics.getPercentile(0.95)),
+					String.format("%.1f", statistics.getPercentile(0.99)));
+		}
+		System.out.printf("Checkout flows: %d (%.1f/s) with %d PayPal stub requests%n", this.flowCount.get(),
+				this.flowCount.get() / (double) this.duration, payPal.getRequestCount());
+	}
+
+}
@@ -0,0 +1,184 @@
+/*
+ * OfficeFloor - http://www.officefloor.net
+ * Copyright (C) 2005-2019 Daniel Sagenschneider
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package net.officefloor.app.subscription.loadtest;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Local stand-in for the PayPal REST API.
+ * <p>
+ * Provides just enough of the access token, create order and capture order
+ * end points for the checkout flow. Each response is delayed by the configured
+ * latency to approximate PayPal.
+ * 
+ * @author Daniel Sagenschneider
+ */
+public class PayPalStub implements HttpHandler, AutoCloseable {
+
+	/**
+	 * Path of capture order end point.
+	 */
+	private static final Pattern CAPTURE_PATH = Pattern.compile("^/v2/checkout/orders/([^/]+)/capture$");
+
+	/**
+	 * {@link HttpServer}.
+	 */
+	private final HttpServer server;
+
+	/**
+	 * {@link ExecutorService} servicing the requests.
+	 */
+	private final ExecutorService executor = Executors.newCachedThreadPool();
+
+	/**
+	 * Latency in milliseconds for each response.
+	 */
+	private final long latency;
+
+	/**
+	 * Index to provide unique order identifiers.
+	 */
+	private final AtomicLong orderIndex = new AtomicLong(0);
+
+	/**
+	 * Number of requests serviced.
+	 */
+	private final AtomicLong requestCount = new AtomicLong(0);
+
+	/**
+	 * Instantiate (starting the stub).
+	 * 
+	 * @param latency Latency in milliseconds for each response.
+	 * @throws IOException If fails to start.
+	 */
+	public PayPalStub(long latency) throws IOException {
+		this.latency = latency;
+		this.server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+		this.server.createContext("/", this);
+		this.server.setExecutor(this.executor);
+		this.server.start();
+	}
+
+	/**
+	 * Obtains the URL to configure as the PayPal environment.
+	 * 
+	 * @return URL to configure as the PayPal environment.
+	 */
+	public String getUrl() {
+		return "http://127.0.0.1:" + this.server.getAddress().getPort();
+	}
+
+	/**
+	 * Obtains the number of requests serviced.
+	 * 
+	 * @return Number of requests serviced.
+	 */
+	public long getRequestCount() {
+		return this.requestCount.get();
+	}
+
+	/*
+	 * ================== HttpHandler ===================
+	 */
+
+	@Override
+	public void handle(HttpExchange exchange) throws IOException {
+		this.requestCount.incrementAndGet();
+
+		// Consume the request
+		try (InputStream request = exchange.getRequestBody()) {
+			byte[] buffer = new byte[4096];
+			while (request.read(buffer) != -1) {
+				// consume request
+			}
+		}
+
+		// Approximate PayPal latency
+		if (this.latency > 0) {
+			try {
+				Thread.sleep(this.latency);
+			} catch (InterruptedException ex) {
+				Thread.currentThread().interrupt();
+			}
+		}
+
+		// Provide the response
+		String path = exchange.getRequestURI().getPath();
+		Matcher capture = CAPTURE_PATH.matcher(path);
+		if ("/v1/oauth2/token".equals(path)) {
+			this.send(exchange, 200,
+					"{\"scope\":\"https://uri.paypal.com/services/payments\",\"access_token\":\"STUB_ACCESS_TOKEN\","
+							+ "\"token_type\":\"Bearer\",\"app_id\":\"STUB\",\"expires_in\":32400}");
+
+		} else if ("/v2/checkout/orders".equals(path)) {
+			this.send(exchange, 201,
+					"{\"id\":\"STUB_ORDER_" + this.orderIndex.incrementAndGet() + "\",\"status\":\"CREATED\"}");
+
+		} else if (capture.matches()) {
+			String orderId = capture.group(1);
+			this.send(exchange, 201, "{\"id\":\"" + orderId + "\",\"status\":\"COMPLETED\",\"purchase_units\":[{"
+					+ "\"payments\":{\"captures\":[{\"id\":\"CAPTURE_" + orderId + "\",\"status\":\"COMPLETED\","
+					+ "\"amount\":{\"currency_code\":\"AUD\",\"value\":\"5.00\"}}]}}]}");
+
+		} else {
+			this.send(exchange, 404, "{\"name\":\"RESOURCE_NOT_FOUND\",\"message\":\"No stub for " + path + "\"}");
+		}
+	}
+
+	/**
+	 * Sends the JSON response.
+	 * 
+	 * @param exchange {@link HttpExchange}.
+	 * @param status   Status code.
+	 * @param json     JSON entity.
+	 * @throws IOException If fails to send.
+	 */
+	private void send(HttpExchange exchange, int status, String json) throws IOException {
+		byte[] entity = json.getBytes(StandardCharsets.UTF_8);
+		exchange.getResponseHeaders().set("Content-Type", "application/json");
+		exchange.sendResponseHeaders(status, entity.length);
+		try (OutputStream response = exchange.getResponseBody()) {
+			response.write(entity);
+		}
+	}
+
+	/*
+	 * ================== AutoCloseable ===================
+	 */
+
+	@Override
+	public void close() {
+		this.server.stop(0);
+		this.executor.shutdownNow();
+	}
+
+}
@@ -13,6 +13,7 @@ import com.googlecode.objectify.Objectify;
 import com.googlecode.objectify.Ref;
 
 import lombok.Value;
+import net.officefloor.app.subscription.cache.AdministrationCache;
 import net.officefloor.app.subscription.store.Administration;
 import net.officefloor.app.subscription.store.Administration.Administrator;
 import net.officefloor.app.subscription.store.GoogleSignin;
@@ -46,8 +47,8 @@ public class AuthenticateService {
 	}
 
 	public void authenticate(AuthenticateRequest idTokenInput, GoogleIdTokenVerifier verifier, Objectify objectify,
-			JwtAuthority<User> authority, ObjectResponse<AuthenticateResponse> response,
-			ServerHttpConnection connection) throws Exception {
+			AdministrationCache administrationCache, JwtAuthority<User> authority,
+			ObjectResponse<AuthenticateResponse> response, ServerHttpConnection connection) throws Exception {
 
 		// Verify token
 		GoogleIdToken token = verifier.verify(idTokenInput.getIdToken());
@@ -72,7 +73,7 @@ public class AuthenticateService {
 		List<GoogleSignin> logins = objectify.load().type(GoogleSignin.class).filter("googleId", googleId).list();
 
 		// Load the administration details
-		Administration administration = objectify.load().type(Administration.class).first().now();
+		Administration administration = administrationCache.getAdministration(objectify);
 		if (administration == null) {
 			throw new HttpException(HttpStatus.SERVICE_UNAVAILABLE, "Server not initialised");
 		}
@@ -102,7 +103,7 @@ public class AuthenticateService {
 					user = new User(email);
 					isNewUser = true;
 				} else {
-					user = login.getUser().get();
+					user = objectify.load().ref(login.getUser()).now();
 					isNewUser = false;
 				}
 				user.setEmail(email);
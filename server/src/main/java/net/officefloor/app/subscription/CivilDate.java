@@ -0,0 +1,116 @@
+/*
+ * OfficeFloor - http://www.officefloor.net
+ * Copyright (C) 2005-2019 Daniel Sagenschneider
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package net.officefloor.app.subscription;
+
+/**
+ * Civil (proleptic Gregorian) date arithmetic on epoch days, without creating
+ * objects (algorithms by Howard Hinnant).
+ * <p>
+ * The civil date is packed into a <code>long</code> of the year starting 1
+ * March, the month from March (0 for March through to 11 for February) and the
+ * day of the month. Starting the year in March places 29 February at the end
+ * of the year, which simplifies the arithmetic.
+ * 
+ * @author Daniel Sagenschneider
+ */
+class CivilDate {
+
+	/**
+	 * Obtains the civil date.
+	 * 
+	 * @param epochDay Epoch day.
+	 * @return Packed civil date.
+	 */
+	static long fromEpochDay(long epochDay) {
+		long shifted = epochDay + 719_468;
+		long era = Math.floorDiv(shifted, 146_097);
+		long dayOfEra = shifted - (era * 146_097);
+		long yearOfEra = (dayOfEra - (dayOfEra / 1_460) + (dayOfEra / 36_524) - (dayOfEra / 146_096)) / 365;
+		long dayOfYear = dayOfEra - ((365 * yearOfEra) + (yearOfEra / 4) - (yearOfEra / 100));
+		long marchMonth = ((5 * dayOfYear) + 2) / 153;
+		long day = dayOfYear - (((153 * marchMonth) + 2) / 5) + 1;
+		return ((era * 400 + yearOfEra) << 9) | (marchMonth << 5) | day;
+	}
+
+	/**
+	 * Obtains the epoch day.
+	 * 
+	 * @param marchYear  Year starting 1 March.
+	 * @param marchMonth Month from March.
+	 * @param day        Day of the month.
+	 * @return Epoch day.
+	 */
+	static long toEpochDay(long marchYear, int marchMonth, int day) {
+		long era = Math.floorDiv(marchYear, 400);
+		long yearOfEra = marchYear - (era * 400);
+		long dayOfYear = (((153 * marchMonth) + 2) / 5) + day - 1;
+		long dayOfEra = (yearOfEra * 365) + (yearOfEra / 4) - (yearOfEra / 100) + dayOfYear;
+		return (era * 146_097) + dayOfEra - 719_468;
+	}
+
+	/**
+	 * Obtains the year starting 1 March.
+	 * 
+	 * @param civil Packed civil date.
+	 * @return Year starting 1 March.
+	 */
+	static long marchYear(long civil) {
+		return civil >> 9;
+	}
+
+	/**
+	 * Obtains the month from March.
+	 * 
+	 * @param civil Packed civil date.
+	 * @return Month from March (0 for March through to 11 for February).
+	 */
+	static int marchMonth(long civil) {
+		return (int) ((civil >> 5) & 0xF);
+	}
+
+	/**
+	 * Obtains the day of the month.
+	 * 
+	 * @param civil Packed civil date.
+	 * @return Day of the month.
+	 */
+	static int dayOfMonth(long civil) {
+		return (int) (civil & 0x1F);
+	}
+
+	/**
+	 * Obtains the calendar year.
+	 * 
+	 * @param civil Packed civil date.
+	 * @return Calendar year.
+	 */
+	static long year(long civil) {
+		return marchYear(civil) + (marchMonth(civil) >= 10 ? 1 : 0);
+	}
+
+	/**
+	 * Determines if leap year.
+	 * 
+	 * @param year Calendar year.
+	 * @return <code>true</code> if leap year.
+	 */
+	static boolean isLeapYear(long year) {
+		return ((year % 4) == 0) && (((year % 100) != 0) || ((year % 400) == 0));
+	}
+
+}
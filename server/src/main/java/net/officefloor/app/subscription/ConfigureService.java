@@ -24,6 +24,7 @@ import java.util.stream.Stream;
 import com.googlecode.objectify.Objectify;
 
 import lombok.Value;
+import net.officefloor.app.subscription.cache.AdministrationCache;
 import net.officefloor.app.subscription.store.Administration;
 import net.officefloor.app.subscription.store.Administration.Administrator;
 import net.officefloor.app.subscription.store.User;
@@ -48,6 +49,7 @@ public class ConfigureService {
 		private String paypalClientSecret;
 		private String paypalInvoiceIdTemplate;
 		private String paypalCurrency;
+		private String paypalWebhookId;
 	}
 
 	@Value
@@ -62,10 +64,11 @@ public class ConfigureService {
 	}
 
 	@HttpAccess(ifRole = User.ROLE_ADMIN)
-	public static void getConfiguration(Objectify objectify, ObjectResponse<Configuration> response) {
+	public static void getConfiguration(Objectify objectify, AdministrationCache administrationCache,
+			ObjectResponse<Configuration> response) {
 
 		// Obtain the administration
-		Administration admin = objectify.load().type(Administration.class).first().now();
+		Administration admin = administrationCache.getAdministration(objectify);
 		if (admin == null) {
 			admin = new Administration();
 		}
@@ -78,13 +81,13 @@ public class ConfigureService {
 				.toArray(ConfigurationAdministrator[]::new);
 		Configuration configuration = new Configuration(admin.getGoogleClientId(), configurationAdministrators,
 				admin.getPaypalEnvironment(), admin.getPaypalClientId(), admin.getPaypalClientSecret(),
-				admin.getPaypalInvoiceIdTemplate(), admin.getPaypalCurrency());
+				admin.getPaypalInvoiceIdTemplate(), admin.getPaypalCurrency(), admin.getPaypalWebhookId());
 		response.send(configuration);
 	}
 
 	@HttpAccess(ifRole = User.ROLE_ADMIN)
 	public static void updateConfiguration(User user, Configuration configuration, Objectify objectify,
-			ObjectResponse<Configured> response) {
+			AdministrationCache administrationCache, ObjectResponse<Configured> response) {
 
 		// Obtain the administration (ensuring only one entry)
 		Administration administration = null;
@@ -105,8 +108,12 @@ public class ConfigureService {
 		administration.setPaypalClientSecret(configuration.getPaypalClientSecret());
 		administration.setPaypalInvoiceIdTemplate(configuration.getPaypalInvoiceIdTemplate());
 		administration.setPaypalCurrency(configuration.getPaypalCurrency());
+		administration.setPaypalWebhookId(configuration.getPaypalWebhookId());
 		objectify.save().entity(administration).now();
 
+		// Ensure cache reflects the update
+		administrationCache.update(administration);
+
 		// Successfully configured
 		response.send(new Configured(true));
 	}
@@ -1,23 +1,40 @@
 package net.officefloor.app.subscription;
 
 import java.io.IOException;
+import java.time.ZonedDateTime;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Date;
-import java.util.HashSet;
-import java.util.Iterator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.function.Supplier;
+import java.util.function.UnaryOperator;
 
+import com.google.cloud.datastore.Cursor;
+import com.google.cloud.datastore.QueryResults;
+import com.googlecode.objectify.LoadResult;
 import com.googlecode.objectify.Objectify;
 import com.googlecode.objectify.Ref;
+import com.googlecode.objectify.cmd.Query;
 
 import lombok.Value;
 import net.officefloor.app.subscription.SubscriptionCalculator.Subscription;
+import net.officefloor.app.subscription.metrics.MeteredObjectify;
 import net.officefloor.app.subscription.store.Domain;
+import net.officefloor.app.subscription.store.LegacyDomain;
 import net.officefloor.app.subscription.store.Payment;
 import net.officefloor.app.subscription.store.User;
-import net.officefloor.plugin.section.clazz.Parameter;
+import net.officefloor.app.subscription.store.UserDomains;
+import net.officefloor.server.http.HttpException;
+import net.officefloor.server.http.HttpStatus;
+import net.officefloor.web.HttpObject;
+import net.officefloor.web.HttpPathParameter;
 import net.officefloor.web.ObjectResponse;
+import net.officefloor.web.security.HttpAccess;
 
 /**
  * Logic to retrieve the domain entries.
@@ -32,23 +49,42 @@ public class DomainService {
 		private String expiresDate;
 	}
 
+	/**
+	 * Maximum number of domains in a status request, so the {@link Domain}
+	 * instances are looked up in a single batch.
+	 */
+	public static final int MAX_STATUS_DOMAINS = 1000;
+
+	/**
+	 * Number of {@link LegacyDomain} entries migrated per page.
+	 */
+	public static final int MIGRATE_PAGE_SIZE = 500;
+
+	@Value
+	@HttpObject
+	public static class DomainStatusRequest {
+		private String[] domainNames;
+	}
+
+	@Value
+	public static class DomainStatus {
+		private String domainName;
+		private String expiresDate;
+	}
+
+	@Value
+	public static class MigratedDomains {
+		private int domainCount;
+	}
+
 	public static void getDomains(User user, Objectify objectify, ObjectResponse<PaidDomain[]> response)
 			throws IOException {
 
-		// Obtain the payments
-		Set<String> domainNames = new HashSet<>();
-		for (Payment payment : objectify.load().type(Payment.class).filter("user", Ref.create(user)).iterable()) {
-			domainNames.add(payment.getProductReference());
-		}
+		// Obtain the paid domain names
+		List<String> domainNames = loadUserDomains(user, objectify).getDomainNames();
 
-		// Obtain the domains
-		List<Domain> domains = new ArrayList<>(domainNames.size());
-		for (String domainName : domainNames) {
-			Domain domain = objectify.load().type(Domain.class).filter("domain", domainName).first().now();
-			if (domain != null) {
-				domains.add(domain);
-			}
-		}
+		// Obtain the domains (in one batch)
+		Collection<Domain> domains = loadDomains(domainNames, objectify).values();
 
 		// Return the domains
 		PaidDomain[] domainResponses = domains.stream().sorted((a, b) -> a.getExpires().compareTo(b.getExpires()))
@@ -57,36 +93,581 @@ public class DomainService {
 		response.send(domainResponses);
 	}
 
-	public static Subscription[] updateDomain(@Parameter Subscription[] subscriptions, Objectify objectify) {
+	public static void getDomainsStatus(User user, DomainStatusRequest request, Objectify objectify,
+			ObjectResponse<DomainStatus[]> response) {
+
+		// Obtain the domain names (ignoring duplicates)
+		Set<String> domainNames = new LinkedHashSet<>();
+		if (request.getDomainNames() != null) {
+			for (String domainName : request.getDomainNames()) {
+				if ((domainName != null) && (domainName.trim().length() > 0)) {
+					domainNames.add(domainName.trim());
+				}
+			}
+		}
+		if (domainNames.size() > MAX_STATUS_DOMAINS) {
+			throw new HttpException(422, "Status limited to " + MAX_STATUS_DOMAINS + " domains");
+		}
+
+		// Return the status of the domains
+		response.send(loadDomainsStatus(domainNames, objectify));
+	}
+
+	/**
+	 * Loads the {@link DomainStatus} for the domain names.
+	 * <p>
+	 * Only the {@link Domain} instances are looked up (in a single batch), so the
+	 * {@link Payment} instances are never loaded.
+	 * 
+	 * @param domainNames Domain names.
+	 * @param objectify   {@link Objectify}.
+	 * @return {@link DomainStatus} for each domain name (in order). Domains not
+	 *         registered have no expires date.
+	 */
+	public static DomainStatus[] loadDomainsStatus(Collection<String> domainNames, Objectify objectify) {
+
+		// Obtain the domains (in one batch)
+		Map<String, Domain> domains = (domainNames.size() == 0) ? Collections.emptyMap()
+				: loadDomains(domainNames, objectify);
+
+		// Return the status of the domains
+		return domainNames.stream().map((domainName) -> {
+			Domain domain = domains.get(domainName);
+			return new DomainStatus(domainName, (domain == null) ? null : ResponseUtil.toText(domain.getExpires()));
+		}).toArray(DomainStatus[]::new);
+	}
+
+	@HttpAccess(ifRole = User.ROLE_ADMIN)
+	public static void recalculateDomain(@HttpPathParameter("domainName") String domainName, Objectify objectify,
+			ObjectResponse<PaidDomain> response) {
+
+		// Recalculate the domain expiry from all its payments
+		Date expiresDate = recalculateDomainExpiry(domainName, objectify);
+		if (expiresDate == null) {
+			throw new HttpException(HttpStatus.NOT_FOUND, "No payments for domain " + domainName);
+		}
+
+		// Return the recalculated domain
+		response.send(new PaidDomain(domainName, ResponseUtil.toText(expiresDate)));
+	}
+
+	/**
+	 * Rebuilds the {@link Domain} expiry from all its {@link Payment} instances.
+	 * <p>
+	 * Captures only incrementally extend the {@link Domain} expiry, so this full
+	 * recalculation is for refunds and audits.
+	 * 
+	 * @param domainName Name of the {@link Domain}.
+	 * @param objectify  {@link Objectify}.
+	 * @return Recalculated expires date or <code>null</code> if no
+	 *         {@link Payment} instances for the {@link Domain}.
+	 */
+	public static Date recalculateDomainExpiry(String domainName, Objectify objectify) {
 
-		// Determine if have subscriptions
-		if ((subscriptions == null) || (subscriptions.length == 0)) {
-			return subscriptions; // no subscription, so don't update domain
+		// Obtain all payments for the domain
+		List<Payment> payments = new ArrayList<>();
+		for (Payment payment : objectify.load().type(Payment.class).filter("productReference", domainName)
+				.iterable()) {
+			if (Domain.PRODUCT_TYPE.equals(payment.getProductType())) {
+				payments.add(payment);
+			}
+		}
+		if (payments.size() == 0) {
+			return null; // no payments, so nothing to recalculate
 		}
 
-		// Obtain the expires date (first subscription)
-		Subscription expireSubscription = subscriptions[0];
-		String domainName = expireSubscription.getProductReference();
-		Date expiresDate = Date.from(expireSubscription.getExtendsToDate().toInstant());
+		// Calculate the expiry (loading payment references in one batch)
+		SubscriptionService.loadPaymentReferences(payments, objectify);
+		Subscription[] subscriptions = SubscriptionCalculator
+				.calculateAllSubscriptions(payments.toArray(new Payment[payments.size()]));
+		Date expiresDate = Date.from(subscriptions[0].getExtendsToDate().toInstant());
+
+		// Save the recalculated expiry (replacing any incremental expiry)
+		objectify.transact(() -> {
+			Objectify txn = MeteredObjectify.ofy();
+			Domain domain = txn.load().type(Domain.class).id(domainName).now();
+			if (domain != null) {
+				domain.setExpires(expiresDate);
+			} else {
+				domain = new Domain(domainName, expiresDate);
+			}
+			txn.save().entity(domain);
+		});
+		return expiresDate;
+	}
+
+	/**
+	 * Incrementally extends the {@link Domain} expiry for the captured
+	 * {@link Payment}.
+	 * <p>
+	 * The {@link Domain} is read, extended and saved within a transaction, so
+	 * concurrent captures for the {@link Domain} each extend its expiry. Only
+	 * should the {@link Domain} not be available are all {@link Payment}
+	 * instances recalculated.
+	 * 
+	 * @param user      {@link User} capturing the {@link Payment}.
+	 * @param payment   Captured {@link Payment}.
+	 * @param objectify {@link Objectify}.
+	 * @return Expires date of the {@link Domain}.
+	 */
+	public static Date extendDomain(User user, Payment payment, Objectify objectify) {
+		String domainName = payment.getProductReference();
+
+		// Extends from the current expiry
+		ZonedDateTime paymentDate = payment.getTimestamp().toInstant().atZone(ResponseUtil.ZONE);
+		UnaryOperator<Date> extend = (currentExpiresDate) -> Date.from(SubscriptionCalculator
+				.extendSubscription(currentExpiresDate.toInstant().atZone(ResponseUtil.ZONE), paymentDate,
+						payment.getIsRestartSubscription())
+				.toInstant());
+
+		// Extend the domain
+		Date expiresDate = saveDomainExpiry(user, domainName, extend, null, objectify);
+		if (expiresDate == null) {
+
+			// No domain, so calculate from all payments
+			Subscription[] subscriptions = SubscriptionCalculator
+					.calculateAllSubscriptions(loadDomainPayments(payment, objectify));
+			Date calculatedExpiresDate = Date.from(subscriptions[0].getExtendsToDate().toInstant());
+			expiresDate = saveDomainExpiry(user, domainName, extend, calculatedExpiresDate, objectify);
+		}
+
+		// Return the expires date
+		return expiresDate;
+	}
+
+	/**
+	 * Loads all {@link Payment} instances for the {@link Domain} of the
+	 * {@link Payment}.
+	 * 
+	 * @param payment   {@link Payment}.
+	 * @param objectify {@link Objectify}.
+	 * @return {@link Payment} instances for the {@link Domain} (including the
+	 *         {@link Payment}) with references loaded.
+	 */
+	private static Payment[] loadDomainPayments(Payment payment, Objectify objectify) {
+
+		// Obtain payments for the domain (including the payment)
+		List<Payment> payments = new ArrayList<>();
+		for (Payment domainPayment : objectify.load().type(Payment.class)
+				.filter("productReference", payment.getProductReference()).iterable()) {
+			if ((Domain.PRODUCT_TYPE.equals(domainPayment.getProductType()))
+					&& (!payment.getId().equals(domainPayment.getId()))) {
+				payments.add(domainPayment);
+			}
+		}
+		payments.add(payment);
+
+		// Load the payment references in one batch
+		SubscriptionService.loadPaymentReferences(payments, objectify);
+		return payments.toArray(new Payment[payments.size()]);
+	}
+
+	/**
+	 * Extends the {@link Domain} expiries for the {@link Payment} instances
+	 * captured together (one {@link Payment} per {@link Domain}).
+	 * <p>
+	 * The {@link Domain} instances are read, extended and saved in a single batch
+	 * within a transaction. As per {@link #extendDomain(User, Payment, Objectify)},
+	 * only should a {@link Domain} not be available are its {@link Payment}
+	 * instances recalculated.
+	 * 
+	 * @param user      {@link User} capturing the {@link Payment} instances.
+	 * @param payments  Captured {@link Payment} instances.
+	 * @param objectify {@link Objectify}.
+	 * @return Saved {@link Domain} instances by domain name.
+	 */
+	public static Map<String, Domain> extendDomains(User user, List<Payment> payments, Objectify objectify) {
+
+		// Obtain the domains (in one batch)
+		List<String> domainNames = new ArrayList<>(payments.size());
+		for (Payment payment : payments) {
+			domainNames.add(payment.getProductReference());
+		}
+		Map<String, Domain> domains = new HashMap<>(objectify.load().type(Domain.class).ids(domainNames));
+
+		// Issue loading payments for domains not available (to recalculate)
+		Map<String, List<Payment>> domainPaymentLoads = new HashMap<>();
+		for (String domainName : domainNames) {
+			if (!domains.containsKey(domainName)) {
+				domainPaymentLoads.put(domainName,
+						objectify.load().type(Payment.class).filter("productReference", domainName).list());
+			}
+		}
+
+		// Obtain the payments for domains not available (including the payment)
+		Map<String, List<Payment>> domainPayments = new HashMap<>();
+		List<Payment> referencedPayments = new ArrayList<>();
+		for (Payment payment : payments) {
+			List<Payment> loaded = domainPaymentLoads.get(payment.getProductReference());
+			if (loaded != null) {
+				List<Payment> recalculate = new ArrayList<>(loaded.size() + 1);
+				for (Payment domainPayment : loaded) {
+					if ((Domain.PRODUCT_TYPE.equals(domainPayment.getProductType()))
+							&& (!payment.getId().equals(domainPayment.getId()))) {
+						recalculate.add(domainPayment);
+					}
+				}
+				recalculate.add(payment);
+				domainPayments.put(payment.getProductReference(), recalculate);
+				referencedPayments.addAll(recalculate);
+			}
+		}
+		if (referencedPayments.size() > 0) {
+			SubscriptionService.loadPaymentReferences(referencedPayments, objectify);
+		}
 
-		// Obtain the domain (ensuring only one entry)
-		Domain domain = null;
-		Iterator<Domain> iterator = objectify.load().type(Domain.class).filter("domain", domainName).iterator();
-		if (iterator.hasNext()) {
-			domain = iterator.next();
+		// Calculate the expires dates for domains not available
+		Map<String, Date> calculatedExpires = new HashMap<>();
+		for (Map.Entry<String, List<Payment>> entry : domainPayments.entrySet()) {
+			List<Payment> recalculate = entry.getValue();
+			Subscription[] subscriptions = SubscriptionCalculator
+					.calculateAllSubscriptions(recalculate.toArray(new Payment[recalculate.size()]));
+			calculatedExpires.put(entry.getKey(), Date.from(subscriptions[0].getExtendsToDate().toInstant()));
 		}
-		iterator.forEachRemaining((extra) -> objectify.delete().entity(extra).now());
+
+		// Extend the latest domains (or create with calculated expiry)
+		Map<String, Domain> savedDomains = objectify.transact(() -> {
+			Objectify txn = MeteredObjectify.ofy();
+			Map<String, Domain> latest = new HashMap<>(txn.load().type(Domain.class).ids(domainNames));
+			for (Payment payment : payments) {
+				String domainName = payment.getProductReference();
+				Domain domain = latest.get(domainName);
+				Date calculated = calculatedExpires.get(domainName);
+				if ((domain == null) && (calculated != null)) {
+					latest.put(domainName, new Domain(domainName, calculated));
+				} else {
+					// Extend from the current expiry
+					ZonedDateTime paymentDate = payment.getTimestamp().toInstant().atZone(ResponseUtil.ZONE);
+					ZonedDateTime currentExpiresDate = (domain == null) ? null
+							: domain.getExpires().toInstant().atZone(ResponseUtil.ZONE);
+					Date expiresDate = Date.from(SubscriptionCalculator.extendSubscription(currentExpiresDate,
+							paymentDate, payment.getIsRestartSubscription()).toInstant());
+					if (domain == null) {
+						latest.put(domainName, new Domain(domainName, expiresDate));
+					} else {
+						domain.setExpires(expiresDate);
+					}
+				}
+			}
+			txn.save().entities(latest.values());
+			return latest;
+		});
+
+		// Ensure the domains are indexed for the user
+		indexUserDomains(user, domainNames, objectify);
+		return savedDomains;
+	}
+
+	/**
+	 * Saves the {@link Domain} expiry, ensuring the {@link Domain} is indexed for
+	 * the {@link User}.
+	 * <p>
+	 * The {@link Domain} is read and saved within a transaction, so the expiry is
+	 * determined from the latest {@link Domain}.
+	 * 
+	 * @param user          {@link User}.
+	 * @param domainName    Name of the {@link Domain}.
+	 * @param expiry        Determines the expires date from the current expires
+	 *                      date of the {@link Domain}.
+	 * @param createExpires Expires date should the {@link Domain} not exist. May
+	 *                      be <code>null</code> to not create the {@link Domain}.
+	 * @param objectify     {@link Objectify}.
+	 * @return Saved expires date or <code>null</code> if no {@link Domain} to
+	 *         update.
+	 */
+	private static Date saveDomainExpiry(User user, String domainName, UnaryOperator<Date> expiry,
+			Date createExpires, Objectify objectify) {
 
 		// Update domain with expire time (or create with expire time)
-		if (domain != null) {
-			domain.setExpires(expiresDate);
-		} else {
-			domain = new Domain(domainName, expiresDate);
+		Date expiresDate = objectify.transact(() -> {
+			Objectify txn = MeteredObjectify.ofy();
+			Domain domain = txn.load().type(Domain.class).id(domainName).now();
+			if (domain != null) {
+				domain.setExpires(expiry.apply(domain.getExpires()));
+			} else if (createExpires != null) {
+				domain = new Domain(domainName, createExpires);
+			} else {
+				return null; // no domain to update
+			}
+			txn.save().entity(domain);
+			return domain.getExpires();
+		});
+		if (expiresDate == null) {
+			return null;
+		}
+
+		// Ensure the domain is indexed for the user
+		indexUserDomains(user, Collections.singletonList(domainName), objectify);
+		return expiresDate;
+	}
+
+	/**
+	 * Ensures the {@link Domain} names are indexed in the {@link UserDomains}.
+	 * <p>
+	 * The {@link UserDomains} is updated within a transaction, so concurrent
+	 * captures for the {@link User} do not lose each other's {@link Domain}.
+	 * 
+	 * @param user        {@link User}.
+	 * @param domainNames Names of the {@link Domain} instances.
+	 * @param objectify   {@link Objectify}.
+	 */
+	private static void indexUserDomains(User user, Collection<String> domainNames, Objectify objectify) {
+
+		// Determine if already indexed (typically the case)
+		UserDomains userDomains = loadUserDomains(user, objectify);
+		if (userDomains.getDomainNames().containsAll(domainNames)) {
+			return;
+		}
+
+		// Add the domains to the latest index
+		mergeUserDomains(user, domainNames, objectify);
+	}
+
+	/**
+	 * Merges the {@link Domain} names into the latest {@link UserDomains}.
+	 * <p>
+	 * The {@link UserDomains} is read and saved within a transaction, so
+	 * concurrent indexing for the {@link User} is merged (rather than
+	 * overwritten). The {@link UserDomains} is created if absent.
+	 * 
+	 * @param user        {@link User}.
+	 * @param domainNames Names of the {@link Domain} instances.
+	 * @param objectify   {@link Objectify}.
+	 * @return Latest {@link UserDomains}.
+	 */
+	private static UserDomains mergeUserDomains(User user, Collection<String> domainNames, Objectify objectify) {
+		return objectify.transact(() -> {
+			Objectify txn = MeteredObjectify.ofy();
+			UserDomains latest = txn.load().type(UserDomains.class).id(user.getId()).now();
+			boolean isChanged = (latest == null);
+			if (latest == null) {
+				latest = new UserDomains(user.getId());
+			}
+			for (String domainName : domainNames) {
+				if (!latest.getDomainNames().contains(domainName)) {
+					latest.getDomainNames().add(domainName);
+					isChanged = true;
+				}
+			}
+			if (isChanged) {
+				txn.save().entity(latest);
+			}
+			return latest;
+		});
+	}
+
+	/**
+	 * Loads the {@link UserDomains}.
+	 * <p>
+	 * Should the {@link User} not yet be indexed, the {@link UserDomains} is
+	 * created from the {@link User} {@link Payment} history. This is created
+	 * within a transaction, so a {@link Domain} indexed by a concurrent capture
+	 * is not lost.
+	 * 
+	 * @param user      {@link User}.
+	 * @param objectify {@link Objectify}.
+	 * @return {@link UserDomains}.
+	 */
+	public static UserDomains loadUserDomains(User user, Objectify objectify) {
+
+		// Obtain the indexed domains
+		UserDomains userDomains = objectify.load().type(UserDomains.class).id(user.getId()).now();
+		if (userDomains != null) {
+			return userDomains;
+		}
+
+		// Not indexed, so determine from payments
+		Set<String> domainNames = new LinkedHashSet<>();
+		for (Payment payment : objectify.load().type(Payment.class).filter("user", Ref.create(user)).iterable()) {
+			if (Domain.PRODUCT_TYPE.equals(payment.getProductType())) {
+				domainNames.add(payment.getProductReference());
+			}
+		}
+
+		// Create the index (merging with any index saved concurrently)
+		return mergeUserDomains(user, domainNames, objectify);
+	}
+
+	/**
+	 * Loads the {@link Domain}.
+	 * <p>
+	 * Until migrated, the {@link LegacyDomain} is provided should the
+	 * {@link Domain} not yet be keyed by name.
+	 * 
+	 * @param domainName Name of the {@link Domain}.
+	 * @param objectify  {@link Objectify}.
+	 * @return {@link Domain} or <code>null</code> if not registered.
+	 */
+	public static Domain loadDomain(String domainName, Objectify objectify) {
+		return loadDomainAsync(domainName, objectify).get();
+	}
+
+	/**
+	 * Issues the asynchronous load of the {@link Domain}.
+	 * 
+	 * @param domainName Name of the {@link Domain}.
+	 * @param objectify  {@link Objectify}.
+	 * @return {@link Supplier} to join on the load. Supplies <code>null</code> if
+	 *         not registered.
+	 */
+	public static Supplier<Domain> loadDomainAsync(String domainName, Objectify objectify) {
+		LoadResult<Domain> result = objectify.load().type(Domain.class).id(domainName);
+		return () -> {
+			Domain domain = result.now();
+			return (domain != null) ? domain
+					: loadLegacyDomains(Collections.singletonList(domainName), objectify).get(domainName);
+		};
+	}
+
+	/**
+	 * Loads the {@link Domain} instances in a single batch.
+	 * <p>
+	 * Until migrated, the {@link LegacyDomain} entries are provided for the
+	 * {@link Domain} instances not yet keyed by name.
+	 * 
+	 * @param domainNames Names of the {@link Domain} instances.
+	 * @param objectify   {@link Objectify}.
+	 * @return {@link Domain} instances by domain name. Domains not registered are
+	 *         not included.
+	 */
+	public static Map<String, Domain> loadDomains(Collection<String> domainNames, Objectify objectify) {
+
+		// Obtain the domains (in one batch)
+		Map<String, Domain> domains = new HashMap<>(objectify.load().type(Domain.class).ids(domainNames));
+
+		// Fall back to legacy domains for those not keyed by name
+		Set<String> missingNames = new LinkedHashSet<>(domainNames);
+		missingNames.removeAll(domains.keySet());
+		if (missingNames.size() > 0) {
+			domains.putAll(loadLegacyDomains(missingNames, objectify));
+		}
+		return domains;
+	}
+
+	/**
+	 * Loads the {@link LegacyDomain} entries not yet migrated.
+	 * <p>
+	 * Once migrated, this is a single keys only query finding no
+	 * {@link LegacyDomain}.
+	 * 
+	 * @param domainNames Names of the {@link Domain} instances.
+	 * @param objectify   {@link Objectify}.
+	 * @return {@link Domain} instances (from the {@link LegacyDomain}) by domain
+	 *         name.
+	 */
+	private static Map<String, Domain> loadLegacyDomains(Collection<String> domainNames, Objectify objectify) {
+
+		// Determine if legacy domains remain (none once migrated)
+		if (objectify.load().type(LegacyDomain.class).keys().first().now() == null) {
+			return Collections.emptyMap();
+		}
+
+		// Issue loading the legacy domains
+		List<List<LegacyDomain>> legacyLoads = new ArrayList<>(domainNames.size());
+		for (String domainName : domainNames) {
+			legacyLoads.add(objectify.load().type(LegacyDomain.class).filter("domain", domainName).list());
+		}
+
+		// Provide the domains (taking latest expiry of any duplicates)
+		Map<String, Domain> domains = new HashMap<>();
+		for (List<LegacyDomain> legacyDomains : legacyLoads) {
+			for (LegacyDomain legacyDomain : legacyDomains) {
+				mergeLegacyDomain(legacyDomain, domains);
+			}
+		}
+		return domains;
+	}
+
+	/**
+	 * Merges the {@link LegacyDomain} into the {@link Domain} instances, taking
+	 * the latest expiry of any duplicates.
+	 * 
+	 * @param legacyDomain {@link LegacyDomain}.
+	 * @param domains      {@link Domain} instances by domain name.
+	 */
+	private static void mergeLegacyDomain(LegacyDomain legacyDomain, Map<String, Domain> domains) {
+		String domainName = legacyDomain.getDomain();
+		Domain existing = domains.get(domainName);
+		if ((existing == null) || (legacyDomain.getExpires().after(existing.getExpires()))) {
+			Domain domain = new Domain(domainName, legacyDomain.getExpires());
+			domain.setTimestamp(legacyDomain.getTimestamp());
+			domains.put(domainName, domain);
 		}
-		objectify.save().entities(domain).now();
+	}
+
+	@HttpAccess(ifRole = User.ROLE_ADMIN)
+	public static void migrateDomains(Objectify objectify, ObjectResponse<MigratedDomains> response) {
+
+		// Migrate the legacy domains
+		Map<String, Domain> migrated = migrateLegacyDomains(objectify);
+
+		// Return the number of migrated domains
+		response.send(new MigratedDomains(migrated.size()));
+	}
+
+	/**
+	 * Migrates all {@link LegacyDomain} entries to {@link Domain} keyed by domain
+	 * name.
+	 * <p>
+	 * This is run once by an administrator on deploying the {@link Domain} keyed
+	 * by name (and is a no-op once migrated). A {@link Domain} already keyed by
+	 * name is kept, as updated by a {@link Payment} since the deploy.
+	 * <p>
+	 * The {@link LegacyDomain} entries are migrated a page at a time (by cursor),
+	 * so memory is bounded regardless of the number of entries.
+	 * 
+	 * @param objectify {@link Objectify}.
+	 * @return Migrated {@link Domain} instances by domain name.
+	 */
+	public static Map<String, Domain> migrateLegacyDomains(Objectify objectify) {
+		Map<String, Domain> migrated = new HashMap<>();
+		Cursor cursor = null;
+		do {
+
+			// Obtain the next page of legacy domains (none once migrated)
+			Query<LegacyDomain> query = objectify.load().type(LegacyDomain.class).limit(MIGRATE_PAGE_SIZE);
+			if (cursor != null) {
+				query = query.startAt(cursor);
+			}
+			QueryResults<LegacyDomain> results = query.iterator();
+			List<LegacyDomain> legacyDomains = new ArrayList<>(MIGRATE_PAGE_SIZE);
+			while (results.hasNext()) {
+				legacyDomains.add(results.next());
+			}
+			cursor = (legacyDomains.size() < MIGRATE_PAGE_SIZE) ? null : results.getCursorAfter();
+			if (legacyDomains.size() == 0) {
+				break; // no further legacy domains
+			}
+
+			// Determine the domains (taking latest expiry of any duplicates)
+			Map<String, Domain> legacy = new HashMap<>();
+			for (LegacyDomain legacyDomain : legacyDomains) {
+				mergeLegacyDomain(legacyDomain, legacy);
+			}
+
+			// Create each domain only if not already keyed by name
+			for (Domain domain : legacy.values()) {
+				Domain previousPage = migrated.get(domain.getDomain());
+				migrated.put(domain.getDomain(), objectify.transact(() -> {
+					Objectify txn = MeteredObjectify.ofy();
+					Domain existing = txn.load().type(Domain.class).id(domain.getDomain()).now();
+					boolean isLaterDuplicate = (previousPage != null)
+							&& (domain.getExpires().after(previousPage.getExpires()));
+					if ((existing != null) && (!isLaterDuplicate)) {
+						return existing;
+					}
+					txn.save().entity(domain);
+					return domain;
+				}));
+			}
+
+			// Remove the page of legacy domains
+			objectify.delete().entities(legacyDomains).now();
+
+		} while (cursor != null);
 
-		// Return the subscriptions
-		return subscriptions;
+		// Return the migrated domains
+		return migrated;
 	}
 
 }
\ No newline at end of file
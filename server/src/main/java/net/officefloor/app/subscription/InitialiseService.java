@@ -30,6 +30,7 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 import com.googlecode.objectify.Objectify;
 
 import lombok.Value;
+import net.officefloor.app.subscription.cache.AdministrationCache;
 import net.officefloor.app.subscription.store.Administration;
 import net.officefloor.server.http.HttpException;
 import net.officefloor.server.http.HttpStatus;
@@ -55,10 +56,11 @@ public class InitialiseService {
 		private String paypalCurrency;
 	}
 
-	public static Administration getAdministration(Objectify objectify) throws IOException {
+	public static Administration getAdministration(AdministrationCache cache, Objectify objectify)
+			throws IOException {
 
 		// Retrieve the administration
-		Administration administration = objectify.load().type(Administration.class).first().now();
+		Administration administration = cache.getAdministration(objectify);
 		if (administration == null) {
 
 			// Determine if use initialisation file
@@ -90,6 +92,7 @@ public class InitialiseService {
 
 					// Save initialised administration
 					objectify.save().entities(administration).now();
+					cache.update(administration);
 				}
 			}
 
@@ -103,11 +106,11 @@ public class InitialiseService {
 		return administration;
 	}
 
-	public static void getInitialisation(Objectify objectify, ObjectResponse<Initialisation> response, Logger logger)
-			throws IOException {
+	public static void getInitialisation(AdministrationCache cache, Objectify objectify,
+			ObjectResponse<Initialisation> response, Logger logger) throws IOException {
 
 		// Obtain the administration
-		Administration administration = getAdministration(objectify);
+		Administration administration = getAdministration(cache, objectify);
 
 		// Response with the initialisation details
 		response.send(new Initialisation(true, administration.getGoogleClientId(), administration.getPaypalClientId(),
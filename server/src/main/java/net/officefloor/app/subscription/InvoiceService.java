@@ -18,34 +18,33 @@
 package net.officefloor.app.subscription;
 
 import java.io.IOException;
-import java.text.DecimalFormat;
 import java.time.Instant;
 import java.util.ArrayList;
-import java.util.Arrays;
+import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.function.Function;
+import java.util.Map;
+import java.util.function.Supplier;
 
 import com.googlecode.objectify.Objectify;
 import com.googlecode.objectify.Ref;
-import com.paypal.core.PayPalHttpClient;
 import com.paypal.http.HttpResponse;
-import com.paypal.orders.AmountBreakdown;
-import com.paypal.orders.AmountWithBreakdown;
-import com.paypal.orders.ApplicationContext;
-import com.paypal.orders.Item;
-import com.paypal.orders.Money;
 import com.paypal.orders.Order;
-import com.paypal.orders.OrderRequest;
 import com.paypal.orders.OrdersCreateRequest;
-import com.paypal.orders.PurchaseUnitRequest;
 
 import lombok.Value;
+import net.officefloor.app.subscription.cache.AdministrationCache;
+import net.officefloor.app.subscription.paypal.PayPalClient;
+import net.officefloor.app.subscription.paypal.PayPalOrderTemplates;
+import net.officefloor.app.subscription.paypal.PayPalOrderTemplates.OrderTemplate;
 import net.officefloor.app.subscription.store.Administration;
 import net.officefloor.app.subscription.store.Domain;
 import net.officefloor.app.subscription.store.Invoice;
+import net.officefloor.app.subscription.store.InvoiceIdPool;
+import net.officefloor.app.subscription.store.Payment;
 import net.officefloor.app.subscription.store.User;
 import net.officefloor.server.http.HttpException;
 import net.officefloor.server.http.HttpStatus;
+import net.officefloor.web.HttpObject;
 import net.officefloor.web.HttpPathParameter;
 import net.officefloor.web.HttpQueryParameter;
 import net.officefloor.web.ObjectResponse;
@@ -57,99 +56,83 @@ import net.officefloor.web.ObjectResponse;
  */
 public class InvoiceService {
 
-	/*
-	 * Values in cents.
-	 */
-
-	private static final int SUBSCRIPTION_VALUE = 4_54;
-	private static final int SUBSCRIPTION_TAX = 46;
+	@Value
+	public static class CreatedInvoice {
+		private String orderId;
+		private String status;
+		private String invoiceId;
+	}
 
-	private static final int RESTART_VALUE = 18_18;
-	private static final int RESTART_TAX = 1_82;
+	/**
+	 * Maximum number of domains in a single order. Capturing the order saves an
+	 * {@link Invoice} and a {@link Payment} (each its own entity group) per domain
+	 * in one transaction, so this keeps within the 25 entity groups of a cross
+	 * group transaction.
+	 */
+	public static final int MAX_INVOICE_DOMAINS = 12;
 
-	private static final DecimalFormat formatCurrency = new DecimalFormat("0.00");
+	@Value
+	@HttpObject
+	public static class InvoiceDomains {
+		private String[] domainNames;
+		private boolean restart;
+	}
 
 	@Value
-	public static class CreatedInvoice {
+	public static class CreatedDomainsInvoice {
 		private String orderId;
 		private String status;
-		private String invoiceId;
+		private String[] invoiceIds;
 	}
 
 	public static void createInvoice(User user, @HttpPathParameter("domain") String domainName,
-			@HttpQueryParameter("restart") String restart, Objectify objectify, PayPalHttpClient paypal,
+			@HttpQueryParameter("restart") String restart, Objectify objectify, AdministrationCache administrationCache,
+			InvoiceIdPool invoiceIdPool, PayPalOrderTemplates orderTemplates, PayPalClient paypal,
 			ObjectResponse<CreatedInvoice> response) throws IOException {
 
 		// Validate the domain name
-		domainName = domainName.trim();
-		if (domainName.contains(" ") || domainName.startsWith(".") || domainName.endsWith(".")
-				|| (!domainName.contains("."))) {
-			throw new HttpException(422, "Invalid domain " + domainName);
-		}
+		domainName = validateDomainName(domainName);
 
 		// Determine if restart subscription
 		boolean isRestart = Boolean.parseBoolean(restart);
 
+		// Issue load of domain (overlapping with obtaining administration)
+		Supplier<Domain> domainLoad = DomainService.loadDomainAsync(domainName, objectify);
+
 		// Obtain the administration
-		Administration administration = objectify.load().type(Administration.class).first().now();
+		Administration administration = administrationCache.getAdministration(objectify);
 		if (administration == null) {
 			throw new HttpException(HttpStatus.SERVICE_UNAVAILABLE, "Server not initialised");
 		}
 
-		// Obtain the currency
-		String currency = administration.getPaypalCurrency();
-		Function<Integer, String> amount = (value) -> formatCurrency.format(value / 100.0);
-		Function<Integer, Money> newMoney = (value) -> new Money().value(amount.apply(value)).currencyCode(currency);
+		// Reserve the invoice identifier
+		Long id = invoiceIdPool.nextId(objectify);
 
-		// Determine if restart required
-		Domain domain = objectify.load().type(Domain.class).filter("domain", domainName).first().now();
+		// Determine if restart required (joining on domain load)
+		Domain domain = domainLoad.get();
 		if (domain == null) {
 			isRestart = false; // domain not registered, so no restart required
 		} else if (domain.getExpires().toInstant().isAfter(Instant.now())) {
 			isRestart = false; // domain not expires, so no restart required
 		}
 
-		// Create the invoice entry
+		// Create the invoice entry (saved once order created)
 		Invoice invoice = new Invoice(Ref.create(user), Domain.PRODUCT_TYPE, domainName, isRestart);
-		objectify.save().entities(invoice).now();
-		String invoiceId = String.valueOf(invoice.getId());
+		invoice.setId(id);
+		String invoiceId = String.valueOf(id);
 
 		// Calculate the PayPal unique invoice Id
 		String paypalInvoiceId = administration.getPaypalInvoiceIdTemplate();
 		paypalInvoiceId = paypalInvoiceId.replace("{id}", invoiceId);
 		paypalInvoiceId = paypalInvoiceId.replace("{timestamp}", String.valueOf(System.currentTimeMillis()));
 
-		// Load the items
-		List<Item> items = new ArrayList<>(2);
-		items.add(new Item().name("Subscription").description("12 month subscription for " + domainName)
-				.unitAmount(newMoney.apply(SUBSCRIPTION_VALUE)).tax(newMoney.apply(SUBSCRIPTION_TAX)).quantity("1")
-				.category("DIGITAL_GOODS"));
-		if (isRestart) {
-			items.add(new Item().name("Restart").description("Restart domain subscription for " + domainName)
-					.unitAmount(newMoney.apply(RESTART_VALUE)).tax(newMoney.apply(RESTART_TAX)).quantity("1")
-					.category("DIGITAL_GOODS"));
-		}
-
 		// Create order for the domain
-		HttpResponse<Order> orderResponse = paypal.execute(new OrdersCreateRequest().requestBody(new OrderRequest()
-				.checkoutPaymentIntent("CAPTURE")
-				.applicationContext(new ApplicationContext().shippingPreference("NO_SHIPPING").userAction("PAY_NOW"))
-				.purchaseUnits(Arrays.asList(new PurchaseUnitRequest()
-						.invoiceId(
-								paypalInvoiceId)
-						.description("OfficeFloor 12 month subscription for " + domainName)
-						.softDescriptor("OfficeFloor domain")
-						.amountWithBreakdown(new AmountWithBreakdown()
-								.value(amount.apply(SUBSCRIPTION_VALUE
-										+ SUBSCRIPTION_TAX + (isRestart ? RESTART_VALUE + RESTART_TAX : 0)))
-								.currencyCode(currency)
-								.amountBreakdown(new AmountBreakdown()
-										.itemTotal(newMoney.apply(SUBSCRIPTION_VALUE + (isRestart ? RESTART_VALUE : 0)))
-										.taxTotal(newMoney.apply(SUBSCRIPTION_TAX + (isRestart ? RESTART_TAX : 0)))))
-						.items(items)))));
+		OrderTemplate orderTemplate = orderTemplates.getOrderTemplate(administration.getPaypalCurrency(), isRestart);
+		HttpResponse<Order> orderResponse = paypal.execute(
+				new OrdersCreateRequest().requestBody(orderTemplate.newOrderRequest(domainName, paypalInvoiceId)));
 		Order order = orderResponse.result();
 
-		// Update the invoice with the order
+		// Save the invoice with the order
 		String paymentOrderId = order.id();
 		invoice.setPaymentOrderId(paymentOrderId);
 		objectify.save().entity(invoice).now();
@@ -158,4 +141,86 @@ public class InvoiceService {
 		response.send(new CreatedInvoice(order.id(), order.status(), invoiceId));
 	}
 
+	public static void createDomainsInvoice(User user, InvoiceDomains invoiceDomains, Objectify objectify,
+			AdministrationCache administrationCache, InvoiceIdPool invoiceIdPool, PayPalOrderTemplates orderTemplates,
+			PayPalClient paypal, ObjectResponse<CreatedDomainsInvoice> response) throws IOException {
+
+		// Validate the domain names (ignoring duplicates)
+		Map<String, Boolean> domainRestarts = new LinkedHashMap<>();
+		if (invoiceDomains.getDomainNames() != null) {
+			for (String domainName : invoiceDomains.getDomainNames()) {
+				domainRestarts.put(validateDomainName(domainName), Boolean.FALSE);
+			}
+		}
+		if (domainRestarts.size() == 0) {
+			throw new HttpException(422, "No domains to invoice");
+		} else if (domainRestarts.size() > MAX_INVOICE_DOMAINS) {
+			throw new HttpException(422, "Invoice limited to " + MAX_INVOICE_DOMAINS + " domains");
+		}
+
+		// Obtain the administration
+		Administration administration = administrationCache.getAdministration(objectify);
+		if (administration == null) {
+			throw new HttpException(HttpStatus.SERVICE_UNAVAILABLE, "Server not initialised");
+		}
+
+		// Determine restart required (only for expired domains, loaded in one batch)
+		if (invoiceDomains.isRestart()) {
+			Instant now = Instant.now();
+			for (Domain domain : DomainService.loadDomains(domainRestarts.keySet(), objectify).values()) {
+				if (!domain.getExpires().toInstant().isAfter(now)) {
+					domainRestarts.put(domain.getDomain(), Boolean.TRUE);
+				}
+			}
+		}
+
+		// Create the invoice entries (saved once order created)
+		List<Invoice> invoices = new ArrayList<>(domainRestarts.size());
+		for (Map.Entry<String, Boolean> domainRestart : domainRestarts.entrySet()) {
+			Invoice invoice = new Invoice(Ref.create(user), Domain.PRODUCT_TYPE, domainRestart.getKey(),
+					domainRestart.getValue());
+			invoice.setId(invoiceIdPool.nextId(objectify));
+			invoice.setAmount(PayPalOrderTemplates.getAmount(domainRestart.getValue()));
+			invoices.add(invoice);
+		}
+		String[] invoiceIds = invoices.stream().map((invoice) -> String.valueOf(invoice.getId()))
+				.toArray(String[]::new);
+
+		// Calculate the PayPal unique invoice Id (from first invoice)
+		String paypalInvoiceId = administration.getPaypalInvoiceIdTemplate();
+		paypalInvoiceId = paypalInvoiceId.replace("{id}", invoiceIds[0]);
+		paypalInvoiceId = paypalInvoiceId.replace("{timestamp}", String.valueOf(System.currentTimeMillis()));
+
+		// Create one order for all the domains
+		HttpResponse<Order> orderResponse = paypal.execute(new OrdersCreateRequest().requestBody(orderTemplates
+				.newDomainsOrderRequest(administration.getPaypalCurrency(), domainRestarts, paypalInvoiceId)));
+		Order order = orderResponse.result();
+
+		// Save the invoices with the order (in one batch)
+		String paymentOrderId = order.id();
+		for (Invoice invoice : invoices) {
+			invoice.setPaymentOrderId(paymentOrderId);
+		}
+		objectify.save().entities(invoices).now();
+
+		// Send the response
+		response.send(new CreatedDomainsInvoice(order.id(), order.status(), invoiceIds));
+	}
+
+	/**
+	 * Validates the domain name.
+	 * 
+	 * @param domainName Domain name.
+	 * @return Trimmed domain name.
+	 * @throws HttpException If invalid domain name.
+	 */
+	private static String validateDomainName(String domainName) throws HttpException {
+		domainName = (domainName == null) ? "" : domainName.trim();
+		if (domainName.contains(" ") || domainName.startsWith(".") || domainName.endsWith(".")
+				|| (!domainName.contains("."))) {
+			throw new HttpException(422, "Invalid domain " + domainName);
+		}
+		return domainName;
+	}
+
 }
\ No newline at end of file
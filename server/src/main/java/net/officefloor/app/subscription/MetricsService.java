@@ -0,0 +1,77 @@
+/*
+ * OfficeFloor - http://www.officefloor.net
+ * Copyright (C) 2005-2019 Daniel Sagenschneider
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package net.officefloor.app.subscription;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import lombok.Value;
+import net.officefloor.app.subscription.metrics.Metrics;
+import net.officefloor.app.subscription.metrics.Metrics.EndpointSnapshot;
+import net.officefloor.app.subscription.paypal.PayPalCircuitBreaker;
+import net.officefloor.app.subscription.paypal.PayPalClientCache;
+import net.officefloor.app.subscription.store.User;
+import net.officefloor.web.ObjectResponse;
+import net.officefloor.web.security.HttpAccess;
+
+/**
+ * Exports the {@link Metrics}.
+ * 
+ * @author Daniel Sagenschneider
+ */
+public class MetricsService {
+
+	@Value
+	public static class ApplicationMetrics {
+		private Map<String, EndpointSnapshot> endpoints;
+		private Map<String, Long> datastoreCalls;
+		private long roundTripWarnings;
+		private PayPalMetrics payPal;
+	}
+
+	@Value
+	public static class PayPalMetrics {
+		private long requestCount;
+		private long tokenRefreshCount;
+		private long tokenReuseCount;
+		private long totalLatency;
+		private long maxLatency;
+		private String circuitState;
+		private int activeCount;
+		private long bulkheadRejectCount;
+		private long circuitRejectCount;
+		private long openCount;
+	}
+
+	@HttpAccess(ifRole = User.ROLE_ADMIN)
+	public static void getMetrics(Metrics metrics, PayPalClientCache payPalCache, PayPalCircuitBreaker circuitBreaker,
+			ObjectResponse<ApplicationMetrics> response) {
+
+		// Obtain the PayPal metrics (latency in microseconds)
+		PayPalMetrics payPal = new PayPalMetrics(payPalCache.getRequestCount(), payPalCache.getTokenRefreshCount(),
+				payPalCache.getTokenReuseCount(), TimeUnit.NANOSECONDS.toMicros(payPalCache.getTotalLatency()),
+				TimeUnit.NANOSECONDS.toMicros(payPalCache.getMaxLatency()), circuitBreaker.getState().name(),
+				circuitBreaker.getActiveCount(), circuitBreaker.getBulkheadRejectCount(),
+				circuitBreaker.getCircuitRejectCount(), circuitBreaker.getOpenCount());
+
+		// Send the metrics
+		response.send(new ApplicationMetrics(metrics.getSnapshot(), metrics.getDatastoreCalls(),
+				metrics.getRoundTripWarningCount(), payPal));
+	}
+
+}
@@ -0,0 +1,290 @@
+/*
+ * OfficeFloor - http://www.officefloor.net
+ * Copyright (C) 2005-2019 Daniel Sagenschneider
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package net.officefloor.app.subscription;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Collectors;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.googlecode.objectify.Key;
+import com.googlecode.objectify.Objectify;
+
+import net.officefloor.app.subscription.cache.AdministrationCache;
+import net.officefloor.app.subscription.cache.SubscriptionCache;
+import net.officefloor.app.subscription.paypal.PayPalClient;
+import net.officefloor.app.subscription.store.Administration;
+import net.officefloor.app.subscription.store.Domain;
+import net.officefloor.app.subscription.store.Invoice;
+import net.officefloor.app.subscription.store.Payment;
+import net.officefloor.app.subscription.store.WebhookCapture;
+import net.officefloor.server.http.HttpException;
+import net.officefloor.server.http.HttpHeader;
+import net.officefloor.server.http.HttpRequest;
+import net.officefloor.server.http.HttpStatus;
+import net.officefloor.server.http.ServerHttpConnection;
+
+/**
+ * Ingests PayPal webhook events to record captured {@link Payment} instances.
+ * <p>
+ * This ensures the {@link Payment} is recorded even should the browser not
+ * complete the capture (e.g. connection dropped after PayPal captured the
+ * funds).
+ * 
+ * @author Daniel Sagenschneider
+ */
+public class PayPalWebhookService {
+
+	private static ObjectMapper mapper = new ObjectMapper();
+
+	/**
+	 * PayPal event type for a completed capture.
+	 */
+	public static final String CAPTURE_COMPLETED = "PAYMENT.CAPTURE.COMPLETED";
+
+	/**
+	 * PayPal path to verify the webhook signature.
+	 */
+	public static final String VERIFY_WEBHOOK_SIGNATURE_PATH = "/v1/notifications/verify-webhook-signature";
+
+	/**
+	 * Maximum number of {@link WebhookCapture} instances recorded in a batch.
+	 */
+	public static final int BATCH_SIZE = 25;
+
+	/**
+	 * PayPal headers required to verify the webhook signature, mapped to their
+	 * verification request field.
+	 */
+	private static final String[][] VERIFY_HEADERS = new String[][] {
+			{ "PAYPAL-TRANSMISSION-ID", "transmission_id" }, { "PAYPAL-TRANSMISSION-TIME", "transmission_time" },
+			{ "PAYPAL-TRANSMISSION-SIG", "transmission_sig" }, { "PAYPAL-CERT-URL", "cert_url" },
+			{ "PAYPAL-AUTH-ALGO", "auth_algo" } };
+
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	public static void receiveWebhook(ServerHttpConnection connection, Objectify objectify,
+			AdministrationCache administrationCache, SubscriptionCache subscriptionCache, PayPalClient paypal,
+			Logger logger) throws IOException {
+		HttpRequest request = connection.getRequest();
+
+		// Obtain the webhook identifier
+		Administration administration = administrationCache.getAdministration(objectify);
+		String webhookId = (administration == null) ? null : administration.getPaypalWebhookId();
+		if (webhookId == null) {
+			throw new HttpException(HttpStatus.SERVICE_UNAVAILABLE, "PayPal webhook not configured");
+		}
+
+		// Read the event (keeping the bytes signed by PayPal)
+		ByteArrayOutputStream entity = new ByteArrayOutputStream();
+		InputStream input = request.getEntity();
+		byte[] buffer = new byte[4096];
+		for (int size = input.read(buffer); size != -1; size = input.read(buffer)) {
+			entity.write(buffer, 0, size);
+		}
+		String rawEvent = entity.toString(StandardCharsets.UTF_8.name());
+		Map<String, Object> event;
+		try {
+			event = mapper.readValue(rawEvent, Map.class);
+		} catch (JsonProcessingException ex) {
+			event = null;
+		}
+		if (event == null) {
+			throw new HttpException(HttpStatus.BAD_REQUEST, "Invalid PayPal webhook event");
+		}
+
+		// Only interested in completed captures (so avoid verifying other events)
+		if (!CAPTURE_COMPLETED.equals(event.get("event_type"))) {
+			throw new HttpException(HttpStatus.BAD_REQUEST,
+					"Unsupported PayPal webhook event type " + event.get("event_type"));
+		}
+
+		// Verify the event is from PayPal
+		Map<String, Object> verification = new LinkedHashMap<>();
+		for (String[] verifyHeader : VERIFY_HEADERS) {
+			HttpHeader header = request.getHeaders().getHeader(verifyHeader[0]);
+			if (header == null) {
+				throw new HttpException(HttpStatus.BAD_REQUEST, "Missing header " + verifyHeader[0]);
+			}
+			verification.put(verifyHeader[1], header.getValue());
+		}
+		verification.put("webhook_id", webhookId);
+
+		// Include the event as received (as re-serialising may change the signed event)
+		String verificationJson = mapper.writeValueAsString(verification);
+		verificationJson = verificationJson.substring(0, verificationJson.length() - 1) + ",\"webhook_event\":"
+				+ rawEvent + "}";
+		com.paypal.http.HttpRequest<Map> verifyRequest = new com.paypal.http.HttpRequest<>(
+				VERIFY_WEBHOOK_SIGNATURE_PATH, "POST", Map.class);
+		verifyRequest.header("Content-Type", "application/json");
+		verifyRequest.requestBody(verificationJson);
+		Map<String, Object> verified = paypal.execute(verifyRequest).result();
+		if ((verified == null) || (!"SUCCESS".equals(verified.get("verification_status")))) {
+			throw new HttpException(HttpStatus.BAD_REQUEST, "Unverified PayPal webhook event");
+		}
+
+		// Capture details of the event
+		WebhookCapture capture = toWebhookCapture(event);
+		if (capture == null) {
+			throw new HttpException(HttpStatus.BAD_REQUEST, "Invalid " + CAPTURE_COMPLETED + " event");
+		}
+		objectify.save().entity(capture).now();
+
+		// Record pending captures (including this capture)
+		List<WebhookCapture> captures = new ArrayList<>(BATCH_SIZE);
+		captures.add(capture);
+		for (WebhookCapture pending : objectify.load().type(WebhookCapture.class).limit(BATCH_SIZE).iterable()) {
+			if ((captures.size() < BATCH_SIZE) && (!capture.getId().equals(pending.getId()))) {
+				captures.add(pending);
+			}
+		}
+		recordCaptures(captures, objectify, subscriptionCache, logger);
+
+		// Acknowledge the event
+		connection.getResponse().setStatus(HttpStatus.NO_CONTENT);
+	}
+
+	/**
+	 * Records the {@link Payment} instances for the {@link WebhookCapture}
+	 * instances.
+	 * <p>
+	 * Each {@link WebhookCapture} is recorded and removed on its own. Should
+	 * recording fail, the {@link WebhookCapture} is kept for a later webhook to
+	 * retry, without holding up recording the other {@link WebhookCapture}
+	 * instances.
+	 * 
+	 * @param captures          {@link WebhookCapture} instances.
+	 * @param objectify         {@link Objectify}.
+	 * @param subscriptionCache {@link SubscriptionCache}.
+	 * @param logger            {@link Logger}.
+	 */
+	private static void recordCaptures(List<WebhookCapture> captures, Objectify objectify,
+			SubscriptionCache subscriptionCache, Logger logger) {
+		for (WebhookCapture capture : captures) {
+			try {
+				recordCapture(capture, objectify, subscriptionCache, logger);
+				objectify.delete().entity(capture).now();
+			} catch (RuntimeException ex) {
+				logger.log(Level.WARNING, "Failed to record PayPal capture for orderId " + capture.getOrderId(), ex);
+			}
+		}
+	}
+
+	/**
+	 * Records the {@link Payment} instances for the {@link WebhookCapture}.
+	 * 
+	 * @param capture           {@link WebhookCapture}.
+	 * @param objectify         {@link Objectify}.
+	 * @param subscriptionCache {@link SubscriptionCache}.
+	 * @param logger            {@link Logger}.
+	 */
+	private static void recordCapture(WebhookCapture capture, Objectify objectify,
+			SubscriptionCache subscriptionCache, Logger logger) {
+
+		// Obtain the invoices (multiple for multiple domain order)
+		List<Invoice> orderInvoices = objectify.load().type(Invoice.class)
+				.filter("paymentOrderId", capture.getOrderId()).list();
+		if (orderInvoices.size() == 0) {
+			logger.log(Level.WARNING, "No invoice for PayPal orderId " + capture.getOrderId());
+			return; // capture not for an invoice
+		}
+		Invoice invoice = orderInvoices.get(0);
+
+		// Record multiple domain order (in batches)
+		if (orderInvoices.size() > 1) {
+			List<Key<Invoice>> invoiceKeys = orderInvoices.stream().map((orderInvoice) -> Key.create(orderInvoice))
+					.collect(Collectors.toList());
+			List<Payment> payments = PaymentService.recordCaptures(invoiceKeys, capture.getAmount(),
+					capture.getReceipt(), objectify);
+			if (payments.size() > 0) {
+				DomainService.extendDomains(objectify.load().ref(invoice.getUser()).now(), payments, objectify);
+				for (Payment payment : payments) {
+					subscriptionCache.invalidate(payment.getProductReference());
+				}
+			}
+			return;
+		}
+		Payment payment = PaymentService.recordCapture(Key.create(invoice), capture.getAmount(), capture.getReceipt(),
+				objectify);
+
+		// Extend the domain and invalidate cached subscriptions (only on recording)
+		if ((payment != null) && (Domain.PRODUCT_TYPE.equals(payment.getProductType()))) {
+			DomainService.extendDomain(objectify.load().ref(invoice.getUser()).now(), payment, objectify);
+			subscriptionCache.invalidate(payment.getProductReference());
+		}
+	}
+
+	/**
+	 * Translates the PayPal event to a {@link WebhookCapture}.
+	 * 
+	 * @param event PayPal event.
+	 * @return {@link WebhookCapture} or <code>null</code> if event missing
+	 *         details.
+	 */
+	@SuppressWarnings("unchecked")
+	private static WebhookCapture toWebhookCapture(Map<String, Object> event) {
+		Object eventId = event.get("id");
+		Object resource = event.get("resource");
+		if ((eventId == null) || (!(resource instanceof Map))) {
+			return null;
+		}
+		Map<String, Object> capture = (Map<String, Object>) resource;
+
+		// Obtain the order for the capture
+		Object orderId = value(capture, "supplementary_data", "related_ids", "order_id");
+
+		// Obtain the payment details
+		Object receipt = capture.get("id");
+		Object amount = value(capture, "amount", "value");
+		if ((orderId == null) || (receipt == null) || (amount == null)) {
+			return null;
+		}
+		int cents = Math.round(Float.parseFloat(amount.toString()) * 100);
+
+		// Return the capture
+		return new WebhookCapture(eventId.toString(), orderId.toString(), cents, receipt.toString());
+	}
+
+	/**
+	 * Obtains the nested value.
+	 * 
+	 * @param map  Root {@link Map}.
+	 * @param path Path to the value.
+	 * @return Value or <code>null</code> if not available.
+	 */
+	@SuppressWarnings("unchecked")
+	private static Object value(Map<String, Object> map, String... path) {
+		Object value = map;
+		for (String name : path) {
+			if (!(value instanceof Map)) {
+				return null;
+			}
+			value = ((Map<String, Object>) value).get(name);
+		}
+		return value;
+	}
+
+}
@@ -19,24 +19,39 @@ package net.officefloor.app.subscription;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.logging.Logger;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.googlecode.objectify.Key;
 import com.googlecode.objectify.Objectify;
 import com.googlecode.objectify.Ref;
-import com.paypal.core.PayPalHttpClient;
-import com.paypal.http.HttpResponse;
 import com.paypal.orders.Capture;
 import com.paypal.orders.Order;
 import com.paypal.orders.OrdersCaptureRequest;
+import com.paypal.orders.OrdersGetRequest;
 import com.paypal.orders.PurchaseUnit;
 
 import lombok.Value;
+import net.officefloor.app.subscription.DomainService.PaidDomain;
 import net.officefloor.app.subscription.SubscriptionCalculator.Subscription;
 import net.officefloor.app.subscription.SubscriptionService.DomainPayments;
+import net.officefloor.app.subscription.cache.SubscriptionCache;
+import net.officefloor.app.subscription.metrics.MeteredObjectify;
+import net.officefloor.app.subscription.paypal.PayPalClient;
+import net.officefloor.app.subscription.paypal.PayPalOrderTemplates;
 import net.officefloor.app.subscription.store.Domain;
 import net.officefloor.app.subscription.store.Invoice;
+import net.officefloor.app.subscription.store.Invoice.CaptureState;
 import net.officefloor.app.subscription.store.Payment;
 import net.officefloor.app.subscription.store.User;
 import net.officefloor.plugin.section.clazz.Parameter;
@@ -52,45 +67,284 @@ import net.officefloor.web.ObjectResponse;
  */
 public class PaymentService {
 
+	private static final Logger LOGGER = Logger.getLogger(PaymentService.class.getName());
+
 	private static ObjectMapper mapper = new ObjectMapper();
 
-	public static Payment[] capturePayment(User user, @HttpPathParameter("orderId") String orderId, Objectify objectify,
-			PayPalHttpClient paypal) throws IOException {
+	/**
+	 * Milliseconds after which a capture is considered abandoned and may be
+	 * retried.
+	 */
+	public static final long CAPTURE_TIMEOUT = 2 * 60 * 1000;
+
+	/**
+	 * PayPal issue indicating the order has already been captured.
+	 */
+	private static final String ORDER_ALREADY_CAPTURED = "ORDER_ALREADY_CAPTURED";
+
+	@Value
+	public static class CaptureOrder {
+		private Long invoiceId;
+		private String orderId;
+		private String domainName;
+		private boolean isRestartSubscription;
+		private Long paymentId;
+		private boolean isCaptured;
+	}
+
+	@Value
+	public static class CapturedOrder {
+		private CaptureOrder captureOrder;
+		private int amount;
+		private String receipt;
+		private HttpException failure;
+	}
+
+	@Value
+	public static class CaptureDomainsOrder {
+		private String orderId;
+		private Long[] invoiceIds;
+		private String[] domainNames;
+		private boolean isCaptured;
+	}
+
+	@Value
+	public static class CapturedDomainsOrder {
+		private CaptureDomainsOrder captureOrder;
+		private int amount;
+		private String receipt;
+		private HttpException failure;
+	}
+
+	/**
+	 * Result of capturing the PayPal order.
+	 */
+	@Value
+	private static class PayPalCapture {
+		private int amount;
+		private String receipt;
+		private HttpException failure;
+	}
+
+	public static CaptureOrder capturePayment(User user, @HttpPathParameter("orderId") String orderId,
+			Objectify objectify) {
 
 		// Obtain the invoice
-		Invoice invoice = objectify.load().type(Invoice.class).filter("paymentOrderId", orderId).first().now();
-		if (invoice == null) {
+		List<Invoice> orderInvoices = objectify.load().type(Invoice.class).filter("paymentOrderId", orderId).limit(2)
+				.list();
+		if (orderInvoices.size() == 0) {
 			throw new HttpException(HttpStatus.INTERNAL_SERVER_ERROR, "No invoice for orderId " + orderId);
+		} else if (orderInvoices.size() > 1) {
+			throw new HttpException(422, "Order " + orderId + " is for multiple domains");
+		}
+		Invoice foundInvoice = orderInvoices.get(0);
+		Key<Invoice> invoiceKey = Key.create(foundInvoice);
+
+		// Determine if payment recorded before capture state tracked
+		Key<Payment> existingPaymentKey = null;
+		if (foundInvoice.getPaymentId() == null) {
+			existingPaymentKey = objectify.load().type(Payment.class).filter("invoice", foundInvoice).keys().first()
+					.now();
 		}
-		String domainName = invoice.getProductReference();
-		boolean isRestartSubscription = invoice.getIsRestartSubscription();
+		Key<Payment> legacyPaymentKey = existingPaymentKey;
+
+		// Transition to capturing (only one request may capture the order)
+		long now = System.currentTimeMillis();
+		return objectify.transact(() -> {
+			Objectify txn = MeteredObjectify.ofy();
+			Invoice invoice = txn.load().key(invoiceKey).now();
+
+			// Determine if already captured
+			if ((legacyPaymentKey != null) && (invoice.getPaymentId() == null)) {
+				invoice.setCaptureState(CaptureState.CAPTURED);
+				invoice.setPaymentId(legacyPaymentKey.getId());
+				txn.save().entity(invoice);
+			}
+			switch (invoice.getCaptureState()) {
+			case CAPTURED:
+				return new CaptureOrder(invoice.getId(), orderId, invoice.getProductReference(),
+						invoice.getIsRestartSubscription(), invoice.getPaymentId(), true);
+
+			case CAPTURING:
+				if ((now - invoice.getCaptureTime().getTime()) < CAPTURE_TIMEOUT) {
+					throw new HttpException(HttpStatus.CONFLICT, "Payment being captured for orderId " + orderId);
+				}
+				break; // abandoned capture, so capture again
+
+			default:
+				break; // capture
+			}
+
+			// Reserve the payment (so retries never record another payment)
+			if (invoice.getPaymentId() == null) {
+				invoice.setPaymentId(txn.factory().allocateId(Payment.class).getId());
+			}
+
+			// Start capturing
+			invoice.setCaptureState(CaptureState.CAPTURING);
+			invoice.setCaptureTime(new Date(now));
+			txn.save().entity(invoice);
+			return new CaptureOrder(invoice.getId(), orderId, invoice.getProductReference(),
+					invoice.getIsRestartSubscription(), invoice.getPaymentId(), false);
+		});
+	}
+
+	public static CapturedOrder capturePayPalOrder(@Parameter CaptureOrder captureOrder, PayPalClient paypal) {
+
+		// Determine if already captured
+		if (captureOrder.isCaptured()) {
+			return new CapturedOrder(captureOrder, 0, null, null);
+		}
+
+		// Capture the funds
+		PayPalCapture capture = capturePayPal(captureOrder.getOrderId(), paypal);
+		return new CapturedOrder(captureOrder, capture.getAmount(), capture.getReceipt(), capture.getFailure());
+	}
+
+	public static Subscription[] recordPayment(User user, @Parameter CapturedOrder capturedOrder, Objectify objectify,
+			SubscriptionCache subscriptionCache) {
+		CaptureOrder captureOrder = capturedOrder.getCaptureOrder();
+		Key<Invoice> invoiceKey = Key.create(Invoice.class, captureOrder.getInvoiceId());
+
+		// Determine if failed to capture
+		HttpException failure = capturedOrder.getFailure();
+		if (failure != null) {
+			objectify.transact(() -> {
+				Objectify txn = MeteredObjectify.ofy();
+				Invoice invoice = txn.load().key(invoiceKey).now();
+				if (invoice.getCaptureState() != CaptureState.CAPTURED) {
+					invoice.setCaptureState(CaptureState.FAILED);
+					txn.save().entity(invoice);
+				}
+			});
+			throw failure;
+		}
+
+		// Funds captured, so record payment (unless recorded by webhook)
+		Payment payment = null;
+		if (!captureOrder.isCaptured()) {
+			payment = recordCapture(invoiceKey, capturedOrder.getAmount(), capturedOrder.getReceipt(), objectify);
+		}
+		boolean isRecorded = (payment != null);
+		if (!isRecorded) {
+
+			// Payment already recorded
+			payment = objectify.load().type(Payment.class).id(captureOrder.getPaymentId()).now();
+			if (payment == null) {
+				throw new HttpException(HttpStatus.INTERNAL_SERVER_ERROR,
+						"No payment for orderId " + captureOrder.getOrderId());
+			}
+		}
+
+		// Extend the domain (only on recording the payment)
+		String domainName = payment.getProductReference();
+		Date expiresDate;
+		if (isRecorded) {
+			expiresDate = DomainService.extendDomain(user, payment, objectify);
+			subscriptionCache.invalidate(domainName);
+		} else {
+			Domain domain = DomainService.loadDomain(domainName, objectify);
+			expiresDate = (domain != null) ? domain.getExpires() : payment.getTimestamp();
+		}
+
+		// Return the subscription for the payment (history loaded on viewing domain)
+		return new Subscription[] { new Subscription(domainName,
+				payment.getTimestamp().toInstant().atZone(ResponseUtil.ZONE),
+				expiresDate.toInstant().atZone(ResponseUtil.ZONE), payment.getIsRestartSubscription(), user,
+				captureOrder.getOrderId(), payment.getReceipt(), payment.getAmount()) };
+	}
+
+	/**
+	 * Records the {@link Payment} for the captured {@link Invoice}.
+	 * <p>
+	 * Both the browser capture and the PayPal webhook may record the
+	 * {@link Payment}. Recording transitions the {@link Invoice} to captured in
+	 * the same transaction, so only one of them records the {@link Payment} (and
+	 * subsequently extends the {@link Domain}).
+	 * 
+	 * @param invoiceKey {@link Key} to the {@link Invoice}.
+	 * @param amount     Amount in cents.
+	 * @param receipt    PayPal receipt.
+	 * @param objectify  {@link Objectify}.
+	 * @return Recorded {@link Payment} or <code>null</code> if {@link Payment}
+	 *         already recorded for the {@link Invoice}.
+	 */
+	public static Payment recordCapture(Key<Invoice> invoiceKey, int amount, String receipt, Objectify objectify) {
+		return objectify.transact(() -> {
+			Objectify txn = MeteredObjectify.ofy();
+			Invoice invoice = txn.load().key(invoiceKey).now();
+
+			// Determine if already recorded
+			if (invoice.getCaptureState() == CaptureState.CAPTURED) {
+				return null;
+			}
+
+			// Reserve the payment (if not reserved on capture)
+			if (invoice.getPaymentId() == null) {
+				invoice.setPaymentId(txn.factory().allocateId(Payment.class).getId());
+			}
+
+			// Record the payment
+			Payment payment = new Payment(invoice.getUser(), Ref.create(invoice), invoice.getProductType(),
+					invoice.getProductReference(), invoice.getIsRestartSubscription(), amount, receipt);
+			payment.setId(invoice.getPaymentId());
+			invoice.setCaptureState(CaptureState.CAPTURED);
+			txn.save().entities(payment, invoice);
+			return payment;
+		});
+	}
+
+	public static void sendPayment(User user, @Parameter Subscription[] subscriptions,
+			ObjectResponse<DomainPayments> response) {
+
+		// Obtain the domain payments
+		DomainPayments domainPayments = SubscriptionService.translateToDomainPayments(subscriptions);
+
+		// Send the response
+		response.send(domainPayments);
+	}
+
+	/**
+	 * Captures the funds of the PayPal order.
+	 * 
+	 * @param orderId PayPal order Id.
+	 * @param paypal  {@link PayPalClient}.
+	 * @return {@link PayPalCapture}.
+	 */
+	private static PayPalCapture capturePayPal(String orderId, PayPalClient paypal) {
 
 		// Capture the funds
-		HttpResponse<Order> orderResponse;
+		Order order;
 		try {
-			orderResponse = paypal.execute(new OrdersCaptureRequest(orderId));
+			order = paypal.execute(new OrdersCaptureRequest(orderId)).result();
+		} catch (HttpException ex) {
+			// PayPal unavailable (so not captured)
+			return new PayPalCapture(0, null, ex);
 		} catch (IOException ex) {
 
-			// Obtain the error message
-			String errorMessage = ex.getMessage();
+			// Determine if captured by abandoned capture
+			PayPalIssue issue = getPayPalIssue(ex);
+			if ((issue == null) || (!ORDER_ALREADY_CAPTURED.equals(issue.getIssue()))) {
 
-			// Determine if extract PayPal error
-			try {
-				PayPalError paypalError = mapper.readValue(ex.getMessage(), PayPalError.class);
-				if ((paypalError.details != null) && (paypalError.details.length > 0)) {
-					errorMessage = paypalError.details[0].getDescription();
-				}
-			} catch (IOException ignoreJsonEx) {
-				// just take as text error
+				// Indicate failure in paypal
+				String errorMessage = (issue != null) && (issue.getDescription() != null) ? issue.getDescription()
+						: ex.getMessage();
+				return new PayPalCapture(0, null, new HttpException(HttpStatus.INTERNAL_SERVER_ERROR, errorMessage));
 			}
 
-			// Indicate failure in paypal
-			throw new HttpException(HttpStatus.INTERNAL_SERVER_ERROR, errorMessage);
+			// Obtain the previously captured order
+			try {
+				order = paypal.execute(new OrdersGetRequest(orderId)).result();
+			} catch (HttpException getEx) {
+				return new PayPalCapture(0, null, getEx);
+			} catch (IOException getEx) {
+				return new PayPalCapture(0, null,
+						new HttpException(HttpStatus.INTERNAL_SERVER_ERROR, getEx.getMessage()));
+			}
 		}
-		Order order = orderResponse.result();
 		String captureStatus = order.status();
 		if (!"COMPLETED".equalsIgnoreCase(captureStatus)) {
-			throw new HttpException(HttpStatus.PAYMENT_REQUIRED);
+			return new PayPalCapture(0, null, new HttpException(HttpStatus.PAYMENT_REQUIRED));
 		}
 
 		// Obtain the payment details
@@ -105,36 +359,203 @@ public class PaymentService {
 			}
 		}
 
-		// Obtain payments for the domain
-		List<Payment> payments = new ArrayList<>();
-		for (Payment payment : objectify.load().type(Payment.class).filter("productReference", domainName).iterable()) {
-			if (Domain.PRODUCT_TYPE.equals(payment.getProductType())) {
-				payments.add(payment);
+		// Return the captured details
+		return new PayPalCapture(amount, receipt, null);
+	}
+
+	public static CaptureDomainsOrder captureDomainsPayment(User user, @HttpPathParameter("orderId") String orderId,
+			Objectify objectify) {
+
+		// Obtain the invoices
+		List<Key<Invoice>> invoiceKeys = objectify.load().type(Invoice.class).filter("paymentOrderId", orderId).keys()
+				.list();
+		if (invoiceKeys.size() == 0) {
+			throw new HttpException(HttpStatus.INTERNAL_SERVER_ERROR, "No invoice for orderId " + orderId);
+		}
+
+		// Transition to capturing (only one request may capture the order)
+		long now = System.currentTimeMillis();
+		return objectify.transact(() -> {
+			Objectify txn = MeteredObjectify.ofy();
+			Collection<Invoice> invoices = txn.load().keys(invoiceKeys).values();
+			Long[] invoiceIds = invoices.stream().map(Invoice::getId).toArray(Long[]::new);
+			String[] domainNames = invoices.stream().map(Invoice::getProductReference).toArray(String[]::new);
+
+			// Determine if already captured
+			int reserveCount = 0;
+			boolean isCaptured = true;
+			for (Invoice invoice : invoices) {
+				switch (invoice.getCaptureState()) {
+				case CAPTURED:
+					break;
+
+				case CAPTURING:
+					if ((now - invoice.getCaptureTime().getTime()) < CAPTURE_TIMEOUT) {
+						throw new HttpException(HttpStatus.CONFLICT, "Payment being captured for orderId " + orderId);
+					}
+					isCaptured = false;
+					break; // abandoned capture, so capture again
+
+				default:
+					isCaptured = false;
+					break; // capture
+				}
+				if (invoice.getPaymentId() == null) {
+					reserveCount++;
+				}
+			}
+			if (isCaptured) {
+				return new CaptureDomainsOrder(orderId, invoiceIds, domainNames, true);
 			}
+
+			// Reserve the payments (so retries never record other payments)
+			Iterator<Key<Payment>> paymentKeys = (reserveCount == 0) ? Collections.emptyIterator()
+					: txn.factory().allocateIds(Payment.class, reserveCount).iterator();
+			for (Invoice invoice : invoices) {
+				if (invoice.getPaymentId() == null) {
+					invoice.setPaymentId(paymentKeys.next().getId());
+				}
+
+				// Start capturing
+				if (invoice.getCaptureState() != CaptureState.CAPTURED) {
+					invoice.setCaptureState(CaptureState.CAPTURING);
+					invoice.setCaptureTime(new Date(now));
+				}
+			}
+			txn.save().entities(invoices);
+			return new CaptureDomainsOrder(orderId, invoiceIds, domainNames, false);
+		});
+	}
+
+	public static CapturedDomainsOrder captureDomainsPayPalOrder(@Parameter CaptureDomainsOrder captureOrder,
+			PayPalClient paypal) {
+
+		// Determine if already captured
+		if (captureOrder.isCaptured()) {
+			return new CapturedDomainsOrder(captureOrder, 0, null, null);
 		}
 
-		// Funds captured, so create entries
-		Ref<User> userRef = Ref.create(user);
-		Ref<Invoice> invoiceRef = Ref.create(invoice);
-		Payment payment = new Payment(userRef, invoiceRef, Domain.PRODUCT_TYPE, domainName, isRestartSubscription,
-				amount, receipt);
-		objectify.save().entities(payment).now();
+		// Capture the funds (once for all domains)
+		PayPalCapture capture = capturePayPal(captureOrder.getOrderId(), paypal);
+		return new CapturedDomainsOrder(captureOrder, capture.getAmount(), capture.getReceipt(),
+				capture.getFailure());
+	}
+
+	public static void recordDomainsPayment(User user, @Parameter CapturedDomainsOrder capturedOrder,
+			Objectify objectify, SubscriptionCache subscriptionCache, ObjectResponse<PaidDomain[]> response) {
+		CaptureDomainsOrder captureOrder = capturedOrder.getCaptureOrder();
+		List<Key<Invoice>> invoiceKeys = Stream.of(captureOrder.getInvoiceIds())
+				.map((invoiceId) -> Key.create(Invoice.class, invoiceId)).collect(Collectors.toList());
+
+		// Determine if failed to capture
+		HttpException failure = capturedOrder.getFailure();
+		if (failure != null) {
+			objectify.transact(() -> {
+				Objectify txn = MeteredObjectify.ofy();
+				List<Invoice> failed = new ArrayList<>(invoiceKeys.size());
+				for (Invoice invoice : txn.load().keys(invoiceKeys).values()) {
+					if (invoice.getCaptureState() != CaptureState.CAPTURED) {
+						invoice.setCaptureState(CaptureState.FAILED);
+						failed.add(invoice);
+					}
+				}
+				txn.save().entities(failed);
+			});
+			throw failure;
+		}
 
-		// Include payment
-		payments.add(payment);
+		// Funds captured, so record payments (unless recorded by webhook)
+		List<Payment> payments = captureOrder.isCaptured() ? Collections.emptyList()
+				: recordCaptures(invoiceKeys, capturedOrder.getAmount(), capturedOrder.getReceipt(), objectify);
 
-		// Return the payments
-		return payments.toArray(new Payment[payments.size()]);
+		// Extend the domains and invalidate cached subscriptions (only on recording)
+		Map<String, Domain> domains = new HashMap<>();
+		if (payments.size() > 0) {
+			domains.putAll(DomainService.extendDomains(user, payments, objectify));
+			for (Payment payment : payments) {
+				subscriptionCache.invalidate(payment.getProductReference());
+			}
+		}
+
+		// Include domains of the order recorded previously (e.g. by webhook)
+		List<String> recordedDomainNames = Stream.of(captureOrder.getDomainNames())
+				.filter((domainName) -> !domains.containsKey(domainName)).collect(Collectors.toList());
+		if (recordedDomainNames.size() > 0) {
+			domains.putAll(DomainService.loadDomains(recordedDomainNames, objectify));
+		}
+
+		// Send the paid domains
+		PaidDomain[] paidDomains = domains.values().stream()
+				.sorted((a, b) -> a.getExpires().compareTo(b.getExpires()))
+				.map((domain) -> new PaidDomain(domain.getDomain(), ResponseUtil.toText(domain.getExpires())))
+				.toArray(PaidDomain[]::new);
+		response.send(paidDomains);
 	}
 
-	public static void sendPayment(User user, @Parameter Subscription[] subscriptions,
-			ObjectResponse<DomainPayments> response) {
+	/**
+	 * Records the {@link Payment} instances for the captured {@link Invoice}
+	 * instances of a multiple domain order.
+	 * <p>
+	 * As per {@link #recordCapture(Key, int, String, Objectify)}, the
+	 * {@link Invoice} instances transition to captured in the same transaction
+	 * that saves the {@link Payment} instances (in one batch). The order is
+	 * captured once, so each {@link Payment} is for the amount charged for its
+	 * domain when the order was created.
+	 * 
+	 * @param invoiceKeys {@link Key} instances to the {@link Invoice} instances of
+	 *                    the order.
+	 * @param amount      Amount in cents captured for the order.
+	 * @param receipt     PayPal receipt.
+	 * @param objectify   {@link Objectify}.
+	 * @return Recorded {@link Payment} instances. {@link Invoice} instances with
+	 *         {@link Payment} already recorded are not included.
+	 */
+	public static List<Payment> recordCaptures(List<Key<Invoice>> invoiceKeys, int amount, String receipt,
+			Objectify objectify) {
+		List<Payment> recorded = objectify.transact(() -> {
+			Objectify txn = MeteredObjectify.ofy();
+			Collection<Invoice> invoices = txn.load().keys(invoiceKeys).values();
 
-		// Obtain the domain payments
-		DomainPayments domainPayments = SubscriptionService.translateToDomainPayments(subscriptions);
+			// Reserve the payments (if not reserved on capture)
+			int reserveCount = (int) invoices.stream().filter((invoice) -> invoice.getPaymentId() == null).count();
+			Iterator<Key<Payment>> paymentKeys = (reserveCount == 0) ? Collections.emptyIterator()
+					: txn.factory().allocateIds(Payment.class, reserveCount).iterator();
 
-		// Send the response
-		response.send(domainPayments);
+			// Record the payments (not already recorded)
+			List<Payment> payments = new ArrayList<>(invoices.size());
+			List<Object> entities = new ArrayList<>(invoices.size() * 2);
+			for (Invoice invoice : invoices) {
+				if (invoice.getPaymentId() == null) {
+					invoice.setPaymentId(paymentKeys.next().getId());
+				}
+				if (invoice.getCaptureState() == CaptureState.CAPTURED) {
+					continue; // already recorded
+				}
+				Integer price = (invoice.getAmount() != null) ? invoice.getAmount()
+						: PayPalOrderTemplates.getAmount(invoice.getIsRestartSubscription());
+				Payment payment = new Payment(invoice.getUser(), Ref.create(invoice), invoice.getProductType(),
+						invoice.getProductReference(), invoice.getIsRestartSubscription(), price, receipt);
+				payment.setId(invoice.getPaymentId());
+				invoice.setCaptureState(CaptureState.CAPTURED);
+				payments.add(payment);
+				entities.add(payment);
+				entities.add(invoice);
+			}
+			if (entities.size() > 0) {
+				txn.save().entities(entities);
+			}
+			return payments;
+		});
+
+		// Flag should the domain prices not match the captured amount
+		if (recorded.size() == invoiceKeys.size()) {
+			int priced = recorded.stream().mapToInt(Payment::getAmount).sum();
+			if (priced != amount) {
+				LOGGER.warning("Captured " + amount + " cents for receipt " + receipt + " but " + recorded.size()
+						+ " domains priced at " + priced + " cents");
+			}
+		}
+		return recorded;
 	}
 
 	@Value
@@ -146,7 +567,26 @@ public class PaymentService {
 	@Value
 	@JsonIgnoreProperties(ignoreUnknown = true)
 	public static class PayPalIssue {
+		String issue;
 		String description;
 	}
 
+	/**
+	 * Obtains the {@link PayPalIssue} from the PayPal failure.
+	 * 
+	 * @param ex PayPal failure.
+	 * @return {@link PayPalIssue} or <code>null</code> if not able to extract.
+	 */
+	private static PayPalIssue getPayPalIssue(IOException ex) {
+		try {
+			PayPalError paypalError = mapper.readValue(ex.getMessage(), PayPalError.class);
+			if ((paypalError.details != null) && (paypalError.details.length > 0)) {
+				return paypalError.details[0];
+			}
+		} catch (IOException ignoreJsonEx) {
+			// just take as text error
+		}
+		return null;
+	}
+
 }
\ No newline at end of file
@@ -17,6 +17,7 @@
  */
 package net.officefloor.app.subscription;
 
+import java.time.Instant;
 import java.time.ZoneId;
 import java.time.ZonedDateTime;
 import java.time.format.DateTimeFormatter;
@@ -24,6 +25,11 @@ import java.util.Date;
 
 /**
  * Utility functions for writing response.
+ * <p>
+ * Dates are formatted as RFC-1123 (equivalent to
+ * {@link DateTimeFormatter#RFC_1123_DATE_TIME} in {@link #ZONE}) directly from
+ * epoch milliseconds. As the same dates are formatted for each view of a
+ * domain, the formatted text is also cached by epoch second.
  * 
  * @author Daniel Sagenschneider
  */
@@ -31,12 +37,112 @@ public class ResponseUtil {
 
 	public static final ZoneId ZONE = ZoneId.of("GMT");
 
+	private static final String[] DAYS_OF_WEEK = { "Thu", "Fri", "Sat", "Sun", "Mon", "Tue", "Wed" };
+
+	private static final String[] MONTHS = { "Mar", "Apr", "May", "Jun", "Jul", "Aug", "Sep", "Oct", "Nov", "Dec",
+			"Jan", "Feb" };
+
+	private static final long SECONDS_PER_DAY = 24 * 60 * 60;
+
+	/**
+	 * Size of the formatted text cache (power of 2).
+	 */
+	private static final int CACHE_SIZE = 4096;
+
+	/**
+	 * Formatted text for an epoch second.
+	 */
+	private static class Formatted {
+
+		private final long epochSecond;
+
+		private final String text;
+
+		private Formatted(long epochSecond, String text) {
+			this.epochSecond = epochSecond;
+			this.text = text;
+		}
+	}
+
+	/**
+	 * Direct mapped cache of {@link Formatted} by epoch second. As
+	 * {@link Formatted} is immutable, racing writes only lose a cache entry.
+	 */
+	private static final Formatted[] cache = new Formatted[CACHE_SIZE];
+
 	public static String toText(Date date) {
-		return toText(date.toInstant().atZone(ZONE));
+		return toText(date.getTime());
 	}
 
 	public static String toText(ZonedDateTime date) {
-		return DateTimeFormatter.RFC_1123_DATE_TIME.format(date);
+		if (date.getOffset().getTotalSeconds() != 0) {
+			return DateTimeFormatter.RFC_1123_DATE_TIME.format(date); // not GMT
+		}
+		return toText(date.toEpochSecond() * 1000);
+	}
+
+	/**
+	 * Formats the epoch milliseconds as RFC-1123 in {@link #ZONE}.
+	 * 
+	 * @param epochMillis Epoch milliseconds.
+	 * @return RFC-1123 text.
+	 */
+	public static String toText(long epochMillis) {
+
+		// Determine if cached
+		long epochSecond = Math.floorDiv(epochMillis, 1000);
+		int slot = (int) (epochSecond & (CACHE_SIZE - 1));
+		Formatted formatted = cache[slot];
+		if ((formatted != null) && (formatted.epochSecond == epochSecond)) {
+			return formatted.text;
+		}
+
+		// Format and cache
+		String text = format(epochSecond);
+		cache[slot] = new Formatted(epochSecond, text);
+		return text;
+	}
+
+	/**
+	 * Formats the epoch second as RFC-1123.
+	 * 
+	 * @param epochSecond Epoch second.
+	 * @return RFC-1123 text.
+	 */
+	private static String format(long epochSecond) {
+
+		// Obtain the time of day
+		long epochDay = Math.floorDiv(epochSecond, SECONDS_PER_DAY);
+		int secondOfDay = (int) (epochSecond - (epochDay * SECONDS_PER_DAY));
+		int hour = secondOfDay / 3600;
+		int minute = (secondOfDay / 60) % 60;
+		int second = secondOfDay % 60;
+
+		// Obtain the civil date
+		long civil = CivilDate.fromEpochDay(epochDay);
+		int marchMonth = CivilDate.marchMonth(civil);
+		int day = CivilDate.dayOfMonth(civil);
+		long year = CivilDate.year(civil);
+		if ((year < 0) || (year > 9999)) {
+			return DateTimeFormatter.RFC_1123_DATE_TIME.format(Instant.ofEpochSecond(epochSecond).atZone(ZONE));
+		}
+
+		// Format (e.g. Tue, 3 Jun 2008 11:05:30 GMT)
+		StringBuilder text = new StringBuilder(29);
+		text.append(DAYS_OF_WEEK[(int) Math.floorMod(epochDay, 7)]).append(", ").append(day).append(' ')
+				.append(MONTHS[marchMonth]).append(' ');
+		if (year < 1000) {
+			text.append(year < 10 ? "000" : year < 100 ? "00" : "0");
+		}
+		text.append(year).append(' ');
+		appendTwoDigits(text, hour).append(':');
+		appendTwoDigits(text, minute).append(':');
+		appendTwoDigits(text, second).append(" GMT");
+		return text.toString();
+	}
+
+	private static StringBuilder appendTwoDigits(StringBuilder text, int value) {
+		return text.append((char) ('0' + (value / 10))).append((char) ('0' + (value % 10)));
 	}
 
-}
\ No newline at end of file
+}
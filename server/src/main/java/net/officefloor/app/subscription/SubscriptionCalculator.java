@@ -17,22 +17,25 @@
  */
 package net.officefloor.app.subscription;
 
+import java.time.Instant;
 import java.time.ZonedDateTime;
-import java.time.temporal.ChronoUnit;
-import java.util.ArrayList;
-import java.util.List;
-import java.util.stream.Stream;
 
-import lombok.Data;
-import lombok.RequiredArgsConstructor;
+import com.googlecode.objectify.Ref;
+
 import lombok.Value;
 import net.officefloor.app.subscription.SubscriptionService.DomainPayments;
+import net.officefloor.app.subscription.store.Invoice;
 import net.officefloor.app.subscription.store.Payment;
+import net.officefloor.app.subscription.store.Refund;
 import net.officefloor.app.subscription.store.User;
 import net.officefloor.plugin.section.clazz.Parameter;
 
 /**
  * Calculates the {@link DomainPayments}.
+ * <p>
+ * As calculated for every subscription view and payment capture, the
+ * calculation is undertaken on epoch milliseconds with {@link ZonedDateTime}
+ * instances only created for the resulting {@link Subscription} instances.
  * 
  * @author Daniel Sagenschneider
  */
@@ -50,84 +53,218 @@ public class SubscriptionCalculator {
 		private Integer paymentAmount;
 	}
 
-	@Data
-	@RequiredArgsConstructor
-	private static class PaymentState {
-		private final Payment payment;
-		private final User payer;
-		private final ZonedDateTime paymentDate;
-		private final String paymentOrderId;
-		private final String paymentReceipt;
-		private final Integer paymentAmount;
-		private ZonedDateTime extendsToDate = null;
+	private static final long MILLIS_PER_DAY = 24 * 60 * 60 * 1000L;
+
+	/**
+	 * Calculates the extends to date for a payment following the current
+	 * subscription.
+	 * 
+	 * @param expiresToDate         Expiry of the current subscription. May be
+	 *                              <code>null</code> if first payment.
+	 * @param paymentDate           Date of the payment.
+	 * @param isRestartSubscription Indicates if payment restarts the
+	 *                              subscription.
+	 * @return Extends to date for the payment (to millisecond precision).
+	 */
+	public static ZonedDateTime extendSubscription(ZonedDateTime expiresToDate, ZonedDateTime paymentDate,
+			boolean isRestartSubscription) {
+		long paymentMillis = paymentDate.toInstant().toEpochMilli();
+		long extendsToMillis = (expiresToDate == null) ? plusOneYear(paymentMillis)
+				: extendSubscription(expiresToDate.toInstant().toEpochMilli(), paymentMillis, isRestartSubscription);
+		return Instant.ofEpochMilli(extendsToMillis).atZone(ResponseUtil.ZONE);
 	}
 
 	public static Subscription[] calculateSubscriptions(User user, @Parameter Payment... payments) {
+		return redact(user, calculateAllSubscriptions(payments));
+	}
+
+	/**
+	 * Calculates the {@link Subscription} instances with all payment details
+	 * (i.e. not redacted for a viewer).
+	 * 
+	 * @param payments {@link Payment} instances.
+	 * @return {@link Subscription} instances in reverse chronological order.
+	 */
+	public static Subscription[] calculateAllSubscriptions(Payment... payments) {
 
 		// Ensure have payments
 		if ((payments == null) || (payments.length == 0)) {
 			return new Subscription[0];
 		}
 
-		// Determine if user is admin
-		boolean isAdmin = User.isAdmin(user);
+		// Obtain the payments (ignoring refunded)
+		int count = 0;
+		Payment[] included = new Payment[payments.length];
+		long[] paymentMillis = new long[payments.length];
+		for (Payment payment : payments) {
+			Ref<Refund> refund = payment.getRefund();
+			if ((refund == null) || (refund.get() == null)) {
+				included[count] = payment;
+				paymentMillis[count] = payment.getTimestamp().getTime();
+				count++;
+			}
+		}
+		if (count == 0) {
+			return new Subscription[0];
+		}
 
-		// Obtain payments for the domain
-		List<PaymentState> paymentStates = new ArrayList<>(payments.length);
-		NEXT_PAYMENT: for (Payment payment : payments) {
+		// Sort the payments reverse chronologically
+		int[] order = sortReverseChronologically(paymentMillis, count);
 
-			// Ignore payment if refunded
-			if ((payment.getRefund() != null) && (payment.getRefund().get() != null)) {
-				continue NEXT_PAYMENT;
-			}
+		// Determine the extends to dates (from oldest payment)
+		long[] extendsToMillis = new long[count];
+		int lastIndex = count - 1;
+		long expiresToMillis = plusOneYear(paymentMillis[order[lastIndex]]);
+		extendsToMillis[lastIndex] = expiresToMillis;
+		for (int i = lastIndex - 1; i >= 0; i--) {
+			int index = order[i];
+			expiresToMillis = extendSubscription(expiresToMillis, paymentMillis[index],
+					included[index].getIsRestartSubscription());
+			extendsToMillis[i] = expiresToMillis;
+		}
+
+		// Construct response
+		Subscription[] subscriptions = new Subscription[count];
+		for (int i = 0; i < count; i++) {
+			int index = order[i];
+			Payment payment = included[index];
 
 			// Obtain details of payment
-			ZonedDateTime paymentDate = payment.getTimestamp().toInstant().atZone(ResponseUtil.ZONE);
 			User payer = payment.getUser().get();
-			String paymentOrderId = payment.getInvoice().get().getPaymentOrderId();
-			String paymentReceipt = payment.getReceipt();
-			Integer amount = payment.getAmount();
+			Invoice invoice = payment.getInvoice().get();
+
+			// Add the subscription
+			subscriptions[i] = new Subscription(payment.getProductReference(),
+					Instant.ofEpochMilli(paymentMillis[index]).atZone(ResponseUtil.ZONE),
+					Instant.ofEpochMilli(extendsToMillis[i]).atZone(ResponseUtil.ZONE),
+					payment.getIsRestartSubscription(), payer, invoice.getPaymentOrderId(), payment.getReceipt(),
+					payment.getAmount());
+		}
+		return subscriptions;
+	}
+
+	/**
+	 * Redacts the payment details of the {@link Subscription} instances not
+	 * visible to the viewer.
+	 * <p>
+	 * Only administrators and the payer may see the payment details.
+	 * 
+	 * @param user          Viewing {@link User}.
+	 * @param subscriptions {@link Subscription} instances with all payment
+	 *                      details.
+	 * @return {@link Subscription} instances visible to the {@link User}.
+	 */
+	public static Subscription[] redact(User user, Subscription[] subscriptions) {
 
-			// Determine if paid by user
-			if ((!isAdmin) && ((payer == null) || (!user.getId().equals(payer.getId())))) {
+		// Administrators see all payment details
+		if (User.isAdmin(user)) {
+			return subscriptions;
+		}
+
+		// Redact payments not paid by user
+		Subscription[] redacted = new Subscription[subscriptions.length];
+		for (int i = 0; i < subscriptions.length; i++) {
+			Subscription subscription = subscriptions[i];
+			User payer = subscription.getPaidBy();
+			if ((payer == null) || (!user.getId().equals(payer.getId()))) {
 				// Not paid by user (so no access to details)
-				payer = null;
-				paymentOrderId = null;
-				paymentReceipt = null;
-				amount = null;
+				subscription = new Subscription(subscription.getProductReference(), subscription.getPaymentDate(),
+						subscription.getExtendsToDate(), subscription.isRestartSubscription(), null, null, null,
+						null);
 			}
+			redacted[i] = subscription;
+		}
+		return redacted;
+	}
 
-			// Add payment
-			paymentStates.add(new PaymentState(payment, payer, paymentDate, paymentOrderId, paymentReceipt, amount));
+	/**
+	 * Calculates the extends to date for a payment following the current
+	 * subscription.
+	 * 
+	 * @param expiresToMillis       Expiry of the current subscription.
+	 * @param paymentMillis         Date of the payment.
+	 * @param isRestartSubscription Indicates if payment restarts the
+	 *                              subscription.
+	 * @return Extends to date for the payment.
+	 */
+	private static long extendSubscription(long expiresToMillis, long paymentMillis, boolean isRestartSubscription) {
+
+		// Determine if payment after expires date (and reset)
+		if ((paymentMillis > expiresToMillis) && isRestartSubscription) {
+			expiresToMillis = paymentMillis; // restart subscription from payment
 		}
 
-		// Sort the payment states reverse chronologically
-		PaymentState[] states = paymentStates.stream()
-				.sorted((a, b) -> b.getPaymentDate().compareTo(a.getPaymentDate())).toArray(PaymentState[]::new);
+		// Determine expires to date
+		return plusOneYear(expiresToMillis);
+	}
 
-		// Determine the extends to dates (always at least one payment)
-		int lastIndex = states.length - 1;
-		ZonedDateTime expiresToDate = states[lastIndex].getPaymentDate().plus(1, ChronoUnit.YEARS);
-		states[lastIndex].setExtendsToDate(expiresToDate);
-		for (int i = lastIndex - 1; i >= 0; i--) {
-			PaymentState state = states[i];
+	/**
+	 * Adds a year to the epoch milliseconds (in {@link ResponseUtil#ZONE}).
+	 * <p>
+	 * Equivalent to {@link ZonedDateTime#plusYears(long)}, with 29 February
+	 * becoming 28 February in non-leap years, without creating objects.
+	 * 
+	 * @param millis Epoch milliseconds.
+	 * @return Epoch milliseconds one year later.
+	 */
+	static long plusOneYear(long millis) {
 
-			// Determine if payment after expires date (and reset)
-			if (state.getPaymentDate().isAfter(expiresToDate) && state.getPayment().getIsRestartSubscription()) {
-				expiresToDate = state.getPaymentDate(); // restart subscription from payment
-			}
+		// Obtain the civil date
+		long epochDay = Math.floorDiv(millis, MILLIS_PER_DAY);
+		long millisOfDay = millis - (epochDay * MILLIS_PER_DAY);
+		long civil = CivilDate.fromEpochDay(epochDay);
+		int marchMonth = CivilDate.marchMonth(civil);
+		int day = CivilDate.dayOfMonth(civil);
 
-			// Determine expires to date
-			expiresToDate = expiresToDate.plus(1, ChronoUnit.YEARS);
-			state.setExtendsToDate(expiresToDate);
+		// Move to next year (with 29 February becoming 28 February if not leap year)
+		long nextMarchYear = CivilDate.marchYear(civil) + 1;
+		if ((marchMonth == 11) && (day == 29) && (!CivilDate.isLeapYear(nextMarchYear + 1))) {
+			day = 28;
 		}
 
-		// Construct response
-		return Stream.of(states)
-				.map((state) -> new Subscription(state.getPayment().getProductReference(), state.getPaymentDate(),
-						state.getExtendsToDate(), state.getPayment().getIsRestartSubscription(), state.getPayer(),
-						state.getPaymentOrderId(), state.getPaymentReceipt(), state.getPaymentAmount()))
-				.toArray(Subscription[]::new);
+		// Obtain the epoch milliseconds within the next year
+		long nextEpochDay = CivilDate.toEpochDay(nextMarchYear, marchMonth, day);
+		return (nextEpochDay * MILLIS_PER_DAY) + millisOfDay;
+	}
+
+	/**
+	 * Stable sorts the indexes of the payments reverse chronologically.
+	 * 
+	 * @param paymentMillis Epoch milliseconds of the payments.
+	 * @param count         Number of payments.
+	 * @return Indexes of the payments in reverse chronological order.
+	 */
+	private static int[] sortReverseChronologically(long[] paymentMillis, int count) {
+
+		// Initialise the order
+		int[] order = new int[count];
+		for (int i = 0; i < count; i++) {
+			order[i] = i;
+		}
+
+		// Merge sort (bottom up) as stable for payments at the same time
+		int[] buffer = new int[count];
+		for (int width = 1; width < count; width *= 2) {
+			for (int start = 0; start < count; start += 2 * width) {
+				int middle = Math.min(start + width, count);
+				int end = Math.min(start + (2 * width), count);
+				int left = start;
+				int right = middle;
+				for (int i = start; i < end; i++) {
+					boolean isTakeLeft = (left < middle)
+							&& ((right >= end) || (paymentMillis[order[left]] >= paymentMillis[order[right]]));
+					if (isTakeLeft) {
+						buffer[i] = order[left++];
+					} else {
+						buffer[i] = order[right++];
+					}
+				}
+			}
+			int[] swap = order;
+			order = buffer;
+			buffer = swap;
+		}
+		return order;
 	}
 
-}
\ No newline at end of file
+}
@@ -19,24 +19,40 @@ package net.officefloor.app.subscription;
 
 import static net.officefloor.app.subscription.ResponseUtil.toText;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 import java.util.function.Function;
 import java.util.stream.Stream;
 
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.googlecode.objectify.Objectify;
+import com.googlecode.objectify.Ref;
 
 import lombok.Value;
 import net.officefloor.app.subscription.SubscriptionCalculator.Subscription;
+import net.officefloor.app.subscription.cache.SubscriptionCache;
+import net.officefloor.app.subscription.cache.SubscriptionCache.DomainSubscriptions;
 import net.officefloor.app.subscription.store.Domain;
+import net.officefloor.app.subscription.store.Invoice;
 import net.officefloor.app.subscription.store.Payment;
+import net.officefloor.app.subscription.store.Refund;
 import net.officefloor.app.subscription.store.User;
 import net.officefloor.plugin.section.clazz.Parameter;
 import net.officefloor.server.http.HttpException;
+import net.officefloor.server.http.HttpHeader;
+import net.officefloor.server.http.HttpHeaderName;
+import net.officefloor.server.http.HttpHeaderValue;
+import net.officefloor.server.http.HttpResponse;
 import net.officefloor.server.http.HttpStatus;
+import net.officefloor.server.http.ServerHttpConnection;
 import net.officefloor.web.HttpPathParameter;
-import net.officefloor.web.ObjectResponse;
 
 /**
  * Obtains the {@link Domain} {@link Payment} details.
@@ -47,6 +63,24 @@ public class SubscriptionService {
 
 	private static final String DOMAIN_PATH_PARAMETER = "domainName";
 
+	private static final ObjectMapper mapper = new ObjectMapper();
+
+	private static final HttpHeaderName ETAG = new HttpHeaderName("ETag");
+
+	private static final HttpHeaderName CACHE_CONTROL = new HttpHeaderName("Cache-Control");
+
+	private static final String IF_NONE_MATCH = "If-None-Match";
+
+	private static final HttpHeaderValue PRIVATE_NO_CACHE = new HttpHeaderValue("private, no-cache");
+
+	private static final HttpHeaderValue APPLICATION_JSON = new HttpHeaderValue("application/json");
+
+	/**
+	 * Number of {@link Subscription} instances above which the
+	 * {@link DomainPayments} are streamed rather than serialised and kept.
+	 */
+	public static final int STREAM_THRESHOLD = 100;
+
 	@Value
 	public static class DomainPayments {
 		private String domainName;
@@ -66,38 +100,244 @@ public class SubscriptionService {
 		private Integer paymentAmount;
 	}
 
-	public static Payment[] getDomainPayments(User user, @HttpPathParameter(DOMAIN_PATH_PARAMETER) String domainName,
-			Objectify objectify) throws IOException {
+	public static void getDomainPayments(User user, @HttpPathParameter(DOMAIN_PATH_PARAMETER) String domainName,
+			Objectify objectify, SubscriptionCache subscriptionCache, ServerHttpConnection connection)
+			throws IOException {
 
 		/*
 		 * Note: too many payments is good problem to have. Means will have funds to
 		 * spend time writing fix.
 		 */
 
-		// Obtain payments for the domain
-		List<Payment> payments = new ArrayList<>();
-		boolean isPaidForDomain = false;
-		for (Payment payment : objectify.load().type(Payment.class).filter("productReference", domainName).iterable()) {
-			if (Domain.PRODUCT_TYPE.equals(payment.getProductType())) {
+		// Obtain the subscriptions for the domain (loading if not cached)
+		DomainSubscriptions domainSubscriptions = subscriptionCache.getDomainSubscriptions(domainName);
+		if (domainSubscriptions == null) {
+			long generation = subscriptionCache.getGeneration();
 
-				// Add the payment
-				payments.add(payment);
-
-				// Determine if user paid for domain
-				User payer = payment.getUser().get();
-				if ((payer != null) && (user.getId().equals(payer.getId()))) {
-					isPaidForDomain = true;
+			// Obtain payments for the domain
+			List<Payment> payments = new ArrayList<>();
+			for (Payment payment : objectify.load().type(Payment.class).filter("productReference", domainName)
+					.iterable()) {
+				if (Domain.PRODUCT_TYPE.equals(payment.getProductType())) {
+					payments.add(payment);
 				}
 			}
+
+			// Determine if cached subscriptions still current
+			String version = getVersion(payments);
+			domainSubscriptions = subscriptionCache.revalidate(domainName, version, generation);
+			if (domainSubscriptions == null) {
+
+				// Calculate and cache the subscriptions
+				domainSubscriptions = calculateDomainSubscriptions(payments, version, objectify);
+				subscriptionCache.cacheDomainSubscriptions(domainName, domainSubscriptions, generation);
+			}
 		}
 
 		// Ensure paid to retrieve domain information
-		if (!isPaidForDomain) {
+		if (!domainSubscriptions.isPayer(user)) {
 			throw new HttpException(HttpStatus.FORBIDDEN, "No payment to access domain " + domainName);
 		}
 
-		// Return the payments
-		return payments.toArray(new Payment[payments.size()]);
+		// Determine if client has the current payments
+		String visibility = User.isAdmin(user) ? "admin" : "user" + user.getId();
+		String etag = "\"" + domainSubscriptions.getVersion() + "-" + visibility + "\"";
+		HttpResponse response = connection.getResponse();
+		response.getHeaders().addHeader(ETAG, etag);
+		response.getHeaders().addHeader(CACHE_CONTROL, PRIVATE_NO_CACHE);
+		if (isETagMatch(connection.getRequest().getHeaders().getHeader(IF_NONE_MATCH), etag)) {
+			response.setStatus(HttpStatus.NOT_MODIFIED);
+			return;
+		}
+
+		// Send the domain payments
+		response.setContentType(APPLICATION_JSON, null);
+		byte[] entity = domainSubscriptions.getEntity(visibility);
+		if (entity != null) {
+			// Send the serialised domain payments
+			response.getEntity().write(entity);
+
+		} else if (domainSubscriptions.getSubscriptions().length > STREAM_THRESHOLD) {
+			// Large payment history, so stream (rather than hold serialised)
+			writeDomainPayments(user, domainSubscriptions.getSubscriptions(), response.getEntity());
+
+		} else {
+			// Serialise and keep for further views
+			ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+			writeDomainPayments(user, domainSubscriptions.getSubscriptions(), buffer);
+			entity = buffer.toByteArray();
+			domainSubscriptions.cacheEntity(visibility, entity);
+			response.getEntity().write(entity);
+		}
+	}
+
+	/**
+	 * Writes the {@link DomainPayments} JSON for the {@link Subscription}
+	 * instances.
+	 * <p>
+	 * Each {@link DomainPayment} is written directly from the
+	 * {@link Subscription} (redacting for the viewer), so no intermediate
+	 * {@link DomainPayment} instances are created. The JSON is the same as
+	 * serialising {@link #translateToDomainPayments(Subscription[])} for the
+	 * redacted {@link Subscription} instances.
+	 * 
+	 * @param user          Viewing {@link User}.
+	 * @param subscriptions {@link Subscription} instances with all payment
+	 *                      details.
+	 * @param output        {@link OutputStream} to write the JSON.
+	 * @throws IOException If fails to write the JSON.
+	 */
+	public static void writeDomainPayments(User user, Subscription[] subscriptions, OutputStream output)
+			throws IOException {
+		boolean isAdmin = User.isAdmin(user);
+		try (JsonGenerator json = mapper.getFactory().createGenerator(output)) {
+			json.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+
+			// Write the domain
+			boolean isPayments = (subscriptions.length > 0);
+			json.writeStartObject();
+			json.writeStringField("domainName", isPayments ? subscriptions[0].getProductReference() : null);
+			json.writeStringField("expiresDate", isPayments ? toText(subscriptions[0].getExtendsToDate()) : null);
+
+			// Write the payments
+			json.writeArrayFieldStart("payments");
+			for (Subscription subscription : subscriptions) {
+				json.writeStartObject();
+				json.writeStringField("paymentDate", toText(subscription.getPaymentDate()));
+				json.writeStringField("extendsToDate", toText(subscription.getExtendsToDate()));
+				json.writeBooleanField("restartSubscription", subscription.isRestartSubscription());
+
+				// Write payment details (if visible to user)
+				User payer = subscription.getPaidBy();
+				boolean isVisible = isAdmin || ((payer != null) && (user.getId().equals(payer.getId())));
+				json.writeStringField("paidByName", isVisible && (payer != null) ? payer.getName() : null);
+				json.writeStringField("paidByEmail", isVisible && (payer != null) ? payer.getEmail() : null);
+				json.writeStringField("paymentOrderId", isVisible ? subscription.getPaymentOrderId() : null);
+				json.writeStringField("paymentReceipt", isVisible ? subscription.getPaymentReceipt() : null);
+				Integer amount = isVisible ? subscription.getPaymentAmount() : null;
+				if (amount != null) {
+					json.writeNumberField("paymentAmount", amount.intValue());
+				} else {
+					json.writeNullField("paymentAmount");
+				}
+				json.writeEndObject();
+			}
+			json.writeEndArray();
+			json.writeEndObject();
+		}
+	}
+
+	/**
+	 * Calculates the {@link DomainSubscriptions}.
+	 * 
+	 * @param payments  All {@link Payment} instances for the {@link Domain}.
+	 * @param version   Version of the {@link Payment} instances. May be
+	 *                  <code>null</code> to determine from the {@link Payment}
+	 *                  instances.
+	 * @param objectify {@link Objectify}.
+	 * @return {@link DomainSubscriptions}.
+	 */
+	public static DomainSubscriptions calculateDomainSubscriptions(List<Payment> payments, String version,
+			Objectify objectify) {
+
+		// Load the payment references in one batch
+		loadPaymentReferences(payments, objectify);
+
+		// Determine the payers
+		Set<Long> payerIds = new HashSet<>();
+		for (Payment payment : payments) {
+			Ref<User> payer = payment.getUser();
+			if (payer != null) {
+				payerIds.add(payer.key().getId());
+			}
+		}
+
+		// Calculate the subscriptions
+		Subscription[] subscriptions = SubscriptionCalculator
+				.calculateAllSubscriptions(payments.toArray(new Payment[payments.size()]));
+		return new DomainSubscriptions(version != null ? version : getVersion(payments), subscriptions, payerIds);
+	}
+
+	/**
+	 * Obtains the version of the {@link Payment} instances of the {@link Domain}.
+	 * <p>
+	 * The {@link Payment} instances are only added (or refunded), so the version
+	 * is derived from the {@link Payment} and {@link Refund} identifiers.
+	 * 
+	 * @param payments {@link Payment} instances of the {@link Domain}.
+	 * @return Version.
+	 */
+	static String getVersion(List<Payment> payments) {
+		long maxId = 0;
+		long maxTimestamp = 0;
+		long idHash = 0;
+		for (Payment payment : payments) {
+			long id = payment.getId();
+			maxId = Math.max(maxId, id);
+			maxTimestamp = Math.max(maxTimestamp, payment.getTimestamp().getTime());
+			idHash += id * 0x9E3779B97F4A7C15L;
+			Ref<Refund> refund = payment.getRefund();
+			if (refund != null) {
+				idHash += (id ^ refund.key().getId()) * 0xC2B2AE3D27D4EB4FL;
+			}
+		}
+		return payments.size() + "-" + Long.toHexString(maxId) + "-" + Long.toHexString(maxTimestamp) + "-"
+				+ Long.toHexString(idHash);
+	}
+
+	/**
+	 * Determines if the <code>If-None-Match</code> header matches the ETag.
+	 * 
+	 * @param ifNoneMatch <code>If-None-Match</code> {@link HttpHeader}. May be
+	 *                    <code>null</code>.
+	 * @param etag        Current ETag.
+	 * @return <code>true</code> if matches the ETag.
+	 */
+	private static boolean isETagMatch(HttpHeader ifNoneMatch, String etag) {
+		if (ifNoneMatch == null) {
+			return false;
+		}
+		for (String candidate : ifNoneMatch.getValue().split(",")) {
+			candidate = candidate.trim();
+			if (candidate.startsWith("W/")) {
+				candidate = candidate.substring("W/".length());
+			}
+			if (("*".equals(candidate)) || (etag.equals(candidate))) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Loads the {@link User}, {@link Invoice} and {@link Refund} references of the
+	 * {@link Payment} instances in a single batch. This avoids a data store round
+	 * trip per {@link Ref#get()} when calculating the subscriptions.
+	 * 
+	 * @param payments  {@link Payment} instances.
+	 * @param objectify {@link Objectify}.
+	 */
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	public static void loadPaymentReferences(Collection<Payment> payments, Objectify objectify) {
+
+		// Collect the references
+		List<Ref<?>> refs = new ArrayList<>(payments.size() * 3);
+		for (Payment payment : payments) {
+			if (payment.getUser() != null) {
+				refs.add(payment.getUser());
+			}
+			if (payment.getInvoice() != null) {
+				refs.add(payment.getInvoice());
+			}
+			if (payment.getRefund() != null) {
+				refs.add(payment.getRefund());
+			}
+		}
+
+		// Load the references (into session cache)
+		if (refs.size() > 0) {
+			objectify.load().refs((List) refs);
+		}
 	}
 
 	public static DomainPayments translateToDomainPayments(@Parameter Subscription[] subscriptions) {
@@ -122,14 +362,4 @@ public class SubscriptionService {
 		return new DomainPayments(domainName, extendsToDate, domainPayments);
 	}
 
-	public static void sendSubscriptions(@Parameter Subscription[] subscriptions,
-			ObjectResponse<DomainPayments> response) {
-
-		// Translate to domain payments
-		DomainPayments domainPayments = translateToDomainPayments(subscriptions);
-
-		// Send the response
-		response.send(domainPayments);
-	}
-
 }
\ No newline at end of file
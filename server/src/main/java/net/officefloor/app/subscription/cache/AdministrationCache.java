@@ -0,0 +1,163 @@
+/*
+ * OfficeFloor - http://www.officefloor.net
+ * Copyright (C) 2005-2019 Daniel Sagenschneider
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package net.officefloor.app.subscription.cache;
+
+import java.util.stream.Stream;
+
+import com.googlecode.objectify.Objectify;
+
+import net.officefloor.app.subscription.store.Administration;
+import net.officefloor.app.subscription.store.Administration.Administrator;
+
+/**
+ * Caches the {@link Administration}.
+ * <p>
+ * The {@link Administration} is a singleton that rarely changes, so a snapshot
+ * is held for a time to live to avoid a data store round trip on most
+ * requests.
+ * 
+ * @author Daniel Sagenschneider
+ */
+public class AdministrationCache {
+
+	/**
+	 * Default time to live in milliseconds for the cached {@link Administration}.
+	 */
+	public static final long DEFAULT_TIME_TO_LIVE = 60_000;
+
+	/**
+	 * Snapshot of the {@link Administration}.
+	 */
+	private static class Snapshot {
+
+		private final Administration administration;
+
+		private final long loadTime;
+
+		private Snapshot(Administration administration, long loadTime) {
+			this.administration = administration;
+			this.loadTime = loadTime;
+		}
+	}
+
+	/**
+	 * Time to live in milliseconds.
+	 */
+	private final long timeToLive;
+
+	/**
+	 * Current {@link Snapshot}.
+	 */
+	private volatile Snapshot snapshot = null;
+
+	/**
+	 * Generation to ensure a load does not overwrite a later update.
+	 */
+	private long generation = 0;
+
+	/**
+	 * Instantiate.
+	 * 
+	 * @param timeToLive Time to live in milliseconds.
+	 */
+	public AdministrationCache(long timeToLive) {
+		this.timeToLive = timeToLive;
+	}
+
+	/**
+	 * Obtains the {@link Administration}.
+	 * 
+	 * @param objectify {@link Objectify} to load {@link Administration} on cache
+	 *                  miss.
+	 * @return Copy of the {@link Administration} or <code>null</code> if not yet
+	 *         configured.
+	 */
+	public Administration getAdministration(Objectify objectify) {
+
+		// Determine if cached
+		long now = System.currentTimeMillis();
+		Snapshot snapshot = this.snapshot;
+		if ((snapshot != null) && ((now - snapshot.loadTime) < this.timeToLive)) {
+			return copy(snapshot.administration);
+		}
+
+		// Load the administration
+		long loadGeneration;
+		synchronized (this) {
+			loadGeneration = this.generation;
+		}
+		Administration administration = objectify.load().type(Administration.class).first().now();
+		if (administration == null) {
+			return null; // not configured (so do not cache)
+		}
+
+		// Cache the administration (if not updated in the meantime)
+		Administration cached = copy(administration);
+		synchronized (this) {
+			if (loadGeneration == this.generation) {
+				this.snapshot = new Snapshot(cached, now);
+			}
+		}
+
+		// Return the administration
+		return copy(cached);
+	}
+
+	/**
+	 * Updates the cache with the saved {@link Administration}.
+	 * 
+	 * @param administration Saved {@link Administration}.
+	 */
+	public synchronized void update(Administration administration) {
+		this.generation++;
+		this.snapshot = new Snapshot(copy(administration), System.currentTimeMillis());
+	}
+
+	/**
+	 * Invalidates the cache.
+	 */
+	public synchronized void invalidate() {
+		this.generation++;
+		this.snapshot = null;
+	}
+
+	/**
+	 * Copies the {@link Administration} so the cached snapshot can not be
+	 * modified.
+	 * 
+	 * @param administration {@link Administration}.
+	 * @return Copy of the {@link Administration}.
+	 */
+	private static Administration copy(Administration administration) {
+		Administration copy = new Administration();
+		copy.setId(administration.getId());
+		copy.setGoogleClientId(administration.getGoogleClientId());
+		Administrator[] administrators = administration.getAdministrators();
+		copy.setAdministrators(administrators == null ? null
+				: Stream.of(administrators).map((admin) -> new Administrator(admin.getGoogleId(), admin.getNotes()))
+						.toArray(Administrator[]::new));
+		copy.setPaypalEnvironment(administration.getPaypalEnvironment());
+		copy.setPaypalClientId(administration.getPaypalClientId());
+		copy.setPaypalClientSecret(administration.getPaypalClientSecret());
+		copy.setPaypalInvoiceIdTemplate(administration.getPaypalInvoiceIdTemplate());
+		copy.setPaypalCurrency(administration.getPaypalCurrency());
+		copy.setPaypalWebhookId(administration.getPaypalWebhookId());
+		return copy;
+	}
+
+}
@@ -0,0 +1,233 @@
+/*
+ * OfficeFloor - http://www.officefloor.net
+ * Copyright (C) 2005-2019 Daniel Sagenschneider
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package net.officefloor.app.subscription.cache;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import net.officefloor.app.subscription.SubscriptionCalculator;
+import net.officefloor.app.subscription.SubscriptionCalculator.Subscription;
+import net.officefloor.app.subscription.SubscriptionService.DomainPayments;
+import net.officefloor.app.subscription.store.Domain;
+import net.officefloor.app.subscription.store.Payment;
+import net.officefloor.app.subscription.store.User;
+
+/**
+ * Caches the calculated {@link Subscription} instances by {@link Domain}.
+ * <p>
+ * The {@link Subscription} instances are cached with all payment details, so
+ * the cache is shared by all viewers with redaction applied on read (see
+ * {@link SubscriptionCalculator#redact(User, Subscription[])}).
+ * <p>
+ * Capturing a {@link Payment} on this server updates the cache. As
+ * {@link Payment} instances may be captured on other server instances, the
+ * cached {@link Subscription} instances are only used for a time to live.
+ * After this, they are re-validated against the version of the {@link Payment}
+ * instances of the {@link Domain}.
+ * 
+ * @author Daniel Sagenschneider
+ */
+public class SubscriptionCache {
+
+	/**
+	 * Default maximum number of {@link Domain} instances cached.
+	 */
+	public static final int DEFAULT_MAX_DOMAINS = 1000;
+
+	/**
+	 * Default time to live in milliseconds for the cached {@link Subscription}
+	 * instances.
+	 */
+	public static final long DEFAULT_TIME_TO_LIVE = 60_000;
+
+	/**
+	 * Calculated {@link Subscription} instances for a {@link Domain}.
+	 */
+	public static class DomainSubscriptions {
+
+		private final String version;
+
+		private final Subscription[] subscriptions;
+
+		private final Set<Long> payerIds;
+
+		/**
+		 * Serialised {@link DomainPayments} by viewer visibility.
+		 */
+		private final Map<String, byte[]> entities = new ConcurrentHashMap<>();
+
+		/**
+		 * Instantiate.
+		 * 
+		 * @param version       Version of the {@link Payment} instances of the
+		 *                      {@link Domain}.
+		 * @param subscriptions {@link Subscription} instances with all payment
+		 *                      details.
+		 * @param payerIds      Identifiers of the {@link User} instances that paid
+		 *                      for the {@link Domain} (including refunded).
+		 */
+		public DomainSubscriptions(String version, Subscription[] subscriptions, Set<Long> payerIds) {
+			this.version = version;
+			this.subscriptions = subscriptions;
+			this.payerIds = payerIds;
+		}
+
+		public String getVersion() {
+			return this.version;
+		}
+
+		public Subscription[] getSubscriptions() {
+			return this.subscriptions;
+		}
+
+		public boolean isPayer(User user) {
+			return this.payerIds.contains(user.getId());
+		}
+
+		public byte[] getEntity(String visibility) {
+			return this.entities.get(visibility);
+		}
+
+		public void cacheEntity(String visibility, byte[] entity) {
+			this.entities.put(visibility, entity);
+		}
+	}
+
+	/**
+	 * Cached {@link DomainSubscriptions}.
+	 */
+	private static class Entry {
+
+		private final DomainSubscriptions domainSubscriptions;
+
+		private final long loadTime;
+
+		private Entry(DomainSubscriptions domainSubscriptions, long loadTime) {
+			this.domainSubscriptions = domainSubscriptions;
+			this.loadTime = loadTime;
+		}
+	}
+
+	/**
+	 * Time to live in milliseconds.
+	 */
+	private final long timeToLive;
+
+	/**
+	 * {@link Entry} by {@link Domain} name (in least recently used order).
+	 */
+	private final LinkedHashMap<String, Entry> domains;
+
+	/**
+	 * Generation to ensure a load does not overwrite a later update.
+	 */
+	private long generation = 0;
+
+	/**
+	 * Instantiate.
+	 * 
+	 * @param maxDomains Maximum number of {@link Domain} instances cached.
+	 * @param timeToLive Time to live in milliseconds.
+	 */
+	public SubscriptionCache(int maxDomains, long timeToLive) {
+		this.timeToLive = timeToLive;
+		this.domains = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+				return this.size() > maxDomains;
+			}
+		};
+	}
+
+	/**
+	 * Obtains the generation to provide when caching loaded
+	 * {@link DomainSubscriptions}. This must be obtained before loading.
+	 * 
+	 * @return Generation.
+	 */
+	public synchronized long getGeneration() {
+		return this.generation;
+	}
+
+	/**
+	 * Obtains the {@link DomainSubscriptions}.
+	 * 
+	 * @param domainName Name of the {@link Domain}.
+	 * @return {@link DomainSubscriptions} or <code>null</code> if not cached (or
+	 *         requires re-validating).
+	 */
+	public synchronized DomainSubscriptions getDomainSubscriptions(String domainName) {
+		Entry entry = this.domains.get(domainName);
+		if ((entry == null) || ((System.currentTimeMillis() - entry.loadTime) >= this.timeToLive)) {
+			return null;
+		}
+		return entry.domainSubscriptions;
+	}
+
+	/**
+	 * Re-validates the cached {@link DomainSubscriptions}.
+	 * 
+	 * @param domainName Name of the {@link Domain}.
+	 * @param version    Current version of the {@link Payment} instances of the
+	 *                   {@link Domain}.
+	 * @param generation Generation obtained before loading the version.
+	 * @return {@link DomainSubscriptions} or <code>null</code> if not cached for
+	 *         the version.
+	 */
+	public synchronized DomainSubscriptions revalidate(String domainName, String version, long generation) {
+		Entry entry = this.domains.get(domainName);
+		if ((entry == null) || (!entry.domainSubscriptions.getVersion().equals(version))) {
+			return null;
+		}
+		if (generation == this.generation) {
+			this.domains.put(domainName, new Entry(entry.domainSubscriptions, System.currentTimeMillis()));
+		}
+		return entry.domainSubscriptions;
+	}
+
+	/**
+	 * Caches the loaded {@link DomainSubscriptions}.
+	 * 
+	 * @param domainName          Name of the {@link Domain}.
+	 * @param domainSubscriptions {@link DomainSubscriptions}.
+	 * @param generation          Generation obtained before loading.
+	 */
+	public synchronized void cacheDomainSubscriptions(String domainName, DomainSubscriptions domainSubscriptions,
+			long generation) {
+		if (generation == this.generation) {
+			this.domains.put(domainName, new Entry(domainSubscriptions, System.currentTimeMillis()));
+		}
+	}
+
+	/**
+	 * Invalidates the cached {@link DomainSubscriptions} for the {@link Domain}.
+	 * 
+	 * @param domainName Name of the {@link Domain}.
+	 * @return Generation to provide when caching the {@link DomainSubscriptions}
+	 *         loaded after the change.
+	 */
+	public synchronized long invalidate(String domainName) {
+		this.domains.remove(domainName);
+		return ++this.generation;
+	}
+
+}
@@ -0,0 +1,87 @@
+/*
+ * OfficeFloor - http://www.officefloor.net
+ * Copyright (C) 2005-2019 Daniel Sagenschneider
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package net.officefloor.app.subscription.cache;
+
+import net.officefloor.frame.api.build.None;
+import net.officefloor.frame.api.managedobject.ManagedObject;
+import net.officefloor.frame.api.managedobject.source.ManagedObjectSource;
+import net.officefloor.frame.api.managedobject.source.ManagedObjectSourceContext;
+import net.officefloor.frame.api.managedobject.source.impl.AbstractManagedObjectSource;
+
+/**
+ * {@link ManagedObjectSource} providing the shared {@link SubscriptionCache}.
+ * 
+ * @author Daniel Sagenschneider
+ */
+public class SubscriptionCacheManagedObjectSource extends AbstractManagedObjectSource<None, None>
+		implements ManagedObject {
+
+	/**
+	 * Name of property for the maximum number of domains cached.
+	 */
+	public static final String PROPERTY_MAX_DOMAINS = "max.domains";
+
+	/**
+	 * Name of property for the time to live in milliseconds.
+	 */
+	public static final String PROPERTY_TIME_TO_LIVE = "time.to.live";
+
+	/**
+	 * {@link SubscriptionCache}.
+	 */
+	private SubscriptionCache cache;
+
+	/*
+	 * =================== ManagedObjectSource ======================
+	 */
+
+	@Override
+	protected void loadSpecification(SpecificationContext context) {
+		// No specification
+	}
+
+	@Override
+	protected void loadMetaData(MetaDataContext<None, None> context) throws Exception {
+		ManagedObjectSourceContext<None> mosContext = context.getManagedObjectSourceContext();
+
+		// Create the cache
+		int maxDomains = Integer.parseInt(
+				mosContext.getProperty(PROPERTY_MAX_DOMAINS, String.valueOf(SubscriptionCache.DEFAULT_MAX_DOMAINS)));
+		long timeToLive = Long.parseLong(
+				mosContext.getProperty(PROPERTY_TIME_TO_LIVE, String.valueOf(SubscriptionCache.DEFAULT_TIME_TO_LIVE)));
+		this.cache = new SubscriptionCache(maxDomains, timeToLive);
+
+		// Specify meta-data
+		context.setObjectClass(SubscriptionCache.class);
+	}
+
+	@Override
+	protected ManagedObject getManagedObject() throws Throwable {
+		return this;
+	}
+
+	/*
+	 * ====================== ManagedObject =========================
+	 */
+
+	@Override
+	public Object getObject() throws Throwable {
+		return this.cache;
+	}
+
+}
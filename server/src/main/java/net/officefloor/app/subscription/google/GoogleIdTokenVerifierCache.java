@@ -0,0 +1,208 @@
+/*
+ * OfficeFloor - http://www.officefloor.net
+ * Copyright (C) 2005-2019 Daniel Sagenschneider
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package net.officefloor.app.subscription.google;
+
+import java.io.IOException;
+import java.security.GeneralSecurityException;
+import java.util.Collections;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.google.api.client.googleapis.auth.oauth2.GoogleIdTokenVerifier;
+import com.google.api.client.googleapis.auth.oauth2.GooglePublicKeysManager;
+import com.google.api.client.http.HttpTransport;
+import com.google.api.client.http.javanet.NetHttpTransport;
+import com.google.api.client.json.JsonFactory;
+import com.google.api.client.json.jackson2.JacksonFactory;
+import com.google.api.client.util.Clock;
+
+/**
+ * Caches the {@link GoogleIdTokenVerifier} along with the Google public keys.
+ * <p>
+ * The {@link GoogleIdTokenVerifier} is only rebuilt should the Google client
+ * Id change. Before the public keys expire, the first request within the
+ * refresh window loads new keys into a new {@link GooglePublicKeysManager}
+ * while other requests continue to verify with the current keys. This avoids
+ * all requests blocking on the refresh (as App Engine automatic scaling does
+ * not allow threads to outlive the request).
+ * 
+ * @author Daniel Sagenschneider
+ */
+public class GoogleIdTokenVerifierCache {
+
+	/**
+	 * Milliseconds before the public keys expire to refresh them.
+	 */
+	public static final long REFRESH_AHEAD_MILLIS = 10 * 60 * 1000;
+
+	/**
+	 * {@link Logger}.
+	 */
+	private static final Logger LOGGER = Logger.getLogger(GoogleIdTokenVerifierCache.class.getName());
+
+	/**
+	 * Cached {@link GoogleIdTokenVerifier}.
+	 */
+	private static class CachedVerifier {
+
+		private final String googleClientId;
+
+		private final GooglePublicKeysManager publicKeys;
+
+		private final GoogleIdTokenVerifier verifier;
+
+		private CachedVerifier(String googleClientId, GooglePublicKeysManager publicKeys) {
+			this.googleClientId = googleClientId;
+			this.publicKeys = publicKeys;
+			this.verifier = new GoogleIdTokenVerifier.Builder(publicKeys)
+					.setAudience(Collections.singletonList(googleClientId)).build();
+		}
+	}
+
+	/**
+	 * Shared {@link HttpTransport}.
+	 */
+	private final HttpTransport transport;
+
+	/**
+	 * {@link Clock}.
+	 */
+	private final Clock clock;
+
+	/**
+	 * {@link JsonFactory}.
+	 */
+	private final JsonFactory jsonFactory = JacksonFactory.getDefaultInstance();
+
+	/**
+	 * {@link GooglePublicKeysManager} for the current keys.
+	 */
+	private volatile GooglePublicKeysManager publicKeys;
+
+	/**
+	 * Current {@link CachedVerifier}.
+	 */
+	private volatile CachedVerifier cached = null;
+
+	/**
+	 * Indicates if refreshing the public keys.
+	 */
+	private final AtomicBoolean isRefreshing = new AtomicBoolean(false);
+
+	/**
+	 * Instantiate to load the public keys from Google.
+	 */
+	public GoogleIdTokenVerifierCache() {
+		this(new NetHttpTransport(), Clock.SYSTEM);
+	}
+
+	/**
+	 * Instantiate.
+	 * 
+	 * @param transport {@link HttpTransport} to load the public keys.
+	 * @param clock     {@link Clock}.
+	 */
+	public GoogleIdTokenVerifierCache(HttpTransport transport, Clock clock) {
+		this.transport = transport;
+		this.clock = clock;
+		this.publicKeys = this.createPublicKeys();
+	}
+
+	/**
+	 * Loads the public keys so they are available for the first verification.
+	 */
+	public void warm() {
+		try {
+			this.publicKeys.refresh();
+		} catch (GeneralSecurityException | IOException ex) {
+			LOGGER.log(Level.WARNING, "Failed to warm Google public keys (will load on first verification)", ex);
+		}
+	}
+
+	/**
+	 * Obtains the {@link GoogleIdTokenVerifier}.
+	 * 
+	 * @param googleClientId Google client Id.
+	 * @return {@link GoogleIdTokenVerifier}.
+	 */
+	public GoogleIdTokenVerifier getVerifier(String googleClientId) {
+
+		// Determine if refresh the public keys
+		GooglePublicKeysManager publicKeys = this.publicKeys;
+		if ((this.clock.currentTimeMillis() + REFRESH_AHEAD_MILLIS) >= publicKeys.getExpirationTimeMilliseconds()) {
+			publicKeys = this.refreshPublicKeys(publicKeys);
+		}
+
+		// Determine if need to rebuild the verifier
+		CachedVerifier cached = this.cached;
+		if ((cached == null) || (cached.publicKeys != publicKeys)
+				|| (!Objects.equals(cached.googleClientId, googleClientId))) {
+			cached = new CachedVerifier(googleClientId, publicKeys);
+			this.cached = cached;
+		}
+
+		// Return the verifier
+		return cached.verifier;
+	}
+
+	/**
+	 * Refreshes the public keys (should no other request be refreshing them).
+	 * 
+	 * @param current Current {@link GooglePublicKeysManager}.
+	 * @return {@link GooglePublicKeysManager} to use.
+	 */
+	private GooglePublicKeysManager refreshPublicKeys(GooglePublicKeysManager current) {
+
+		// Determine if first load of keys (verifier will load on demand)
+		if (current.getExpirationTimeMilliseconds() == 0) {
+			return current;
+		}
+
+		// Only the one request refreshes the keys
+		if (!this.isRefreshing.compareAndSet(false, true)) {
+			return current;
+		}
+		try {
+
+			// Load keys into new manager (so others not blocked by refresh)
+			GooglePublicKeysManager refreshed = this.createPublicKeys();
+			refreshed.refresh();
+			this.publicKeys = refreshed;
+			return refreshed;
+
+		} catch (GeneralSecurityException | IOException ex) {
+			LOGGER.log(Level.WARNING, "Failed to refresh Google public keys (continuing with current keys)", ex);
+			return current;
+
+		} finally {
+			this.isRefreshing.set(false);
+		}
+	}
+
+	/**
+	 * Creates the {@link GooglePublicKeysManager}.
+	 * 
+	 * @return {@link GooglePublicKeysManager}.
+	 */
+	private GooglePublicKeysManager createPublicKeys() {
+		return new GooglePublicKeysManager.Builder(this.transport, this.jsonFactory).setClock(this.clock).build();
+	}
+
+}
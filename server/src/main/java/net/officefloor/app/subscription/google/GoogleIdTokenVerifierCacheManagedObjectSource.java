@@ -0,0 +1,122 @@
+/*
+ * OfficeFloor - http://www.officefloor.net
+ * Copyright (C) 2005-2019 Daniel Sagenschneider
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package net.officefloor.app.subscription.google;
+
+import net.officefloor.frame.api.build.None;
+import net.officefloor.frame.api.managedobject.ManagedObject;
+import net.officefloor.frame.api.managedobject.source.ManagedObjectExecuteContext;
+import net.officefloor.frame.api.managedobject.source.ManagedObjectSource;
+import net.officefloor.frame.api.managedobject.source.ManagedObjectSourceContext;
+import net.officefloor.frame.api.managedobject.source.impl.AbstractManagedObjectSource;
+
+/**
+ * {@link ManagedObjectSource} providing the shared
+ * {@link GoogleIdTokenVerifierCache}.
+ * 
+ * @author Daniel Sagenschneider
+ */
+public class GoogleIdTokenVerifierCacheManagedObjectSource extends AbstractManagedObjectSource<None, None>
+		implements ManagedObject {
+
+	/**
+	 * Name of property to indicate whether to load the Google public keys on
+	 * start up.
+	 */
+	public static final String PROPERTY_WARM_ON_START = "warm.on.start";
+
+	/**
+	 * Name of system property (or environment variable with '.' replaced by '_')
+	 * providing the default for {@link #PROPERTY_WARM_ON_START}. This allows
+	 * tests to avoid loading the Google public keys on each start up.
+	 */
+	public static final String SYSTEM_PROPERTY_WARM_ON_START = "google.warm.on.start";
+
+	/**
+	 * {@link GoogleIdTokenVerifierCache}.
+	 */
+	private final GoogleIdTokenVerifierCache cache;
+
+	/**
+	 * Indicates whether to load the Google public keys on start up.
+	 */
+	private boolean isWarmOnStart;
+
+	/**
+	 * Default constructor.
+	 */
+	public GoogleIdTokenVerifierCacheManagedObjectSource() {
+		this(new GoogleIdTokenVerifierCache());
+	}
+
+	/**
+	 * Instantiate.
+	 * 
+	 * @param cache {@link GoogleIdTokenVerifierCache}.
+	 */
+	public GoogleIdTokenVerifierCacheManagedObjectSource(GoogleIdTokenVerifierCache cache) {
+		this.cache = cache;
+	}
+
+	/*
+	 * =================== ManagedObjectSource ======================
+	 */
+
+	@Override
+	protected void loadSpecification(SpecificationContext context) {
+		// No specification
+	}
+
+	@Override
+	protected void loadMetaData(MetaDataContext<None, None> context) throws Exception {
+		ManagedObjectSourceContext<None> mosContext = context.getManagedObjectSourceContext();
+
+		// Determine whether to warm the cache
+		String defaultWarmOnStart = System.getProperty(SYSTEM_PROPERTY_WARM_ON_START, null);
+		if (defaultWarmOnStart == null) {
+			// Not system property, so try environment
+			defaultWarmOnStart = System.getenv(SYSTEM_PROPERTY_WARM_ON_START.replace('.', '_'));
+		}
+		this.isWarmOnStart = Boolean.parseBoolean(mosContext.getProperty(PROPERTY_WARM_ON_START,
+				(defaultWarmOnStart == null) ? "true" : defaultWarmOnStart));
+
+		// Specify meta-data
+		context.setObjectClass(GoogleIdTokenVerifierCache.class);
+	}
+
+	@Override
+	public void start(ManagedObjectExecuteContext<None> context) throws Exception {
+		if (this.isWarmOnStart) {
+			this.cache.warm();
+		}
+	}
+
+	@Override
+	protected ManagedObject getManagedObject() throws Throwable {
+		return this;
+	}
+
+	/*
+	 * ====================== ManagedObject =========================
+	 */
+
+	@Override
+	public Object getObject() throws Throwable {
+		return this.cache;
+	}
+
+}
@@ -18,16 +18,12 @@
 package net.officefloor.app.subscription.google;
 
 import java.io.IOException;
-import java.util.Collections;
 
 import com.google.api.client.googleapis.auth.oauth2.GoogleIdTokenVerifier;
-import com.google.api.client.http.HttpTransport;
-import com.google.api.client.http.javanet.NetHttpTransport;
-import com.google.api.client.json.JsonFactory;
-import com.google.api.client.json.jackson2.JacksonFactory;
 import com.googlecode.objectify.Objectify;
 
 import net.officefloor.app.subscription.InitialiseService;
+import net.officefloor.app.subscription.cache.AdministrationCache;
 import net.officefloor.app.subscription.store.Administration;
 import net.officefloor.identity.google.GoogleIdTokenVerifierFactory;
 import net.officefloor.plugin.clazz.Dependency;
@@ -42,13 +38,17 @@ public class GoogleIdTokenVerifierConfiguration implements GoogleIdTokenVerifier
 
 	private @Dependency Objectify objectify;
 
+	private @Dependency AdministrationCache administrationCache;
+
+	private @Dependency GoogleIdTokenVerifierCache verifierCache;
+
 	@Override
 	public GoogleIdTokenVerifier create() throws Exception {
 
 		// Obtain the configuration
 		Administration admin;
 		try {
-			admin = InitialiseService.getAdministration(this.objectify);
+			admin = InitialiseService.getAdministration(this.administrationCache, this.objectify);
 			if (admin == null) {
 				return null;
 			}
@@ -57,11 +57,8 @@ public class GoogleIdTokenVerifierConfiguration implements GoogleIdTokenVerifier
 		}
 		String googleClientId = admin.getGoogleClientId();
 
-		// Create and return verifier
-		JsonFactory jsonFactory = JacksonFactory.getDefaultInstance();
-		HttpTransport transport = new NetHttpTransport();
-		return new GoogleIdTokenVerifier.Builder(transport, jsonFactory)
-				.setAudience(Collections.singletonList(googleClientId)).build();
+		// Return the cached verifier
+		return this.verifierCache.getVerifier(googleClientId);
 	}
 
 }
\ No newline at end of file
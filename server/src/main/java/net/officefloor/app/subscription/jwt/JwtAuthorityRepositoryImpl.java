@@ -23,6 +23,25 @@ public class JwtAuthorityRepositoryImpl implements JwtAuthorityRepository {
 
 	private @Dependency Objectify objectify;
 
+	private @Dependency JwtKeyCache keyCache;
+
+	/**
+	 * Default constructor for dependency injection.
+	 */
+	public JwtAuthorityRepositoryImpl() {
+	}
+
+	/**
+	 * Instantiate.
+	 * 
+	 * @param objectify {@link Objectify}.
+	 * @param keyCache  {@link JwtKeyCache}.
+	 */
+	public JwtAuthorityRepositoryImpl(Objectify objectify, JwtKeyCache keyCache) {
+		this.objectify = objectify;
+		this.keyCache = keyCache;
+	}
+
 	/*
 	 * ===================== JwtAuthorityRepository =======================
 	 */
@@ -30,13 +49,21 @@ public class JwtAuthorityRepositoryImpl implements JwtAuthorityRepository {
 	@Override
 	public List<JwtAccessKey> retrieveJwtAccessKeys(RetrieveKeysContext context) throws Exception {
 
-		// Obtain the access keys (deleting old keys)
-		List<JwtAccessKey> jwtAccessKeys = new ArrayList<>();
+		// Determine if cached
+		List<JwtAccessKey> jwtAccessKeys = this.keyCache.getAccessKeys(context.getActiveAfter());
+		if (jwtAccessKeys != null) {
+			return jwtAccessKeys;
+		}
+
+		// Obtain the access keys (collecting old keys)
+		long generation = this.keyCache.getGeneration();
+		jwtAccessKeys = new ArrayList<>();
+		List<AccessKey> expiredKeys = new ArrayList<>();
 		NEXT_KEY: for (AccessKey accessKey : this.objectify.load().type(AccessKey.class).iterable()) {
 
 			// Determine if expired
 			if (accessKey.getExpireTime() < context.getActiveAfter()) {
-				this.objectify.delete().entity(accessKey).now();
+				expiredKeys.add(accessKey);
 				continue NEXT_KEY;
 			}
 
@@ -47,7 +74,13 @@ public class JwtAuthorityRepositoryImpl implements JwtAuthorityRepository {
 					new JwtAccessKeyImpl(accessKey.getStartTime(), accessKey.getExpireTime(), publicKey, privateKey));
 		}
 
-		// Return the JWT access keys
+		// Delete the old keys (asynchronously)
+		if (expiredKeys.size() > 0) {
+			this.objectify.delete().entities(expiredKeys);
+		}
+
+		// Cache and return the JWT access keys
+		this.keyCache.cacheAccessKeys(jwtAccessKeys, generation);
 		return jwtAccessKeys;
 	}
 
@@ -64,18 +97,29 @@ public class JwtAuthorityRepositoryImpl implements JwtAuthorityRepository {
 
 		// Save the keys
 		this.objectify.save().entities(accessKeys).now();
+
+		// Reload keys to include the new keys
+		this.keyCache.invalidate();
 	}
 
 	@Override
 	public List<JwtRefreshKey> retrieveJwtRefreshKeys(RetrieveKeysContext context) throws Exception {
 
-		// Obtain the refresh keys
-		List<JwtRefreshKey> jwtRefreshKeys = new ArrayList<>();
+		// Determine if cached
+		List<JwtRefreshKey> jwtRefreshKeys = this.keyCache.getRefreshKeys(context.getActiveAfter());
+		if (jwtRefreshKeys != null) {
+			return jwtRefreshKeys;
+		}
+
+		// Obtain the refresh keys (collecting old keys)
+		long generation = this.keyCache.getGeneration();
+		jwtRefreshKeys = new ArrayList<>();
+		List<RefreshKey> expiredKeys = new ArrayList<>();
 		NEXT_KEY: for (RefreshKey refreshKey : this.objectify.load().type(RefreshKey.class).iterable()) {
 
 			// Determine if expired
 			if (refreshKey.getExpireTime() < context.getActiveAfter()) {
-				this.objectify.delete().entity(refreshKey).now();
+				expiredKeys.add(refreshKey);
 				continue NEXT_KEY;
 			}
 
@@ -86,7 +130,13 @@ public class JwtAuthorityRepositoryImpl implements JwtAuthorityRepository {
 					refreshKey.getEndSalt(), key));
 		}
 
-		// Return the JWT refresh keys
+		// Delete the old keys (asynchronously)
+		if (expiredKeys.size() > 0) {
+			this.objectify.delete().entities(expiredKeys);
+		}
+
+		// Cache and return the JWT refresh keys
+		this.keyCache.cacheRefreshKeys(jwtRefreshKeys, generation);
 		return jwtRefreshKeys;
 	}
 
@@ -103,6 +153,9 @@ public class JwtAuthorityRepositoryImpl implements JwtAuthorityRepository {
 
 		// Save the keys
 		this.objectify.save().entities(refreshKeys).now();
+
+		// Reload keys to include the new keys
+		this.keyCache.invalidate();
 	}
 
 	/**
@@ -0,0 +1,182 @@
+package net.officefloor.app.subscription.jwt;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import net.officefloor.web.jwt.authority.repository.JwtAccessKey;
+import net.officefloor.web.jwt.authority.repository.JwtRefreshKey;
+
+/**
+ * Cache of the deserialised {@link JwtAccessKey} and {@link JwtRefreshKey}
+ * instances.
+ * <p>
+ * Keys are served from the cache until the earliest key expires. To pick up
+ * keys created by other instances, the keys are also re-loaded after the time
+ * to live.
+ * 
+ * @author Daniel Sagenschneider
+ */
+public class JwtKeyCache {
+
+	/**
+	 * Default time to live in milliseconds.
+	 */
+	public static final long DEFAULT_TIME_TO_LIVE = 5 * 60 * 1000;
+
+	/**
+	 * Snapshot of cached keys.
+	 */
+	private static class Snapshot<K> {
+
+		private final List<K> keys;
+
+		private final long earliestExpireTime;
+
+		private final long loadTime;
+
+		private Snapshot(List<K> keys, long earliestExpireTime, long loadTime) {
+			this.keys = keys;
+			this.earliestExpireTime = earliestExpireTime;
+			this.loadTime = loadTime;
+		}
+	}
+
+	/**
+	 * Time to live in milliseconds.
+	 */
+	private final long timeToLive;
+
+	/**
+	 * Generation to avoid a slow load overwriting newly saved keys.
+	 */
+	private final AtomicLong generation = new AtomicLong(0);
+
+	/**
+	 * Cached {@link JwtAccessKey} instances.
+	 */
+	private volatile Snapshot<JwtAccessKey> accessKeys = null;
+
+	/**
+	 * Cached {@link JwtRefreshKey} instances.
+	 */
+	private volatile Snapshot<JwtRefreshKey> refreshKeys = null;
+
+	/**
+	 * Instantiate.
+	 * 
+	 * @param timeToLive Time to live in milliseconds.
+	 */
+	public JwtKeyCache(long timeToLive) {
+		this.timeToLive = timeToLive;
+	}
+
+	/**
+	 * Obtains the generation to be provided on caching loaded keys.
+	 * 
+	 * @return Generation.
+	 */
+	public long getGeneration() {
+		return this.generation.get();
+	}
+
+	/**
+	 * Obtains the cached {@link JwtAccessKey} instances.
+	 * 
+	 * @param activeAfter Time that keys must be active after.
+	 * @return Cached {@link JwtAccessKey} instances or <code>null</code> if
+	 *         require loading.
+	 */
+	public List<JwtAccessKey> getAccessKeys(long activeAfter) {
+		return this.getKeys(this.accessKeys, activeAfter);
+	}
+
+	/**
+	 * Caches the loaded {@link JwtAccessKey} instances.
+	 * 
+	 * @param keys       Loaded {@link JwtAccessKey} instances.
+	 * @param generation Generation obtained before loading the keys.
+	 */
+	public void cacheAccessKeys(List<JwtAccessKey> keys, long generation) {
+		long earliestExpireTime = Long.MAX_VALUE;
+		for (JwtAccessKey key : keys) {
+			earliestExpireTime = Math.min(earliestExpireTime, key.getExpireTime());
+		}
+		Snapshot<JwtAccessKey> snapshot = new Snapshot<>(new ArrayList<>(keys), earliestExpireTime,
+				System.currentTimeMillis());
+		synchronized (this) {
+			if (this.generation.get() == generation) {
+				this.accessKeys = snapshot;
+			}
+		}
+	}
+
+	/**
+	 * Obtains the cached {@link JwtRefreshKey} instances.
+	 * 
+	 * @param activeAfter Time that keys must be active after.
+	 * @return Cached {@link JwtRefreshKey} instances or <code>null</code> if
+	 *         require loading.
+	 */
+	public List<JwtRefreshKey> getRefreshKeys(long activeAfter) {
+		return this.getKeys(this.refreshKeys, activeAfter);
+	}
+
+	/**
+	 * Caches the loaded {@link JwtRefreshKey} instances.
+	 * 
+	 * @param keys       Loaded {@link JwtRefreshKey} instances.
+	 * @param generation Generation obtained before loading the keys.
+	 */
+	public void cacheRefreshKeys(List<JwtRefreshKey> keys, long generation) {
+		long earliestExpireTime = Long.MAX_VALUE;
+		for (JwtRefreshKey key : keys) {
+			earliestExpireTime = Math.min(earliestExpireTime, key.getExpireTime());
+		}
+		Snapshot<JwtRefreshKey> snapshot = new Snapshot<>(new ArrayList<>(keys), earliestExpireTime,
+				System.currentTimeMillis());
+		synchronized (this) {
+			if (this.generation.get() == generation) {
+				this.refreshKeys = snapshot;
+			}
+		}
+	}
+
+	/**
+	 * Invalidates the cache (typically as keys saved).
+	 */
+	public synchronized void invalidate() {
+		this.generation.incrementAndGet();
+		this.accessKeys = null;
+		this.refreshKeys = null;
+	}
+
+	/**
+	 * Obtains the keys from the {@link Snapshot}.
+	 * 
+	 * @param snapshot    {@link Snapshot}.
+	 * @param activeAfter Time that keys must be active after.
+	 * @return Keys or <code>null</code> if require loading.
+	 */
+	private <K> List<K> getKeys(Snapshot<K> snapshot, long activeAfter) {
+
+		// Determine if cached
+		if (snapshot == null) {
+			return null;
+		}
+
+		// Determine if a cached key has expired
+		if (snapshot.earliestExpireTime < activeAfter) {
+			return null;
+		}
+
+		// Determine if stale
+		if ((System.currentTimeMillis() - snapshot.loadTime) >= this.timeToLive) {
+			return null;
+		}
+
+		// Return the keys (copy so cache not altered)
+		return new ArrayList<>(snapshot.keys);
+	}
+
+}
@@ -0,0 +1,63 @@
+package net.officefloor.app.subscription.jwt;
+
+import net.officefloor.frame.api.build.None;
+import net.officefloor.frame.api.managedobject.ManagedObject;
+import net.officefloor.frame.api.managedobject.source.ManagedObjectSource;
+import net.officefloor.frame.api.managedobject.source.ManagedObjectSourceContext;
+import net.officefloor.frame.api.managedobject.source.impl.AbstractManagedObjectSource;
+
+/**
+ * {@link ManagedObjectSource} providing the shared {@link JwtKeyCache}.
+ * 
+ * @author Daniel Sagenschneider
+ */
+public class JwtKeyCacheManagedObjectSource extends AbstractManagedObjectSource<None, None>
+		implements ManagedObject {
+
+	/**
+	 * Name of property for the time to live in milliseconds.
+	 */
+	public static final String PROPERTY_TIME_TO_LIVE = "time.to.live";
+
+	/**
+	 * {@link JwtKeyCache}.
+	 */
+	private JwtKeyCache cache;
+
+	/*
+	 * =================== ManagedObjectSource ======================
+	 */
+
+	@Override
+	protected void loadSpecification(SpecificationContext context) {
+		// No specification
+	}
+
+	@Override
+	protected void loadMetaData(MetaDataContext<None, None> context) throws Exception {
+		ManagedObjectSourceContext<None> mosContext = context.getManagedObjectSourceContext();
+
+		// Create the cache
+		long timeToLive = Long.parseLong(mosContext.getProperty(PROPERTY_TIME_TO_LIVE,
+				String.valueOf(JwtKeyCache.DEFAULT_TIME_TO_LIVE)));
+		this.cache = new JwtKeyCache(timeToLive);
+
+		// Specify meta-data
+		context.setObjectClass(JwtKeyCache.class);
+	}
+
+	@Override
+	protected ManagedObject getManagedObject() throws Throwable {
+		return this;
+	}
+
+	/*
+	 * ====================== ManagedObject =========================
+	 */
+
+	@Override
+	public Object getObject() throws Throwable {
+		return this.cache;
+	}
+
+}
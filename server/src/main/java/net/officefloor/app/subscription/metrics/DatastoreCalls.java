@@ -0,0 +1,157 @@
+/*
+ * OfficeFloor - http://www.officefloor.net
+ * Copyright (C) 2005-2019 Daniel Sagenschneider
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package net.officefloor.app.subscription.metrics;
+
+import java.util.Map;
+import java.util.TreeMap;
+
+import com.googlecode.objectify.Key;
+import com.googlecode.objectify.Objectify;
+
+/**
+ * Counts of the Datastore calls made through a {@link MeteredObjectify}.
+ * <p>
+ * Calls are counted per entity kind and {@link Operation}, so N+1 patterns
+ * (e.g. a get per entity rather than a batch) are easily identified. May be
+ * used directly in tests to assert the number of round trips.
+ * 
+ * @author Daniel Sagenschneider
+ */
+public class DatastoreCalls {
+
+	/**
+	 * Datastore operation.
+	 */
+	public static enum Operation {
+		QUERY, GET, SAVE, DELETE, TRANSACTION
+	}
+
+	/**
+	 * Obtains the name identifying the entity kind and {@link Operation}.
+	 * 
+	 * @param operation {@link Operation}.
+	 * @param kind      Entity kind. May be <code>null</code> if not known.
+	 * @return Name for the call.
+	 */
+	public static String getCallName(Operation operation, String kind) {
+		String name = operation.name().toLowerCase();
+		return (kind == null) ? name : kind + "." + name;
+	}
+
+	/**
+	 * Counts by call name.
+	 */
+	private final Map<String, Integer> counts = new TreeMap<>();
+
+	/**
+	 * Total number of calls.
+	 */
+	private int callCount = 0;
+
+	/**
+	 * Number of entities loaded.
+	 */
+	private int entitiesLoaded = 0;
+
+	/**
+	 * Records a Datastore call.
+	 * 
+	 * @param operation {@link Operation}.
+	 * @param kind      Entity kind. May be <code>null</code> if not known.
+	 */
+	public synchronized void recordCall(Operation operation, String kind) {
+		this.counts.merge(getCallName(operation, kind), 1, Integer::sum);
+		this.callCount++;
+	}
+
+	/**
+	 * Records entities loaded.
+	 * 
+	 * @param count Number of entities loaded.
+	 */
+	public synchronized void recordEntitiesLoaded(int count) {
+		this.entitiesLoaded += count;
+	}
+
+	/**
+	 * Obtains the total number of Datastore calls.
+	 * 
+	 * @return Total number of Datastore calls.
+	 */
+	public synchronized int getCallCount() {
+		return this.callCount;
+	}
+
+	/**
+	 * Obtains the number of Datastore calls for the entity type.
+	 * 
+	 * @param operation  {@link Operation}.
+	 * @param entityType Entity type.
+	 * @return Number of Datastore calls.
+	 */
+	public synchronized int getCallCount(Operation operation, Class<?> entityType) {
+		return this.counts.getOrDefault(getCallName(operation, Key.getKind(entityType)), 0);
+	}
+
+	/**
+	 * Obtains the number of entities loaded.
+	 * 
+	 * @return Number of entities loaded.
+	 */
+	public synchronized int getEntitiesLoaded() {
+		return this.entitiesLoaded;
+	}
+
+	/**
+	 * Obtains the counts by call name.
+	 * 
+	 * @return Counts by call name.
+	 */
+	public synchronized Map<String, Integer> getCallCounts() {
+		return new TreeMap<>(this.counts);
+	}
+
+	/**
+	 * Clears the counts.
+	 */
+	public synchronized void clear() {
+		this.counts.clear();
+		this.callCount = 0;
+		this.entitiesLoaded = 0;
+	}
+
+	/**
+	 * Creates a {@link MeteredObjectify} recording to this.
+	 * 
+	 * @param objectify {@link Objectify}.
+	 * @return {@link Objectify} recording its Datastore calls to this.
+	 */
+	public Objectify meter(Objectify objectify) {
+		return MeteredObjectify.meter(objectify, this);
+	}
+
+	/*
+	 * ===================== Object ======================
+	 */
+
+	@Override
+	public synchronized String toString() {
+		return this.callCount + " Datastore calls loading " + this.entitiesLoaded + " entities " + this.counts;
+	}
+
+}
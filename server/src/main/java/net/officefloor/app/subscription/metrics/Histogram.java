@@ -0,0 +1,175 @@
+/*
+ * OfficeFloor - http://www.officefloor.net
+ * Copyright (C) 2005-2019 Daniel Sagenschneider
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package net.officefloor.app.subscription.metrics;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+import lombok.Value;
+
+/**
+ * Lock free histogram of non-negative values.
+ * <p>
+ * Values are counted in power of two buckets, so recording is a few atomic
+ * increments and the percentiles are accurate to within a factor of two (which
+ * is enough to spot slow procedures).
+ * 
+ * @author Daniel Sagenschneider
+ */
+public class Histogram {
+
+	/**
+	 * Number of buckets (bucket <code>i</code> holds values up to
+	 * <code>2<sup>i</sup> - 1</code>).
+	 */
+	private static final int BUCKET_COUNT = 64;
+
+	/**
+	 * Snapshot of the {@link Histogram}.
+	 */
+	@Value
+	public static class Snapshot {
+		private long count;
+		private long sum;
+		private long max;
+		private long p50;
+		private long p95;
+		private long p99;
+		private Bucket[] buckets;
+	}
+
+	/**
+	 * Non-empty bucket of the {@link Histogram}.
+	 */
+	@Value
+	public static class Bucket {
+		private long upperBound;
+		private long count;
+	}
+
+	/**
+	 * Counts for each bucket.
+	 */
+	private final AtomicLongArray buckets = new AtomicLongArray(BUCKET_COUNT);
+
+	/**
+	 * Number of values recorded.
+	 */
+	private final LongAdder count = new LongAdder();
+
+	/**
+	 * Sum of values recorded.
+	 */
+	private final LongAdder sum = new LongAdder();
+
+	/**
+	 * Maximum value recorded.
+	 */
+	private final AtomicLong max = new AtomicLong(0);
+
+	/**
+	 * Records a value.
+	 * 
+	 * @param value Value. Negative values are recorded as <code>0</code>.
+	 */
+	public void record(long value) {
+		if (value < 0) {
+			value = 0;
+		}
+		this.buckets.incrementAndGet(64 - Long.numberOfLeadingZeros(value));
+		this.count.increment();
+		this.sum.add(value);
+		this.max.accumulateAndGet(value, Math::max);
+	}
+
+	/**
+	 * Obtains the number of values recorded.
+	 * 
+	 * @return Number of values recorded.
+	 */
+	public long getCount() {
+		return this.count.sum();
+	}
+
+	/**
+	 * Obtains a {@link Snapshot} of the {@link Histogram}.
+	 * <p>
+	 * As recording continues during the {@link Snapshot}, the values are only
+	 * approximately consistent with each other.
+	 * 
+	 * @return {@link Snapshot}.
+	 */
+	public Snapshot getSnapshot() {
+
+		// Obtain the bucket counts
+		long[] counts = new long[BUCKET_COUNT];
+		long total = 0;
+		List<Bucket> buckets = new ArrayList<>();
+		for (int i = 0; i < BUCKET_COUNT; i++) {
+			counts[i] = this.buckets.get(i);
+			total += counts[i];
+			if (counts[i] > 0) {
+				buckets.add(new Bucket(upperBound(i), counts[i]));
+			}
+		}
+
+		// Create the snapshot
+		long max = this.max.get();
+		return new Snapshot(total, this.sum.sum(), max, percentile(counts, total, 0.50, max),
+				percentile(counts, total, 0.95, max), percentile(counts, total, 0.99, max),
+				buckets.toArray(new Bucket[buckets.size()]));
+	}
+
+	/**
+	 * Obtains the upper bound of the bucket.
+	 * 
+	 * @param index Index of the bucket.
+	 * @return Upper bound of values in the bucket.
+	 */
+	private static long upperBound(int index) {
+		return (index >= 63) ? Long.MAX_VALUE : (1L << index) - 1;
+	}
+
+	/**
+	 * Obtains the percentile as the upper bound of the bucket containing it.
+	 * 
+	 * @param counts     Bucket counts.
+	 * @param total      Total of the bucket counts.
+	 * @param percentile Percentile (e.g. <code>0.95</code>).
+	 * @param max        Maximum value recorded.
+	 * @return Percentile value.
+	 */
+	private static long percentile(long[] counts, long total, double percentile, long max) {
+		if (total == 0) {
+			return 0;
+		}
+		long rank = (long) Math.ceil(total * percentile);
+		long cumulative = 0;
+		for (int i = 0; i < counts.length; i++) {
+			cumulative += counts[i];
+			if (cumulative >= rank) {
+				return Math.min(upperBound(i), max);
+			}
+		}
+		return max;
+	}
+
+}
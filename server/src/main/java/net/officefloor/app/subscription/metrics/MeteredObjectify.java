@@ -0,0 +1,454 @@
+/*
+ * OfficeFloor - http://www.officefloor.net
+ * Copyright (C) 2005-2019 Daniel Sagenschneider
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package net.officefloor.app.subscription.metrics;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.Map;
+
+import com.googlecode.objectify.Key;
+import com.googlecode.objectify.Objectify;
+import com.googlecode.objectify.ObjectifyService;
+import com.googlecode.objectify.Ref;
+import com.googlecode.objectify.Work;
+
+import net.officefloor.app.subscription.metrics.DatastoreCalls.Operation;
+
+/**
+ * Decorates {@link Objectify} to record the Datastore calls to
+ * {@link DatastoreCalls}.
+ * <p>
+ * The command interfaces (<code>load()</code>, <code>save()</code>, etc) are
+ * decorated until an operation is issued, which is recorded as a Datastore
+ * call against the entity kind. Note that asynchronous loads issued together
+ * may be batched by {@link Objectify} into fewer round trips.
+ * <p>
+ * A transaction is recorded as a call (for its commit). As work within the
+ * transaction uses the transaction's {@link Objectify}, the work is to obtain
+ * it via {@link #ofy()} so its calls are also recorded by entity kind.
+ * Similarly, a {@link Ref} is to be loaded through the {@link Objectify} (rather
+ * than {@link Ref#get()}) for the load to be recorded.
+ * 
+ * @author Daniel Sagenschneider
+ */
+public class MeteredObjectify implements InvocationHandler {
+
+	/**
+	 * Package of the {@link Objectify} command interfaces.
+	 */
+	private static final String COMMAND_PACKAGE = "com.googlecode.objectify.cmd.";
+
+	/**
+	 * Prefix of the {@link Objectify} command interfaces providing query results.
+	 */
+	private static final String QUERY_RESULT_PREFIX = "QueryResult";
+
+	/**
+	 * Names of the load operations that are queries.
+	 */
+	private static final String[] QUERY_OPERATIONS = new String[] { "list", "first", "iterable", "iterator", "count" };
+
+	/**
+	 * Kind of object being proxied.
+	 */
+	private static enum Kind {
+		OBJECTIFY, COMMAND, RESULTS
+	}
+
+	/**
+	 * Command being built.
+	 */
+	private static enum Command {
+		LOAD, SAVE, DELETE, OTHER
+	}
+
+	/**
+	 * {@link DatastoreCalls} of the transaction work executing on the thread.
+	 */
+	private static final ThreadLocal<DatastoreCalls> TRANSACTION_CALLS = new ThreadLocal<>();
+
+	/**
+	 * Obtains the current {@link Objectify}, being the transaction's
+	 * {@link Objectify} within transaction work.
+	 * <p>
+	 * This is a drop in replacement for {@link ObjectifyService#ofy()} that
+	 * meters the transaction's {@link Objectify} when the transaction is started
+	 * from a metered {@link Objectify}.
+	 * 
+	 * @return Current {@link Objectify}.
+	 */
+	public static Objectify ofy() {
+		Objectify objectify = ObjectifyService.ofy();
+		DatastoreCalls calls = TRANSACTION_CALLS.get();
+		return (calls == null) ? objectify : meter(objectify, calls);
+	}
+
+	/**
+	 * Decorates the {@link Objectify}.
+	 * 
+	 * @param objectify {@link Objectify}.
+	 * @param calls     {@link DatastoreCalls}.
+	 * @return Metered {@link Objectify}. Should the {@link Objectify} already be
+	 *         metered, it is returned as is.
+	 */
+	public static Objectify meter(Objectify objectify, DatastoreCalls calls) {
+
+		// Determine if already metered
+		if (getDatastoreCalls(objectify) != null) {
+			return objectify;
+		}
+
+		// Meter the objectify
+		return proxy(Objectify.class,
+				new MeteredObjectify(objectify, calls, Kind.OBJECTIFY, Command.OTHER, null, false));
+	}
+
+	/**
+	 * Obtains the {@link DatastoreCalls} of the {@link Objectify}.
+	 * 
+	 * @param objectify {@link Objectify}.
+	 * @return {@link DatastoreCalls} or <code>null</code> if the {@link Objectify}
+	 *         is not metered.
+	 */
+	public static DatastoreCalls getDatastoreCalls(Objectify objectify) {
+		if (Proxy.isProxyClass(objectify.getClass())) {
+			InvocationHandler handler = Proxy.getInvocationHandler(objectify);
+			if (handler instanceof MeteredObjectify) {
+				return ((MeteredObjectify) handler).calls;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Creates the proxy.
+	 * 
+	 * @param <T>     Type of proxy.
+	 * @param type    Interface for the proxy.
+	 * @param handler {@link MeteredObjectify} handling the proxy.
+	 * @return Proxy.
+	 */
+	private static <T> T proxy(Class<T> type, MeteredObjectify handler) {
+		return type.cast(Proxy.newProxyInstance(type.getClassLoader(), new Class[] { type }, handler));
+	}
+
+	/**
+	 * Target of the proxy.
+	 */
+	private final Object target;
+
+	/**
+	 * {@link DatastoreCalls}.
+	 */
+	private final DatastoreCalls calls;
+
+	/**
+	 * {@link Kind} of target.
+	 */
+	private final Kind kind;
+
+	/**
+	 * {@link Command} being built.
+	 */
+	private final Command command;
+
+	/**
+	 * Entity kind. May be <code>null</code> if not yet known.
+	 */
+	private final String entityKind;
+
+	/**
+	 * Indicates if loading entities (rather than keys).
+	 */
+	private final boolean isLoadEntities;
+
+	/**
+	 * Instantiate.
+	 * 
+	 * @param target         Target of the proxy.
+	 * @param calls          {@link DatastoreCalls}.
+	 * @param kind           {@link Kind} of target.
+	 * @param command        {@link Command} being built.
+	 * @param entityKind     Entity kind. May be <code>null</code> if not yet
+	 *                       known.
+	 * @param isLoadEntities Indicates if loading entities.
+	 */
+	private MeteredObjectify(Object target, DatastoreCalls calls, Kind kind, Command command, String entityKind,
+			boolean isLoadEntities) {
+		this.target = target;
+		this.calls = calls;
+		this.kind = kind;
+		this.command = command;
+		this.entityKind = entityKind;
+		this.isLoadEntities = isLoadEntities;
+	}
+
+	/**
+	 * Creates the {@link MeteredObjectify} for the result.
+	 * 
+	 * @param target         Target of the proxy.
+	 * @param kind           {@link Kind} of target.
+	 * @param command        {@link Command} being built.
+	 * @param entityKind     Entity kind.
+	 * @param isLoadEntities Indicates if loading entities.
+	 * @return {@link MeteredObjectify}.
+	 */
+	private MeteredObjectify next(Object target, Kind kind, Command command, String entityKind,
+			boolean isLoadEntities) {
+		return new MeteredObjectify(target, this.calls, kind, command, entityKind, isLoadEntities);
+	}
+
+	/*
+	 * ================= InvocationHandler ===================
+	 */
+
+	@Override
+	public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+
+		// Handle object methods
+		if (method.getDeclaringClass() == Object.class) {
+			return "equals".equals(method.getName()) ? (proxy == args[0]) : method.invoke(this.target, args);
+		}
+
+		// Determine if transaction
+		String methodName = method.getName();
+		boolean isTransaction = (this.kind == Kind.OBJECTIFY)
+				&& (methodName.startsWith("transact") || methodName.equals("execute"));
+
+		// Invoke on the target
+		Object result;
+		try {
+			result = method.invoke(this.target, isTransaction ? this.meterWork(args) : args);
+		} catch (InvocationTargetException ex) {
+			throw ex.getCause();
+		}
+
+		// Keep metering the objectify
+		Class<?> returnType = method.getReturnType();
+		if (returnType == Objectify.class) {
+			return (result == null) ? null : meter((Objectify) result, this.calls);
+		}
+
+		// Meter based on the proxied
+		switch (this.kind) {
+		case OBJECTIFY:
+			if (isCommand(returnType)) {
+				Command command;
+				switch (methodName) {
+				case "load":
+					command = Command.LOAD;
+					break;
+				case "save":
+					command = Command.SAVE;
+					break;
+				case "delete":
+					command = Command.DELETE;
+					break;
+				default:
+					command = Command.OTHER;
+					break;
+				}
+				return proxy(returnType, this.next(result, Kind.COMMAND, command, null, command == Command.LOAD));
+			} else if (isTransaction) {
+				this.calls.recordCall(Operation.TRANSACTION, null);
+			}
+			return result;
+
+		case RESULTS:
+			// Count the entities as iterated
+			if (this.isLoadEntities && "next".equals(methodName)) {
+				this.calls.recordEntitiesLoaded(1);
+			}
+			return (result instanceof Iterator) ? proxy(returnType,
+					this.next(result, Kind.RESULTS, this.command, this.entityKind, this.isLoadEntities)) : result;
+
+		default:
+			if (methodName.startsWith("get")) {
+				return result; // command details (not an operation)
+
+			} else if (isCommand(returnType) && (!returnType.getSimpleName().startsWith(QUERY_RESULT_PREFIX))) {
+				// Continue building the command (keys only loads no entities)
+				String entityKind = ((this.entityKind == null) && ("type".equals(methodName)))
+						? getEntityKind(args)
+						: this.entityKind;
+				return proxy(returnType, this.next(result, Kind.COMMAND, this.command, entityKind,
+						this.isLoadEntities && (!"keys".equals(methodName))));
+			}
+
+			// Operation issued
+			String entityKind = (this.entityKind != null) ? this.entityKind : getEntityKind(args);
+			this.calls.recordCall(this.getOperation(methodName), entityKind);
+			if (result instanceof Collection) {
+				this.recordEntitiesLoaded(((Collection<?>) result).size());
+			} else if (result instanceof Map) {
+				this.recordEntitiesLoaded(((Map<?, ?>) result).size());
+			} else if ((result instanceof Iterable) || (result instanceof Iterator)) {
+				return returnType.isInterface()
+						? proxy(returnType,
+								this.next(result, Kind.RESULTS, this.command, entityKind, this.isLoadEntities))
+						: result;
+			} else if ((result != null) && (!(result instanceof Number))) {
+				this.recordEntitiesLoaded(1);
+			}
+			return result;
+		}
+	}
+
+	/**
+	 * Meters the transaction work, so {@link #ofy()} within the work provides the
+	 * transaction's {@link Objectify} recording to the {@link DatastoreCalls}.
+	 * 
+	 * @param args Arguments to the transaction.
+	 * @return Arguments with the work metered.
+	 */
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	private Object[] meterWork(Object[] args) {
+		Object[] meteredArgs = args.clone();
+		for (int i = 0; i < meteredArgs.length; i++) {
+			Object arg = meteredArgs[i];
+			if (arg instanceof Work) {
+				Work work = (Work) arg;
+				meteredArgs[i] = (Work) () -> this.runWork(work);
+			} else if (arg instanceof Runnable) {
+				Runnable work = (Runnable) arg;
+				meteredArgs[i] = (Runnable) () -> this.runWork(() -> {
+					work.run();
+					return null;
+				});
+			}
+		}
+		return meteredArgs;
+	}
+
+	/**
+	 * Runs the transaction work with {@link #ofy()} recording to the
+	 * {@link DatastoreCalls}.
+	 * 
+	 * @param <R>  Result type.
+	 * @param work {@link Work}.
+	 * @return Result of the {@link Work}.
+	 */
+	private <R> R runWork(Work<R> work) {
+		DatastoreCalls previous = TRANSACTION_CALLS.get();
+		TRANSACTION_CALLS.set(this.calls);
+		try {
+			return work.run();
+		} finally {
+			if (previous == null) {
+				TRANSACTION_CALLS.remove();
+			} else {
+				TRANSACTION_CALLS.set(previous);
+			}
+		}
+	}
+
+	/**
+	 * Obtains the {@link Operation} issued.
+	 * 
+	 * @param methodName Name of method issuing the {@link Operation}.
+	 * @return {@link Operation}.
+	 */
+	private Operation getOperation(String methodName) {
+		switch (this.command) {
+		case SAVE:
+			return Operation.SAVE;
+		case DELETE:
+			return Operation.DELETE;
+		case LOAD:
+			return Arrays.asList(QUERY_OPERATIONS).contains(methodName) ? Operation.QUERY : Operation.GET;
+		default:
+			return Operation.TRANSACTION;
+		}
+	}
+
+	/**
+	 * Records the entities loaded.
+	 * 
+	 * @param count Number of entities.
+	 */
+	private void recordEntitiesLoaded(int count) {
+		if (this.isLoadEntities) {
+			this.calls.recordEntitiesLoaded(count);
+		}
+	}
+
+	/**
+	 * Determines if {@link Objectify} command interface.
+	 * 
+	 * @param type Type.
+	 * @return <code>true</code> if {@link Objectify} command interface.
+	 */
+	private static boolean isCommand(Class<?> type) {
+		return type.isInterface() && type.getName().startsWith(COMMAND_PACKAGE);
+	}
+
+	/**
+	 * Obtains the entity kind from the arguments.
+	 * 
+	 * @param args Arguments.
+	 * @return Entity kind or <code>null</code> if not able to determine.
+	 */
+	private static String getEntityKind(Object[] args) {
+		return ((args == null) || (args.length == 0)) ? null : getEntityKind(args[0]);
+	}
+
+	/**
+	 * Obtains the entity kind from the argument.
+	 * 
+	 * @param arg Argument.
+	 * @return Entity kind or <code>null</code> if not able to determine.
+	 */
+	private static String getEntityKind(Object arg) {
+		if ((arg == null) || (arg instanceof Number) || (arg instanceof String)) {
+			return null; // identifier
+
+		} else if (arg instanceof Class) {
+			return Key.getKind((Class<?>) arg);
+
+		} else if (arg instanceof Key) {
+			return ((Key<?>) arg).getKind();
+
+		} else if (arg instanceof Ref) {
+			return ((Ref<?>) arg).getKey().getKind();
+
+		} else if (arg instanceof Object[]) {
+			return getEntityKind(Arrays.asList((Object[]) arg));
+
+		} else if (arg instanceof Iterable) {
+			// Only provide kind if all the same kind
+			String kind = null;
+			for (Object value : (Iterable<?>) arg) {
+				String valueKind = getEntityKind(value);
+				if ((valueKind == null) || ((kind != null) && (!kind.equals(valueKind)))) {
+					return null; // mixed kinds
+				}
+				kind = valueKind;
+			}
+			return kind;
+
+		} else {
+			return Key.getKind(arg.getClass());
+		}
+	}
+
+}
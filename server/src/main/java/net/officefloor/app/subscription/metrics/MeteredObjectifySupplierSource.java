@@ -0,0 +1,127 @@
+/*
+ * OfficeFloor - http://www.officefloor.net
+ * Copyright (C) 2005-2019 Daniel Sagenschneider
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package net.officefloor.app.subscription.metrics;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.function.UnaryOperator;
+
+import com.googlecode.objectify.Objectify;
+
+import net.officefloor.compile.spi.supplier.source.SupplierSourceContext;
+import net.officefloor.frame.api.managedobject.ManagedObject;
+import net.officefloor.frame.api.managedobject.source.ManagedObjectSource;
+import net.officefloor.frame.api.managedobject.source.ManagedObjectUser;
+import net.officefloor.nosql.objectify.ObjectifySupplierSource;
+
+/**
+ * {@link ObjectifySupplierSource} supplying a {@link MeteredObjectify}.
+ * <p>
+ * The supplied {@link Objectify} {@link ManagedObjectSource} is decorated, so
+ * each request is injected a {@link MeteredObjectify} recording to the
+ * request's own {@link DatastoreCalls}. Configuration (e.g. the entity
+ * locators) is as per the {@link ObjectifySupplierSource}.
+ * 
+ * @author Daniel Sagenschneider
+ */
+public class MeteredObjectifySupplierSource extends ObjectifySupplierSource {
+
+	/**
+	 * Decorates the target to transform the arguments and result of invoking the
+	 * named method.
+	 * 
+	 * @param <T>        Type of target.
+	 * @param target     Target.
+	 * @param methodName Name of method to decorate.
+	 * @param arguments  Transforms the arguments.
+	 * @param result     Transforms the result.
+	 * @return Decorated target implementing all interfaces of the target.
+	 */
+	@SuppressWarnings("unchecked")
+	private static <T> T decorate(T target, String methodName, UnaryOperator<Object[]> arguments,
+			UnaryOperator<Object> result) {
+
+		// Obtain all interfaces of the target
+		Set<Class<?>> interfaces = new LinkedHashSet<>();
+		for (Class<?> type = target.getClass(); type != null; type = type.getSuperclass()) {
+			interfaces.addAll(Arrays.asList(type.getInterfaces()));
+		}
+
+		// Decorate the target
+		return (T) Proxy.newProxyInstance(target.getClass().getClassLoader(),
+				interfaces.toArray(new Class[interfaces.size()]), (proxy, method, args) -> {
+					boolean isDecorate = methodName.equals(method.getName());
+					try {
+						Object value = method.invoke(target, isDecorate ? arguments.apply(args) : args);
+						return isDecorate ? result.apply(value) : value;
+					} catch (InvocationTargetException ex) {
+						throw ex.getCause();
+					}
+				});
+	}
+
+	/**
+	 * Decorates the {@link Objectify} {@link ManagedObjectSource} to provide a
+	 * {@link MeteredObjectify}.
+	 * 
+	 * @param managedObjectSource {@link Objectify} {@link ManagedObjectSource}.
+	 * @return Decorated {@link ManagedObjectSource}.
+	 */
+	private static ManagedObjectSource<?, ?> meter(ManagedObjectSource<?, ?> managedObjectSource) {
+		return decorate(managedObjectSource, "sourceManagedObject", (sourceArgs) -> {
+			ManagedObjectUser user = (ManagedObjectUser) sourceArgs[0];
+			sourceArgs[0] = decorate(user, "setManagedObject", (userArgs) -> {
+				userArgs[0] = meter((ManagedObject) userArgs[0]);
+				return userArgs;
+			}, UnaryOperator.identity());
+			return sourceArgs;
+		}, UnaryOperator.identity());
+	}
+
+	/**
+	 * Decorates the {@link Objectify} {@link ManagedObject} to provide a
+	 * {@link MeteredObjectify}.
+	 * 
+	 * @param managedObject {@link Objectify} {@link ManagedObject}.
+	 * @return Decorated {@link ManagedObject} recording to its own
+	 *         {@link DatastoreCalls}.
+	 */
+	private static ManagedObject meter(ManagedObject managedObject) {
+		DatastoreCalls calls = new DatastoreCalls();
+		return decorate(managedObject, "getObject", UnaryOperator.identity(),
+				(object) -> (object == null) ? null : MeteredObjectify.meter((Objectify) object, calls));
+	}
+
+	/*
+	 * ===================== SupplierSource ======================
+	 */
+
+	@Override
+	public void supply(SupplierSourceContext context) throws Exception {
+		super.supply(decorate(context, "addManagedObjectSource", (args) -> {
+			if ((args.length == 3) && (Objectify.class.equals(args[1]))) {
+				args[2] = meter((ManagedObjectSource<?, ?>) args[2]);
+			}
+			return args;
+		}, UnaryOperator.identity()));
+	}
+
+}
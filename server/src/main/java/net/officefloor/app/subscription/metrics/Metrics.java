@@ -0,0 +1,242 @@
+/*
+ * OfficeFloor - http://www.officefloor.net
+ * Copyright (C) 2005-2019 Daniel Sagenschneider
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package net.officefloor.app.subscription.metrics;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import lombok.Value;
+
+/**
+ * Shared registry of the {@link Histogram} instances for each endpoint, along
+ * with the Datastore calls by entity kind.
+ * <p>
+ * Times are recorded in microseconds. The number of endpoints is bounded, so
+ * requests to arbitrary paths can not grow the registry without limit.
+ * 
+ * @author Daniel Sagenschneider
+ */
+public class Metrics {
+
+	/**
+	 * Default maximum Datastore round trips for a request before warning.
+	 */
+	public static final int DEFAULT_MAX_ROUND_TRIPS = 20;
+
+	/**
+	 * Maximum number of endpoints recorded.
+	 */
+	public static final int MAX_ENDPOINTS = 100;
+
+	/**
+	 * Name of the endpoint recording requests once {@link #MAX_ENDPOINTS} are
+	 * recorded.
+	 */
+	public static final String OTHER_ENDPOINT = "other";
+
+	/**
+	 * {@link Histogram} instances for an endpoint.
+	 */
+	public static class EndpointMetrics {
+
+		private final Histogram wallTime = new Histogram();
+
+		private final Histogram datastoreCalls = new Histogram();
+
+		private final Histogram entitiesLoaded = new Histogram();
+
+		private final Histogram payPalTime = new Histogram();
+
+		private final LongAdder failures = new LongAdder();
+
+		public Histogram getWallTime() {
+			return this.wallTime;
+		}
+
+		public Histogram getDatastoreCalls() {
+			return this.datastoreCalls;
+		}
+
+		public Histogram getEntitiesLoaded() {
+			return this.entitiesLoaded;
+		}
+
+		public Histogram getPayPalTime() {
+			return this.payPalTime;
+		}
+
+		public long getFailureCount() {
+			return this.failures.sum();
+		}
+	}
+
+	/**
+	 * Snapshot of the {@link EndpointMetrics}.
+	 */
+	@Value
+	public static class EndpointSnapshot {
+		private Histogram.Snapshot wallTime;
+		private Histogram.Snapshot datastoreCalls;
+		private Histogram.Snapshot entitiesLoaded;
+		private Histogram.Snapshot payPalTime;
+		private long failures;
+	}
+
+	/**
+	 * {@link EndpointMetrics} by endpoint name.
+	 */
+	private final ConcurrentMap<String, EndpointMetrics> endpoints = new ConcurrentHashMap<>();
+
+	/**
+	 * Datastore calls by call name.
+	 */
+	private final ConcurrentMap<String, LongAdder> datastoreCalls = new ConcurrentHashMap<>();
+
+	/**
+	 * Number of requests exceeding the maximum round trips.
+	 */
+	private final LongAdder roundTripWarnings = new LongAdder();
+
+	/**
+	 * Maximum Datastore round trips for a request before warning.
+	 */
+	private final int maxRoundTrips;
+
+	/**
+	 * Instantiate.
+	 * 
+	 * @param maxRoundTrips Maximum Datastore round trips for a request before
+	 *                      warning.
+	 */
+	public Metrics(int maxRoundTrips) {
+		this.maxRoundTrips = maxRoundTrips;
+	}
+
+	/**
+	 * Obtains the maximum Datastore round trips for a request before warning.
+	 * 
+	 * @return Maximum Datastore round trips for a request before warning.
+	 */
+	public int getMaxRoundTrips() {
+		return this.maxRoundTrips;
+	}
+
+	/**
+	 * Records the servicing of a request.
+	 * 
+	 * @param endpoint       Name of the endpoint.
+	 * @param wallTime       Wall time in nanoseconds.
+	 * @param datastoreCalls Number of Datastore calls.
+	 * @param entitiesLoaded Number of entities loaded.
+	 * @param payPalTime     Time in nanoseconds waiting on PayPal.
+	 * @param isFailure      Indicates if the request failed.
+	 */
+	public void recordEndpoint(String endpoint, long wallTime, int datastoreCalls, int entitiesLoaded,
+			long payPalTime, boolean isFailure) {
+		EndpointMetrics metrics = this.getOrCreateEndpointMetrics(endpoint);
+		metrics.wallTime.record(TimeUnit.NANOSECONDS.toMicros(wallTime));
+		metrics.datastoreCalls.record(datastoreCalls);
+		metrics.entitiesLoaded.record(entitiesLoaded);
+		metrics.payPalTime.record(TimeUnit.NANOSECONDS.toMicros(payPalTime));
+		if (isFailure) {
+			metrics.failures.increment();
+		}
+	}
+
+	/**
+	 * Obtains the {@link EndpointMetrics}, creating it if within
+	 * {@link #MAX_ENDPOINTS}.
+	 * 
+	 * @param endpoint Name of the endpoint.
+	 * @return {@link EndpointMetrics}.
+	 */
+	private EndpointMetrics getOrCreateEndpointMetrics(String endpoint) {
+		EndpointMetrics metrics = this.endpoints.get(endpoint);
+		if (metrics != null) {
+			return metrics;
+		}
+		String name = (this.endpoints.size() < MAX_ENDPOINTS) ? endpoint : OTHER_ENDPOINT;
+		return this.endpoints.computeIfAbsent(name, (key) -> new EndpointMetrics());
+	}
+
+	/**
+	 * Records the Datastore calls of a request.
+	 * 
+	 * @param calls {@link DatastoreCalls} of the request.
+	 * @return <code>true</code> if the request exceeded the maximum round trips.
+	 */
+	public boolean recordRequest(DatastoreCalls calls) {
+		calls.getCallCounts().forEach((name, count) -> this.datastoreCalls
+				.computeIfAbsent(name, (key) -> new LongAdder()).add(count));
+		boolean isExceeded = (calls.getCallCount() > this.maxRoundTrips);
+		if (isExceeded) {
+			this.roundTripWarnings.increment();
+		}
+		return isExceeded;
+	}
+
+	/**
+	 * Obtains the Datastore calls by call name.
+	 * 
+	 * @return Datastore calls by call name.
+	 */
+	public Map<String, Long> getDatastoreCalls() {
+		Map<String, Long> calls = new TreeMap<>();
+		this.datastoreCalls.forEach((name, count) -> calls.put(name, count.sum()));
+		return calls;
+	}
+
+	/**
+	 * Obtains the number of requests exceeding the maximum round trips.
+	 * 
+	 * @return Number of requests exceeding the maximum round trips.
+	 */
+	public long getRoundTripWarningCount() {
+		return this.roundTripWarnings.sum();
+	}
+
+	/**
+	 * Obtains the {@link EndpointMetrics}.
+	 * 
+	 * @param endpoint Name of the endpoint.
+	 * @return {@link EndpointMetrics} or <code>null</code> if endpoint not yet
+	 *         recorded.
+	 */
+	public EndpointMetrics getEndpointMetrics(String endpoint) {
+		return this.endpoints.get(endpoint);
+	}
+
+	/**
+	 * Obtains the {@link EndpointSnapshot} instances.
+	 * 
+	 * @return {@link EndpointSnapshot} by endpoint name.
+	 */
+	public Map<String, EndpointSnapshot> getSnapshot() {
+		Map<String, EndpointSnapshot> snapshot = new TreeMap<>();
+		this.endpoints.forEach((endpoint, metrics) -> snapshot.put(endpoint,
+				new EndpointSnapshot(metrics.wallTime.getSnapshot(), metrics.datastoreCalls.getSnapshot(),
+						metrics.entitiesLoaded.getSnapshot(), metrics.payPalTime.getSnapshot(),
+						metrics.failures.sum())));
+		return snapshot;
+	}
+
+}
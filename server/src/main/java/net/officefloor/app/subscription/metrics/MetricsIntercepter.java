@@ -0,0 +1,96 @@
+/*
+ * OfficeFloor - http://www.officefloor.net
+ * Copyright (C) 2005-2019 Daniel Sagenschneider
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package net.officefloor.app.subscription.metrics;
+
+import net.officefloor.frame.api.function.FlowCallback;
+import net.officefloor.plugin.clazz.FlowInterface;
+import net.officefloor.server.http.HttpRequest;
+import net.officefloor.server.http.ServerHttpConnection;
+
+/**
+ * Intercepts each request to record its {@link RequestMetrics}.
+ * <p>
+ * The request is completed on the servicing flow completing, so the metrics
+ * include all procedures servicing the request. An escalation fails the
+ * request before being propagated for handling.
+ * 
+ * @author Daniel Sagenschneider
+ */
+public class MetricsIntercepter {
+
+	/**
+	 * Number of leading path segments identifying the endpoint. Further segments
+	 * are path parameters (e.g. domain name or order identifier).
+	 */
+	public static final int ENDPOINT_PATH_SEGMENTS = 2;
+
+	/**
+	 * Flows to service the request.
+	 */
+	@FlowInterface
+	public static interface Flows {
+		void service(FlowCallback callback);
+	}
+
+	public static void intercept(ServerHttpConnection connection, RequestMetrics metrics, Flows flows) {
+
+		// Start the request
+		metrics.start(getEndpoint(connection.getRequest()));
+
+		// Service the request, completing on servicing complete
+		flows.service((escalation) -> {
+			if (escalation != null) {
+				metrics.fail();
+				throw escalation;
+			}
+			metrics.complete();
+		});
+	}
+
+	/**
+	 * Obtains the name of the endpoint for the {@link HttpRequest}.
+	 * 
+	 * @param request {@link HttpRequest}.
+	 * @return Name of the endpoint.
+	 */
+	public static String getEndpoint(HttpRequest request) {
+
+		// Obtain the path (without query string)
+		String path = request.getUri();
+		int queryIndex = path.indexOf('?');
+		if (queryIndex >= 0) {
+			path = path.substring(0, queryIndex);
+		}
+
+		// Replace the path parameters
+		StringBuilder endpoint = new StringBuilder();
+		endpoint.append(request.getMethod().getName()).append(' ');
+		int segmentCount = 0;
+		for (String segment : path.split("/")) {
+			if (segment.length() > 0) {
+				endpoint.append('/').append((segmentCount < ENDPOINT_PATH_SEGMENTS) ? segment : "*");
+				segmentCount++;
+			}
+		}
+		if (segmentCount == 0) {
+			endpoint.append('/');
+		}
+		return endpoint.toString();
+	}
+
+}
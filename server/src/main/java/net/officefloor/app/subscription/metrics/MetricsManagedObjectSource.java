@@ -0,0 +1,80 @@
+/*
+ * OfficeFloor - http://www.officefloor.net
+ * Copyright (C) 2005-2019 Daniel Sagenschneider
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package net.officefloor.app.subscription.metrics;
+
+import net.officefloor.frame.api.build.None;
+import net.officefloor.frame.api.managedobject.ManagedObject;
+import net.officefloor.frame.api.managedobject.source.ManagedObjectSource;
+import net.officefloor.frame.api.managedobject.source.ManagedObjectSourceContext;
+import net.officefloor.frame.api.managedobject.source.impl.AbstractManagedObjectSource;
+
+/**
+ * {@link ManagedObjectSource} providing the shared {@link Metrics}.
+ * 
+ * @author Daniel Sagenschneider
+ */
+public class MetricsManagedObjectSource extends AbstractManagedObjectSource<None, None> implements ManagedObject {
+
+	/**
+	 * Name of property for the maximum Datastore round trips for a request before
+	 * warning.
+	 */
+	public static final String PROPERTY_MAX_ROUND_TRIPS = "max.round.trips";
+
+	/**
+	 * {@link Metrics}.
+	 */
+	private Metrics metrics;
+
+	/*
+	 * =================== ManagedObjectSource ======================
+	 */
+
+	@Override
+	protected void loadSpecification(SpecificationContext context) {
+		// No specification
+	}
+
+	@Override
+	protected void loadMetaData(MetaDataContext<None, None> context) throws Exception {
+		ManagedObjectSourceContext<None> mosContext = context.getManagedObjectSourceContext();
+
+		// Create the metrics
+		int maxRoundTrips = Integer.parseInt(
+				mosContext.getProperty(PROPERTY_MAX_ROUND_TRIPS, String.valueOf(Metrics.DEFAULT_MAX_ROUND_TRIPS)));
+		this.metrics = new Metrics(maxRoundTrips);
+
+		// Specify meta-data
+		context.setObjectClass(Metrics.class);
+	}
+
+	@Override
+	protected ManagedObject getManagedObject() throws Throwable {
+		return this;
+	}
+
+	/*
+	 * ====================== ManagedObject =========================
+	 */
+
+	@Override
+	public Object getObject() throws Throwable {
+		return this.metrics;
+	}
+
+}
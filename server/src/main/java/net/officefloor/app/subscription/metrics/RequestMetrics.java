@@ -0,0 +1,156 @@
+/*
+ * OfficeFloor - http://www.officefloor.net
+ * Copyright (C) 2005-2019 Daniel Sagenschneider
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package net.officefloor.app.subscription.metrics;
+
+import java.util.logging.Logger;
+
+import com.googlecode.objectify.Objectify;
+
+import net.officefloor.plugin.clazz.Dependency;
+
+/**
+ * Collects the {@link Metrics} of servicing a request.
+ * <p>
+ * The {@link MetricsIntercepter} starts the request and completes (or fails)
+ * it once all procedures servicing the request are complete, so procedures
+ * need not be instrumented. The Datastore calls are those of the request's
+ * {@link Objectify} (metered by the {@link MeteredObjectifySupplierSource}).
+ * <p>
+ * On completing the request, its Datastore calls are recorded by entity kind
+ * and a warning is logged should the request exceed the maximum round trips
+ * (typically indicating an N+1 pattern).
+ * <p>
+ * The procedures of a request may execute on different threads (e.g. the
+ * PayPal team), so access is synchronized.
+ * 
+ * @author Daniel Sagenschneider
+ */
+public class RequestMetrics {
+
+	/**
+	 * {@link Logger}.
+	 */
+	private static final Logger LOGGER = Logger.getLogger(RequestMetrics.class.getName());
+
+	private @Dependency Metrics metrics;
+
+	private @Dependency Objectify objectify;
+
+	/**
+	 * Name of the endpoint servicing the request.
+	 */
+	private String endpoint = null;
+
+	/**
+	 * Start time of the request.
+	 */
+	private long startTime;
+
+	/**
+	 * Time in nanoseconds the request has waited on PayPal.
+	 */
+	private long payPalTime = 0;
+
+	/**
+	 * Default constructor for dependency injection.
+	 */
+	public RequestMetrics() {
+	}
+
+	/**
+	 * Instantiate.
+	 * 
+	 * @param metrics   {@link Metrics}.
+	 * @param objectify {@link Objectify} of the request. Datastore calls are only
+	 *                  recorded if metered.
+	 */
+	public RequestMetrics(Metrics metrics, Objectify objectify) {
+		this.metrics = metrics;
+		this.objectify = objectify;
+	}
+
+	/**
+	 * Starts the request.
+	 * 
+	 * @param endpoint Name of the endpoint servicing the request.
+	 */
+	public synchronized void start(String endpoint) {
+		this.endpoint = endpoint;
+		this.startTime = System.nanoTime();
+	}
+
+	/**
+	 * Completes the request.
+	 */
+	public void complete() {
+		this.record(false);
+	}
+
+	/**
+	 * Fails the request.
+	 */
+	public void fail() {
+		this.record(true);
+	}
+
+	/**
+	 * Records a PayPal request.
+	 * 
+	 * @param latency Latency in nanoseconds of the PayPal request.
+	 */
+	public synchronized void recordPayPal(long latency) {
+		this.payPalTime += latency;
+	}
+
+	/**
+	 * Obtains the {@link DatastoreCalls} of the request.
+	 * 
+	 * @return {@link DatastoreCalls} of the request.
+	 */
+	public DatastoreCalls getDatastoreCalls() {
+		DatastoreCalls calls = (this.objectify == null) ? null : MeteredObjectify.getDatastoreCalls(this.objectify);
+		return (calls != null) ? calls : new DatastoreCalls();
+	}
+
+	/**
+	 * Records the request.
+	 * 
+	 * @param isFailure Indicates if the request failed.
+	 */
+	private synchronized void record(boolean isFailure) {
+
+		// Only record once for started request
+		if (this.endpoint == null) {
+			return;
+		}
+		String endpoint = this.endpoint;
+		this.endpoint = null;
+
+		// Record servicing the request
+		DatastoreCalls calls = this.getDatastoreCalls();
+		this.metrics.recordEndpoint(endpoint, System.nanoTime() - this.startTime, calls.getCallCount(),
+				calls.getEntitiesLoaded(), this.payPalTime, isFailure);
+
+		// Record the Datastore calls (warning if too many round trips)
+		if (this.metrics.recordRequest(calls)) {
+			LOGGER.warning("Request " + endpoint + " exceeded " + this.metrics.getMaxRoundTrips()
+					+ " Datastore round trips: " + calls);
+		}
+	}
+
+}
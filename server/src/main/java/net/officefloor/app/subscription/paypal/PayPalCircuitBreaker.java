@@ -0,0 +1,329 @@
+/*
+ * OfficeFloor - http://www.officefloor.net
+ * Copyright (C) 2005-2019 Daniel Sagenschneider
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package net.officefloor.app.subscription.paypal;
+
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Bulkhead and circuit breaker for the PayPal requests.
+ * <p>
+ * The bulkhead limits the number of concurrent PayPal requests, so a slow
+ * PayPal does not hold all threads of the server. The circuit breaker opens on
+ * consecutive failed (or slow) PayPal requests, so requests fail fast until
+ * PayPal recovers.
+ * <p>
+ * Requests wait briefly for capacity in the bulkhead, so a burst of requests
+ * queues rather than being rejected. PayPal requests are also bounded by the
+ * request timeout, so a hung PayPal connection releases its capacity.
+ * 
+ * @author Daniel Sagenschneider
+ */
+public class PayPalCircuitBreaker {
+
+	/**
+	 * Default maximum number of concurrent PayPal requests. This matches the size
+	 * of the {@link PayPalClient} team.
+	 */
+	public static final int DEFAULT_MAX_CONCURRENT = 20;
+
+	/**
+	 * Default milliseconds to wait for capacity in the bulkhead.
+	 */
+	public static final long DEFAULT_ACQUIRE_TIMEOUT = 1_000;
+
+	/**
+	 * Default milliseconds to connect to and read from PayPal.
+	 */
+	public static final int DEFAULT_REQUEST_TIMEOUT = 30_000;
+
+	/**
+	 * Default number of consecutive failures to open the circuit.
+	 */
+	public static final int DEFAULT_FAILURE_THRESHOLD = 5;
+
+	/**
+	 * Default latency in milliseconds for a PayPal request to be considered a
+	 * failure.
+	 */
+	public static final long DEFAULT_SLOW_THRESHOLD = 10_000;
+
+	/**
+	 * Default milliseconds the circuit stays open before trialling a request.
+	 */
+	public static final long DEFAULT_OPEN_DURATION = 30_000;
+
+	/**
+	 * {@link Logger}.
+	 */
+	private static final Logger LOGGER = Logger.getLogger(PayPalCircuitBreaker.class.getName());
+
+	/**
+	 * State of the circuit.
+	 */
+	public static enum State {
+		CLOSED, OPEN, HALF_OPEN
+	}
+
+	/**
+	 * Maximum number of concurrent PayPal requests.
+	 */
+	private final int maxConcurrent;
+
+	/**
+	 * Limits the concurrent PayPal requests.
+	 */
+	private final Semaphore bulkhead;
+
+	/**
+	 * Milliseconds to wait for capacity in the bulkhead.
+	 */
+	private final long acquireTimeout;
+
+	/**
+	 * Milliseconds to connect to and read from PayPal.
+	 */
+	private final int requestTimeout;
+
+	/**
+	 * Number of consecutive failures to open the circuit.
+	 */
+	private final int failureThreshold;
+
+	/**
+	 * Latency in nanoseconds for a PayPal request to be considered a failure.
+	 */
+	private final long slowThreshold;
+
+	/**
+	 * Milliseconds the circuit stays open.
+	 */
+	private final long openDuration;
+
+	/**
+	 * Current {@link State}.
+	 */
+	private State state = State.CLOSED;
+
+	/**
+	 * Number of consecutive failures.
+	 */
+	private int consecutiveFailures = 0;
+
+	/**
+	 * Time the circuit was opened.
+	 */
+	private long openTime = 0;
+
+	/**
+	 * Number of requests rejected by the bulkhead.
+	 */
+	private final AtomicLong bulkheadRejectCount = new AtomicLong(0);
+
+	/**
+	 * Number of requests rejected by the open circuit.
+	 */
+	private final AtomicLong circuitRejectCount = new AtomicLong(0);
+
+	/**
+	 * Number of times the circuit has opened.
+	 */
+	private final AtomicLong openCount = new AtomicLong(0);
+
+	/**
+	 * Instantiate.
+	 * 
+	 * @param maxConcurrent    Maximum number of concurrent PayPal requests.
+	 * @param failureThreshold Number of consecutive failures to open the circuit.
+	 * @param slowThreshold    Latency in milliseconds for a PayPal request to be
+	 *                         considered a failure.
+	 * @param openDuration     Milliseconds the circuit stays open before
+	 *                         trialling a request.
+	 */
+	public PayPalCircuitBreaker(int maxConcurrent, int failureThreshold, long slowThreshold, long openDuration) {
+		this(maxConcurrent, DEFAULT_ACQUIRE_TIMEOUT, DEFAULT_REQUEST_TIMEOUT, failureThreshold, slowThreshold,
+				openDuration);
+	}
+
+	/**
+	 * Instantiate.
+	 * 
+	 * @param maxConcurrent    Maximum number of concurrent PayPal requests.
+	 * @param acquireTimeout   Milliseconds to wait for capacity in the bulkhead.
+	 * @param requestTimeout   Milliseconds to connect to and read from PayPal.
+	 * @param failureThreshold Number of consecutive failures to open the circuit.
+	 * @param slowThreshold    Latency in milliseconds for a PayPal request to be
+	 *                         considered a failure.
+	 * @param openDuration     Milliseconds the circuit stays open before
+	 *                         trialling a request.
+	 */
+	public PayPalCircuitBreaker(int maxConcurrent, long acquireTimeout, int requestTimeout, int failureThreshold,
+			long slowThreshold, long openDuration) {
+		this.maxConcurrent = maxConcurrent;
+		this.bulkhead = new Semaphore(maxConcurrent);
+		this.acquireTimeout = acquireTimeout;
+		this.requestTimeout = requestTimeout;
+		this.failureThreshold = failureThreshold;
+		this.slowThreshold = slowThreshold * 1_000_000;
+		this.openDuration = openDuration;
+	}
+
+	/**
+	 * Attempts to acquire permission for a PayPal request.
+	 * <p>
+	 * On acquiring, {@link #release(long, boolean)} must be invoked on completion
+	 * of the PayPal request.
+	 * 
+	 * @return <code>null</code> if acquired, otherwise reason the PayPal request
+	 *         is rejected.
+	 */
+	public String acquire() {
+
+		// Determine if circuit allows the request
+		synchronized (this) {
+			switch (this.state) {
+			case OPEN:
+				if ((System.currentTimeMillis() - this.openTime) < this.openDuration) {
+					this.circuitRejectCount.incrementAndGet();
+					return "PayPal unavailable";
+				}
+				this.state = State.HALF_OPEN; // trial request
+				break;
+
+			case HALF_OPEN:
+				this.circuitRejectCount.incrementAndGet();
+				return "PayPal unavailable"; // waiting on trial request
+
+			default:
+				break;
+			}
+		}
+
+		// Determine if capacity for the request (waiting briefly for capacity)
+		boolean isAcquired;
+		try {
+			isAcquired = this.bulkhead.tryAcquire(this.acquireTimeout, TimeUnit.MILLISECONDS);
+		} catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+			isAcquired = false;
+		}
+		if (!isAcquired) {
+			this.bulkheadRejectCount.incrementAndGet();
+			synchronized (this) {
+				if (this.state == State.HALF_OPEN) {
+					this.state = State.OPEN; // trial not undertaken
+				}
+			}
+			return "PayPal busy";
+		}
+		return null;
+	}
+
+	/**
+	 * Releases the acquired permission for the PayPal request.
+	 * 
+	 * @param latency   Latency of the PayPal request in nanoseconds.
+	 * @param isFailure Indicates if PayPal failed to service the request.
+	 */
+	public void release(long latency, boolean isFailure) {
+		this.bulkhead.release();
+
+		// Update the circuit
+		boolean isFailed = isFailure || (latency >= this.slowThreshold);
+		int openedFailures = 0;
+		synchronized (this) {
+			if (!isFailed) {
+				// Late success of request before opening must not close the circuit
+				if (this.state != State.OPEN) {
+					this.consecutiveFailures = 0;
+					this.state = State.CLOSED;
+				}
+			} else {
+				this.consecutiveFailures++;
+				if ((this.state == State.HALF_OPEN)
+						|| ((this.state == State.CLOSED) && (this.consecutiveFailures >= this.failureThreshold))) {
+					this.state = State.OPEN;
+					this.openTime = System.currentTimeMillis();
+					openedFailures = this.consecutiveFailures;
+				}
+			}
+		}
+		if (openedFailures > 0) {
+			this.openCount.incrementAndGet();
+			LOGGER.log(Level.WARNING, "PayPal circuit opened after " + openedFailures + " failures");
+		}
+	}
+
+	/**
+	 * Obtains the milliseconds to connect to and read from PayPal.
+	 * 
+	 * @return Milliseconds to connect to and read from PayPal.
+	 */
+	public int getRequestTimeout() {
+		return this.requestTimeout;
+	}
+
+	/**
+	 * Obtains the {@link State} of the circuit.
+	 * 
+	 * @return {@link State} of the circuit.
+	 */
+	public synchronized State getState() {
+		return this.state;
+	}
+
+	/**
+	 * Obtains the number of PayPal requests in progress.
+	 * 
+	 * @return Number of PayPal requests in progress.
+	 */
+	public int getActiveCount() {
+		return this.maxConcurrent - this.bulkhead.availablePermits();
+	}
+
+	/**
+	 * Obtains the number of requests rejected by the bulkhead.
+	 * 
+	 * @return Number of requests rejected by the bulkhead.
+	 */
+	public long getBulkheadRejectCount() {
+		return this.bulkheadRejectCount.get();
+	}
+
+	/**
+	 * Obtains the number of requests rejected by the open circuit.
+	 * 
+	 * @return Number of requests rejected by the open circuit.
+	 */
+	public long getCircuitRejectCount() {
+		return this.circuitRejectCount.get();
+	}
+
+	/**
+	 * Obtains the number of times the circuit has opened.
+	 * 
+	 * @return Number of times the circuit has opened.
+	 */
+	public long getOpenCount() {
+		return this.openCount.get();
+	}
+
+}
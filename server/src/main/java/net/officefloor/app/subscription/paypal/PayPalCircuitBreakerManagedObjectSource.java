@@ -0,0 +1,118 @@
+/*
+ * OfficeFloor - http://www.officefloor.net
+ * Copyright (C) 2005-2019 Daniel Sagenschneider
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package net.officefloor.app.subscription.paypal;
+
+import net.officefloor.frame.api.build.None;
+import net.officefloor.frame.api.managedobject.ManagedObject;
+import net.officefloor.frame.api.managedobject.source.ManagedObjectSource;
+import net.officefloor.frame.api.managedobject.source.ManagedObjectSourceContext;
+import net.officefloor.frame.api.managedobject.source.impl.AbstractManagedObjectSource;
+
+/**
+ * {@link ManagedObjectSource} providing the shared {@link PayPalCircuitBreaker}.
+ * 
+ * @author Daniel Sagenschneider
+ */
+public class PayPalCircuitBreakerManagedObjectSource extends AbstractManagedObjectSource<None, None>
+		implements ManagedObject {
+
+	/**
+	 * Name of property for the maximum number of concurrent PayPal requests.
+	 */
+	public static final String PROPERTY_MAX_CONCURRENT = "max.concurrent";
+
+	/**
+	 * Name of property for the milliseconds to wait for capacity in the bulkhead.
+	 */
+	public static final String PROPERTY_ACQUIRE_TIMEOUT = "acquire.timeout";
+
+	/**
+	 * Name of property for the milliseconds to connect to and read from PayPal.
+	 */
+	public static final String PROPERTY_REQUEST_TIMEOUT = "request.timeout";
+
+	/**
+	 * Name of property for the number of consecutive failures to open the
+	 * circuit.
+	 */
+	public static final String PROPERTY_FAILURE_THRESHOLD = "failure.threshold";
+
+	/**
+	 * Name of property for the latency in milliseconds for a PayPal request to be
+	 * considered a failure.
+	 */
+	public static final String PROPERTY_SLOW_THRESHOLD = "slow.threshold";
+
+	/**
+	 * Name of property for the milliseconds the circuit stays open.
+	 */
+	public static final String PROPERTY_OPEN_DURATION = "open.duration";
+
+	/**
+	 * {@link PayPalCircuitBreaker}.
+	 */
+	private PayPalCircuitBreaker circuitBreaker;
+
+	/*
+	 * =================== ManagedObjectSource ======================
+	 */
+
+	@Override
+	protected void loadSpecification(SpecificationContext context) {
+		// No specification
+	}
+
+	@Override
+	protected void loadMetaData(MetaDataContext<None, None> context) throws Exception {
+		ManagedObjectSourceContext<None> mosContext = context.getManagedObjectSourceContext();
+
+		// Create the circuit breaker
+		int maxConcurrent = Integer.parseInt(mosContext.getProperty(PROPERTY_MAX_CONCURRENT,
+				String.valueOf(PayPalCircuitBreaker.DEFAULT_MAX_CONCURRENT)));
+		long acquireTimeout = Long.parseLong(mosContext.getProperty(PROPERTY_ACQUIRE_TIMEOUT,
+				String.valueOf(PayPalCircuitBreaker.DEFAULT_ACQUIRE_TIMEOUT)));
+		int requestTimeout = Integer.parseInt(mosContext.getProperty(PROPERTY_REQUEST_TIMEOUT,
+				String.valueOf(PayPalCircuitBreaker.DEFAULT_REQUEST_TIMEOUT)));
+		int failureThreshold = Integer.parseInt(mosContext.getProperty(PROPERTY_FAILURE_THRESHOLD,
+				String.valueOf(PayPalCircuitBreaker.DEFAULT_FAILURE_THRESHOLD)));
+		long slowThreshold = Long.parseLong(mosContext.getProperty(PROPERTY_SLOW_THRESHOLD,
+				String.valueOf(PayPalCircuitBreaker.DEFAULT_SLOW_THRESHOLD)));
+		long openDuration = Long.parseLong(mosContext.getProperty(PROPERTY_OPEN_DURATION,
+				String.valueOf(PayPalCircuitBreaker.DEFAULT_OPEN_DURATION)));
+		this.circuitBreaker = new PayPalCircuitBreaker(maxConcurrent, acquireTimeout, requestTimeout,
+				failureThreshold, slowThreshold, openDuration);
+
+		// Specify meta-data
+		context.setObjectClass(PayPalCircuitBreaker.class);
+	}
+
+	@Override
+	protected ManagedObject getManagedObject() throws Throwable {
+		return this;
+	}
+
+	/*
+	 * ====================== ManagedObject =========================
+	 */
+
+	@Override
+	public Object getObject() throws Throwable {
+		return this.circuitBreaker;
+	}
+
+}
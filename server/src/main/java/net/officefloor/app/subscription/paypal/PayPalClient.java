@@ -0,0 +1,181 @@
+/*
+ * OfficeFloor - http://www.officefloor.net
+ * Copyright (C) 2005-2019 Daniel Sagenschneider
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package net.officefloor.app.subscription.paypal;
+
+import java.io.IOException;
+
+import com.paypal.core.PayPalEnvironment;
+import com.paypal.core.PayPalHttpClient;
+import com.paypal.http.HttpRequest;
+import com.paypal.http.HttpResponse;
+import com.paypal.http.exceptions.HttpException;
+
+import net.officefloor.app.subscription.metrics.RequestMetrics;
+import net.officefloor.pay.paypal.PayPalConfigurationRepository;
+import net.officefloor.plugin.clazz.Dependency;
+import net.officefloor.server.http.HttpStatus;
+
+/**
+ * Wraps the {@link PayPalHttpClient} to re-use the PayPal OAuth authorization
+ * across requests and to record metrics of the PayPal requests.
+ * <p>
+ * The {@link PayPalHttpClient} only fetches an access token should the request
+ * not already be authorized. Therefore, the authorization from fetching an
+ * access token is cached and provided to subsequent requests (with the same
+ * PayPal credentials).
+ * <p>
+ * Requests are also guarded by the {@link PayPalCircuitBreaker}, so a slow or
+ * failing PayPal fails fast with {@link HttpStatus#SERVICE_UNAVAILABLE}.
+ * 
+ * @author Daniel Sagenschneider
+ */
+public class PayPalClient {
+
+	/**
+	 * <code>Authorization</code> header name.
+	 */
+	private static final String AUTHORIZATION = "Authorization";
+
+	private @Dependency PayPalHttpClient paypal;
+
+	private @Dependency PayPalConfigurationRepository configuration;
+
+	private @Dependency PayPalClientCache cache;
+
+	private @Dependency PayPalCircuitBreaker circuitBreaker;
+
+	private @Dependency RequestMetrics requestMetrics;
+
+	/**
+	 * Default constructor for dependency injection.
+	 */
+	public PayPalClient() {
+	}
+
+	/**
+	 * Instantiate.
+	 * 
+	 * @param paypal         {@link PayPalHttpClient}.
+	 * @param configuration  {@link PayPalConfigurationRepository} of the
+	 *                       {@link PayPalHttpClient}.
+	 * @param cache          {@link PayPalClientCache}.
+	 * @param circuitBreaker {@link PayPalCircuitBreaker}.
+	 */
+	public PayPalClient(PayPalHttpClient paypal, PayPalConfigurationRepository configuration,
+			PayPalClientCache cache, PayPalCircuitBreaker circuitBreaker) {
+		this(paypal, configuration, cache, circuitBreaker, null);
+	}
+
+	/**
+	 * Instantiate.
+	 * 
+	 * @param paypal         {@link PayPalHttpClient}.
+	 * @param configuration  {@link PayPalConfigurationRepository} of the
+	 *                       {@link PayPalHttpClient}.
+	 * @param cache          {@link PayPalClientCache}.
+	 * @param circuitBreaker {@link PayPalCircuitBreaker}.
+	 * @param requestMetrics {@link RequestMetrics}. May be <code>null</code>.
+	 */
+	public PayPalClient(PayPalHttpClient paypal, PayPalConfigurationRepository configuration,
+			PayPalClientCache cache, PayPalCircuitBreaker circuitBreaker, RequestMetrics requestMetrics) {
+		this.paypal = paypal;
+		this.configuration = configuration;
+		this.cache = cache;
+		this.circuitBreaker = circuitBreaker;
+		this.requestMetrics = requestMetrics;
+	}
+
+	/**
+	 * Executes the {@link HttpRequest}.
+	 * 
+	 * @param <T>     Response type.
+	 * @param request {@link HttpRequest}.
+	 * @return {@link HttpResponse}.
+	 * @throws IOException If failure in executing the {@link HttpRequest}.
+	 * @throws net.officefloor.server.http.HttpException
+	 *                     {@link HttpStatus#SERVICE_UNAVAILABLE} should PayPal be
+	 *                     unavailable.
+	 */
+	public <T> HttpResponse<T> execute(HttpRequest<T> request) throws IOException {
+
+		// Ensure a hung PayPal connection does not hold the request
+		this.paypal.setConnectTimeout(this.circuitBreaker.getRequestTimeout());
+
+		// Provide cached authorization (for the configured credentials)
+		PayPalEnvironment environment = this.configuration.createPayPalEnvironment();
+		String credentials = (environment == null) ? null : PayPalClientCache.getCredentials(environment);
+		String authorization = (credentials == null) ? null : this.cache.getAuthorization(credentials);
+		if (authorization != null) {
+			request.header(AUTHORIZATION, authorization);
+		}
+
+		// Fail fast if PayPal unavailable (acquired capacity released on completion)
+		String unavailable = this.circuitBreaker.acquire();
+		if (unavailable != null) {
+			throw new net.officefloor.server.http.HttpException(HttpStatus.SERVICE_UNAVAILABLE, unavailable);
+		}
+
+		// Execute the request
+		long start = System.nanoTime();
+		boolean isFailure = true;
+		try {
+			HttpResponse<T> response;
+			try {
+				response = this.paypal.execute(request);
+			} catch (HttpException ex) {
+
+				// Determine if cached authorization rejected
+				if ((authorization == null) || (ex.statusCode() != 401)) {
+					throw ex;
+				}
+
+				// Retry with newly fetched access token
+				this.cache.invalidateAuthorization(authorization);
+				request.headers().remove(AUTHORIZATION);
+				authorization = null;
+				response = this.paypal.execute(request);
+			}
+
+			// Cache the newly fetched authorization
+			if ((authorization == null) && (credentials != null)) {
+				String fetchedAuthorization = request.headers().header(AUTHORIZATION);
+				if (fetchedAuthorization != null) {
+					this.cache.cacheAuthorization(credentials, fetchedAuthorization);
+				}
+			}
+
+			// Return the response
+			isFailure = false;
+			return response;
+
+		} catch (HttpException ex) {
+			// Only PayPal server errors indicate PayPal failing
+			isFailure = (ex.statusCode() >= 500);
+			throw ex;
+
+		} finally {
+			long latency = System.nanoTime() - start;
+			this.cache.recordRequest(latency);
+			this.circuitBreaker.release(latency, isFailure);
+			if (this.requestMetrics != null) {
+				this.requestMetrics.recordPayPal(latency);
+			}
+		}
+	}
+
+}
@@ -0,0 +1,218 @@
+/*
+ * OfficeFloor - http://www.officefloor.net
+ * Copyright (C) 2005-2019 Daniel Sagenschneider
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package net.officefloor.app.subscription.paypal;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.paypal.core.PayPalEnvironment;
+
+/**
+ * Shared state of the {@link PayPalClient} instances.
+ * <p>
+ * Caches the PayPal OAuth authorization (so it is not fetched for each
+ * request) and keeps counters of the PayPal requests.
+ * <p>
+ * The authorization is only re-used for the same PayPal credentials, so
+ * changing the PayPal configuration never sends the access token of the
+ * previous PayPal application.
+ * 
+ * @author Daniel Sagenschneider
+ */
+public class PayPalClientCache {
+
+	/**
+	 * Default time to live in milliseconds for the authorization (PayPal access
+	 * tokens are issued for about 9 hours).
+	 */
+	public static final long DEFAULT_TOKEN_TIME_TO_LIVE = 8 * 60 * 60 * 1000;
+
+	/**
+	 * Cached authorization.
+	 */
+	private static class Authorization {
+
+		private final String credentials;
+
+		private final String header;
+
+		private final long expireTime;
+
+		private Authorization(String credentials, String header, long expireTime) {
+			this.credentials = credentials;
+			this.header = header;
+			this.expireTime = expireTime;
+		}
+	}
+
+	/**
+	 * Obtains the credentials identifying the access token of the
+	 * {@link PayPalEnvironment}.
+	 * 
+	 * @param environment {@link PayPalEnvironment}.
+	 * @return Credentials for the {@link PayPalEnvironment}.
+	 */
+	public static String getCredentials(PayPalEnvironment environment) {
+		return environment.baseUrl() + " " + environment.clientId();
+	}
+
+	/**
+	 * Time to live in milliseconds for the authorization.
+	 */
+	private final long tokenTimeToLive;
+
+	/**
+	 * Current {@link Authorization}.
+	 */
+	private volatile Authorization authorization = null;
+
+	/**
+	 * Number of requests.
+	 */
+	private final AtomicLong requestCount = new AtomicLong(0);
+
+	/**
+	 * Number of access tokens fetched.
+	 */
+	private final AtomicLong tokenRefreshCount = new AtomicLong(0);
+
+	/**
+	 * Number of requests re-using the cached authorization.
+	 */
+	private final AtomicLong tokenReuseCount = new AtomicLong(0);
+
+	/**
+	 * Total request latency in nanoseconds.
+	 */
+	private final AtomicLong totalLatency = new AtomicLong(0);
+
+	/**
+	 * Maximum request latency in nanoseconds.
+	 */
+	private final AtomicLong maxLatency = new AtomicLong(0);
+
+	/**
+	 * Instantiate.
+	 * 
+	 * @param tokenTimeToLive Time to live in milliseconds for the authorization.
+	 */
+	public PayPalClientCache(long tokenTimeToLive) {
+		this.tokenTimeToLive = tokenTimeToLive;
+	}
+
+	/**
+	 * Obtains the cached <code>Authorization</code> header value.
+	 * 
+	 * @param credentials Credentials of the PayPal application (see
+	 *                    {@link #getCredentials(PayPalEnvironment)}).
+	 * @return <code>Authorization</code> header value or <code>null</code> if
+	 *         require fetching access token.
+	 */
+	public String getAuthorization(String credentials) {
+		Authorization authorization = this.authorization;
+		if ((authorization == null) || (!authorization.credentials.equals(credentials))
+				|| (System.currentTimeMillis() >= authorization.expireTime)) {
+			return null;
+		}
+		this.tokenReuseCount.incrementAndGet();
+		return authorization.header;
+	}
+
+	/**
+	 * Caches the <code>Authorization</code> header value from a newly fetched
+	 * access token.
+	 * 
+	 * @param credentials Credentials of the PayPal application (see
+	 *                    {@link #getCredentials(PayPalEnvironment)}).
+	 * @param header      <code>Authorization</code> header value.
+	 */
+	public void cacheAuthorization(String credentials, String header) {
+		this.tokenRefreshCount.incrementAndGet();
+		this.authorization = new Authorization(credentials, header,
+				System.currentTimeMillis() + this.tokenTimeToLive);
+	}
+
+	/**
+	 * Invalidates the cached <code>Authorization</code> (typically as rejected by
+	 * PayPal).
+	 * 
+	 * @param header <code>Authorization</code> header value rejected.
+	 */
+	public void invalidateAuthorization(String header) {
+		Authorization authorization = this.authorization;
+		if ((authorization != null) && (authorization.header.equals(header))) {
+			this.authorization = null;
+		}
+	}
+
+	/**
+	 * Records a request.
+	 * 
+	 * @param latency Latency of the request in nanoseconds.
+	 */
+	public void recordRequest(long latency) {
+		this.requestCount.incrementAndGet();
+		this.totalLatency.addAndGet(latency);
+		this.maxLatency.accumulateAndGet(latency, Math::max);
+	}
+
+	/**
+	 * Obtains the number of requests.
+	 * 
+	 * @return Number of requests.
+	 */
+	public long getRequestCount() {
+		return this.requestCount.get();
+	}
+
+	/**
+	 * Obtains the number of access tokens fetched.
+	 * 
+	 * @return Number of access tokens fetched.
+	 */
+	public long getTokenRefreshCount() {
+		return this.tokenRefreshCount.get();
+	}
+
+	/**
+	 * Obtains the number of requests re-using the cached authorization.
+	 * 
+	 * @return Number of requests re-using the cached authorization.
+	 */
+	public long getTokenReuseCount() {
+		return this.tokenReuseCount.get();
+	}
+
+	/**
+	 * Obtains the total request latency.
+	 * 
+	 * @return Total request latency in nanoseconds.
+	 */
+	public long getTotalLatency() {
+		return this.totalLatency.get();
+	}
+
+	/**
+	 * Obtains the maximum request latency.
+	 * 
+	 * @return Maximum request latency in nanoseconds.
+	 */
+	public long getMaxLatency() {
+		return this.maxLatency.get();
+	}
+
+}
@@ -23,6 +23,7 @@ import com.googlecode.objectify.Objectify;
 import com.paypal.core.PayPalEnvironment;
 
 import net.officefloor.app.subscription.InitialiseService;
+import net.officefloor.app.subscription.cache.AdministrationCache;
 import net.officefloor.app.subscription.store.Administration;
 import net.officefloor.pay.paypal.PayPalConfigurationRepository;
 import net.officefloor.plugin.clazz.Dependency;
@@ -34,13 +35,22 @@ import net.officefloor.plugin.clazz.Dependency;
  */
 public class PayPalConfiguration implements PayPalConfigurationRepository {
 
+	/**
+	 * Name of system property to direct sandbox PayPal requests to another URL
+	 * (e.g. a PayPal stub for load testing). Live PayPal requests are never
+	 * redirected.
+	 */
+	public static final String SYSTEM_PROPERTY_SANDBOX_URL = "paypal.sandbox.url";
+
 	private @Dependency Objectify objectify;
 
+	private @Dependency AdministrationCache administrationCache;
+
 	@Override
 	public PayPalEnvironment createPayPalEnvironment() {
 		Administration admin;
 		try {
-			admin = InitialiseService.getAdministration(this.objectify);
+			admin = InitialiseService.getAdministration(this.administrationCache, this.objectify);
 			if (admin == null) {
 				return null;
 			}
@@ -49,7 +59,11 @@ public class PayPalConfiguration implements PayPalConfigurationRepository {
 		}
 		switch (admin.getPaypalEnvironment()) {
 		case "sandbox":
-			return new PayPalEnvironment.Sandbox(admin.getPaypalClientId(), admin.getPaypalClientSecret());
+			String sandboxUrl = System.getProperty(SYSTEM_PROPERTY_SANDBOX_URL);
+			return (sandboxUrl != null)
+					? new PayPalEnvironment(admin.getPaypalClientId(), admin.getPaypalClientSecret(), sandboxUrl,
+							sandboxUrl)
+					: new PayPalEnvironment.Sandbox(admin.getPaypalClientId(), admin.getPaypalClientSecret());
 		case "live":
 			return new PayPalEnvironment.Live(admin.getPaypalClientId(), admin.getPaypalClientSecret());
 		default:
@@ -0,0 +1,244 @@
+/*
+ * OfficeFloor - http://www.officefloor.net
+ * Copyright (C) 2005-2019 Daniel Sagenschneider
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package net.officefloor.app.subscription.paypal;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import com.paypal.orders.AmountBreakdown;
+import com.paypal.orders.AmountWithBreakdown;
+import com.paypal.orders.ApplicationContext;
+import com.paypal.orders.Item;
+import com.paypal.orders.Money;
+import com.paypal.orders.OrderRequest;
+import com.paypal.orders.PurchaseUnitRequest;
+
+/**
+ * Pre-built PayPal order templates for each currency and whether restarting
+ * the subscription.
+ * <p>
+ * The amounts are fixed, so only the domain specific details are created for
+ * each order. Templates are rebuilt should the currency change.
+ * 
+ * @author Daniel Sagenschneider
+ */
+public class PayPalOrderTemplates {
+
+	/*
+	 * Values in cents.
+	 */
+
+	public static final int SUBSCRIPTION_VALUE = 4_54;
+	public static final int SUBSCRIPTION_TAX = 46;
+
+	public static final int RESTART_VALUE = 18_18;
+	public static final int RESTART_TAX = 1_82;
+
+	/**
+	 * Formats the amount in cents for PayPal.
+	 * 
+	 * @param cents Amount in cents.
+	 * @return Formatted amount (e.g. <code>4.54</code>).
+	 */
+	public static String formatAmount(int cents) {
+		int remainder = cents % 100;
+		return (cents / 100) + (remainder < 10 ? ".0" : ".") + remainder;
+	}
+
+	/**
+	 * Obtains the amount (including tax) charged for a domain.
+	 * 
+	 * @param isRestart Indicates if restarting the subscription.
+	 * @return Amount in cents.
+	 */
+	public static int getAmount(boolean isRestart) {
+		return SUBSCRIPTION_VALUE + SUBSCRIPTION_TAX + (isRestart ? RESTART_VALUE + RESTART_TAX : 0);
+	}
+
+	/**
+	 * Templates for a currency.
+	 */
+	private static class CurrencyTemplates {
+
+		private final String currency;
+
+		private final OrderTemplate subscription;
+
+		private final OrderTemplate restart;
+
+		private CurrencyTemplates(String currency) {
+			this.currency = currency;
+			this.subscription = new OrderTemplate(currency, false);
+			this.restart = new OrderTemplate(currency, true);
+		}
+	}
+
+	/**
+	 * Template of an order.
+	 * <p>
+	 * PayPal model objects are mutable, so the shared objects must only be read
+	 * (in serialising the request).
+	 */
+	public static class OrderTemplate {
+
+		private static final ApplicationContext APPLICATION_CONTEXT = new ApplicationContext()
+				.shippingPreference("NO_SHIPPING").userAction("PAY_NOW");
+
+		private final boolean isRestart;
+
+		private final Money subscriptionValue;
+
+		private final Money subscriptionTax;
+
+		private final Money restartValue;
+
+		private final Money restartTax;
+
+		private final AmountWithBreakdown amount;
+
+		private OrderTemplate(String currency, boolean isRestart) {
+			this.isRestart = isRestart;
+			this.subscriptionValue = newMoney(SUBSCRIPTION_VALUE, currency);
+			this.subscriptionTax = newMoney(SUBSCRIPTION_TAX, currency);
+			this.restartValue = newMoney(RESTART_VALUE, currency);
+			this.restartTax = newMoney(RESTART_TAX, currency);
+			int itemTotal = SUBSCRIPTION_VALUE + (isRestart ? RESTART_VALUE : 0);
+			int taxTotal = SUBSCRIPTION_TAX + (isRestart ? RESTART_TAX : 0);
+			this.amount = new AmountWithBreakdown().value(formatAmount(itemTotal + taxTotal)).currencyCode(currency)
+					.amountBreakdown(new AmountBreakdown().itemTotal(newMoney(itemTotal, currency))
+							.taxTotal(newMoney(taxTotal, currency)));
+		}
+
+		/**
+		 * Creates the {@link OrderRequest} for the domain.
+		 * 
+		 * @param domainName      Domain name.
+		 * @param paypalInvoiceId PayPal invoice Id.
+		 * @return {@link OrderRequest}.
+		 */
+		public OrderRequest newOrderRequest(String domainName, String paypalInvoiceId) {
+
+			// Load the items
+			List<Item> items = new ArrayList<>(2);
+			this.addItems(domainName, items);
+
+			// Create the order
+			return newOrderRequest(paypalInvoiceId, "OfficeFloor 12 month subscription for " + domainName,
+					this.amount, items);
+		}
+
+		/**
+		 * Adds the {@link Item} instances for the domain.
+		 * 
+		 * @param domainName Domain name.
+		 * @param items      {@link List} to receive the {@link Item} instances.
+		 */
+		private void addItems(String domainName, List<Item> items) {
+			items.add(new Item().name("Subscription").description("12 month subscription for " + domainName)
+					.unitAmount(this.subscriptionValue).tax(this.subscriptionTax).quantity("1")
+					.category("DIGITAL_GOODS"));
+			if (this.isRestart) {
+				items.add(new Item().name("Restart").description("Restart domain subscription for " + domainName)
+						.unitAmount(this.restartValue).tax(this.restartTax).quantity("1").category("DIGITAL_GOODS"));
+			}
+		}
+
+		private static Money newMoney(int cents, String currency) {
+			return new Money().value(formatAmount(cents)).currencyCode(currency);
+		}
+	}
+
+	/**
+	 * Creates the {@link OrderRequest} with a single purchase unit.
+	 * 
+	 * @param paypalInvoiceId PayPal invoice Id.
+	 * @param description     Description of the purchase.
+	 * @param amount          {@link AmountWithBreakdown}.
+	 * @param items           {@link Item} instances.
+	 * @return {@link OrderRequest}.
+	 */
+	private static OrderRequest newOrderRequest(String paypalInvoiceId, String description,
+			AmountWithBreakdown amount, List<Item> items) {
+		return new OrderRequest().checkoutPaymentIntent("CAPTURE").applicationContext(OrderTemplate.APPLICATION_CONTEXT)
+				.purchaseUnits(Arrays.asList(new PurchaseUnitRequest().invoiceId(paypalInvoiceId)
+						.description(description).softDescriptor("OfficeFloor domain").amountWithBreakdown(amount)
+						.items(items)));
+	}
+
+	/**
+	 * Current {@link CurrencyTemplates}.
+	 */
+	private volatile CurrencyTemplates templates = null;
+
+	/**
+	 * Obtains the {@link OrderTemplate}.
+	 * 
+	 * @param currency  Currency.
+	 * @param isRestart Indicates if restarting the subscription.
+	 * @return {@link OrderTemplate}.
+	 */
+	public OrderTemplate getOrderTemplate(String currency, boolean isRestart) {
+
+		// Determine if rebuild templates for the currency
+		CurrencyTemplates templates = this.templates;
+		if ((templates == null) || (!templates.currency.equals(currency))) {
+			templates = new CurrencyTemplates(currency);
+			this.templates = templates;
+		}
+
+		// Return the template
+		return isRestart ? templates.restart : templates.subscription;
+	}
+
+	/**
+	 * Creates the {@link OrderRequest} for multiple domains.
+	 * <p>
+	 * The domains are items of a single purchase unit, so the order is captured
+	 * (and receipted) once for all domains.
+	 * 
+	 * @param currency        Currency.
+	 * @param domains         Whether restarting the subscription by domain name.
+	 * @param paypalInvoiceId PayPal invoice Id.
+	 * @return {@link OrderRequest}.
+	 */
+	public OrderRequest newDomainsOrderRequest(String currency, Map<String, Boolean> domains,
+			String paypalInvoiceId) {
+
+		// Load the items for each domain
+		List<Item> items = new ArrayList<>(domains.size() * 2);
+		int itemTotal = 0;
+		int taxTotal = 0;
+		for (Map.Entry<String, Boolean> domain : domains.entrySet()) {
+			boolean isRestart = domain.getValue();
+			this.getOrderTemplate(currency, isRestart).addItems(domain.getKey(), items);
+			itemTotal += SUBSCRIPTION_VALUE + (isRestart ? RESTART_VALUE : 0);
+			taxTotal += SUBSCRIPTION_TAX + (isRestart ? RESTART_TAX : 0);
+		}
+
+		// Create the order
+		AmountWithBreakdown amount = new AmountWithBreakdown().value(formatAmount(itemTotal + taxTotal))
+				.currencyCode(currency).amountBreakdown(
+						new AmountBreakdown().itemTotal(OrderTemplate.newMoney(itemTotal, currency))
+								.taxTotal(OrderTemplate.newMoney(taxTotal, currency)));
+		return newOrderRequest(paypalInvoiceId, "OfficeFloor 12 month subscription for " + domains.size() + " domains",
+				amount, items);
+	}
+
+}
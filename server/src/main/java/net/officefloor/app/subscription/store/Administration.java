@@ -61,6 +61,11 @@ public class Administration {
 	@NonNull
 	private String paypalCurrency;
 
+	/**
+	 * Id of the PayPal webhook (to verify webhook events).
+	 */
+	private String paypalWebhookId;
+
 	@Data
 	@NoArgsConstructor
 	@AllArgsConstructor
@@ -13,10 +13,13 @@ import lombok.RequiredArgsConstructor;
 
 /**
  * Domain {@link Entity}.
+ * <p>
+ * Keyed by the domain name to enable batch retrieval of multiple domains.
+ * Previous auto identified entries are available via {@link LegacyDomain}.
  * 
  * @author Daniel Sagenschneider
  */
-@Entity
+@Entity(name = "NamedDomain")
 @Data
 @NoArgsConstructor
 @RequiredArgsConstructor
@@ -25,9 +28,6 @@ public class Domain {
 	public static final String PRODUCT_TYPE = "domain";
 
 	@Id
-	private Long id;
-
-	@Index
 	@NonNull
 	private String domain;
 
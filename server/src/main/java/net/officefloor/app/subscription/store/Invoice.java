@@ -23,6 +23,13 @@ import lombok.RequiredArgsConstructor;
 @RequiredArgsConstructor
 public class Invoice {
 
+	/**
+	 * State of capturing payment for the {@link Invoice}.
+	 */
+	public static enum CaptureState {
+		CREATED, CAPTURING, CAPTURED, FAILED
+	}
+
 	@Id
 	private Long id;
 
@@ -42,5 +49,24 @@ public class Invoice {
 	@Index
 	private String paymentOrderId;
 
+	private CaptureState captureState = CaptureState.CREATED;
+
+	/**
+	 * Time capture last started.
+	 */
+	private Date captureTime;
+
+	/**
+	 * Id reserved for the {@link Payment}, so a retried capture does not record
+	 * another {@link Payment}.
+	 */
+	private Long paymentId;
+
+	/**
+	 * Amount in cents charged for the product within the order. May be
+	 * <code>null</code> for {@link Invoice} created before recording the amount.
+	 */
+	private Integer amount;
+
 	private Date timestamp = ObjectifyEntities.getCreationTimestamp();
 }
\ No newline at end of file
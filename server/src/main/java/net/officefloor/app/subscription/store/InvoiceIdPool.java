@@ -0,0 +1,79 @@
+/*
+ * OfficeFloor - http://www.officefloor.net
+ * Copyright (C) 2005-2019 Daniel Sagenschneider
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package net.officefloor.app.subscription.store;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+import com.googlecode.objectify.Key;
+import com.googlecode.objectify.Objectify;
+
+/**
+ * Pool of pre-allocated {@link Invoice} identifiers.
+ * <p>
+ * Identifiers are allocated from Datastore in blocks, so the {@link Invoice}
+ * may be written once (with its identifier already known).
+ * 
+ * @author Daniel Sagenschneider
+ */
+public class InvoiceIdPool {
+
+	/**
+	 * Default number of identifiers allocated at a time.
+	 */
+	public static final int DEFAULT_BLOCK_SIZE = 50;
+
+	/**
+	 * Number of identifiers allocated at a time.
+	 */
+	private final int blockSize;
+
+	/**
+	 * Available identifiers.
+	 */
+	private final Deque<Long> ids = new ArrayDeque<>();
+
+	/**
+	 * Instantiate.
+	 * 
+	 * @param blockSize Number of identifiers allocated at a time.
+	 */
+	public InvoiceIdPool(int blockSize) {
+		this.blockSize = blockSize;
+	}
+
+	/**
+	 * Obtains the next {@link Invoice} identifier.
+	 * 
+	 * @param objectify {@link Objectify}.
+	 * @return Next {@link Invoice} identifier.
+	 */
+	public synchronized Long nextId(Objectify objectify) {
+
+		// Allocate another block of identifiers (if required)
+		if (this.ids.isEmpty()) {
+			for (Key<Invoice> key : objectify.factory().allocateIds(Invoice.class, this.blockSize)) {
+				this.ids.add(key.getId());
+			}
+		}
+
+		// Return the next identifier
+		return this.ids.poll();
+	}
+
+}
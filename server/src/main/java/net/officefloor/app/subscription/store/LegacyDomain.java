@@ -0,0 +1,40 @@
+package net.officefloor.app.subscription.store;
+
+import java.util.Date;
+
+import com.googlecode.objectify.annotation.Entity;
+import com.googlecode.objectify.annotation.Id;
+import com.googlecode.objectify.annotation.Index;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.NonNull;
+import lombok.RequiredArgsConstructor;
+
+/**
+ * Previous auto identified {@link Domain} {@link Entity}.
+ * <p>
+ * Retained only to migrate existing entries to {@link Domain}.
+ * 
+ * @author Daniel Sagenschneider
+ */
+@Entity(name = "Domain")
+@Data
+@NoArgsConstructor
+@RequiredArgsConstructor
+public class LegacyDomain {
+
+	@Id
+	private Long id;
+
+	@Index
+	@NonNull
+	private String domain;
+
+	@Index
+	@NonNull
+	private Date expires;
+
+	private Date timestamp = ObjectifyEntities.getCreationTimestamp();
+
+}
\ No newline at end of file
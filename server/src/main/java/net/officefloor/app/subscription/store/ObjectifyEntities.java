@@ -18,7 +18,8 @@ public class ObjectifyEntities implements ObjectifyEntityLocator {
 	@Override
 	public Class<?>[] locateEntities() throws Exception {
 		return new Class[] { AccessKey.class, RefreshKey.class, GoogleSignin.class, User.class, Administration.class,
-				Domain.class, Invoice.class, Payment.class, Refund.class };
+				Domain.class, LegacyDomain.class, UserDomains.class, Invoice.class, Payment.class, Refund.class,
+				WebhookCapture.class };
 	}
 
 }
\ No newline at end of file
@@ -0,0 +1,37 @@
+package net.officefloor.app.subscription.store;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import com.googlecode.objectify.annotation.Entity;
+import com.googlecode.objectify.annotation.Id;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.NonNull;
+import lombok.RequiredArgsConstructor;
+
+/**
+ * Index of the {@link Domain} names paid for by a {@link User}.
+ * <p>
+ * Keyed by the {@link User} identifier to avoid scanning the {@link User}
+ * {@link Payment} history to determine the paid {@link Domain} instances.
+ * 
+ * @author Daniel Sagenschneider
+ */
+@Entity
+@Data
+@NoArgsConstructor
+@RequiredArgsConstructor
+public class UserDomains {
+
+	@Id
+	@NonNull
+	private Long id;
+
+	private List<String> domainNames = new ArrayList<>();
+
+	private Date timestamp = ObjectifyEntities.getCreationTimestamp();
+
+}
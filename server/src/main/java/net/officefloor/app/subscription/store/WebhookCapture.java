@@ -0,0 +1,62 @@
+/*
+ * OfficeFloor - http://www.officefloor.net
+ * Copyright (C) 2005-2019 Daniel Sagenschneider
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package net.officefloor.app.subscription.store;
+
+import java.util.Date;
+
+import com.googlecode.objectify.annotation.Entity;
+import com.googlecode.objectify.annotation.Id;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.NonNull;
+import lombok.RequiredArgsConstructor;
+
+/**
+ * Verified PayPal webhook capture awaiting recording of the {@link Payment}.
+ * <p>
+ * Keyed by the PayPal event identifier, so redelivered events are only
+ * recorded once.
+ * 
+ * @author Daniel Sagenschneider
+ */
+@Entity
+@Data
+@NoArgsConstructor
+@RequiredArgsConstructor
+public class WebhookCapture {
+
+	@Id
+	@NonNull
+	private String id;
+
+	@NonNull
+	private String orderId;
+
+	/**
+	 * Amount in cents.
+	 */
+	@NonNull
+	private Integer amount;
+
+	@NonNull
+	private String receipt;
+
+	private Date timestamp = ObjectifyEntities.getCreationTimestamp();
+
+}
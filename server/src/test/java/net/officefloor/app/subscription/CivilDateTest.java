@@ -0,0 +1,65 @@
+/*
+ * OfficeFloor - http://www.officefloor.net
+ * Copyright (C) 2005-2019 Daniel Sagenschneider
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package net.officefloor.app.subscription;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.time.LocalDate;
+
+import org.junit.Test;
+
+/**
+ * Tests the {@link CivilDate}.
+ * 
+ * @author Daniel Sagenschneider
+ */
+public class CivilDateTest {
+
+	@Test
+	public void epoch() {
+		long civil = CivilDate.fromEpochDay(0);
+		assertEquals("Incorrect year", 1970, CivilDate.year(civil));
+		assertEquals("Incorrect March year", 1969, CivilDate.marchYear(civil));
+		assertEquals("Incorrect month (from March)", 10, CivilDate.marchMonth(civil));
+		assertEquals("Incorrect day", 1, CivilDate.dayOfMonth(civil));
+	}
+
+	@Test
+	public void sameAsLocalDate() {
+		for (long epochDay = -800_000; epochDay < 3_000_000; epochDay++) {
+			LocalDate date = LocalDate.ofEpochDay(epochDay);
+			long civil = CivilDate.fromEpochDay(epochDay);
+			assertEquals("Incorrect year " + date, date.getYear(), CivilDate.year(civil));
+			assertEquals("Incorrect month " + date, date.getMonthValue(), ((CivilDate.marchMonth(civil) + 2) % 12) + 1);
+			assertEquals("Incorrect day " + date, date.getDayOfMonth(), CivilDate.dayOfMonth(civil));
+			assertEquals("Incorrect epoch day " + date, epochDay, CivilDate.toEpochDay(CivilDate.marchYear(civil),
+					CivilDate.marchMonth(civil), CivilDate.dayOfMonth(civil)));
+		}
+	}
+
+	@Test
+	public void leapYear() {
+		assertTrue("Divisible by 4", CivilDate.isLeapYear(2020));
+		assertFalse("Not divisible by 4", CivilDate.isLeapYear(2021));
+		assertFalse("Divisible by 100", CivilDate.isLeapYear(1900));
+		assertTrue("Divisible by 400", CivilDate.isLeapYear(2000));
+	}
+
+}
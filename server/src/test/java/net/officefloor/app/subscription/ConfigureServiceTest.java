@@ -72,7 +72,7 @@ public class ConfigureServiceTest {
 				new ConfigurationAdministrator[] { new ConfigurationAdministrator("MOCK_ADMIN_1", "MOCK_NOTES_1"),
 						new ConfigurationAdministrator("MOCK_ADMIN_2", "MOCK_NOTES_2") },
 				"MOCK_PAYPAL_ENVIRONMENT", "MOCK_PAYPAL_CLIENT_ID", "MOCK_PAYPAL_CLIENT_SECRET",
-				"MOCK_PAYPAL_INVOICE_{id}", "MOCK_PAYPAL_CURRENCY"));
+				"MOCK_PAYPAL_INVOICE_{id}", "MOCK_PAYPAL_CURRENCY", "MOCK_PAYPAL_WEBHOOK_ID"));
 	}
 
 	@Test
@@ -88,7 +88,8 @@ public class ConfigureServiceTest {
 		MockWoofResponse response = this.server.send(this.jwt.authorize(user, MockWoofServer.mockJsonRequest(
 				HttpMethod.POST, "/configuration",
 				new Configuration(UPDATED_GOOGLE_ID, configurationAdministrators, "sandbox", "CHANGE_CLIENT_PAYPAL_ID",
-						"CHANGE_CLIENT_PAYPAL_SECRET", "CHANGE_INVOICE_{id}_{template}", "CHANGE_CURRENCY"))
+						"CHANGE_CLIENT_PAYPAL_SECRET", "CHANGE_INVOICE_{id}_{template}", "CHANGE_CURRENCY",
+						"CHANGE_WEBHOOK_ID"))
 				.secure(true)));
 		response.assertJson(200, new Configured(true));
 
@@ -103,6 +104,36 @@ public class ConfigureServiceTest {
 		assertEquals("CHANGE_CLIENT_PAYPAL_SECRET", admin.getPaypalClientSecret());
 		assertEquals("CHANGE_INVOICE_{id}_{template}", admin.getPaypalInvoiceIdTemplate());
 		assertEquals("CHANGE_CURRENCY", admin.getPaypalCurrency());
+		assertEquals("CHANGE_WEBHOOK_ID", admin.getPaypalWebhookId());
+	}
+
+	@Test
+	public void getConfigurationAfterUpdate() throws Exception {
+
+		User user = TestHelper.newUser("Daniel", User.ROLE_ADMIN);
+		this.helper.setupAdministration();
+
+		// Obtain configuration (caching administration)
+		MockWoofResponse response = this.server
+				.send(this.jwt.authorize(user, MockWoofServer.mockRequest("/configuration"))
+						.header("Accept", "application/json").secure(true));
+		assertEquals("MOCK_GOOGLE_CLIENT_ID", response.getJson(200, Configuration.class).getGoogleClientId());
+
+		// Update the configuration
+		ConfigurationAdministrator[] configurationAdministrators = new ConfigurationAdministrator[] {
+				new ConfigurationAdministrator("CHANGE_ADMIN_1", "CHANGE_NOTES_1") };
+		Configuration update = new Configuration("CHANGE_GOOGLE_CLIENT_ID", configurationAdministrators, "sandbox",
+				"CHANGE_CLIENT_PAYPAL_ID", "CHANGE_CLIENT_PAYPAL_SECRET", "CHANGE_INVOICE_{id}", "CHANGE_CURRENCY",
+				"CHANGE_WEBHOOK_ID");
+		response = this.server.send(this.jwt
+				.authorize(user, MockWoofServer.mockJsonRequest(HttpMethod.POST, "/configuration", update))
+				.secure(true));
+		response.assertJson(200, new Configured(true));
+
+		// Ensure cache invalidated by the update
+		response = this.server.send(this.jwt.authorize(user, MockWoofServer.mockRequest("/configuration"))
+				.header("Accept", "application/json").secure(true));
+		response.assertJson(200, update);
 	}
 
 	@Test
@@ -137,7 +168,7 @@ public class ConfigureServiceTest {
 										new ConfigurationAdministrator("CHANGE_ADMIN_1", "CHANGE_NOTES_1"),
 										new ConfigurationAdministrator("CHANGE_ADMIN_2", "CHANGE_NOTES_2") },
 								"changed", "CHANGE_PAYPAL_ID", "CHANGE_PAYPAL_SECRET", "CHANGE_INVOICE_{id}",
-								"CHANGE_CURRENCY"))
+								"CHANGE_CURRENCY", "CHANGE_WEBHOOK_ID"))
 				.secure(true)));
 		response.assertJsonError(new HttpException(HttpStatus.FORBIDDEN, "Forbidden"));
 
@@ -152,6 +183,7 @@ public class ConfigureServiceTest {
 		assertEquals("MOCK_PAYPAL_CLIENT_SECRET", admin.getPaypalClientSecret());
 		assertEquals("MOCK_PAYPAL_INVOICE_{id}", admin.getPaypalInvoiceIdTemplate());
 		assertEquals("MOCK_PAYPAL_CURRENCY", admin.getPaypalCurrency());
+		assertEquals("MOCK_PAYPAL_WEBHOOK_ID", admin.getPaypalWebhookId());
 	}
 
 	private static <T> void assertAdministrators(T[] configurationAdministrators,
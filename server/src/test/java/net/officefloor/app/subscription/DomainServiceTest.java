@@ -1,21 +1,42 @@
 package net.officefloor.app.subscription;
 
 import static net.officefloor.app.subscription.TestHelper.toText;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 
+import java.lang.reflect.Proxy;
 import java.time.ZonedDateTime;
 import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.RuleChain;
 
+import com.googlecode.objectify.Objectify;
+import com.googlecode.objectify.ObjectifyService;
 import com.googlecode.objectify.Ref;
 
+import net.officefloor.app.subscription.DomainService.DomainStatus;
+import net.officefloor.app.subscription.DomainService.DomainStatusRequest;
+import net.officefloor.app.subscription.DomainService.MigratedDomains;
 import net.officefloor.app.subscription.DomainService.PaidDomain;
+import net.officefloor.app.subscription.metrics.DatastoreCalls;
+import net.officefloor.app.subscription.metrics.DatastoreCalls.Operation;
 import net.officefloor.app.subscription.store.Domain;
+import net.officefloor.app.subscription.store.LegacyDomain;
+import net.officefloor.app.subscription.store.Payment;
 import net.officefloor.app.subscription.store.User;
+import net.officefloor.app.subscription.store.UserDomains;
 import net.officefloor.nosql.objectify.mock.ObjectifyRule;
+import net.officefloor.server.http.HttpMethod;
 import net.officefloor.web.jwt.mock.MockJwtAccessTokenRule;
 import net.officefloor.woof.mock.MockWoofResponse;
 import net.officefloor.woof.mock.MockWoofServer;
@@ -87,6 +108,329 @@ public class DomainServiceTest {
 				.send(this.jwt.authorize(user, MockWoofServer.mockRequest("/domains")).secure(true));
 		response.assertJson(200, new PaidDomain[] { new PaidDomain("officefloor.org", toText(expireOfficeFloor)),
 				new PaidDomain("activicy.com", toText(expireActivicy)) });
+
+		// Ensure user domains indexed from payments
+		UserDomains userDomains = this.objectify.get(UserDomains.class, user.getId());
+		assertEquals("Incorrect number of indexed domains", 3, userDomains.getDomainNames().size());
+		assertTrue("Should index domain", userDomains.getDomainNames()
+				.containsAll(Arrays.asList("officefloor.org", "activicy.com", "missing.domain")));
+	}
+
+	@Test
+	public void indexDomainsMergingConcurrentIndex() throws Exception {
+
+		// Setup user with payment (and no index)
+		User user = this.helper.setupUser("Daniel");
+		this.helper.setupPayment(Ref.create(user), "officefloor.org", false, TestHelper.now());
+
+		// Index the domains (with index saved concurrently after payments scanned)
+		Objectify ofy = this.objectify.ofy();
+		Objectify objectify = (Objectify) Proxy.newProxyInstance(this.getClass().getClassLoader(),
+				new Class[] { Objectify.class }, (proxy, method, args) -> {
+					if ("transact".equals(method.getName())) {
+						UserDomains concurrent = new UserDomains(user.getId());
+						concurrent.getDomainNames().add("activicy.com");
+						ofy.save().entity(concurrent).now();
+					}
+					return method.invoke(ofy, args);
+				});
+		DomainService.loadUserDomains(user, objectify);
+
+		// Ensure merged with concurrently saved index
+		this.objectify.ofy().clear();
+		UserDomains userDomains = this.objectify.get(UserDomains.class, user.getId());
+		assertEquals("Incorrect number of indexed domains", 2, userDomains.getDomainNames().size());
+		assertTrue("Should merge indexes",
+				userDomains.getDomainNames().containsAll(Arrays.asList("activicy.com", "officefloor.org")));
+	}
+
+	@Test
+	public void getIndexedDomains() throws Exception {
+
+		// Setup user with indexed domains (and no payment history)
+		User user = this.helper.setupUser("Daniel");
+		UserDomains userDomains = new UserDomains(user.getId());
+		userDomains.getDomainNames().addAll(Arrays.asList("officefloor.org", "activicy.com"));
+		this.objectify.store(userDomains);
+
+		// Load the domains
+		ZonedDateTime expireOfficeFloor = TestHelper.now().plus(1, ChronoUnit.YEARS);
+		ZonedDateTime expireActivicy = expireOfficeFloor.minus(2, ChronoUnit.WEEKS);
+		this.objectify.store(new Domain("officefloor.org", Date.from(expireOfficeFloor.toInstant())),
+				new Domain("activicy.com", Date.from(expireActivicy.toInstant())),
+				new Domain("not.indexed", Date.from(expireActivicy.toInstant())));
+
+		// Obtain the domains from the index
+		MockWoofResponse response = this.server
+				.send(this.jwt.authorize(user, MockWoofServer.mockRequest("/domains")).secure(true));
+		response.assertJson(200, new PaidDomain[] { new PaidDomain("activicy.com", toText(expireActivicy)),
+				new PaidDomain("officefloor.org", toText(expireOfficeFloor)) });
+	}
+
+	@Test
+	public void loadIndexedDomainsInBatch() throws Exception {
+
+		// Setup user with indexed domains
+		User user = this.helper.setupUser("Daniel");
+		UserDomains userDomains = new UserDomains(user.getId());
+		userDomains.getDomainNames().addAll(Arrays.asList("officefloor.org", "activicy.com", "sagenschneider.net"));
+		this.objectify.store(userDomains);
+		Date expires = Date.from(TestHelper.now().plus(1, ChronoUnit.YEARS).toInstant());
+		this.objectify.store(new Domain("officefloor.org", expires), new Domain("activicy.com", expires),
+				new Domain("sagenschneider.net", expires));
+		this.objectify.ofy().clear();
+
+		// Load the domains (counting the Datastore calls)
+		DatastoreCalls calls = new DatastoreCalls();
+		Objectify objectify = calls.meter(this.objectify.ofy());
+		List<String> domainNames = DomainService.loadUserDomains(user, objectify).getDomainNames();
+		Map<String, Domain> domains = DomainService.loadDomains(domainNames, objectify);
+		assertEquals("Incorrect number of domains", 3, domains.size());
+
+		// Ensure domains loaded in one batch (rather than per domain)
+		assertEquals("Should get user domains: " + calls, 1, calls.getCallCount(Operation.GET, UserDomains.class));
+		assertEquals("Should get domains in one batch: " + calls, 1, calls.getCallCount(Operation.GET, Domain.class));
+		assertEquals("Incorrect number of Datastore calls: " + calls, 2, calls.getCallCount());
+		assertEquals("Incorrect number of entities loaded: " + calls, 4, calls.getEntitiesLoaded());
+	}
+
+	@Test
+	public void extendDomainWithoutPaymentHistory() throws Exception {
+
+		// Setup the domain with previous payment
+		User user = this.helper.setupUser("Daniel");
+		Ref<User> userRef = Ref.create(user);
+		ZonedDateTime previous = TestHelper.now().minus(1, ChronoUnit.MONTHS);
+		this.helper.setupDomain(this.helper.setupPayment(userRef, "officefloor.org", false, previous));
+		Payment payment = this.helper.setupPayment(userRef, "officefloor.org", false, TestHelper.now());
+		this.objectify.ofy().clear();
+
+		// Extend the domain (counting the Datastore calls)
+		DatastoreCalls calls = new DatastoreCalls();
+		Objectify objectify = calls.meter(this.objectify.ofy());
+		Date expires = DomainService.extendDomain(user, payment, objectify);
+		assertEquals("Incorrect expiry", previous.plus(2, ChronoUnit.YEARS).truncatedTo(ChronoUnit.SECONDS),
+				TestHelper.toZonedDateTime(expires).truncatedTo(ChronoUnit.SECONDS));
+
+		// Ensure payment history not loaded
+		assertEquals("Should not query payments: " + calls, 0, calls.getCallCount(Operation.QUERY, Payment.class));
+
+		// Ensure domain loaded and saved within the transaction
+		assertEquals("Should load domain in transaction: " + calls, 1,
+				calls.getCallCount(Operation.GET, Domain.class));
+		assertEquals("Should save domain in transaction: " + calls, 1,
+				calls.getCallCount(Operation.SAVE, Domain.class));
+	}
+
+	@Test
+	public void recalculateDomain() throws Exception {
+
+		// Setup the payments for the domain
+		User user = this.helper.setupUser("Daniel");
+		Ref<User> userRef = Ref.create(user);
+		ZonedDateTime previous = TestHelper.now().minus(1, ChronoUnit.MONTHS);
+		this.helper.setupPayment(userRef, "officefloor.org", false, previous);
+		this.helper.setupPayment(userRef, "officefloor.org", false, TestHelper.now());
+
+		// Setup domain with incorrect expiry (e.g. from refund)
+		this.objectify.store(new Domain("officefloor.org", Date.from(previous.toInstant())));
+
+		// Recalculate the domain
+		User admin = this.helper.setupUser("Admin", User.ROLE_ADMIN);
+		MockWoofResponse response = this.server.send(this.jwt.authorize(admin,
+				MockWoofServer.mockRequest("/domains/recalculate/officefloor.org").method(HttpMethod.POST))
+				.secure(true));
+		ZonedDateTime expires = previous.plus(2, ChronoUnit.YEARS);
+		response.assertJson(200, new PaidDomain("officefloor.org", toText(expires)));
+
+		// Ensure domain expiry rebuilt from payments
+		Domain domain = this.objectify.ofy().load().type(Domain.class).id("officefloor.org").now();
+		assertEquals("Incorrect recalculated expiry", toText(expires), ResponseUtil.toText(domain.getExpires()));
+	}
+
+	@Test
+	public void extendDomainConcurrently() throws Exception {
+
+		// Setup the domain with previous payment
+		User user = this.helper.setupUser("Daniel");
+		Ref<User> userRef = Ref.create(user);
+		ZonedDateTime previous = TestHelper.now().minus(1, ChronoUnit.MONTHS);
+		this.helper.setupDomain(this.helper.setupPayment(userRef, "officefloor.org", false, previous));
+
+		// Setup the captured payments
+		ZonedDateTime now = TestHelper.now();
+		Payment[] payments = new Payment[] { this.helper.setupPayment(userRef, "officefloor.org", false, now),
+				this.helper.setupPayment(userRef, "officefloor.org", false, now.plus(1, ChronoUnit.SECONDS)) };
+
+		// Extend the domain concurrently
+		ExecutorService executor = Executors.newFixedThreadPool(payments.length);
+		try {
+			List<Future<Date>> extensions = new ArrayList<>(payments.length);
+			for (Payment payment : payments) {
+				extensions.add(executor.submit(() -> ObjectifyService
+						.run(() -> DomainService.extendDomain(user, payment, ObjectifyService.ofy()))));
+			}
+			for (Future<Date> extension : extensions) {
+				extension.get();
+			}
+		} finally {
+			executor.shutdown();
+		}
+
+		// Ensure each payment extended the domain
+		this.objectify.ofy().clear();
+		Domain domain = this.objectify.ofy().load().type(Domain.class).id("officefloor.org").now();
+		assertEquals("Should extend for each payment",
+				previous.plus(3, ChronoUnit.YEARS).truncatedTo(ChronoUnit.SECONDS),
+				TestHelper.toZonedDateTime(domain.getExpires()).truncatedTo(ChronoUnit.SECONDS));
+	}
+
+	@Test
+	public void getDomainsStatus() throws Exception {
+
+		// Setup the domains (with payments not of the user)
+		User user = this.helper.setupUser("Daniel");
+		Ref<User> anotherUserRef = Ref.create(this.helper.setupUser("Another"));
+		ZonedDateTime now = TestHelper.now();
+		Domain officeFloor = this.helper
+				.setupDomain(this.helper.setupPayment(anotherUserRef, "officefloor.org", false, now));
+		Domain activicy = this.helper.setupDomain(
+				this.helper.setupPayment(anotherUserRef, "activicy.com", false, now.minus(2, ChronoUnit.YEARS)));
+
+		// Obtain the status of the domains (in request order)
+		MockWoofResponse response = this.server.send(this.jwt.authorize(user,
+				MockWoofServer.mockJsonRequest(HttpMethod.POST, "/domains/status", new DomainStatusRequest(
+						new String[] { "officefloor.org", "not.registered.org", "activicy.com", "officefloor.org" })))
+				.secure(true));
+		response.assertJson(200,
+				new DomainStatus[] { new DomainStatus("officefloor.org", ResponseUtil.toText(officeFloor.getExpires())),
+						new DomainStatus("not.registered.org", null),
+						new DomainStatus("activicy.com", ResponseUtil.toText(activicy.getExpires())) });
+	}
+
+	@Test
+	public void loadDomainsStatusWithoutPayments() throws Exception {
+
+		// Setup the domains
+		User user = this.helper.setupUser("Daniel");
+		ZonedDateTime now = TestHelper.now();
+		this.helper.setupDomain(this.helper.setupPayment(Ref.create(user), "officefloor.org", false, now));
+		this.helper.setupDomain(this.helper.setupPayment(Ref.create(user), "activicy.com", false, now));
+		this.objectify.ofy().clear();
+
+		// Load the status (counting the Datastore calls)
+		DatastoreCalls calls = new DatastoreCalls();
+		Objectify objectify = calls.meter(this.objectify.ofy());
+		DomainStatus[] statuses = DomainService
+				.loadDomainsStatus(Arrays.asList("officefloor.org", "activicy.com", "sagenschneider.net"), objectify);
+		assertEquals("Incorrect number of statuses", 3, statuses.length);
+		assertEquals("Should not be registered", null, statuses[2].getExpiresDate());
+
+		// Ensure domains looked up in one batch (without payments)
+		assertEquals("Should get domains in one batch: " + calls, 1, calls.getCallCount(Operation.GET, Domain.class));
+		assertEquals("Should not query payments: " + calls, 0, calls.getCallCount(Operation.QUERY, Payment.class));
+		assertEquals("Should not get payments: " + calls, 0, calls.getCallCount(Operation.GET, Payment.class));
+	}
+
+	@Test
+	public void legacyDomainsUntilMigrated() throws Exception {
+
+		// Setup user for payments
+		User user = this.helper.setupUser("Daniel");
+		Ref<User> userRef = Ref.create(user);
+
+		// Load the payments
+		ZonedDateTime now = TestHelper.now();
+		this.helper.setupPayment(userRef, "officefloor.org", false, now);
+		this.helper.setupPayment(userRef, "activicy.com", false, now);
+
+		// Load the domains (with one not yet migrated)
+		ZonedDateTime expireOfficeFloor = now.plus(1, ChronoUnit.YEARS);
+		ZonedDateTime expireActivicy = expireOfficeFloor.plus(2, ChronoUnit.WEEKS);
+		this.objectify.store(new Domain("officefloor.org", Date.from(expireOfficeFloor.toInstant())),
+				new LegacyDomain("activicy.com", Date.from(expireActivicy.minus(1, ChronoUnit.DAYS).toInstant())),
+				new LegacyDomain("activicy.com", Date.from(expireActivicy.toInstant())));
+
+		// Ensure legacy domain paid
+		MockWoofResponse response = this.server
+				.send(this.jwt.authorize(user, MockWoofServer.mockRequest("/domains")).secure(true));
+		response.assertJson(200, new PaidDomain[] { new PaidDomain("officefloor.org", toText(expireOfficeFloor)),
+				new PaidDomain("activicy.com", toText(expireActivicy)) });
+
+		// Ensure legacy domain status
+		response = this.server.send(this.jwt.authorize(user,
+				MockWoofServer.mockJsonRequest(HttpMethod.POST, "/domains/status",
+						new DomainStatusRequest(new String[] { "activicy.com", "not.registered.org" })))
+				.secure(true));
+		response.assertJson(200, new DomainStatus[] { new DomainStatus("activicy.com", toText(expireActivicy)),
+				new DomainStatus("not.registered.org", null) });
+
+		// Ensure legacy domain available for invoicing
+		Domain activicy = DomainService.loadDomainAsync("activicy.com", this.objectify.ofy()).get();
+		assertEquals("Incorrect legacy expiry", Date.from(expireActivicy.toInstant()), activicy.getExpires());
+	}
+
+	@Test
+	public void migrateLegacyDomainsInPages() throws Exception {
+
+		// Load more legacy domains than a page
+		Date expires = Date.from(TestHelper.now().plus(1, ChronoUnit.YEARS).toInstant());
+		List<LegacyDomain> legacyDomains = new ArrayList<>();
+		for (int i = 0; i <= DomainService.MIGRATE_PAGE_SIZE; i++) {
+			legacyDomains.add(new LegacyDomain("domain" + i + ".org", expires));
+		}
+		this.objectify.ofy().save().entities(legacyDomains).now();
+
+		// Migrate the legacy domains
+		Map<String, Domain> migrated = DomainService.migrateLegacyDomains(this.objectify.ofy());
+		assertEquals("Incorrect number of migrated domains", legacyDomains.size(), migrated.size());
+
+		// Ensure legacy domains removed
+		this.objectify.consistent(() -> this.objectify.ofy().load().type(LegacyDomain.class).count(),
+				(count) -> count == 0);
+	}
+
+	@Test
+	public void migrateLegacyDomains() throws Exception {
+
+		// Setup user for payments
+		User user = this.helper.setupUser("Daniel");
+		Ref<User> userRef = Ref.create(user);
+
+		// Load the payments
+		ZonedDateTime now = TestHelper.now();
+		this.helper.setupPayment(userRef, "officefloor.org", false, now);
+		this.helper.setupPayment(userRef, "activicy.com", false, now);
+
+		// Load the legacy domains (including duplicate entry)
+		ZonedDateTime expireOfficeFloor = now.plus(1, ChronoUnit.YEARS);
+		ZonedDateTime expireActivicy = expireOfficeFloor.plus(2, ChronoUnit.WEEKS);
+		this.objectify.store(
+				new LegacyDomain("officefloor.org", Date.from(expireOfficeFloor.minus(1, ChronoUnit.DAYS).toInstant())),
+				new LegacyDomain("officefloor.org", Date.from(expireOfficeFloor.toInstant())),
+				new LegacyDomain("activicy.com", Date.from(expireActivicy.toInstant())));
+
+		// Migrate the legacy domains
+		User admin = this.helper.setupUser("Admin", User.ROLE_ADMIN);
+		MockWoofResponse response = this.server.send(this.jwt
+				.authorize(admin, MockWoofServer.mockRequest("/domains/migrate").method(HttpMethod.POST))
+				.secure(true));
+		response.assertJson(200, new MigratedDomains(2));
+
+		// Obtain the migrated domains
+		response = this.server.send(this.jwt.authorize(user, MockWoofServer.mockRequest("/domains")).secure(true));
+		response.assertJson(200, new PaidDomain[] { new PaidDomain("officefloor.org", toText(expireOfficeFloor)),
+				new PaidDomain("activicy.com", toText(expireActivicy)) });
+
+		// Ensure migrated to domains keyed by name
+		Domain officeFloor = this.objectify.ofy().load().type(Domain.class).id("officefloor.org").now();
+		assertEquals("Incorrect migrated expiry", Date.from(expireOfficeFloor.toInstant()), officeFloor.getExpires());
+		Domain activicy = this.objectify.ofy().load().type(Domain.class).id("activicy.com").now();
+		assertEquals("Incorrect migrated expiry", Date.from(expireActivicy.toInstant()), activicy.getExpires());
+
+		// Ensure legacy domains removed
+		this.objectify.consistent(() -> this.objectify.ofy().load().type(LegacyDomain.class).count(),
+				(count) -> count == 0);
 	}
 
 }
\ No newline at end of file
@@ -0,0 +1,156 @@
+/*
+ * OfficeFloor - http://www.officefloor.net
+ * Copyright (C) 2005-2019 Daniel Sagenschneider
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package net.officefloor.app.subscription;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import com.google.api.client.googleapis.auth.oauth2.GoogleIdTokenVerifier;
+import com.google.api.client.http.HttpTransport;
+import com.google.api.client.http.LowLevelHttpRequest;
+import com.google.api.client.json.Json;
+import com.google.api.client.testing.http.MockHttpTransport;
+import com.google.api.client.testing.http.MockLowLevelHttpRequest;
+import com.google.api.client.testing.http.MockLowLevelHttpResponse;
+import com.google.api.client.util.Clock;
+
+import net.officefloor.app.subscription.google.GoogleIdTokenVerifierCache;
+import net.officefloor.app.subscription.google.GoogleIdTokenVerifierCacheManagedObjectSource;
+import net.officefloor.frame.util.ManagedObjectSourceStandAlone;
+
+/**
+ * Tests the {@link GoogleIdTokenVerifierCache}.
+ * 
+ * @author Daniel Sagenschneider
+ */
+public class GoogleIdTokenVerifierCacheTest {
+
+	private static final int KEYS_MAX_AGE_SECONDS = 60 * 60;
+
+	private final AtomicInteger keyRequests = new AtomicInteger(0);
+
+	private volatile long currentTime = System.currentTimeMillis();
+
+	private final Clock clock = () -> this.currentTime;
+
+	private final HttpTransport transport = new MockHttpTransport() {
+		@Override
+		public LowLevelHttpRequest buildRequest(String method, String url) throws IOException {
+			GoogleIdTokenVerifierCacheTest.this.keyRequests.incrementAndGet();
+			MockLowLevelHttpResponse response = new MockLowLevelHttpResponse().setContentType(Json.MEDIA_TYPE)
+					.setContent("{}");
+			response.addHeader("Cache-Control", "max-age=" + KEYS_MAX_AGE_SECONDS);
+			return new MockLowLevelHttpRequest(url).setResponse(response);
+		}
+	};
+
+	private final GoogleIdTokenVerifierCache cache = new GoogleIdTokenVerifierCache(this.transport, this.clock);
+
+	@Test
+	public void reuseVerifier() {
+		GoogleIdTokenVerifier verifier = this.cache.getVerifier("MOCK_GOOGLE_CLIENT_ID");
+		assertSame("Should reuse verifier", verifier, this.cache.getVerifier("MOCK_GOOGLE_CLIENT_ID"));
+		assertEquals("Should load keys on first verification", 0, this.keyRequests.get());
+	}
+
+	@Test
+	public void rebuildVerifierOnChangedGoogleClientId() {
+		GoogleIdTokenVerifier verifier = this.cache.getVerifier("MOCK_GOOGLE_CLIENT_ID");
+
+		// Ensure rebuild on change of Google client Id
+		GoogleIdTokenVerifier changed = this.cache.getVerifier("CHANGED_GOOGLE_CLIENT_ID");
+		assertNotSame("Should rebuild for changed Google client Id", verifier, changed);
+		assertSame("Should reuse changed verifier", changed, this.cache.getVerifier("CHANGED_GOOGLE_CLIENT_ID"));
+
+		// Ensure handle no Google client Id (not yet configured)
+		GoogleIdTokenVerifier notConfigured = this.cache.getVerifier(null);
+		assertNotSame("Should rebuild for no Google client Id", changed, notConfigured);
+		assertSame("Should reuse verifier", notConfigured, this.cache.getVerifier(null));
+		assertNotSame("Should rebuild on configuring", notConfigured, this.cache.getVerifier("MOCK_GOOGLE_CLIENT_ID"));
+	}
+
+	@Test
+	public void refreshKeysWithinRefreshWindow() {
+
+		// Load the keys
+		this.cache.warm();
+		assertEquals("Should load keys", 1, this.keyRequests.get());
+		GoogleIdTokenVerifier verifier = this.cache.getVerifier("MOCK_GOOGLE_CLIENT_ID");
+
+		// Ensure keys not refreshed before refresh window
+		long expireTime = this.currentTime + (KEYS_MAX_AGE_SECONDS * 1000);
+		this.currentTime = expireTime - GoogleIdTokenVerifierCache.REFRESH_AHEAD_MILLIS - 1;
+		assertSame("Should reuse verifier", verifier, this.cache.getVerifier("MOCK_GOOGLE_CLIENT_ID"));
+		assertEquals("Should not refresh keys", 1, this.keyRequests.get());
+
+		// Ensure keys refreshed within refresh window (before expiry)
+		this.currentTime = expireTime - GoogleIdTokenVerifierCache.REFRESH_AHEAD_MILLIS;
+		GoogleIdTokenVerifier refreshed = this.cache.getVerifier("MOCK_GOOGLE_CLIENT_ID");
+		assertNotSame("Should rebuild verifier with refreshed keys", verifier, refreshed);
+		assertEquals("Should refresh keys", 2, this.keyRequests.get());
+
+		// Ensure refreshed keys reused
+		assertSame("Should reuse refreshed verifier", refreshed, this.cache.getVerifier("MOCK_GOOGLE_CLIENT_ID"));
+		assertEquals("Should only refresh keys once", 2, this.keyRequests.get());
+	}
+
+	@Test
+	public void warmOnStart() throws Exception {
+		this.startCache("true");
+		assertEquals("Should load keys on start", 1, this.keyRequests.get());
+	}
+
+	@Test
+	public void notWarmOnStart() throws Exception {
+		this.startCache("false");
+		assertEquals("Should not load keys on start", 0, this.keyRequests.get());
+	}
+
+	@Test
+	public void notWarmOnStartBySystemProperty() throws Exception {
+		String reset = System.getProperty(GoogleIdTokenVerifierCacheManagedObjectSource.SYSTEM_PROPERTY_WARM_ON_START);
+		System.setProperty(GoogleIdTokenVerifierCacheManagedObjectSource.SYSTEM_PROPERTY_WARM_ON_START, "false");
+		try {
+			this.startCache(null);
+			assertEquals("Should not load keys on start", 0, this.keyRequests.get());
+		} finally {
+			if (reset == null) {
+				System.clearProperty(GoogleIdTokenVerifierCacheManagedObjectSource.SYSTEM_PROPERTY_WARM_ON_START);
+			} else {
+				System.setProperty(GoogleIdTokenVerifierCacheManagedObjectSource.SYSTEM_PROPERTY_WARM_ON_START, reset);
+			}
+		}
+	}
+
+	private void startCache(String warmOnStart) throws Exception {
+		ManagedObjectSourceStandAlone standAlone = new ManagedObjectSourceStandAlone();
+		if (warmOnStart != null) {
+			standAlone.addProperty(GoogleIdTokenVerifierCacheManagedObjectSource.PROPERTY_WARM_ON_START, warmOnStart);
+		}
+		GoogleIdTokenVerifierCacheManagedObjectSource mos = standAlone
+				.initManagedObjectSource(new GoogleIdTokenVerifierCacheManagedObjectSource(this.cache));
+		standAlone.startManagedObjectSource(mos);
+	}
+
+}
@@ -67,6 +67,29 @@ public class InitialiseServiceTest {
 				new Initialisation(true, "MOCK_GOOGLE_CLIENT_ID", "MOCK_PAYPAL_CLIENT_ID", "MOCK_PAYPAL_CURRENCY"));
 	}
 
+	@Test
+	public void cachedInitialisation() throws Exception {
+
+		// Store configuration
+		Administration administration = this.helper.setupAdministration();
+
+		// Obtain initialisation (loading cache)
+		MockWoofResponse response = this.server
+				.send(MockWoofServer.mockRequest("/initialise").secure(true).header("Accept", "application/json"));
+		response.assertJson(200,
+				new Initialisation(true, "MOCK_GOOGLE_CLIENT_ID", "MOCK_PAYPAL_CLIENT_ID", "MOCK_PAYPAL_CURRENCY"));
+
+		// Change the configuration directly in store
+		administration.setGoogleClientId("CHANGED_GOOGLE_CLIENT_ID");
+		this.obectify.store(administration);
+
+		// Ensure served from cache
+		response = this.server
+				.send(MockWoofServer.mockRequest("/initialise").secure(true).header("Accept", "application/json"));
+		response.assertJson(200,
+				new Initialisation(true, "MOCK_GOOGLE_CLIENT_ID", "MOCK_PAYPAL_CLIENT_ID", "MOCK_PAYPAL_CURRENCY"));
+	}
+
 	@Test
 	public void notYetInitialised() throws Exception {
 		MockWoofResponse response = this.server
@@ -0,0 +1,101 @@
+/*
+ * OfficeFloor - http://www.officefloor.net
+ * Copyright (C) 2005-2019 Daniel Sagenschneider
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package net.officefloor.app.subscription;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Rule;
+import org.junit.Test;
+
+import com.googlecode.objectify.ObjectifyService;
+
+import net.officefloor.app.subscription.store.InvoiceIdPool;
+import net.officefloor.nosql.objectify.mock.ObjectifyRule;
+
+/**
+ * Tests the {@link InvoiceIdPool}.
+ * 
+ * @author Daniel Sagenschneider
+ */
+public class InvoiceIdPoolTest {
+
+	@Rule
+	public ObjectifyRule objectify = new ObjectifyRule();
+
+	@Test
+	public void refillBlock() {
+		InvoiceIdPool pool = new InvoiceIdPool(3);
+
+		// Obtain identifiers across multiple blocks
+		Set<Long> ids = new HashSet<>();
+		for (int i = 0; i < 7; i++) {
+			Long id = pool.nextId(this.objectify.ofy());
+			assertNotNull("Should obtain identifier " + i, id);
+			assertTrue("Identifier " + id + " should be unique", ids.add(id));
+		}
+	}
+
+	@Test
+	public void concurrentUniqueIds() throws Exception {
+		final int THREADS = 8;
+		final int IDS_PER_THREAD = 100;
+		InvoiceIdPool pool = new InvoiceIdPool(10);
+
+		// Obtain identifiers concurrently (starting together)
+		Set<Long> ids = ConcurrentHashMap.newKeySet();
+		CountDownLatch start = new CountDownLatch(1);
+		ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+		try {
+			List<Future<?>> threads = new ArrayList<>(THREADS);
+			for (int t = 0; t < THREADS; t++) {
+				threads.add(executor.submit(() -> {
+					start.await(10, TimeUnit.SECONDS);
+					return ObjectifyService.run(() -> {
+						for (int i = 0; i < IDS_PER_THREAD; i++) {
+							ids.add(pool.nextId(ObjectifyService.ofy()));
+						}
+						return null;
+					});
+				}));
+			}
+			start.countDown();
+			for (Future<?> thread : threads) {
+				thread.get(30, TimeUnit.SECONDS);
+			}
+		} finally {
+			executor.shutdown();
+		}
+
+		// Ensure each identifier is unique
+		assertEquals("Should obtain unique identifiers", THREADS * IDS_PER_THREAD, ids.size());
+	}
+
+}
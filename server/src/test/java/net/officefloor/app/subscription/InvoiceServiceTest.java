@@ -36,7 +36,9 @@ import com.paypal.orders.Order;
 import com.paypal.orders.OrderRequest;
 import com.paypal.orders.PurchaseUnitRequest;
 
+import net.officefloor.app.subscription.InvoiceService.CreatedDomainsInvoice;
 import net.officefloor.app.subscription.InvoiceService.CreatedInvoice;
+import net.officefloor.app.subscription.InvoiceService.InvoiceDomains;
 import net.officefloor.app.subscription.store.Administration;
 import net.officefloor.app.subscription.store.Domain;
 import net.officefloor.app.subscription.store.Invoice;
@@ -140,6 +142,79 @@ public class InvoiceServiceTest {
 		this.doCreateInvoiceTest("officefloor.org?restart=true", false);
 	}
 
+	@Test
+	public void createDomainsInvoice() {
+
+		// Initialise with expired domain
+		Administration admin = this.helper.setupAdministration();
+		String currency = admin.getPaypalCurrency();
+		User user = this.helper.setupUser("Daniel");
+		Payment payment = this.helper.setupPayment(Ref.create(user), "expired.officefloor.org", false,
+				TestHelper.now().minus(3, ChronoUnit.YEARS));
+		this.helper.setupDomain(payment);
+
+		// Record (one order for all domains)
+		this.payPal.addOrdersCreateResponse(new Order().id("MOCK_ORDER_ID").status("CREATED")).validate((request) -> {
+			OrderRequest order = (OrderRequest) request.requestBody();
+			assertEquals("CAPTURE", order.checkoutPaymentIntent());
+			List<PurchaseUnitRequest> purchaseUnits = order.purchaseUnits();
+			assertEquals("Should be one purchase for all domains", 1, purchaseUnits.size());
+			PurchaseUnitRequest purchase = purchaseUnits.get(0);
+			assertEquals("OfficeFloor 12 month subscription for 2 domains", purchase.description());
+			assertTrue("PayPal invoice ID: " + purchase.invoiceId(),
+					purchase.invoiceId().matches("^MOCK_PAYPAL_INVOICE_\\d+$"));
+			assertEquals("30.00", purchase.amountWithBreakdown().value());
+			assertEquals(currency, purchase.amountWithBreakdown().currencyCode());
+			assertEquals("27.26", purchase.amountWithBreakdown().amountBreakdown().itemTotal().value());
+			assertEquals("2.74", purchase.amountWithBreakdown().amountBreakdown().taxTotal().value());
+			assertEquals("Incorrect number of purchase items", 3, purchase.items().size());
+			assertEquals("12 month subscription for officefloor.org", purchase.items().get(0).description());
+			assertEquals("12 month subscription for expired.officefloor.org", purchase.items().get(1).description());
+			assertEquals("Restart domain subscription for expired.officefloor.org",
+					purchase.items().get(2).description());
+		});
+
+		// Send request (with duplicate domain)
+		MockWoofResponse response = this.server.send(this.jwt.authorize(user,
+				MockWoofServer.mockJsonRequest(HttpMethod.POST, "/invoices/domains", new InvoiceDomains(
+						new String[] { "officefloor.org", "expired.officefloor.org", " officefloor.org " }, true)))
+				.secure(true));
+
+		// Ensure correct response
+		CreatedDomainsInvoice order = response.getJson(200, CreatedDomainsInvoice.class);
+		assertEquals("Incorrect order ID", "MOCK_ORDER_ID", order.getOrderId());
+		assertEquals("Incorrect status", "CREATED", order.getStatus());
+		assertEquals("Should be invoice for each domain", 2, order.getInvoiceIds().length);
+
+		// Ensure invoices captured in data store
+		String[] domainNames = new String[] { "officefloor.org", "expired.officefloor.org" };
+		for (int i = 0; i < domainNames.length; i++) {
+			Invoice invoice = this.objectify.get(Invoice.class, Long.parseLong(order.getInvoiceIds()[i]));
+			assertEquals("Incorrect invoiced user", user.getId(), invoice.getUser().get().getId());
+			assertEquals("Incorrect invoiced domain", domainNames[i], invoice.getProductReference());
+			assertEquals("Incorrect payment order id", "MOCK_ORDER_ID", invoice.getPaymentOrderId());
+			assertEquals("Incorrect restart", Boolean.valueOf(i == 1), invoice.getIsRestartSubscription());
+			assertEquals("Incorrect amount", Integer.valueOf(i == 1 ? 25_00 : 5_00), invoice.getAmount());
+		}
+	}
+
+	@Test
+	public void tooManyDomainsInvoice() {
+		this.helper.setupAdministration();
+		User user = this.helper.setupUser("Daniel");
+
+		// Attempt to invoice too many domains
+		String[] domainNames = new String[InvoiceService.MAX_INVOICE_DOMAINS + 1];
+		for (int i = 0; i < domainNames.length; i++) {
+			domainNames[i] = "domain" + i + ".officefloor.org";
+		}
+		MockWoofResponse response = this.server.send(this.jwt.authorize(user, MockWoofServer
+				.mockJsonRequest(HttpMethod.POST, "/invoices/domains", new InvoiceDomains(domainNames, false)))
+				.secure(true));
+		response.assertJsonError(
+				new HttpException(422, "Invoice limited to " + InvoiceService.MAX_INVOICE_DOMAINS + " domains"));
+	}
+
 	private void doCreateInvoiceTest(String urlSuffix, boolean isRestart) {
 
 		// Initialise
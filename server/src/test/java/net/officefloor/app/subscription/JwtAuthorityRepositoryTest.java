@@ -0,0 +1,248 @@
+/*
+ * OfficeFloor - http://www.officefloor.net
+ * Copyright (C) 2005-2019 Daniel Sagenschneider
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package net.officefloor.app.subscription;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.lang.reflect.Proxy;
+import java.security.Key;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import javax.crypto.spec.SecretKeySpec;
+
+import org.junit.Rule;
+import org.junit.Test;
+
+import com.googlecode.objectify.Objectify;
+
+import lombok.Value;
+import net.officefloor.app.subscription.jwt.JwtAuthorityRepositoryImpl;
+import net.officefloor.app.subscription.jwt.JwtKeyCache;
+import net.officefloor.app.subscription.metrics.DatastoreCalls;
+import net.officefloor.app.subscription.metrics.DatastoreCalls.Operation;
+import net.officefloor.app.subscription.store.AccessKey;
+import net.officefloor.app.subscription.store.RefreshKey;
+import net.officefloor.nosql.objectify.mock.ObjectifyRule;
+import net.officefloor.web.jwt.authority.repository.JwtAccessKey;
+import net.officefloor.web.jwt.authority.repository.JwtAuthorityRepository.RetrieveKeysContext;
+import net.officefloor.web.jwt.authority.repository.JwtAuthorityRepository.SaveKeysContext;
+import net.officefloor.web.jwt.authority.repository.JwtRefreshKey;
+
+/**
+ * Tests the {@link JwtAuthorityRepositoryImpl} caching keys in the
+ * {@link JwtKeyCache}.
+ * 
+ * @author Daniel Sagenschneider
+ */
+public class JwtAuthorityRepositoryTest {
+
+	private static final long HOUR = TimeUnit.HOURS.toMillis(1);
+
+	@Rule
+	public final ObjectifyRule objectify = new ObjectifyRule();
+
+	private final DatastoreCalls calls = new DatastoreCalls();
+
+	private final long now = System.currentTimeMillis();
+
+	private JwtKeyCache keyCache = new JwtKeyCache(JwtKeyCache.DEFAULT_TIME_TO_LIVE);
+
+	@Test
+	public void noReloadOnCacheHit() throws Exception {
+		this.objectify.store(this.accessKey(this.now - HOUR, this.now + HOUR));
+		JwtAuthorityRepositoryImpl repository = this.repository();
+
+		// Load the keys
+		assertEquals("Incorrect number of keys", 1, repository.retrieveJwtAccessKeys(this.retrieve(this.now)).size());
+		assertEquals("Should query keys", 1, this.calls.getCallCount(Operation.QUERY, AccessKey.class));
+
+		// Ensure served from cache
+		assertEquals("Incorrect number of keys", 1, repository.retrieveJwtAccessKeys(this.retrieve(this.now)).size());
+		assertEquals("Should not reload keys", 1, this.calls.getCallCount(Operation.QUERY, AccessKey.class));
+	}
+
+	@Test
+	public void serveKeysUntilEarliestExpires() throws Exception {
+		this.objectify.store(this.accessKey(this.now - HOUR, this.now + HOUR),
+				this.accessKey(this.now, this.now + (2 * HOUR)));
+		JwtAuthorityRepositoryImpl repository = this.repository();
+
+		// Load the keys
+		assertEquals("Incorrect number of keys", 2, repository.retrieveJwtAccessKeys(this.retrieve(this.now)).size());
+
+		// Ensure served from cache before earliest key expires
+		assertEquals("Incorrect number of keys", 2,
+				repository.retrieveJwtAccessKeys(this.retrieve(this.now + HOUR)).size());
+		assertEquals("Should not reload keys", 1, this.calls.getCallCount(Operation.QUERY, AccessKey.class));
+
+		// Ensure reload once earliest key expires
+		assertEquals("Incorrect number of keys", 1,
+				repository.retrieveJwtAccessKeys(this.retrieve(this.now + HOUR + 1)).size());
+		assertEquals("Should reload keys", 2, this.calls.getCallCount(Operation.QUERY, AccessKey.class));
+	}
+
+	@Test
+	public void reloadAfterTimeToLive() throws Exception {
+		this.keyCache = new JwtKeyCache(10);
+		this.objectify.store(this.refreshKey(this.now - HOUR, this.now + HOUR));
+		JwtAuthorityRepositoryImpl repository = this.repository();
+
+		// Load the keys
+		assertEquals("Incorrect number of keys", 1, repository.retrieveJwtRefreshKeys(this.retrieve(this.now)).size());
+		assertEquals("Should query keys", 1, this.calls.getCallCount(Operation.QUERY, RefreshKey.class));
+
+		// Ensure reload after time to live (to pick up keys of other instances)
+		Thread.sleep(20);
+		assertEquals("Incorrect number of keys", 1, repository.retrieveJwtRefreshKeys(this.retrieve(this.now)).size());
+		assertEquals("Should reload keys", 2, this.calls.getCallCount(Operation.QUERY, RefreshKey.class));
+	}
+
+	@Test
+	public void deleteExpiredKeysInBatch() throws Exception {
+		this.objectify.store(this.accessKey(this.now - (3 * HOUR), this.now - (2 * HOUR)),
+				this.accessKey(this.now - (2 * HOUR), this.now - HOUR),
+				this.accessKey(this.now - HOUR, this.now + HOUR));
+		JwtAuthorityRepositoryImpl repository = this.repository();
+
+		// Ensure only active keys loaded
+		assertEquals("Incorrect number of keys", 1, repository.retrieveJwtAccessKeys(this.retrieve(this.now)).size());
+
+		// Ensure expired keys deleted in one batch
+		assertEquals("Should delete in one batch", 1, this.calls.getCallCount(Operation.DELETE, AccessKey.class));
+		this.objectify.consistent(() -> this.objectify.ofy().load().type(AccessKey.class).count(),
+				(count) -> count == 1);
+	}
+
+	@Test
+	public void invalidateOnSavingAccessKeys() throws Exception {
+		this.objectify.store(this.accessKey(this.now - HOUR, this.now + HOUR));
+		JwtAuthorityRepositoryImpl repository = this.repository();
+		assertEquals("Incorrect number of keys", 1, repository.retrieveJwtAccessKeys(this.retrieve(this.now)).size());
+
+		// Save the new key
+		repository.saveJwtAccessKeys(this.save(),
+				new MockJwtAccessKey(this.now, this.now + (2 * HOUR), this.key("PUBLIC"), this.key("PRIVATE")));
+
+		// Ensure new key loaded
+		assertEquals("Incorrect number of keys", 2, repository.retrieveJwtAccessKeys(this.retrieve(this.now)).size());
+		assertEquals("Should reload keys", 2, this.calls.getCallCount(Operation.QUERY, AccessKey.class));
+	}
+
+	@Test
+	public void invalidateOnSavingRefreshKeys() throws Exception {
+		this.objectify.store(this.refreshKey(this.now - HOUR, this.now + HOUR));
+		JwtAuthorityRepositoryImpl repository = this.repository();
+		assertEquals("Incorrect number of keys", 1, repository.retrieveJwtRefreshKeys(this.retrieve(this.now)).size());
+
+		// Save the new key
+		repository.saveJwtRefreshKeys(this.save(), new MockJwtRefreshKey(this.now, this.now + (2 * HOUR),
+				"INIT_VECTOR", "START_SALT", "LACE", "END_SALT", this.key("REFRESH")));
+
+		// Ensure new key loaded
+		assertEquals("Incorrect number of keys", 2, repository.retrieveJwtRefreshKeys(this.retrieve(this.now)).size());
+		assertEquals("Should reload keys", 2, this.calls.getCallCount(Operation.QUERY, RefreshKey.class));
+	}
+
+	@Test
+	public void notCacheKeysLoadedBeforeInvalidation() {
+		List<JwtAccessKey> keys = Collections.singletonList(
+				new MockJwtAccessKey(this.now - HOUR, this.now + HOUR, this.key("PUBLIC"), this.key("PRIVATE")));
+
+		// Ensure slow load (started before keys saved) not cached
+		long generation = this.keyCache.getGeneration();
+		this.keyCache.invalidate();
+		this.keyCache.cacheAccessKeys(keys, generation);
+		assertNull("Should not cache stale keys", this.keyCache.getAccessKeys(this.now));
+
+		// Ensure load after keys saved is cached
+		this.keyCache.cacheAccessKeys(keys, this.keyCache.getGeneration());
+		assertNotNull("Should cache keys", this.keyCache.getAccessKeys(this.now));
+	}
+
+	private JwtAuthorityRepositoryImpl repository() {
+		Objectify objectify = this.calls.meter(this.objectify.ofy());
+		return new JwtAuthorityRepositoryImpl(objectify, this.keyCache);
+	}
+
+	private AccessKey accessKey(long startTime, long expireTime) {
+		return new AccessKey(null, startTime, expireTime, this.serialise(this.key("PUBLIC")),
+				this.serialise(this.key("PRIVATE")));
+	}
+
+	private RefreshKey refreshKey(long startTime, long expireTime) {
+		return new RefreshKey(null, startTime, expireTime, "INIT_VECTOR", "START_SALT", "LACE", "END_SALT",
+				this.serialise(this.key("REFRESH")));
+	}
+
+	private Key key(String name) {
+		return new SecretKeySpec(name.getBytes(), "AES");
+	}
+
+	private String serialise(Key key) {
+		return Base64.getEncoder().encodeToString(key.getEncoded());
+	}
+
+	private RetrieveKeysContext retrieve(long activeAfter) {
+		return (RetrieveKeysContext) Proxy.newProxyInstance(this.getClass().getClassLoader(),
+				new Class[] { RetrieveKeysContext.class }, (proxy, method, args) -> {
+					switch (method.getName()) {
+					case "getActiveAfter":
+						return activeAfter;
+					case "deserialise":
+						return new SecretKeySpec(Base64.getDecoder().decode((String) args[0]), "AES");
+					default:
+						throw new UnsupportedOperationException(method.getName());
+					}
+				});
+	}
+
+	private SaveKeysContext save() {
+		return (SaveKeysContext) Proxy.newProxyInstance(this.getClass().getClassLoader(),
+				new Class[] { SaveKeysContext.class }, (proxy, method, args) -> {
+					if ("serialise".equals(method.getName())) {
+						return this.serialise((Key) args[0]);
+					}
+					throw new UnsupportedOperationException(method.getName());
+				});
+	}
+
+	@Value
+	private static class MockJwtAccessKey implements JwtAccessKey {
+		private final long startTime;
+		private final long expireTime;
+		private final Key publicKey;
+		private final Key privateKey;
+	}
+
+	@Value
+	private static class MockJwtRefreshKey implements JwtRefreshKey {
+		private final long startTime;
+		private final long expireTime;
+		private final String initVector;
+		private final String startSalt;
+		private final String lace;
+		private final String endSalt;
+		private final Key key;
+	}
+
+}
@@ -0,0 +1,115 @@
+/*
+ * OfficeFloor - http://www.officefloor.net
+ * Copyright (C) 2005-2019 Daniel Sagenschneider
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package net.officefloor.app.subscription;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.RuleChain;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+import net.officefloor.app.subscription.store.User;
+import net.officefloor.nosql.objectify.mock.ObjectifyRule;
+import net.officefloor.server.http.HttpException;
+import net.officefloor.server.http.HttpMethod;
+import net.officefloor.server.http.HttpStatus;
+import net.officefloor.web.jwt.mock.MockJwtAccessTokenRule;
+import net.officefloor.woof.mock.MockWoofResponse;
+import net.officefloor.woof.mock.MockWoofServer;
+import net.officefloor.woof.mock.MockWoofServerRule;
+
+/**
+ * Tests exporting the metrics.
+ * 
+ * @author Daniel Sagenschneider
+ */
+public class MetricsServiceTest {
+
+	private final MockJwtAccessTokenRule jwt = new MockJwtAccessTokenRule();
+
+	private final ObjectifyRule objectify = new ObjectifyRule();
+
+	private final MockWoofServerRule server = new MockWoofServerRule();
+
+	@Rule
+	public RuleChain chain = RuleChain.outerRule(this.jwt).around(this.objectify).around(this.server);
+
+	private final TestHelper helper = new TestHelper(this.objectify);
+
+	@Test
+	public void getMetrics() throws Exception {
+
+		// Service request to record metrics
+		User user = this.helper.setupUser("Daniel");
+		MockWoofResponse response = this.server
+				.send(this.jwt.authorize(user, MockWoofServer.mockRequest("/domains")).secure(true));
+		assertEquals("Should obtain domains", 200, response.getStatus().getStatusCode());
+
+		// Obtain the metrics
+		User admin = TestHelper.newUser("Admin", User.ROLE_ADMIN);
+		response = this.server.send(this.jwt.authorize(admin, MockWoofServer.mockRequest("/metrics"))
+				.header("Accept", "application/json").secure(true));
+		JsonNode metrics = response.getJson(200, JsonNode.class);
+
+		// Ensure recorded the endpoint
+		JsonNode getDomains = metrics.get("endpoints").get("GET /domains");
+		assertEquals("Incorrect number of requests", 1, getDomains.get("wallTime").get("count").asLong());
+		assertTrue("Should record Datastore calls", getDomains.get("datastoreCalls").get("max").asLong() > 0);
+		assertEquals("Should not call PayPal", 0, getDomains.get("payPalTime").get("max").asLong());
+		assertEquals("Should not fail", 0, getDomains.get("failures").asLong());
+		assertTrue("Should record Datastore calls by entity kind",
+				metrics.get("datastoreCalls").has("UserDomains.get"));
+		assertEquals("Incorrect circuit state", "CLOSED", metrics.get("payPal").get("circuitState").asText());
+	}
+
+	@Test
+	public void recordFailedRequest() throws Exception {
+
+		// Service request that fails
+		User user = this.helper.setupUser("Daniel");
+		MockWoofResponse response = this.server.send(this.jwt
+				.authorize(user, MockWoofServer.mockRequest("/payments/domain/UNKNOWN_ORDER_ID"))
+				.secure(true).method(HttpMethod.POST));
+		assertEquals("Should fail", 500, response.getStatus().getStatusCode());
+
+		// Obtain the metrics
+		User admin = TestHelper.newUser("Admin", User.ROLE_ADMIN);
+		response = this.server.send(this.jwt.authorize(admin, MockWoofServer.mockRequest("/metrics"))
+				.header("Accept", "application/json").secure(true));
+		JsonNode metrics = response.getJson(200, JsonNode.class);
+
+		// Ensure recorded the failed endpoint (and its Datastore calls)
+		JsonNode capturePayment = metrics.get("endpoints").get("POST /payments/domain/*");
+		assertEquals("Incorrect number of requests", 1, capturePayment.get("wallTime").get("count").asLong());
+		assertEquals("Should count failure", 1, capturePayment.get("failures").asLong());
+		assertTrue("Should record Datastore calls of failed request",
+				metrics.get("datastoreCalls").size() > 0);
+	}
+
+	@Test
+	public void onlyAdministratorGetsMetrics() throws Exception {
+		User user = TestHelper.newUser("Daniel");
+		MockWoofResponse response = this.server.send(this.jwt.authorize(user, MockWoofServer.mockRequest("/metrics"))
+				.header("Accept", "application/json").secure(true));
+		response.assertJsonError(new HttpException(HttpStatus.FORBIDDEN, "Forbidden"));
+	}
+
+}
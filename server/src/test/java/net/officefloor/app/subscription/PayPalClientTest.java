@@ -0,0 +1,393 @@
+/*
+ * OfficeFloor - http://www.officefloor.net
+ * Copyright (C) 2005-2019 Daniel Sagenschneider
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package net.officefloor.app.subscription;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.paypal.core.PayPalEnvironment;
+import com.paypal.core.PayPalHttpClient;
+import com.paypal.orders.Order;
+import com.paypal.orders.OrderRequest;
+import com.paypal.orders.OrdersCreateRequest;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import net.officefloor.app.subscription.paypal.PayPalCircuitBreaker;
+import net.officefloor.app.subscription.paypal.PayPalCircuitBreaker.State;
+import net.officefloor.app.subscription.paypal.PayPalClient;
+import net.officefloor.app.subscription.paypal.PayPalClientCache;
+import net.officefloor.server.http.HttpException;
+import net.officefloor.server.http.HttpStatus;
+
+/**
+ * Tests the {@link PayPalClient} against a stub PayPal server (injecting
+ * latency to trigger the {@link PayPalCircuitBreaker}).
+ * 
+ * @author Daniel Sagenschneider
+ */
+public class PayPalClientTest {
+
+	private HttpServer stub;
+
+	private PayPalEnvironment environment;
+
+	private final AtomicInteger tokenRequests = new AtomicInteger(0);
+
+	private final AtomicInteger orderRequests = new AtomicInteger(0);
+
+	private final Set<Integer> connections = ConcurrentHashMap.newKeySet();
+
+	private volatile String rejectAuthorization = null;
+
+	private volatile String lastAuthorization = null;
+
+	private volatile long latency = 0;
+
+	private volatile CountDownLatch blockOrders = null;
+
+	private final CountDownLatch orderBlocked = new CountDownLatch(1);
+
+	private final PayPalClientCache cache = new PayPalClientCache(PayPalClientCache.DEFAULT_TOKEN_TIME_TO_LIVE);
+
+	private PayPalCircuitBreaker circuitBreaker = new PayPalCircuitBreaker(PayPalCircuitBreaker.DEFAULT_MAX_CONCURRENT,
+			PayPalCircuitBreaker.DEFAULT_FAILURE_THRESHOLD, PayPalCircuitBreaker.DEFAULT_SLOW_THRESHOLD,
+			PayPalCircuitBreaker.DEFAULT_OPEN_DURATION);
+
+	@Before
+	public void startStub() throws IOException {
+		this.stub = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+		this.stub.createContext("/v1/oauth2/token", (exchange) -> {
+			int token = this.tokenRequests.incrementAndGet();
+			this.respond(exchange, 200,
+					"{\"access_token\":\"TOKEN_" + token + "\",\"token_type\":\"Bearer\",\"expires_in\":32400}");
+		});
+		this.stub.createContext("/v2/checkout/orders", (exchange) -> {
+			this.orderRequests.incrementAndGet();
+			this.injectLatency();
+			String authorization = exchange.getRequestHeaders().getFirst("Authorization");
+			this.lastAuthorization = authorization;
+			if (authorization.equals(this.rejectAuthorization)) {
+				this.respond(exchange, 401, "{\"error\":\"invalid_token\"}");
+			} else {
+				this.respond(exchange, 201, "{\"id\":\"MOCK_ORDER_ID\",\"status\":\"CREATED\"}");
+			}
+		});
+		this.stub.start();
+		String url = "http://localhost:" + this.stub.getAddress().getPort();
+		this.environment = new PayPalEnvironment("MOCK_CLIENT_ID", "MOCK_CLIENT_SECRET", url, url);
+	}
+
+	@After
+	public void stopStub() {
+		this.stub.stop(0);
+	}
+
+	@Test
+	public void reuseAuthorization() throws IOException {
+
+		// Create orders (with new PayPal client per request)
+		for (int i = 0; i < 5; i++) {
+			assertEquals("Incorrect order", "MOCK_ORDER_ID", this.createOrder());
+		}
+
+		// Ensure only fetch access token once
+		assertEquals("Should only fetch token once", 1, this.tokenRequests.get());
+		assertEquals("Incorrect number of orders", 5, this.orderRequests.get());
+		assertEquals("Incorrect token refreshes", 1, this.cache.getTokenRefreshCount());
+		assertEquals("Incorrect token re-use", 4, this.cache.getTokenReuseCount());
+
+		// Ensure request metrics
+		assertEquals("Incorrect number of requests", 5, this.cache.getRequestCount());
+		assertTrue("Should record latency", this.cache.getMaxLatency() > 0);
+		assertTrue("Should have total latency", this.cache.getTotalLatency() >= this.cache.getMaxLatency());
+
+		// Ensure connections kept alive (token and 5 orders over one or two connections)
+		assertTrue("Should re-use connections (" + this.connections.size() + " connections)",
+				(this.connections.size() >= 1) && (this.connections.size() <= 2));
+	}
+
+	@Test
+	public void refetchRejectedAuthorization() throws IOException {
+
+		// Create order to cache the authorization
+		assertEquals("Incorrect order", "MOCK_ORDER_ID", this.createOrder());
+
+		// Reject the cached authorization (e.g. revoked token)
+		this.rejectAuthorization = "Bearer TOKEN_1";
+
+		// Ensure fetch new access token
+		assertEquals("Incorrect order", "MOCK_ORDER_ID", this.createOrder());
+		assertEquals("Should fetch another token", 2, this.tokenRequests.get());
+		assertEquals("Incorrect token refreshes", 2, this.cache.getTokenRefreshCount());
+
+		// Ensure new token is cached
+		assertEquals("Incorrect order", "MOCK_ORDER_ID", this.createOrder());
+		assertEquals("Should re-use new token", 2, this.tokenRequests.get());
+	}
+
+	@Test
+	public void newAuthorizationOnChangedCredentials() throws IOException {
+
+		// Create order to cache the authorization
+		assertEquals("Incorrect order", "MOCK_ORDER_ID", this.createOrder());
+		assertEquals("Incorrect authorization", "Bearer TOKEN_1", this.lastAuthorization);
+
+		// Change to another PayPal application (in same environment)
+		String url = this.environment.baseUrl();
+		this.environment = new PayPalEnvironment("CHANGED_CLIENT_ID", "CHANGED_CLIENT_SECRET", url, url);
+
+		// Ensure fetch access token for the changed credentials
+		assertEquals("Incorrect order", "MOCK_ORDER_ID", this.createOrder());
+		assertEquals("Should fetch token for changed credentials", 2, this.tokenRequests.get());
+		assertEquals("Should not use previous token", "Bearer TOKEN_2", this.lastAuthorization);
+
+		// Ensure token for changed credentials is cached
+		assertEquals("Incorrect order", "MOCK_ORDER_ID", this.createOrder());
+		assertEquals("Should re-use token of changed credentials", 2, this.tokenRequests.get());
+		assertEquals("Incorrect authorization", "Bearer TOKEN_2", this.lastAuthorization);
+	}
+
+	@Test
+	public void openCircuitOnSlowPayPal() throws IOException {
+		this.circuitBreaker = new PayPalCircuitBreaker(10, 2, 50, 60_000);
+
+		// Slow PayPal
+		this.latency = 100;
+		assertEquals("Incorrect order", "MOCK_ORDER_ID", this.createOrder());
+		assertEquals("Should remain closed", State.CLOSED, this.circuitBreaker.getState());
+		assertEquals("Incorrect order", "MOCK_ORDER_ID", this.createOrder());
+		assertEquals("Should open on slow requests", State.OPEN, this.circuitBreaker.getState());
+		assertEquals("Incorrect open count", 1, this.circuitBreaker.getOpenCount());
+
+		// Ensure fail fast (without calling PayPal)
+		long start = System.currentTimeMillis();
+		this.assertUnavailable("PayPal unavailable");
+		assertTrue("Should fail fast", (System.currentTimeMillis() - start) < this.latency);
+		assertEquals("Should not call PayPal", 2, this.orderRequests.get());
+		assertEquals("Incorrect circuit rejects", 1, this.circuitBreaker.getCircuitRejectCount());
+	}
+
+	@Test
+	public void closeCircuitOnRecovery() throws Exception {
+		this.circuitBreaker = new PayPalCircuitBreaker(10, 1, 50, 100);
+
+		// Open the circuit
+		this.latency = 100;
+		this.createOrder();
+		assertEquals("Should open on slow request", State.OPEN, this.circuitBreaker.getState());
+		this.assertUnavailable("PayPal unavailable");
+
+		// Ensure trial request closes circuit once PayPal recovers
+		this.latency = 0;
+		Thread.sleep(150);
+		assertEquals("Incorrect order", "MOCK_ORDER_ID", this.createOrder());
+		assertEquals("Should close on recovery", State.CLOSED, this.circuitBreaker.getState());
+	}
+
+	@Test
+	public void lateSuccessNotCloseCircuit() throws Exception {
+		this.circuitBreaker = new PayPalCircuitBreaker(10, 1, 50, 60_000);
+
+		// Start request before the circuit opens
+		assertNull("Should acquire late request", this.circuitBreaker.acquire());
+
+		// Open the circuit
+		this.latency = 100;
+		this.createOrder();
+		assertEquals("Should open on slow request", State.OPEN, this.circuitBreaker.getState());
+
+		// Ensure late success does not close the circuit
+		this.circuitBreaker.release(0, false);
+		assertEquals("Should remain open", State.OPEN, this.circuitBreaker.getState());
+		this.assertUnavailable("PayPal unavailable");
+	}
+
+	@Test
+	public void releaseCapacityOnFailedConfiguration() throws Exception {
+		this.circuitBreaker = new PayPalCircuitBreaker(1, 50, PayPalCircuitBreaker.DEFAULT_REQUEST_TIMEOUT,
+				PayPalCircuitBreaker.DEFAULT_FAILURE_THRESHOLD, PayPalCircuitBreaker.DEFAULT_SLOW_THRESHOLD,
+				PayPalCircuitBreaker.DEFAULT_OPEN_DURATION);
+
+		// Fail obtaining the configuration
+		IllegalStateException failure = new IllegalStateException("TEST");
+		PayPalClient client = new PayPalClient(new PayPalHttpClient(this.environment), () -> {
+			throw failure;
+		}, this.cache, this.circuitBreaker);
+		try {
+			client.execute(new OrdersCreateRequest().requestBody(new OrderRequest().checkoutPaymentIntent("CAPTURE")));
+			fail("Should not be successful");
+		} catch (IllegalStateException ex) {
+			assertSame("Incorrect failure", failure, ex);
+		}
+
+		// Ensure capacity not held
+		assertEquals("Should not hold capacity", 0, this.circuitBreaker.getActiveCount());
+		assertEquals("Incorrect order", "MOCK_ORDER_ID", this.createOrder());
+	}
+
+	@Test
+	public void bulkheadLimitsConcurrentRequests() throws Exception {
+		this.circuitBreaker = new PayPalCircuitBreaker(1, 50, PayPalCircuitBreaker.DEFAULT_REQUEST_TIMEOUT,
+				PayPalCircuitBreaker.DEFAULT_FAILURE_THRESHOLD, PayPalCircuitBreaker.DEFAULT_SLOW_THRESHOLD,
+				PayPalCircuitBreaker.DEFAULT_OPEN_DURATION);
+
+		// Hold PayPal request in progress
+		this.blockOrders = new CountDownLatch(1);
+		ExecutorService executor = Executors.newSingleThreadExecutor();
+		try {
+			Future<String> blocked = executor.submit(() -> this.createOrder());
+			assertTrue("PayPal request should be in progress", this.orderBlocked.await(10, TimeUnit.SECONDS));
+			assertEquals("Incorrect active requests", 1, this.circuitBreaker.getActiveCount());
+
+			// Ensure concurrent request rejected
+			this.assertUnavailable("PayPal busy");
+			assertEquals("Incorrect bulkhead rejects", 1, this.circuitBreaker.getBulkheadRejectCount());
+
+			// Ensure capacity once request completes
+			this.blockOrders.countDown();
+			assertEquals("Incorrect order", "MOCK_ORDER_ID", blocked.get(10, TimeUnit.SECONDS));
+			assertEquals("Incorrect order", "MOCK_ORDER_ID", this.createOrder());
+			assertEquals("Should be closed", State.CLOSED, this.circuitBreaker.getState());
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	@Test
+	public void bulkheadQueuesConcurrentRequests() throws Exception {
+		this.circuitBreaker = new PayPalCircuitBreaker(1, 10_000, PayPalCircuitBreaker.DEFAULT_REQUEST_TIMEOUT,
+				PayPalCircuitBreaker.DEFAULT_FAILURE_THRESHOLD, PayPalCircuitBreaker.DEFAULT_SLOW_THRESHOLD,
+				PayPalCircuitBreaker.DEFAULT_OPEN_DURATION);
+
+		// Hold PayPal request in progress
+		this.blockOrders = new CountDownLatch(1);
+		ExecutorService executor = Executors.newFixedThreadPool(2);
+		try {
+			Future<String> blocked = executor.submit(() -> this.createOrder());
+			assertTrue("PayPal request should be in progress", this.orderBlocked.await(10, TimeUnit.SECONDS));
+
+			// Queue concurrent request (waiting for capacity)
+			Future<String> queued = executor.submit(() -> this.createOrder());
+			Thread.sleep(50);
+			assertFalse("Should wait for capacity", queued.isDone());
+
+			// Ensure queued request serviced once capacity available
+			this.blockOrders.countDown();
+			assertEquals("Incorrect order", "MOCK_ORDER_ID", blocked.get(10, TimeUnit.SECONDS));
+			assertEquals("Incorrect queued order", "MOCK_ORDER_ID", queued.get(10, TimeUnit.SECONDS));
+			assertEquals("Should not reject", 0, this.circuitBreaker.getBulkheadRejectCount());
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	@Test
+	public void timeoutHungPayPal() throws Exception {
+		this.circuitBreaker = new PayPalCircuitBreaker(1, PayPalCircuitBreaker.DEFAULT_ACQUIRE_TIMEOUT, 100,
+				PayPalCircuitBreaker.DEFAULT_FAILURE_THRESHOLD, PayPalCircuitBreaker.DEFAULT_SLOW_THRESHOLD,
+				PayPalCircuitBreaker.DEFAULT_OPEN_DURATION);
+
+		// Hung PayPal
+		this.latency = 2_000;
+		long start = System.currentTimeMillis();
+		try {
+			this.createOrder();
+			fail("Should time out");
+		} catch (IOException ex) {
+			// expected to time out reading response
+		}
+		assertTrue("Should not wait on hung PayPal", (System.currentTimeMillis() - start) < this.latency);
+
+		// Ensure capacity released
+		assertEquals("Should release capacity", 0, this.circuitBreaker.getActiveCount());
+	}
+
+	private void assertUnavailable(String reason) throws IOException {
+		try {
+			this.createOrder();
+			fail("Should not be successful");
+		} catch (HttpException ex) {
+			assertEquals("Incorrect status", HttpStatus.SERVICE_UNAVAILABLE, ex.getHttpStatus());
+			assertEquals("Incorrect reason", reason, ex.getMessage());
+		}
+	}
+
+	private void injectLatency() {
+		try {
+			CountDownLatch block = this.blockOrders;
+			if (block != null) {
+				this.orderBlocked.countDown();
+				block.await(10, TimeUnit.SECONDS);
+			}
+			if (this.latency > 0) {
+				Thread.sleep(this.latency);
+			}
+		} catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private String createOrder() throws IOException {
+		PayPalEnvironment environment = this.environment;
+		PayPalClient client = new PayPalClient(new PayPalHttpClient(environment), () -> environment, this.cache,
+				this.circuitBreaker);
+		Order order = client
+				.execute(new OrdersCreateRequest().requestBody(new OrderRequest().checkoutPaymentIntent("CAPTURE")))
+				.result();
+		return order.id();
+	}
+
+	private void respond(HttpExchange exchange, int status, String json) throws IOException {
+		this.connections.add(exchange.getRemoteAddress().getPort());
+		try (InputStream request = exchange.getRequestBody()) {
+			while (request.read() != -1) {
+				// consume request
+			}
+		}
+		byte[] entity = json.getBytes(StandardCharsets.UTF_8);
+		exchange.getResponseHeaders().add("Content-Type", "application/json");
+		exchange.sendResponseHeaders(status, entity.length);
+		try (OutputStream response = exchange.getResponseBody()) {
+			response.write(entity);
+		}
+	}
+
+}
@@ -0,0 +1,116 @@
+/*
+ * OfficeFloor - http://www.officefloor.net
+ * Copyright (C) 2005-2019 Daniel Sagenschneider
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package net.officefloor.app.subscription;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import org.junit.Test;
+
+import com.paypal.orders.AmountWithBreakdown;
+import com.paypal.orders.Item;
+import com.paypal.orders.OrderRequest;
+import com.paypal.orders.PurchaseUnitRequest;
+
+import net.officefloor.app.subscription.paypal.PayPalOrderTemplates;
+import net.officefloor.app.subscription.paypal.PayPalOrderTemplates.OrderTemplate;
+
+/**
+ * Tests the {@link PayPalOrderTemplates}.
+ * 
+ * @author Daniel Sagenschneider
+ */
+public class PayPalOrderTemplatesTest {
+
+	@Test
+	public void formatAmount() {
+		assertEquals("Incorrect zero", "0.00", PayPalOrderTemplates.formatAmount(0));
+		assertEquals("Incorrect single digit cents", "0.05", PayPalOrderTemplates.formatAmount(5));
+		assertEquals("Incorrect cents", "0.99", PayPalOrderTemplates.formatAmount(99));
+		assertEquals("Incorrect dollar", "1.00", PayPalOrderTemplates.formatAmount(100));
+		assertEquals("Incorrect dollars and cents", "27.26", PayPalOrderTemplates.formatAmount(2726));
+	}
+
+	@Test
+	public void amount() {
+		assertEquals("Incorrect subscription amount", 5_00, PayPalOrderTemplates.getAmount(false));
+		assertEquals("Incorrect restart amount", 25_00, PayPalOrderTemplates.getAmount(true));
+	}
+
+	@Test
+	public void subscriptionOrder() {
+		PurchaseUnitRequest purchase = newPurchase(new PayPalOrderTemplates(), "AUD", false);
+		assertAmount("5.00", "AUD", purchase.amountWithBreakdown());
+		assertEquals("Incorrect number of items", 1, purchase.items().size());
+		assertItem("4.54", "0.46", "AUD", purchase.items().get(0));
+	}
+
+	@Test
+	public void restartOrder() {
+		PurchaseUnitRequest purchase = newPurchase(new PayPalOrderTemplates(), "AUD", true);
+		assertAmount("25.00", "AUD", purchase.amountWithBreakdown());
+		assertEquals("Incorrect number of items", 2, purchase.items().size());
+		assertItem("4.54", "0.46", "AUD", purchase.items().get(0));
+		assertItem("18.18", "1.82", "AUD", purchase.items().get(1));
+	}
+
+	@Test
+	public void reuseTemplatesForCurrency() {
+		PayPalOrderTemplates templates = new PayPalOrderTemplates();
+		OrderTemplate template = templates.getOrderTemplate("AUD", false);
+		assertSame("Should reuse template", template, templates.getOrderTemplate("AUD", false));
+		assertNotSame("Should have restart template", template, templates.getOrderTemplate("AUD", true));
+	}
+
+	@Test
+	public void rebuildTemplatesOnCurrencyChange() {
+		PayPalOrderTemplates templates = new PayPalOrderTemplates();
+		OrderTemplate template = templates.getOrderTemplate("AUD", false);
+
+		// Change currency
+		assertNotSame("Should rebuild template", template, templates.getOrderTemplate("USD", false));
+		PurchaseUnitRequest purchase = newPurchase(templates, "USD", true);
+		assertAmount("25.00", "USD", purchase.amountWithBreakdown());
+		assertItem("4.54", "0.46", "USD", purchase.items().get(0));
+		assertItem("18.18", "1.82", "USD", purchase.items().get(1));
+	}
+
+	private static PurchaseUnitRequest newPurchase(PayPalOrderTemplates templates, String currency,
+			boolean isRestart) {
+		OrderRequest order = templates.getOrderTemplate(currency, isRestart).newOrderRequest("officefloor.org",
+				"MOCK_INVOICE_ID");
+		assertEquals("Incorrect number of purchase units", 1, order.purchaseUnits().size());
+		PurchaseUnitRequest purchase = order.purchaseUnits().get(0);
+		assertEquals("Incorrect invoice", "MOCK_INVOICE_ID", purchase.invoiceId());
+		return purchase;
+	}
+
+	private static void assertAmount(String value, String currency, AmountWithBreakdown amount) {
+		assertEquals("Incorrect amount", value, amount.value());
+		assertEquals("Incorrect amount currency", currency, amount.currencyCode());
+	}
+
+	private static void assertItem(String value, String tax, String currency, Item item) {
+		assertEquals("Incorrect item value", value, item.unitAmount().value());
+		assertEquals("Incorrect item tax", tax, item.tax().value());
+		assertEquals("Incorrect item currency", currency, item.unitAmount().currencyCode());
+		assertEquals("Incorrect item tax currency", currency, item.tax().currencyCode());
+	}
+
+}
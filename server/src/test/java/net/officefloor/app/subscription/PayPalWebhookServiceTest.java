@@ -0,0 +1,271 @@
+/*
+ * OfficeFloor - http://www.officefloor.net
+ * Copyright (C) 2005-2019 Daniel Sagenschneider
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package net.officefloor.app.subscription;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.RuleChain;
+
+import com.googlecode.objectify.Key;
+import com.googlecode.objectify.Ref;
+
+import net.officefloor.app.subscription.store.Domain;
+import net.officefloor.app.subscription.store.Invoice;
+import net.officefloor.app.subscription.store.Invoice.CaptureState;
+import net.officefloor.app.subscription.store.Payment;
+import net.officefloor.app.subscription.store.User;
+import net.officefloor.app.subscription.store.UserDomains;
+import net.officefloor.app.subscription.store.WebhookCapture;
+import net.officefloor.nosql.objectify.mock.ObjectifyRule;
+import net.officefloor.pay.paypal.mock.PayPalRule;
+import net.officefloor.server.http.HttpException;
+import net.officefloor.server.http.HttpMethod;
+import net.officefloor.server.http.HttpStatus;
+import net.officefloor.server.http.mock.MockHttpRequestBuilder;
+import net.officefloor.woof.mock.MockWoofResponse;
+import net.officefloor.woof.mock.MockWoofServer;
+import net.officefloor.woof.mock.MockWoofServerRule;
+
+/**
+ * Tests ingesting PayPal webhook events.
+ * 
+ * @author Daniel Sagenschneider
+ */
+public class PayPalWebhookServiceTest {
+
+	private final PayPalRule payPal = new PayPalRule();
+
+	private final ObjectifyRule objectify = new ObjectifyRule();
+
+	private final MockWoofServerRule server = new MockWoofServerRule();
+
+	@Rule
+	public final RuleChain chain = RuleChain.outerRule(this.payPal).around(this.objectify).around(this.server);
+
+	private final TestHelper helper = new TestHelper(this.objectify);
+
+	private User user;
+
+	private Invoice invoice;
+
+	@Before
+	public void setupInvoice() {
+		this.user = this.helper.setupUser("Daniel");
+		this.invoice = new Invoice(Ref.create(this.user), Domain.PRODUCT_TYPE, "officefloor.org", false);
+		this.invoice.setPaymentOrderId("MOCK_ORDER_ID");
+		this.objectify.store(this.invoice);
+	}
+
+	@Test
+	public void notConfigured() {
+		MockWoofResponse response = this.server.send(this.webhookRequest("MOCK_EVENT_ID"));
+		response.assertJsonError(new HttpException(HttpStatus.SERVICE_UNAVAILABLE, "PayPal webhook not configured"));
+	}
+
+	@Test
+	public void unverifiedEvent() {
+		this.helper.setupAdministration();
+		this.payPal.addResponse(verificationStatus("FAILURE"));
+		MockWoofResponse response = this.server.send(this.webhookRequest("MOCK_EVENT_ID"));
+		response.assertJsonError(new HttpException(HttpStatus.BAD_REQUEST, "Unverified PayPal webhook event"));
+
+		// Ensure no payment recorded
+		assertEquals("Should not record payment", 0, this.objectify.ofy().load().type(Payment.class).count());
+	}
+
+	@Test
+	public void recordPayment() {
+		this.helper.setupAdministration();
+
+		// Receive the capture
+		this.payPal.addResponse(verificationStatus("SUCCESS")).validate((request) -> {
+			String verification = (String) request.requestBody();
+			assertTrue("Incorrect webhook: " + verification,
+					verification.contains("\"webhook_id\":\"MOCK_PAYPAL_WEBHOOK_ID\""));
+			assertTrue("Incorrect transmission: " + verification,
+					verification.contains("\"transmission_id\":\"MOCK_TRANSMISSION_ID\""));
+		});
+		MockWoofResponse response = this.server.send(this.webhookRequest("MOCK_EVENT_ID"));
+		assertEquals("Should acknowledge event", 204, response.getStatus().getStatusCode());
+
+		// Ensure payment recorded
+		Payment payment = this.objectify.get(Payment.class);
+		assertEquals("Incorrect invoice", this.invoice.getId(), payment.getInvoice().get().getId());
+		assertEquals("Incorrect user", this.user.getId(), payment.getUser().get().getId());
+		assertEquals("Incorrect domain", "officefloor.org", payment.getProductReference());
+		assertEquals("Incorrect amount", Integer.valueOf(5_00), payment.getAmount());
+		assertEquals("Incorrect receipt", "MOCK_RECEIPT", payment.getReceipt());
+
+		// Ensure invoice captured
+		Invoice capturedInvoice = this.objectify.get(Invoice.class, this.invoice.getId());
+		assertEquals("Incorrect capture state", CaptureState.CAPTURED, capturedInvoice.getCaptureState());
+		assertEquals("Incorrect payment", payment.getId(), capturedInvoice.getPaymentId());
+
+		// Ensure domain extended and indexed for the user
+		Domain domain = this.objectify.get(Domain.class);
+		assertEquals("Incorrect domain", "officefloor.org", domain.getDomain());
+		UserDomains userDomains = this.objectify.get(UserDomains.class, this.user.getId());
+		assertTrue("Should index paid domain", userDomains.getDomainNames().contains("officefloor.org"));
+
+		// Ensure capture processed
+		this.objectify.consistent(() -> this.objectify.ofy().load().type(WebhookCapture.class).count(),
+				(count) -> count == 0);
+	}
+
+	@Test
+	public void redeliveredEvent() {
+		this.recordPayment();
+		Domain domain = this.objectify.get(Domain.class);
+
+		// Receive the capture again
+		this.payPal.addResponse(verificationStatus("SUCCESS"));
+		MockWoofResponse response = this.server.send(this.webhookRequest("MOCK_EVENT_ID"));
+		assertEquals("Should acknowledge event", 204, response.getStatus().getStatusCode());
+
+		// Ensure payment only recorded once (and domain not extended again)
+		this.objectify.get(Payment.class, 1, (loader) -> loader);
+		this.objectify.ofy().clear();
+		assertEquals("Should not extend domain again", domain.getExpires(),
+				this.objectify.get(Domain.class).getExpires());
+	}
+
+	@Test
+	public void verifyEventAsReceived() {
+		this.helper.setupAdministration();
+
+		// Event formatted differently to serialising
+		String event = "{ \"resource\": { \"amount\": { \"value\": \"5.00\", \"currency_code\": \"AUD\" },"
+				+ " \"id\": \"MOCK_RECEIPT\", \"supplementary_data\": { \"related_ids\": {"
+				+ " \"order_id\": \"MOCK_ORDER_ID\" } }, \"seller_receivable_breakdown\": { \"paypal_fee\": 0.20 } },"
+				+ " \"id\": \"MOCK_EVENT_ID\", \"event_type\": \"PAYMENT.CAPTURE.COMPLETED\" }";
+
+		// Receive the capture
+		this.payPal.addResponse(verificationStatus("SUCCESS")).validate((request) -> {
+			String verification = (String) request.requestBody();
+			assertTrue("Should verify event as received: " + verification,
+					verification.endsWith(",\"webhook_event\":" + event + "}"));
+		});
+		MockWoofResponse response = this.server.send(signed(MockWoofServer.mockRequest("/paypal/webhook")
+				.method(HttpMethod.POST).header("Content-Type", "application/json").entity(event)));
+		assertEquals("Should acknowledge event", 204, response.getStatus().getStatusCode());
+
+		// Ensure payment recorded
+		Payment payment = this.objectify.get(Payment.class);
+		assertEquals("Incorrect receipt", "MOCK_RECEIPT", payment.getReceipt());
+	}
+
+	@Test
+	public void skipFailingCapture() {
+		this.helper.setupAdministration();
+
+		// Setup pending capture that fails to record (as user not available)
+		Invoice failingInvoice = new Invoice(Ref.create(Key.create(User.class, Long.MAX_VALUE)), Domain.PRODUCT_TYPE,
+				"activicy.com", false);
+		failingInvoice.setPaymentOrderId("FAILING_ORDER_ID");
+		this.objectify.store(failingInvoice);
+		this.objectify.store(new WebhookCapture("FAILING_EVENT_ID", "FAILING_ORDER_ID", 5_00, "FAILING_RECEIPT"));
+
+		// Receive the capture
+		this.payPal.addResponse(verificationStatus("SUCCESS"));
+		MockWoofResponse response = this.server.send(this.webhookRequest("MOCK_EVENT_ID"));
+		assertEquals("Should acknowledge event", 204, response.getStatus().getStatusCode());
+
+		// Ensure payment recorded
+		Payment payment = this.objectify
+				.get(Payment.class, 1, (loader) -> loader.filter("productReference", "officefloor.org")).get(0);
+		assertEquals("Incorrect receipt", "MOCK_RECEIPT", payment.getReceipt());
+
+		// Ensure only failing capture kept (to retry)
+		WebhookCapture failing = this.objectify.consistent(
+				() -> this.objectify.ofy().load().type(WebhookCapture.class).list(), (captures) -> captures.size() == 1)
+				.get(0);
+		assertEquals("Should keep failing capture", "FAILING_ORDER_ID", failing.getOrderId());
+	}
+
+	@Test
+	public void rejectOtherEvents() {
+		this.helper.setupAdministration();
+
+		// Reject without verifying with PayPal (as no PayPal response)
+		Map<String, Object> event = newCaptureEvent("MOCK_EVENT_ID");
+		event.put("event_type", "PAYMENT.CAPTURE.REFUNDED");
+		MockWoofResponse response = this.server.send(this.webhookRequest(event));
+		response.assertJsonError(new HttpException(HttpStatus.BAD_REQUEST,
+				"Unsupported PayPal webhook event type PAYMENT.CAPTURE.REFUNDED"));
+
+		// Ensure no payment recorded
+		assertEquals("Should not record payment", 0, this.objectify.ofy().load().type(Payment.class).count());
+	}
+
+	@Test
+	public void rejectMalformedEvent() {
+		this.helper.setupAdministration();
+		MockWoofResponse response = this.server.send(signed(MockWoofServer.mockRequest("/paypal/webhook")
+				.method(HttpMethod.POST).header("Content-Type", "application/json").entity("{ not json")));
+		response.assertJsonError(new HttpException(HttpStatus.BAD_REQUEST, "Invalid PayPal webhook event"));
+	}
+
+	private MockHttpRequestBuilder webhookRequest(String eventId) {
+		return this.webhookRequest(newCaptureEvent(eventId));
+	}
+
+	private MockHttpRequestBuilder webhookRequest(Map<String, Object> event) {
+		return signed(MockWoofServer.mockJsonRequest(HttpMethod.POST, "/paypal/webhook", event));
+	}
+
+	private static MockHttpRequestBuilder signed(MockHttpRequestBuilder request) {
+		return request.secure(true).header("PAYPAL-TRANSMISSION-ID", "MOCK_TRANSMISSION_ID")
+				.header("PAYPAL-TRANSMISSION-TIME", "2019-01-01T00:00:00Z")
+				.header("PAYPAL-TRANSMISSION-SIG", "MOCK_SIGNATURE")
+				.header("PAYPAL-CERT-URL", "https://api.sandbox.paypal.com/v1/notifications/certs/MOCK")
+				.header("PAYPAL-AUTH-ALGO", "SHA256withRSA");
+	}
+
+	private static Map<String, Object> verificationStatus(String status) {
+		Map<String, Object> verification = new HashMap<>();
+		verification.put("verification_status", status);
+		return verification;
+	}
+
+	private static Map<String, Object> newCaptureEvent(String eventId) {
+		Map<String, Object> relatedIds = new HashMap<>();
+		relatedIds.put("order_id", "MOCK_ORDER_ID");
+		Map<String, Object> supplementaryData = new HashMap<>();
+		supplementaryData.put("related_ids", relatedIds);
+		Map<String, Object> amount = new HashMap<>();
+		amount.put("value", "5.00");
+		amount.put("currency_code", "AUD");
+		Map<String, Object> resource = new HashMap<>();
+		resource.put("id", "MOCK_RECEIPT");
+		resource.put("amount", amount);
+		resource.put("supplementary_data", supplementaryData);
+		Map<String, Object> event = new HashMap<>();
+		event.put("id", eventId);
+		event.put("event_type", "PAYMENT.CAPTURE.COMPLETED");
+		event.put("resource", resource);
+		return event;
+	}
+
+}
@@ -19,10 +19,12 @@ package net.officefloor.app.subscription;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
 
 import java.time.ZonedDateTime;
 import java.time.temporal.ChronoUnit;
 import java.util.Arrays;
+import java.util.Date;
 
 import org.junit.Before;
 import org.junit.Rule;
@@ -37,12 +39,15 @@ import com.paypal.orders.Order;
 import com.paypal.orders.PaymentCollection;
 import com.paypal.orders.PurchaseUnit;
 
+import net.officefloor.app.subscription.DomainService.PaidDomain;
 import net.officefloor.app.subscription.SubscriptionService.DomainPayment;
 import net.officefloor.app.subscription.SubscriptionService.DomainPayments;
 import net.officefloor.app.subscription.store.Domain;
 import net.officefloor.app.subscription.store.Invoice;
+import net.officefloor.app.subscription.store.Invoice.CaptureState;
 import net.officefloor.app.subscription.store.Payment;
 import net.officefloor.app.subscription.store.User;
+import net.officefloor.app.subscription.store.UserDomains;
 import net.officefloor.nosql.objectify.mock.ObjectifyRule;
 import net.officefloor.pay.paypal.mock.PayPalRule;
 import net.officefloor.server.http.HttpMethod;
@@ -112,6 +117,72 @@ public class PaymentServiceTest {
 						.secure(true).method(HttpMethod.POST));
 		response.assertJsonError(
 				new net.officefloor.server.http.HttpException(HttpStatus.INTERNAL_SERVER_ERROR, description));
+
+		// Ensure capture failed (so may be retried)
+		Invoice failedInvoice = this.objectify.get(Invoice.class, invoice.getId());
+		assertEquals("Incorrect capture state", CaptureState.FAILED, failedInvoice.getCaptureState());
+	}
+
+	@Test
+	public void captureInProgress() throws Exception {
+
+		// Setup the invoice being captured
+		Invoice invoice = new Invoice(this.userRef, Domain.PRODUCT_TYPE, "officefloor.org", false);
+		invoice.setPaymentOrderId("MOCK_ORDER_ID");
+		invoice.setCaptureState(CaptureState.CAPTURING);
+		invoice.setCaptureTime(new Date());
+		this.objectify.store(invoice);
+
+		// Send request
+		MockWoofResponse response = this.server
+				.send(this.jwt.authorize(this.user, MockWoofServer.mockRequest("/payments/domain/MOCK_ORDER_ID"))
+						.secure(true).method(HttpMethod.POST));
+		response.assertJsonError(new net.officefloor.server.http.HttpException(HttpStatus.CONFLICT,
+				"Payment being captured for orderId MOCK_ORDER_ID"));
+
+		// Ensure no payment recorded
+		assertEquals("Should not record payment", 0,
+				this.objectify.ofy().load().type(Payment.class).filter("invoice", invoice).count());
+	}
+
+	@Test
+	public void repeatCapture() throws Exception {
+		this.doPaymentTest(false,
+				(paymentTime, expiresTime) -> assertTime(paymentTime.plus(1, ChronoUnit.YEARS), expiresTime));
+
+		// Repeat capture (without capturing again with PayPal)
+		MockWoofResponse response = this.server
+				.send(this.jwt.authorize(this.user, MockWoofServer.mockRequest("/payments/domain/MOCK_ORDER_ID"))
+						.secure(true).method(HttpMethod.POST));
+		DomainPayments domainPayments = response.getJson(200, DomainPayments.class);
+		assertEquals("Should be the one payment", 1, domainPayments.getPayments().length);
+		assertEquals("Incorrect receipt", "MOCK_RECEIPT", domainPayments.getPayments()[0].getPaymentReceipt());
+
+		// Ensure payment only recorded once
+		this.objectify.get(Payment.class, 1, (loader) -> loader);
+	}
+
+	@Test
+	public void updateCachedSubscriptions() throws Exception {
+		ZonedDateTime previous = TestHelper.now().minus(1, ChronoUnit.MONTHS);
+		this.helper.setupPayment(this.userRef, "officefloor.org", false, previous);
+
+		// Cache the subscriptions
+		MockWoofResponse response = this.server.send(this.jwt
+				.authorize(this.user, MockWoofServer.mockRequest("/subscriptions/domain/officefloor.org")).secure(true));
+		assertEquals("Should have previous payment", 1,
+				response.getJson(200, DomainPayments.class).getPayments().length);
+
+		// Capture the payment
+		this.doPaymentTest(false,
+				(paymentTime, expiresTime) -> assertTime(previous.plus(2, ChronoUnit.YEARS), expiresTime));
+
+		// Ensure cached subscriptions updated with the payment
+		response = this.server.send(this.jwt
+				.authorize(this.user, MockWoofServer.mockRequest("/subscriptions/domain/officefloor.org")).secure(true));
+		DomainPayments domainPayments = response.getJson(200, DomainPayments.class);
+		assertEquals("Should include captured payment", 2, domainPayments.getPayments().length);
+		assertEquals("Incorrect latest payment", "MOCK_RECEIPT", domainPayments.getPayments()[0].getPaymentReceipt());
 	}
 
 	@Test
@@ -158,6 +229,133 @@ public class PaymentServiceTest {
 				(paymentTime, expiresTime) -> assertTime(paymentTime.plus(1, ChronoUnit.YEARS), expiresTime));
 	}
 
+	@Test
+	public void captureDomainsPayment() throws Exception {
+
+		// Setup existing domain
+		ZonedDateTime previous = TestHelper.now().minus(1, ChronoUnit.MONTHS);
+		Payment previousPayment = this.helper.setupPayment(this.userRef, "existing.officefloor.org", false, previous);
+		this.helper.setupDomain(previousPayment);
+
+		// Setup the invoices for the order
+		Invoice newInvoice = new Invoice(this.userRef, Domain.PRODUCT_TYPE, "officefloor.org", false);
+		newInvoice.setPaymentOrderId("MOCK_DOMAINS_ORDER_ID");
+		newInvoice.setAmount(4_00);
+		Invoice existingInvoice = new Invoice(this.userRef, Domain.PRODUCT_TYPE, "existing.officefloor.org", false);
+		existingInvoice.setPaymentOrderId("MOCK_DOMAINS_ORDER_ID");
+		existingInvoice.setAmount(6_00);
+		this.objectify.store(newInvoice, existingInvoice);
+
+		// Record (capture once for all domains)
+		this.payPal.addOrdersCaptureResponse(new Order().id("MOCK_DOMAINS_ORDER_ID").status("COMPLETED")
+				.purchaseUnits(Arrays.asList(new PurchaseUnit().payments(new PaymentCollection().captures(Arrays.asList(
+						new Capture().id("MOCK_RECEIPT").amount(new Money().value("10.00").currencyCode("AUD"))))))))
+				.validate((request) -> {
+					assertEquals("MOCK_DOMAINS_ORDER_ID", this.payPal.getOrderId(request));
+				});
+
+		// Send request
+		MockWoofResponse response = this.server.send(
+				this.jwt.authorize(this.user, MockWoofServer.mockRequest("/payments/domains/MOCK_DOMAINS_ORDER_ID"))
+						.secure(true).method(HttpMethod.POST));
+
+		// Ensure correct response (ordered by expiry)
+		PaidDomain[] paidDomains = response.getJson(200, PaidDomain[].class);
+		assertEquals("Incorrect number of domains", 2, paidDomains.length);
+		assertEquals("Incorrect first domain", "officefloor.org", paidDomains[0].getDomainName());
+		assertEquals("Incorrect second domain", "existing.officefloor.org", paidDomains[1].getDomainName());
+
+		// Ensure payment recorded for each domain
+		for (Invoice invoice : new Invoice[] { newInvoice, existingInvoice }) {
+			Payment payment = this.objectify.get(Payment.class, 1, (loader) -> loader.filter("invoice", invoice))
+					.get(0);
+			assertEquals("Incorrect product reference", invoice.getProductReference(), payment.getProductReference());
+			assertEquals("Should record amount charged on invoice", invoice.getAmount(), payment.getAmount());
+			assertEquals("Incorrect receipt", "MOCK_RECEIPT", payment.getReceipt());
+			Invoice capturedInvoice = this.objectify.get(Invoice.class, invoice.getId());
+			assertEquals("Incorrect capture state", CaptureState.CAPTURED, capturedInvoice.getCaptureState());
+			assertEquals("Incorrect reserved payment", payment.getId(), capturedInvoice.getPaymentId());
+		}
+
+		// Ensure domains extended
+		Payment newPayment = this.objectify.get(Payment.class, 1, (loader) -> loader.filter("invoice", newInvoice))
+				.get(0);
+		Domain newDomain = this.objectify.ofy().load().type(Domain.class).id("officefloor.org").now();
+		assertTime(TestHelper.toZonedDateTime(newPayment.getTimestamp()).plus(1, ChronoUnit.YEARS),
+				TestHelper.toZonedDateTime(newDomain.getExpires()));
+		Domain existingDomain = this.objectify.ofy().load().type(Domain.class).id("existing.officefloor.org").now();
+		assertTime(previous.plus(2, ChronoUnit.YEARS), TestHelper.toZonedDateTime(existingDomain.getExpires()));
+
+		// Ensure domains indexed for the user
+		UserDomains userDomains = this.objectify.get(UserDomains.class, this.user.getId());
+		assertTrue("Should index new domain", userDomains.getDomainNames().contains("officefloor.org"));
+		assertTrue("Should index existing domain", userDomains.getDomainNames().contains("existing.officefloor.org"));
+
+		// Repeat capture (without capturing again with PayPal)
+		response = this.server.send(
+				this.jwt.authorize(this.user, MockWoofServer.mockRequest("/payments/domains/MOCK_DOMAINS_ORDER_ID"))
+						.secure(true).method(HttpMethod.POST));
+		assertEquals("Should be same domains", 2, response.getJson(200, PaidDomain[].class).length);
+		assertEquals("Payments should only be recorded once", 3,
+				this.objectify.ofy().load().type(Payment.class).count());
+	}
+
+	@Test
+	public void captureDomainsPaymentPartiallyRecordedByWebhook() throws Exception {
+
+		// Setup domain already recorded by webhook
+		ZonedDateTime previous = TestHelper.now().minus(1, ChronoUnit.MONTHS);
+		Payment recordedPayment = this.helper.setupPayment(this.userRef, "recorded.officefloor.org", false, previous);
+		this.helper.setupDomain(recordedPayment);
+
+		// Setup the invoices for the order (one already captured)
+		Invoice newInvoice = new Invoice(this.userRef, Domain.PRODUCT_TYPE, "officefloor.org", false);
+		newInvoice.setPaymentOrderId("MOCK_DOMAINS_ORDER_ID");
+		newInvoice.setAmount(5_00);
+		Invoice recordedInvoice = new Invoice(this.userRef, Domain.PRODUCT_TYPE, "recorded.officefloor.org", false);
+		recordedInvoice.setPaymentOrderId("MOCK_DOMAINS_ORDER_ID");
+		recordedInvoice.setAmount(5_00);
+		recordedInvoice.setCaptureState(CaptureState.CAPTURED);
+		recordedInvoice.setPaymentId(recordedPayment.getId());
+		this.objectify.store(newInvoice, recordedInvoice);
+
+		// Record
+		this.payPal.addOrdersCaptureResponse(new Order().id("MOCK_DOMAINS_ORDER_ID").status("COMPLETED")
+				.purchaseUnits(Arrays.asList(new PurchaseUnit().payments(new PaymentCollection().captures(Arrays.asList(
+						new Capture().id("MOCK_RECEIPT").amount(new Money().value("10.00").currencyCode("AUD"))))))));
+		MockWoofResponse response = this.server.send(
+				this.jwt.authorize(this.user, MockWoofServer.mockRequest("/payments/domains/MOCK_DOMAINS_ORDER_ID"))
+						.secure(true).method(HttpMethod.POST));
+
+		// Ensure all domains of the order are sent
+		PaidDomain[] paidDomains = response.getJson(200, PaidDomain[].class);
+		assertEquals("Should include all domains of order", 2, paidDomains.length);
+		assertEquals("Incorrect first domain", "recorded.officefloor.org", paidDomains[0].getDomainName());
+		assertEquals("Incorrect second domain", "officefloor.org", paidDomains[1].getDomainName());
+
+		// Ensure only new payment recorded
+		assertEquals("Should only record payment not recorded by webhook", 2,
+				this.objectify.ofy().load().type(Payment.class).count());
+	}
+
+	@Test
+	public void singleCaptureOfDomainsOrder() throws Exception {
+
+		// Setup the invoices for the order
+		for (String domainName : new String[] { "officefloor.org", "sagenschneider.net" }) {
+			Invoice invoice = new Invoice(this.userRef, Domain.PRODUCT_TYPE, domainName, false);
+			invoice.setPaymentOrderId("MOCK_DOMAINS_ORDER_ID");
+			this.objectify.store(invoice);
+		}
+
+		// Ensure not capture as single domain
+		MockWoofResponse response = this.server.send(
+				this.jwt.authorize(this.user, MockWoofServer.mockRequest("/payments/domain/MOCK_DOMAINS_ORDER_ID"))
+						.secure(true).method(HttpMethod.POST));
+		response.assertJsonError(new net.officefloor.server.http.HttpException(422,
+				"Order MOCK_DOMAINS_ORDER_ID is for multiple domains"));
+	}
+
 	@FunctionalInterface
 	private static interface ValidateDomainExpiry {
 		void validate(ZonedDateTime paymentTimestamp, ZonedDateTime domainExpiresDate);
@@ -214,6 +412,11 @@ public class PaymentServiceTest {
 				payment.getIsRestartSubscription());
 		assertNotNull("Should have payment timestamp", payment.getTimestamp());
 
+		// Ensure invoice captured
+		Invoice capturedInvoice = this.objectify.get(Invoice.class, invoice.getId());
+		assertEquals("Incorrect capture state", CaptureState.CAPTURED, capturedInvoice.getCaptureState());
+		assertEquals("Incorrect reserved payment", payment.getId(), capturedInvoice.getPaymentId());
+
 		// Ensure domain capture in data store
 		Domain domain = this.objectify.get(Domain.class);
 		assertEquals("Incorrect domain on domain", "officefloor.org", domain.getDomain());
@@ -223,6 +426,10 @@ public class PaymentServiceTest {
 		// Validate the domain timestamp
 		validator.validate(TestHelper.toZonedDateTime(payment.getTimestamp()),
 				TestHelper.toZonedDateTime(domain.getExpires()));
+
+		// Ensure domain indexed for the user
+		UserDomains userDomains = this.objectify.get(UserDomains.class, this.user.getId());
+		assertTrue("Should index paid domain", userDomains.getDomainNames().contains("officefloor.org"));
 	}
 
 	private static void assertTime(ZonedDateTime expected, ZonedDateTime actual) {
@@ -0,0 +1,73 @@
+/*
+ * OfficeFloor - http://www.officefloor.net
+ * Copyright (C) 2005-2019 Daniel Sagenschneider
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package net.officefloor.app.subscription;
+
+import static org.junit.Assert.assertEquals;
+
+import java.time.Instant;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.Date;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Tests the {@link ResponseUtil}.
+ * 
+ * @author Daniel Sagenschneider
+ */
+public class ResponseUtilTest {
+
+	@Test
+	public void formatEpoch() {
+		assertEquals("Thu, 1 Jan 1970 00:00:00 GMT", ResponseUtil.toText(0));
+		assertEquals("Wed, 31 Dec 1969 23:59:59 GMT", ResponseUtil.toText(-1));
+	}
+
+	@Test
+	public void formatLeapDay() {
+		this.assertFormat(ZonedDateTime.of(2020, 2, 29, 9, 5, 3, 0, ResponseUtil.ZONE).toInstant().toEpochMilli());
+	}
+
+	@Test
+	public void formatSameAsFormatter() {
+		Random random = new Random(1);
+		for (int i = 0; i < 100_000; i++) {
+			this.assertFormat(random.nextLong() % 253_402_300_799_000L); // within 4 digit years
+		}
+	}
+
+	@Test
+	public void formatNonGmtZone() {
+		ZonedDateTime date = ZonedDateTime.parse("2019-06-03T11:05:30+10:00");
+		assertEquals(DateTimeFormatter.RFC_1123_DATE_TIME.format(date), ResponseUtil.toText(date));
+	}
+
+	private void assertFormat(long epochMillis) {
+		ZonedDateTime date = Instant.ofEpochMilli(epochMillis).atZone(ResponseUtil.ZONE);
+		if (date.getYear() < 1) {
+			return; // RFC-1123 formatter only for positive years
+		}
+		String expected = DateTimeFormatter.RFC_1123_DATE_TIME.format(date);
+		assertEquals("Incorrect millis " + epochMillis, expected, ResponseUtil.toText(epochMillis));
+		assertEquals("Incorrect date " + epochMillis, expected, ResponseUtil.toText(new Date(epochMillis)));
+		assertEquals("Incorrect zoned " + epochMillis, expected, ResponseUtil.toText(date));
+	}
+
+}
@@ -34,6 +34,7 @@ import net.officefloor.app.subscription.store.Administration.Administrator;
 import net.officefloor.app.subscription.store.Domain;
 import net.officefloor.app.subscription.store.GoogleSignin;
 import net.officefloor.app.subscription.store.Invoice;
+import net.officefloor.app.subscription.store.Invoice.CaptureState;
 import net.officefloor.app.subscription.store.Payment;
 import net.officefloor.app.subscription.store.Refund;
 import net.officefloor.app.subscription.store.User;
@@ -77,8 +78,13 @@ public class StoreTest {
 
 		Invoice invoice = new Invoice(userRef, Domain.PRODUCT_TYPE, "officefloor.org", false);
 		invoice.setPaymentOrderId("ORDER_ID");
+		invoice.setCaptureState(CaptureState.CAPTURING);
+		invoice.setCaptureTime(new Date());
+		invoice.setPaymentId(1L);
+		invoice.setAmount(500);
 		invoice = this.entity(invoice, e -> e.getId(), e -> e.getUser(), e -> e.getProductType(),
 				e -> e.getProductReference(), e -> e.getIsRestartSubscription(), e -> e.getPaymentOrderId(),
+				e -> e.getCaptureState(), e -> e.getCaptureTime(), e -> e.getPaymentId(), e -> e.getAmount(),
 				e -> e.getTimestamp());
 		Ref<Invoice> invoiceRef = Ref.create(invoice);
 
@@ -88,7 +94,7 @@ public class StoreTest {
 				e -> e.getProductReference(), e -> e.getIsRestartSubscription(), e -> e.getAmount(),
 				e -> e.getReceipt(), e -> e.getTimestamp());
 
-		this.entity(new Domain("officefloor.org", new Date()), e -> e.getId(), e -> e.getDomain(), e -> e.getExpires(),
+		this.entity(new Domain("officefloor.org", new Date()), e -> e.getDomain(), e -> e.getExpires(),
 				e -> e.getTimestamp());
 
 		Refund refund = this.entity(new Refund("Some reason"), e -> e.getId(), e -> e.getTimestamp());
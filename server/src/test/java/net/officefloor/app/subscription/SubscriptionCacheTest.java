@@ -0,0 +1,81 @@
+/*
+ * OfficeFloor - http://www.officefloor.net
+ * Copyright (C) 2005-2019 Daniel Sagenschneider
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package net.officefloor.app.subscription;
+
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.util.Collections;
+
+import org.junit.Test;
+
+import net.officefloor.app.subscription.SubscriptionCalculator.Subscription;
+import net.officefloor.app.subscription.cache.SubscriptionCache;
+import net.officefloor.app.subscription.cache.SubscriptionCache.DomainSubscriptions;
+
+/**
+ * Tests the {@link SubscriptionCache}.
+ * 
+ * @author Daniel Sagenschneider
+ */
+public class SubscriptionCacheTest {
+
+	@Test
+	public void cachedWithinTimeToLive() {
+		SubscriptionCache cache = new SubscriptionCache(10, 60_000);
+		DomainSubscriptions subscriptions = newDomainSubscriptions("1");
+		cache.cacheDomainSubscriptions("officefloor.org", subscriptions, cache.getGeneration());
+		assertSame("Should be cached", subscriptions, cache.getDomainSubscriptions("officefloor.org"));
+	}
+
+	@Test
+	public void revalidateAfterTimeToLive() {
+		SubscriptionCache cache = new SubscriptionCache(10, 0);
+		DomainSubscriptions subscriptions = newDomainSubscriptions("1");
+		cache.cacheDomainSubscriptions("officefloor.org", subscriptions, cache.getGeneration());
+
+		// Ensure revalidate (as payment may be recorded on another instance)
+		assertNull("Should require revalidating", cache.getDomainSubscriptions("officefloor.org"));
+
+		// Ensure reused should payments be unchanged
+		assertSame("Should reuse for same version", subscriptions,
+				cache.revalidate("officefloor.org", "1", cache.getGeneration()));
+
+		// Ensure recalculated on payment recorded by another instance
+		assertNull("Should recalculate for new version",
+				cache.revalidate("officefloor.org", "2", cache.getGeneration()));
+	}
+
+	@Test
+	public void loadNotOverwriteInvalidation() {
+		SubscriptionCache cache = new SubscriptionCache(10, 60_000);
+
+		// Load started before the payment is recorded
+		long generation = cache.getGeneration();
+		cache.invalidate("officefloor.org");
+
+		// Ensure stale load not cached
+		cache.cacheDomainSubscriptions("officefloor.org", newDomainSubscriptions("1"), generation);
+		assertNull("Should not cache stale load", cache.getDomainSubscriptions("officefloor.org"));
+	}
+
+	private static DomainSubscriptions newDomainSubscriptions(String version) {
+		return new DomainSubscriptions(version, new Subscription[0], Collections.emptySet());
+	}
+
+}
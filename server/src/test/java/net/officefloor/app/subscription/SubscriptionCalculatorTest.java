@@ -25,8 +25,11 @@ import static org.junit.Assert.assertNull;
 import java.sql.Date;
 import java.time.ZonedDateTime;
 import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.List;
+import java.util.Random;
 import java.util.stream.Stream;
 
 import org.junit.Before;
@@ -125,6 +128,129 @@ public class SubscriptionCalculatorTest {
 				refunded, payment(now, now.plus(1, ChronoUnit.YEARS)));
 	}
 
+	@Test
+	public void incrementalExtension() {
+
+		// Calculate all subscriptions
+		Subscription[] subscriptions = this.verifySubscriptionCalculation(
+				payment(now.plus(10, ChronoUnit.YEARS), true, now.plus(11, ChronoUnit.YEARS)),
+				payment(now.plus(5, ChronoUnit.YEARS), false, now.plus(3, ChronoUnit.YEARS)),
+				payment(now.plus(1, ChronoUnit.MONTHS), true, now.plus(2, ChronoUnit.YEARS)),
+				payment(now, now.plus(1, ChronoUnit.YEARS)));
+
+		// Ensure incremental extension matches full calculation
+		ZonedDateTime expiresToDate = null;
+		for (int i = subscriptions.length - 1; i >= 0; i--) {
+			Subscription subscription = subscriptions[i];
+			expiresToDate = SubscriptionCalculator.extendSubscription(expiresToDate, subscription.getPaymentDate(),
+					subscription.isRestartSubscription());
+			assertEquals("Incorrect incremental extends to date", subscription.getExtendsToDate(), expiresToDate);
+		}
+	}
+
+	@Test
+	public void randomisedComparisonToReference() {
+
+		// Setup another user and refund
+		Ref<User> anotherRef = Ref.create(this.helper.setupUser("Another"));
+		Refund refund = new Refund("TEST");
+		this.objectify.store(refund);
+		Ref<Refund> refundRef = Ref.create(refund);
+
+		// Start on leap day to cover year boundaries
+		ZonedDateTime start = ZonedDateTime.of(2020, 2, 29, 13, 14, 15, 16_000_000, ResponseUtil.ZONE);
+
+		// Compare random payment histories
+		Random random = new Random(1);
+		for (int run = 0; run < 200; run++) {
+
+			// Create the random payments
+			int paymentCount = 1 + random.nextInt(20);
+			VerifiablePayment[] payments = new VerifiablePayment[paymentCount];
+			for (int i = 0; i < paymentCount; i++) {
+				ZonedDateTime timestamp = random.nextInt(5) == 0 ? start.plus(random.nextInt(10), ChronoUnit.YEARS)
+						: start.plus(random.nextInt(4000), ChronoUnit.DAYS);
+				Ref<User> payerRef = random.nextBoolean() ? this.userRef : anotherRef;
+				payments[i] = payment(payerRef, timestamp, random.nextBoolean(), null);
+				if (random.nextInt(10) == 0) {
+					payments[i].setRefund(refundRef);
+				}
+			}
+
+			// Ensure same as reference calculation
+			User viewer = random.nextBoolean() ? this.user
+					: this.helper.setupUser("Admin " + run, User.ROLE_ADMIN);
+			Subscription[] expected = referenceCalculateSubscriptions(viewer, payments);
+			Subscription[] actual = SubscriptionCalculator.calculateSubscriptions(viewer, payments);
+			assertEquals("Run " + run + ": incorrect number of subscriptions", expected.length, actual.length);
+			for (int i = 0; i < expected.length; i++) {
+				Subscription e = expected[i];
+				Subscription a = actual[i];
+				String message = "Run " + run + ", subscription " + i + ": ";
+				assertEquals(message + "payment date", e.getPaymentDate(), a.getPaymentDate());
+				assertEquals(message + "extends to date", e.getExtendsToDate(), a.getExtendsToDate());
+				assertEquals(message + "restart", e.isRestartSubscription(), a.isRestartSubscription());
+				assertEquals(message + "product", e.getProductReference(), a.getProductReference());
+				assertEquals(message + "payer", e.getPaidBy() == null ? null : e.getPaidBy().getId(),
+						a.getPaidBy() == null ? null : a.getPaidBy().getId());
+				assertEquals(message + "order id", e.getPaymentOrderId(), a.getPaymentOrderId());
+				assertEquals(message + "receipt", e.getPaymentReceipt(), a.getPaymentReceipt());
+				assertEquals(message + "amount", e.getPaymentAmount(), a.getPaymentAmount());
+			}
+		}
+	}
+
+	/**
+	 * Reference calculation using {@link ZonedDateTime} to validate the
+	 * optimised {@link SubscriptionCalculator}.
+	 */
+	private static Subscription[] referenceCalculateSubscriptions(User user, Payment... payments) {
+		boolean isAdmin = User.isAdmin(user);
+
+		// Obtain the payments sorted reverse chronologically
+		List<Payment> included = new ArrayList<>();
+		for (Payment payment : payments) {
+			if ((payment.getRefund() == null) || (payment.getRefund().get() == null)) {
+				included.add(payment);
+			}
+		}
+		Payment[] sorted = included.stream().sorted((a, b) -> b.getTimestamp().compareTo(a.getTimestamp()))
+				.toArray(Payment[]::new);
+		if (sorted.length == 0) {
+			return new Subscription[0];
+		}
+
+		// Calculate the extends to dates
+		ZonedDateTime[] extendsTo = new ZonedDateTime[sorted.length];
+		ZonedDateTime expiresToDate = null;
+		for (int i = sorted.length - 1; i >= 0; i--) {
+			ZonedDateTime paymentDate = sorted[i].getTimestamp().toInstant().atZone(ResponseUtil.ZONE);
+			if (expiresToDate == null) {
+				expiresToDate = paymentDate.plus(1, ChronoUnit.YEARS);
+			} else {
+				if (paymentDate.isAfter(expiresToDate) && sorted[i].getIsRestartSubscription()) {
+					expiresToDate = paymentDate;
+				}
+				expiresToDate = expiresToDate.plus(1, ChronoUnit.YEARS);
+			}
+			extendsTo[i] = expiresToDate;
+		}
+
+		// Create the subscriptions
+		Subscription[] subscriptions = new Subscription[sorted.length];
+		for (int i = 0; i < sorted.length; i++) {
+			Payment payment = sorted[i];
+			User payer = payment.getUser().get();
+			boolean isAccess = isAdmin || ((payer != null) && user.getId().equals(payer.getId()));
+			subscriptions[i] = new Subscription(payment.getProductReference(),
+					payment.getTimestamp().toInstant().atZone(ResponseUtil.ZONE), extendsTo[i],
+					payment.getIsRestartSubscription(), isAccess ? payer : null,
+					isAccess ? payment.getInvoice().get().getPaymentOrderId() : null,
+					isAccess ? payment.getReceipt() : null, isAccess ? payment.getAmount() : null);
+		}
+		return subscriptions;
+	}
+
 	@Test
 	public void accessOwnPayments() {
 
@@ -18,23 +18,40 @@
 package net.officefloor.app.subscription;
 
 import static net.officefloor.app.subscription.TestHelper.toText;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
 
 import java.time.ZonedDateTime;
 import java.time.temporal.ChronoUnit;
+import java.util.Arrays;
 import java.util.Date;
+import java.util.List;
 
 import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.RuleChain;
 
+import com.googlecode.objectify.Objectify;
 import com.googlecode.objectify.Ref;
+import com.paypal.orders.Capture;
+import com.paypal.orders.Money;
+import com.paypal.orders.Order;
+import com.paypal.orders.PaymentCollection;
+import com.paypal.orders.PurchaseUnit;
 
 import net.officefloor.app.subscription.SubscriptionService.DomainPayment;
 import net.officefloor.app.subscription.SubscriptionService.DomainPayments;
 import net.officefloor.app.subscription.store.Domain;
+import net.officefloor.app.subscription.store.Invoice;
+import net.officefloor.app.subscription.store.Payment;
+import net.officefloor.app.subscription.store.Refund;
 import net.officefloor.app.subscription.store.User;
 import net.officefloor.nosql.objectify.mock.ObjectifyRule;
+import net.officefloor.pay.paypal.mock.PayPalRule;
 import net.officefloor.server.http.HttpException;
+import net.officefloor.server.http.HttpMethod;
 import net.officefloor.web.jwt.mock.MockJwtAccessTokenRule;
 import net.officefloor.woof.mock.MockWoofResponse;
 import net.officefloor.woof.mock.MockWoofServer;
@@ -47,12 +64,15 @@ public class SubscriptionServiceTest {
 
 	private final MockJwtAccessTokenRule jwt = new MockJwtAccessTokenRule();
 
+	private final PayPalRule payPal = new PayPalRule();
+
 	private final ObjectifyRule objectify = new ObjectifyRule();
 
 	private final MockWoofServerRule server = new MockWoofServerRule();
 
 	@Rule
-	public final RuleChain chain = RuleChain.outerRule(this.jwt).around(this.objectify).around(this.server);
+	public final RuleChain chain = RuleChain.outerRule(this.jwt).around(this.payPal).around(this.objectify)
+			.around(this.server);
 
 	private final TestHelper helper = new TestHelper(this.objectify);
 
@@ -134,4 +154,143 @@ public class SubscriptionServiceTest {
 		response.assertJson(200, new DomainPayments("officefloor.org", payments[0].getExtendsToDate(), payments));
 	}
 
+	@Test
+	public void notModified() throws Exception {
+
+		// Setup user for payments
+		User user = this.helper.setupUser("Daniel");
+		Ref<User> userRef = Ref.create(user);
+		ZonedDateTime now = TestHelper.now();
+		this.helper.setupPayment(userRef, "officefloor.org", false, now.minus(1, ChronoUnit.YEARS));
+
+		// Obtain the payments
+		MockWoofResponse response = this.server.send(this.jwt
+				.authorize(user, MockWoofServer.mockRequest("/subscriptions/domain/officefloor.org")).secure(true));
+		assertEquals("Should be successful", 200, response.getStatus().getStatusCode());
+		String etag = response.getHeader("ETag").getValue();
+		String entity = response.getEntity(null);
+
+		// Ensure not modified
+		response = this.server.send(
+				this.jwt.authorize(user, MockWoofServer.mockRequest("/subscriptions/domain/officefloor.org"))
+						.header("If-None-Match", etag).secure(true));
+		assertEquals("Should not be modified", 304, response.getStatus().getStatusCode());
+		assertEquals("Should be same ETag", etag, response.getHeader("ETag").getValue());
+		assertEquals("Should be no entity", "", response.getEntity(null));
+
+		// Ensure cached entity same as calculated
+		response = this.server.send(this.jwt
+				.authorize(user, MockWoofServer.mockRequest("/subscriptions/domain/officefloor.org")).secure(true));
+		assertEquals("Incorrect cached entity", entity, response.getEntity(null));
+
+		// Capture new payment (updating the cached subscriptions)
+		this.payPal.addOrdersCaptureResponse(new Order().id("MOCK_ORDER_ID").status("COMPLETED")
+				.purchaseUnits(Arrays.asList(new PurchaseUnit().payments(new PaymentCollection().captures(Arrays.asList(
+						new Capture().id("MOCK_RECEIPT").amount(new Money().value("5.00").currencyCode("AUD"))))))));
+		Invoice invoice = new Invoice(userRef, Domain.PRODUCT_TYPE, "officefloor.org", false);
+		invoice.setPaymentOrderId("MOCK_ORDER_ID");
+		this.objectify.store(invoice);
+		response = this.server
+				.send(this.jwt.authorize(user, MockWoofServer.mockRequest("/payments/domain/MOCK_ORDER_ID"))
+						.secure(true).method(HttpMethod.POST));
+		assertEquals("Should capture payment", 200, response.getStatus().getStatusCode());
+
+		// Ensure new payment changes the ETag
+		response = this.server.send(
+				this.jwt.authorize(user, MockWoofServer.mockRequest("/subscriptions/domain/officefloor.org"))
+						.header("If-None-Match", etag).secure(true));
+		assertEquals("Should be modified", 200, response.getStatus().getStatusCode());
+		assertNotEquals("Should have new ETag", etag, response.getHeader("ETag").getValue());
+		assertEquals("Should include new payment", 2,
+				response.getJson(200, DomainPayments.class).getPayments().length);
+	}
+
+	@Test
+	public void differentETagForAdministrator() throws Exception {
+
+		// Setup users for payments
+		User user = this.helper.setupUser("Daniel");
+		User admin = this.helper.setupUser("Admin", User.ROLE_ADMIN);
+		Ref<User> userRef = Ref.create(user);
+		this.helper.setupPayment(userRef, "officefloor.org", false, TestHelper.now());
+		this.helper.setupPayment(Ref.create(admin), "officefloor.org", false, TestHelper.now());
+
+		// Obtain the ETags
+		MockWoofResponse userResponse = this.server.send(this.jwt
+				.authorize(user, MockWoofServer.mockRequest("/subscriptions/domain/officefloor.org")).secure(true));
+		MockWoofResponse adminResponse = this.server.send(this.jwt
+				.authorize(admin, MockWoofServer.mockRequest("/subscriptions/domain/officefloor.org")).secure(true));
+		assertNotEquals("Should not share ETag across visibility", userResponse.getHeader("ETag").getValue(),
+				adminResponse.getHeader("ETag").getValue());
+	}
+
+	@Test
+	public void streamLargePaymentHistory() throws Exception {
+
+		// Setup users for payments
+		User user = this.helper.setupUser("Daniel");
+		Ref<User> userRef = Ref.create(user);
+		Ref<User> anotherRef = Ref.create(this.helper.setupUser("Another"));
+
+		// Load more payments than kept serialised
+		ZonedDateTime start = TestHelper.now().minus(1, ChronoUnit.YEARS);
+		final int NUMBER_OF_PAYMENTS = SubscriptionService.STREAM_THRESHOLD + 10;
+		for (int i = 0; i < NUMBER_OF_PAYMENTS; i++) {
+			this.helper.setupPayment((i % 3) == 0 ? anotherRef : userRef, "officefloor.org", (i % 7) == 0,
+					start.plus(i, ChronoUnit.HOURS));
+		}
+
+		// Determine the expected payments (redacted for the user)
+		List<Payment> payments = this.objectify.get(Payment.class, NUMBER_OF_PAYMENTS,
+				(loader) -> loader.filter("productReference", "officefloor.org"));
+		DomainPayments expected = SubscriptionService.translateToDomainPayments(SubscriptionCalculator
+				.calculateSubscriptions(user, payments.toArray(new Payment[payments.size()])));
+
+		// Ensure streamed payments same as serialised
+		MockWoofResponse response = this.server.send(this.jwt
+				.authorize(user, MockWoofServer.mockRequest("/subscriptions/domain/officefloor.org")).secure(true));
+		response.assertJson(200, expected);
+	}
+
+	@Test
+	public void batchLoadPaymentReferences() throws Exception {
+
+		// Setup users for payments
+		Ref<User> userRef = Ref.create(this.helper.setupUser("Daniel"));
+		Ref<User> anotherRef = Ref.create(this.helper.setupUser("Another"));
+
+		// Load the payments (with a refund)
+		ZonedDateTime now = TestHelper.now();
+		this.helper.setupPayment(userRef, "officefloor.org", false, now.minus(2, ChronoUnit.YEARS));
+		this.helper.setupPayment(anotherRef, "officefloor.org", false, now.minus(1, ChronoUnit.YEARS));
+		Payment refunded = this.helper.setupPayment(userRef, "officefloor.org", false, now);
+		Refund refund = new Refund("TEST");
+		this.objectify.store(refund);
+		refunded.setRefund(Ref.create(refund));
+		this.objectify.store(refunded);
+
+		// Obtain the payments (without references in session)
+		this.objectify.consistent(() -> this.objectify.get(Payment.class, refunded.getId()),
+				(payment) -> payment.getRefund() != null);
+		Objectify ofy = this.objectify.ofy();
+		ofy.clear();
+		List<Payment> payments = ofy.load().type(Payment.class).filter("productReference", "officefloor.org")
+				.list();
+		for (Payment payment : payments) {
+			assertFalse("INVALID TEST: user should not be loaded", ofy.isLoaded(payment.getUser().key()));
+		}
+
+		// Batch load the references
+		SubscriptionService.loadPaymentReferences(payments, ofy);
+
+		// Ensure all references available from session
+		for (Payment payment : payments) {
+			assertTrue("User should be loaded", ofy.isLoaded(payment.getUser().key()));
+			assertTrue("Invoice should be loaded", ofy.isLoaded(payment.getInvoice().key()));
+			if (payment.getRefund() != null) {
+				assertTrue("Refund should be loaded", ofy.isLoaded(payment.getRefund().key()));
+			}
+		}
+	}
+
 }
\ No newline at end of file
@@ -118,11 +118,13 @@ public class TestHelper {
 	 * @return {@link Administration}.
 	 */
 	public static Administration newAdministration() {
-		return new Administration("MOCK_GOOGLE_CLIENT_ID",
+		Administration administration = new Administration("MOCK_GOOGLE_CLIENT_ID",
 				new Administrator[] { new Administrator("MOCK_ADMIN_1", "MOCK_NOTES_1"),
 						new Administrator("MOCK_ADMIN_2", "MOCK_NOTES_2") },
 				"MOCK_PAYPAL_ENVIRONMENT", "MOCK_PAYPAL_CLIENT_ID", "MOCK_PAYPAL_CLIENT_SECRET",
 				"MOCK_PAYPAL_INVOICE_{id}", "MOCK_PAYPAL_CURRENCY");
+		administration.setPaypalWebhookId("MOCK_PAYPAL_WEBHOOK_ID");
+		return administration;
 	}
 
 	/**